@@ -0,0 +1,85 @@
+package com.innerspec.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Creates the dxf files that the benchmarks run against. Each file is written
+ * by the DxfGenerator with its default mix of lines, arcs, circles and
+ * unsupported entities, seeded with the number of entities so that every run
+ * of a benchmark reads the same file.
+ *
+ * Files are created once per size in a temporary directory and reused by
+ * all benchmarks of the same JVM. The directory is left behind so that the
+ * files can be inspected.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class BenchmarkInputs {
+    /** The layer whose circles are flashed in the end-to-end benchmark. */
+    public static final String FLASHED_LAYER = DxfGenerator.FLASHED_LAYER;
+
+    private static HashMap<Integer, File> files = new HashMap<Integer, File>();
+
+    private static File directory;
+
+    /**
+     * Returns a dxf file with a number of entities, creating it if needed.
+     *
+     * @param entityCount   The number of entities in the ENTITIES section
+     * @return              The dxf file
+     * @throws IOException  Error writing file.
+     */
+    public static synchronized File getDxfFile(int entityCount)
+            throws IOException {
+        File file = files.get(entityCount);
+
+        if(file == null){
+            file = new File(getDirectory(), "bench_" + entityCount + ".dxf");
+            writeDxfFile(file, entityCount);
+            files.put(entityCount, file);
+        }
+
+        return file;
+    }
+
+    /**
+     * Returns a new empty directory inside the temporary benchmark directory,
+     * used for the Gerber files of a single conversion.
+     */
+    public static synchronized File createOutputDirectory(String name)
+            throws IOException {
+        File dir = new File(getDirectory(), name);
+
+        if(dir.isDirectory() == false && dir.mkdirs() == false){
+            throw new IOException("Cannot create " + dir);
+        }
+
+        return dir;
+    }
+
+    private static File getDirectory() throws IOException {
+        if(directory == null){
+            directory = File.createTempFile("dxf2gbr-bench", "");
+
+            if(directory.delete() == false || directory.mkdir() == false){
+                throw new IOException("Cannot create " + directory);
+            }
+        }
+
+        return directory;
+    }
+
+    /**
+     * Writes a dxf file with the default mix of the DxfGenerator, seeded with
+     * the number of entities.
+     */
+    private static void writeDxfFile(File file, int entityCount)
+            throws IOException {
+        DxfGenerator generator = new DxfGenerator();
+        generator.setEntityCount(entityCount);
+        generator.setSeed(entityCount);
+        generator.write(file.getPath());
+    }
+}
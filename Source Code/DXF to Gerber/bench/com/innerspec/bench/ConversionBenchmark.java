@@ -0,0 +1,92 @@
+package com.innerspec.bench;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.Layer;
+import com.innerspec.main.ProgressListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a full conversion: reading the dxf file, preparing the layers and
+ * writing the Gerber files. The layers use the defaults of the DataFrame, and
+ * the circles of the "PADS" layer are flashed. The Gerber files are written
+ * to a directory of their own and overwritten by every call.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConversionBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int entityCount;
+
+    private String dxfPath;
+
+    private static final ProgressListener SILENT_LISTENER
+            = new ProgressListener(){
+        @Override
+        public void addProgressEvent(String eventName, int eventProgress){
+        }
+
+        @Override
+        public void updateProgress(int entitiesWritten, int entityTotal,
+                long bytesWritten){
+        }
+
+        @Override
+        public void setDoneWriting(boolean val){
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        File dxfFile = BenchmarkInputs.getDxfFile(entityCount);
+        File outputDirectory = BenchmarkInputs.createOutputDirectory(
+                "conversion_" + entityCount);
+        File copy = new File(outputDirectory, dxfFile.getName());
+
+        //The Gerber files are written next to the dxf file
+        Files.copy(dxfFile.toPath(), copy.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        dxfPath = copy.getAbsolutePath();
+    }
+
+    /**
+     * @return  The number of entities written
+     */
+    @Benchmark
+    public int convert(){
+        ConversionEngine engine = new ConversionEngine();
+        engine.readDxfFile(dxfPath);
+
+        for(Layer layer : engine.getLayers()){
+            layer.setDefaultAttributes();
+            layer.setIsFlashed(
+                    layer.getName().equals(BenchmarkInputs.FLASHED_LAYER));
+        }
+
+        engine.prepareLayers();
+        engine.setCanOverwriteAll(true);
+        engine.startWriting(SILENT_LISTENER);
+
+        return engine.getGerberFileManager().getEntityQuantity();
+    }
+}
@@ -0,0 +1,611 @@
+package com.innerspec.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Writes synthetic ASCII dxf files for load and scale testing, so that the
+ * converter can be measured without customer drawings. The contents depend
+ * only on the settings and the seed, so the same settings always produce the
+ * same bytes.
+ *
+ * The drawing has a TABLES section with one entry per layer and an ENTITIES
+ * section with lines, arcs and circles in a configurable mix. Layers are
+ * named "L1_3MIL", "L2_5MIL"... so that the DataFrame gives each one its own
+ * Gerber file and thickness. A share of the circles is placed on the layer
+ * "PADS", which is meant to be flashed. Shares of the entities can be made
+ * negative (left of the origin), zero size, or replaced by entity types the
+ * converter does not support.
+ *
+ * Entities are streamed to the file as they are generated, and numbers are
+ * formatted without String.format(), so files of 50 million entities and
+ * more (several GB) are written in a few minutes with constant memory.
+ *
+ * Usage:
+ *
+ *     java com.innerspec.bench.DxfGenerator [options] OUTPUT.dxf
+ *
+ * See printUsage() for the options.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class DxfGenerator {
+    /** The layer that receives the flashed share of the circles. */
+    public static final String FLASHED_LAYER = "PADS";
+
+    /** Line widths in mils given to the generated layers, in turn. */
+    private static final int[] LAYER_WIDTHS = {3, 5, 8, 10, 12, 15, 20, 25};
+
+    /** Pad radii in inches of flashed circles, as a drawing has few pads. */
+    private static final double[] PAD_RADII
+            = {0.0125, 0.02, 0.025, 0.03, 0.04, 0.05, 0.0625, 0.075};
+
+    private static final int LINE = 0;
+    private static final int ARC = 1;
+    private static final int CIRCLE = 2;
+
+    private long entityCount = 1000;
+    private int lineWeight = 4;
+    private int arcWeight = 2;
+    private int circleWeight = 3;
+    private int layerCount = 4;
+    private double flashedShare = 0.25;
+    private double negativeShare = 0;
+    private double zeroSizeShare = 0;
+    private double unsupportedShare = 0.1;
+    private String[] unsupportedTypes = {"TEXT", "MTEXT", "POINT"};
+    private double extent = 10;
+    private long seed = 1;
+
+    private Random random;
+    private String[] layers;
+
+    private OutputStream out;
+    private byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+
+    /**
+     * Sets the number of entities in the ENTITIES section, including the
+     * unsupported ones.
+     */
+    public void setEntityCount(long entityCount){
+        this.entityCount = entityCount;
+    }
+
+    public long getEntityCount(){
+        return entityCount;
+    }
+
+    /**
+     * Sets the relative weights of lines, arcs and circles among the
+     * supported entities. A weight of 0 leaves the type out.
+     */
+    public void setMix(int lineWeight, int arcWeight, int circleWeight){
+        if(lineWeight < 0 || arcWeight < 0 || circleWeight < 0
+                || lineWeight + arcWeight + circleWeight == 0){
+            throw new IllegalArgumentException("Invalid entity mix");
+        }
+
+        this.lineWeight = lineWeight;
+        this.arcWeight = arcWeight;
+        this.circleWeight = circleWeight;
+    }
+
+    /**
+     * Sets the number of layers with a line width, not counting the PADS
+     * layer.
+     */
+    public void setLayerCount(int layerCount){
+        if(layerCount < 1){
+            throw new IllegalArgumentException("At least one layer is needed");
+        }
+
+        this.layerCount = layerCount;
+    }
+
+    /** Sets the share of circles (0 to 1) that are put on the PADS layer. */
+    public void setFlashedShare(double flashedShare){
+        this.flashedShare = checkShare(flashedShare);
+    }
+
+    /** Sets the share of entities (0 to 1) placed left of the origin. */
+    public void setNegativeShare(double negativeShare){
+        this.negativeShare = checkShare(negativeShare);
+    }
+
+    /**
+     * Sets the share of entities (0 to 1) with a size of zero: lines that
+     * start where they end and arcs and circles with a radius of 0.
+     */
+    public void setZeroSizeShare(double zeroSizeShare){
+        this.zeroSizeShare = checkShare(zeroSizeShare);
+    }
+
+    /**
+     * Sets the share of entities (0 to 1) written as one of the unsupported
+     * types instead of a line, arc or circle.
+     */
+    public void setUnsupportedShare(double unsupportedShare){
+        this.unsupportedShare = checkShare(unsupportedShare);
+    }
+
+    /**
+     * Sets the entity types used for the unsupported share. Only TEXT, MTEXT
+     * and POINT are written with their own group codes, other names are
+     * written with a layer and a position only.
+     */
+    public void setUnsupportedTypes(String[] unsupportedTypes){
+        if(unsupportedTypes.length == 0){
+            throw new IllegalArgumentException("No unsupported types given");
+        }
+
+        this.unsupportedTypes = unsupportedTypes.clone();
+    }
+
+    /** Sets the width and height in inches of the area that is drawn on. */
+    public void setExtent(double extent){
+        if(extent <= 0){
+            throw new IllegalArgumentException("The extent must be positive");
+        }
+
+        this.extent = extent;
+    }
+
+    public void setSeed(long seed){
+        this.seed = seed;
+    }
+
+    private static double checkShare(double share){
+        if(share < 0 || share > 1){
+            throw new IllegalArgumentException(
+                    "A share must be between 0 and 1: " + share);
+        }
+
+        return share;
+    }
+
+    /**
+     * Returns the names of the layers written by write(), the PADS layer
+     * last.
+     */
+    public String[] getLayerNames(){
+        String[] names = new String[layerCount + 1];
+
+        for(int k = 0; k < layerCount; k++){
+            names[k] = "L" + (k + 1) + "_"
+                    + LAYER_WIDTHS[k % LAYER_WIDTHS.length] + "MIL";
+        }
+
+        names[layerCount] = FLASHED_LAYER;
+        return names;
+    }
+
+    /**
+     * Writes a dxf file with the current settings.
+     *
+     * @param path          The path of the file, replaced if it exists
+     * @throws IOException  Error writing file.
+     */
+    public void write(String path) throws IOException {
+        OutputStream file = new BufferedOutputStream(
+                new FileOutputStream(path), 1 << 20);
+
+        try {
+            write(file);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes a dxf file with the current settings to a stream. The stream is
+     * flushed but not closed.
+     */
+    public void write(OutputStream stream) throws IOException {
+        out = stream;
+        position = 0;
+        random = new Random(seed);
+        layers = getLayerNames();
+
+        pair(0, "SECTION");
+        pair(2, "HEADER");
+        pair(9, "$ACADVER");
+        pair(1, "AC1009");
+        pair(0, "ENDSEC");
+
+        writeLayerTable();
+
+        pair(0, "SECTION");
+        pair(2, "ENTITIES");
+
+        int totalWeight = lineWeight + arcWeight + circleWeight;
+
+        for(long k = 0; k < entityCount; k++){
+            boolean isNegative = random.nextDouble() < negativeShare;
+            boolean isZeroSize = random.nextDouble() < zeroSizeShare;
+
+            if(random.nextDouble() < unsupportedShare){
+                writeUnsupported(isNegative);
+                continue;
+            }
+
+            int type = random.nextInt(totalWeight);
+
+            if(type < lineWeight){
+                writeLine(isNegative, isZeroSize);
+            }
+            else if(type < lineWeight + arcWeight){
+                writeArc(isNegative, isZeroSize);
+            }
+            else {
+                writeCircle(isNegative, isZeroSize);
+            }
+        }
+
+        pair(0, "ENDSEC");
+        pair(0, "EOF");
+
+        flush();
+        out.flush();
+        out = null;
+    }
+
+    private void writeLayerTable() throws IOException {
+        pair(0, "SECTION");
+        pair(2, "TABLES");
+        pair(0, "TABLE");
+        pair(2, "LAYER");
+        pair(70, layers.length);
+
+        for(int k = 0; k < layers.length; k++){
+            pair(0, "LAYER");
+            pair(2, layers[k]);
+            pair(70, 0);
+            //Each layer gets its own color, 1 to 7
+            pair(62, 1 + k % 7);
+            pair(6, "CONTINUOUS");
+        }
+
+        pair(0, "ENDTAB");
+        pair(0, "ENDSEC");
+    }
+
+    private void writeLine(boolean isNegative, boolean isZeroSize)
+            throws IOException {
+        double x = coordinate(isNegative);
+        double y = coordinate(false);
+        double xEnd = x;
+        double yEnd = y;
+
+        if(isZeroSize == false && random.nextInt(10) == 0){
+            //Some lines run across the whole board
+            xEnd = coordinate(isNegative);
+            yEnd = coordinate(false);
+        }
+        else if(isZeroSize == false){
+            //Short traces at multiples of 45 degrees, kept inside the margin
+            double length = 0.05 + random.nextDouble() * 0.5;
+            double angle = random.nextInt(8) * Math.PI / 4;
+            xEnd = x + length * Math.cos(angle);
+            yEnd = y + length * Math.sin(angle);
+        }
+
+        pair(0, "LINE");
+        pair(8, nextLayer());
+        pair(10, x);
+        pair(20, y);
+        pair(30, 0);
+        pair(11, xEnd);
+        pair(21, yEnd);
+        pair(31, 0);
+    }
+
+    private void writeArc(boolean isNegative, boolean isZeroSize)
+            throws IOException {
+        double radius = isZeroSize ? 0 : 0.02 + random.nextDouble() * 0.5;
+        double startAngle = random.nextInt(360 * 8) / 8.0;
+        double endAngle = random.nextInt(360 * 8) / 8.0;
+
+        pair(0, "ARC");
+        pair(8, nextLayer());
+        pair(10, coordinate(isNegative));
+        pair(20, coordinate(false));
+        pair(30, 0);
+        pair(40, radius);
+        pair(50, startAngle);
+        pair(51, endAngle);
+    }
+
+    private void writeCircle(boolean isNegative, boolean isZeroSize)
+            throws IOException {
+        String layer;
+        double radius;
+
+        if(random.nextDouble() < flashedShare){
+            layer = FLASHED_LAYER;
+            radius = PAD_RADII[random.nextInt(PAD_RADII.length)];
+        }
+        else {
+            layer = nextLayer();
+            radius = 0.01 + random.nextInt(100) * 0.005;
+        }
+
+        if(isZeroSize){
+            radius = 0;
+        }
+
+        pair(0, "CIRCLE");
+        pair(8, layer);
+        pair(10, coordinate(isNegative));
+        pair(20, coordinate(false));
+        pair(30, 0);
+        pair(40, radius);
+    }
+
+    private void writeUnsupported(boolean isNegative) throws IOException {
+        String type = unsupportedTypes[random.nextInt(unsupportedTypes.length)];
+
+        pair(0, type);
+        pair(8, nextLayer());
+        pair(10, coordinate(isNegative));
+        pair(20, coordinate(false));
+        pair(30, 0);
+
+        if(type.equals("TEXT")){
+            pair(40, 0.05);
+            pair(1, "TP" + random.nextInt(1000));
+        }
+        else if(type.equals("MTEXT")){
+            pair(40, 0.05);
+            pair(41, 1);
+            pair(1, "NOTE " + random.nextInt(1000));
+        }
+    }
+
+    /** Returns one of the layers with a line width. */
+    private String nextLayer(){
+        return layers[random.nextInt(layerCount)];
+    }
+
+    /**
+     * Returns a coordinate inside the drawing area, or left of the origin
+     * for negative entities. A margin keeps arcs and circles from crossing
+     * the origin by accident.
+     */
+    private double coordinate(boolean isNegative){
+        double value = 0.6 + random.nextDouble() * (extent - 1.2);
+        return isNegative ? -value : value;
+    }
+
+    private void pair(int code, String value) throws IOException {
+        groupCode(code);
+        ensureCapacity(value.length() + 1);
+
+        for(int k = 0; k < value.length(); k++){
+            buffer[position++] = (byte)value.charAt(k);
+        }
+
+        buffer[position++] = '\n';
+    }
+
+    private void pair(int code, int value) throws IOException {
+        groupCode(code);
+        ensureCapacity(12);
+        writeDigits(value);
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * Writes a value with six decimals, the way AutoCAD writes coordinates.
+     */
+    private void pair(int code, double value) throws IOException {
+        groupCode(code);
+        ensureCapacity(32);
+
+        long scaled = Math.round(value * 1000000);
+
+        if(scaled < 0){
+            buffer[position++] = '-';
+            scaled = -scaled;
+        }
+
+        writeDigits(scaled / 1000000);
+        buffer[position++] = '.';
+
+        int fraction = (int)(scaled % 1000000);
+
+        for(int divisor = 100000; divisor > 0; divisor /= 10){
+            buffer[position++] = (byte)('0' + fraction / divisor % 10);
+        }
+
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * Writes a group code right aligned in three characters.
+     */
+    private void groupCode(int code) throws IOException {
+        ensureCapacity(16);
+
+        if(code < 10){
+            buffer[position++] = ' ';
+        }
+        if(code < 100){
+            buffer[position++] = ' ';
+        }
+
+        writeDigits(code);
+        buffer[position++] = '\n';
+    }
+
+    private void writeDigits(long value){
+        if(value < 0){
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        int start = position;
+
+        do {
+            buffer[position++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while(value > 0);
+
+        //The digits were written from the last one, reverse them
+        for(int k = start, j = position - 1; k < j; k++, j--){
+            byte temp = buffer[k];
+            buffer[k] = buffer[j];
+            buffer[j] = temp;
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if(position + length > buffer.length){
+            flush();
+
+            if(length > buffer.length){
+                buffer = new byte[length];
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private static void printUsage(){
+        System.err.println(
+            "Usage: DxfGenerator [options] OUTPUT.dxf\n"
+          + "\n"
+          + "Options:\n"
+          + "  -n, --entities N         Number of entities (default 1000)\n"
+          + "  --mix L,A,C              Weights of lines, arcs and circles\n"
+          + "                           (default 4,2,3)\n"
+          + "  --layers N               Number of layers named L<k>_<n>MIL\n"
+          + "                           (default 4)\n"
+          + "  --flashed SHARE          Share of circles on the PADS layer\n"
+          + "                           (default 0.25)\n"
+          + "  --negative SHARE         Share of entities left of the origin\n"
+          + "                           (default 0)\n"
+          + "  --zero-size SHARE        Share of entities with a size of 0\n"
+          + "                           (default 0)\n"
+          + "  --unsupported SHARE      Share of unsupported entities\n"
+          + "                           (default 0.1)\n"
+          + "  --unsupported-types T,.. Unsupported entity types\n"
+          + "                           (default TEXT,MTEXT,POINT)\n"
+          + "  --extent INCHES          Size of the drawing area (default 10)\n"
+          + "  --seed N                 Random seed (default 1)\n"
+          + "\n"
+          + "Shares are between 0 and 1. The PADS layer is meant to be\n"
+          + "converted with flashed circles.");
+    }
+
+    public static void main(String[] args){
+        DxfGenerator generator = new DxfGenerator();
+        ArrayList<String> outputs = new ArrayList<String>();
+
+        try {
+            for(int k = 0; k < args.length; k++){
+                String arg = args[k];
+
+                if(arg.equals("-h") || arg.equals("--help")){
+                    printUsage();
+                    return;
+                }
+                else if(arg.startsWith("-") && arg.length() > 1){
+                    if(k + 1 >= args.length){
+                        throw new IllegalArgumentException(
+                                "Missing value for " + arg);
+                    }
+
+                    applyOption(generator, arg, args[++k]);
+                }
+                else {
+                    outputs.add(arg);
+                }
+            }
+
+            if(outputs.size() != 1){
+                throw new IllegalArgumentException(
+                        "Exactly one output file is needed");
+            }
+        }
+        catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            generator.write(outputs.get(0));
+        }
+        catch(IOException e){
+            e.printStackTrace();
+            System.exit(2);
+        }
+
+        System.err.printf("Wrote %d entities to %s in %.1f s%n",
+                generator.getEntityCount(), outputs.get(0),
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+    private static void applyOption(DxfGenerator generator, String option,
+            String value){
+        try {
+            if(option.equals("-n") || option.equals("--entities")){
+                generator.setEntityCount(Long.parseLong(value));
+            }
+            else if(option.equals("--mix")){
+                String[] weights = value.split(",");
+
+                if(weights.length != 3){
+                    throw new IllegalArgumentException(
+                            "The mix needs three weights: " + value);
+                }
+
+                generator.setMix(Integer.parseInt(weights[0].trim()),
+                        Integer.parseInt(weights[1].trim()),
+                        Integer.parseInt(weights[2].trim()));
+            }
+            else if(option.equals("--layers")){
+                generator.setLayerCount(Integer.parseInt(value));
+            }
+            else if(option.equals("--flashed")){
+                generator.setFlashedShare(Double.parseDouble(value));
+            }
+            else if(option.equals("--negative")){
+                generator.setNegativeShare(Double.parseDouble(value));
+            }
+            else if(option.equals("--zero-size")){
+                generator.setZeroSizeShare(Double.parseDouble(value));
+            }
+            else if(option.equals("--unsupported")){
+                generator.setUnsupportedShare(Double.parseDouble(value));
+            }
+            else if(option.equals("--unsupported-types")){
+                generator.setUnsupportedTypes(value.split(","));
+            }
+            else if(option.equals("--extent")){
+                generator.setExtent(Double.parseDouble(value));
+            }
+            else if(option.equals("--seed")){
+                generator.setSeed(Long.parseLong(value));
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        catch(NumberFormatException e){
+            throw new IllegalArgumentException(
+                    "Invalid value for " + option + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.innerspec.bench;
+
+import com.innerspec.entity.Arc;
+import com.innerspec.entity.Circle;
+import com.innerspec.entity.Line;
+import com.innerspec.main.DxfMappedTokenizer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the construction of single Line, Arc and Circle entities from
+ * their group codes, the way they are created while the ENTITIES section is
+ * parsed. Each benchmark includes the creation of the small tokenizer over
+ * the bytes of the entity.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EntityBenchmark {
+    private ByteBuffer lineData;
+    private ByteBuffer arcData;
+    private ByteBuffer circleData;
+
+    @Setup
+    public void setUp(){
+        lineData = encode("  8\nTOP_5MIL\n 10\n1.250000\n 20\n3.500000\n"
+                + " 30\n0.0\n 11\n4.750000\n 21\n3.500000\n 31\n0.0\n");
+        arcData = encode("  8\nTOP_5MIL\n 10\n2.000000\n 20\n2.000000\n"
+                + " 30\n0.0\n 40\n0.350000\n 50\n30.000000\n"
+                + " 51\n300.000000\n");
+        circleData = encode("  8\nPADS\n 10\n5.125000\n 20\n6.875000\n"
+                + " 30\n0.0\n 40\n0.025000\n");
+    }
+
+    private static ByteBuffer encode(String entity){
+        return ByteBuffer.wrap(entity.getBytes());
+    }
+
+    @Benchmark
+    public Line line() throws IOException {
+        return new Line(new DxfMappedTokenizer(lineData.duplicate()));
+    }
+
+    @Benchmark
+    public Arc arc() throws IOException {
+        return new Arc(new DxfMappedTokenizer(arcData.duplicate()));
+    }
+
+    @Benchmark
+    public Circle circle() throws IOException {
+        return new Circle(new DxfMappedTokenizer(circleData.duplicate()));
+    }
+}
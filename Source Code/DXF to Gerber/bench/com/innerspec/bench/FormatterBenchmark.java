@@ -0,0 +1,88 @@
+package com.innerspec.bench;
+
+import com.innerspec.main.GerberFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the formatting of Gerber coordinates. The GerberFormatter writes
+ * each command into a reused byte buffer; the String.format() benchmarks
+ * show the cost of the String based formatting it replaced, so that the two
+ * can be compared on every release.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FormatterBenchmark {
+    /** The number of coordinate sets that are cycled through. */
+    private static final int SIZE = 1024;
+
+    private int[] coordinates = new int[SIZE * 4];
+    private int index = 0;
+
+    private GerberFormatter formatter = new GerberFormatter();
+
+    @Setup
+    public void setUp(){
+        Random random = new Random(1);
+
+        for(int k = 0; k < coordinates.length; k++){
+            coordinates[k] = random.nextInt(2000000);
+        }
+    }
+
+    /**
+     * Returns the index of the next set of four coordinates.
+     */
+    private int nextIndex(){
+        index = (index + 4) & (coordinates.length - 1);
+        return index;
+    }
+
+    /** A line draw, "G01X...Y...D01*" with unpadded coordinates. */
+    @Benchmark
+    public GerberFormatter lineFormatter(){
+        int k = nextIndex();
+        return formatter.formatCommand("G01", coordinates[k],
+                coordinates[k + 1], "D01*", 0);
+    }
+
+    @Benchmark
+    public String lineStringFormat(){
+        int k = nextIndex();
+        return "G01X" + coordinates[k] + "Y" + coordinates[k + 1] + "D01*";
+    }
+
+    /** An arc draw, "G03X...Y...I...J...D01*" with coordinates of width 6. */
+    @Benchmark
+    public GerberFormatter arcFormatter(){
+        int k = nextIndex();
+        return formatter.formatCommand("G03", coordinates[k],
+                coordinates[k + 1], coordinates[k + 2], coordinates[k + 3],
+                "D01*", 6);
+    }
+
+    @Benchmark
+    public String arcStringFormat(){
+        int k = nextIndex();
+        return "G03X" + String.format("%06d", coordinates[k])
+                + "Y" + String.format("%06d", coordinates[k + 1])
+                + "I" + String.format("%06d", coordinates[k + 2])
+                + "J" + String.format("%06d", coordinates[k + 3]) + "D01*";
+    }
+}
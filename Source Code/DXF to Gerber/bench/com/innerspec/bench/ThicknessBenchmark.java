@@ -0,0 +1,73 @@
+package com.innerspec.bench;
+
+import com.innerspec.main.ThicknessManager;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the lookup of aperture codes in the ThicknessManager, which is
+ * done for every entity that is written. Flashed circles add one aperture
+ * per diameter, so the benchmark runs with small and large aperture tables.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ThicknessBenchmark {
+    @Param({"4", "32", "256"})
+    public int apertureCount;
+
+    /** The number of lookups done by each benchmark call. */
+    private static final int LOOKUPS = 1024;
+
+    private ThicknessManager thicknessManager;
+
+    /** The thicknesses that are looked up, in a random order. */
+    private double[] thicknesses = new double[LOOKUPS];
+
+    @Setup
+    public void setUp(){
+        thicknessManager = new ThicknessManager();
+
+        for(int k = 1; k <= apertureCount; k++){
+            thicknessManager.addThickness(k / 1000.0);
+        }
+
+        ArrayList<Double> apertures = thicknessManager.getThicknesses();
+        Random random = new Random(apertureCount);
+
+        for(int k = 0; k < LOOKUPS; k++){
+            thicknesses[k] = apertures.get(random.nextInt(apertures.size()));
+        }
+    }
+
+    /**
+     * @return  The sum of the aperture codes of LOOKUPS thicknesses
+     */
+    @Benchmark
+    public int getThicknessCode(){
+        int result = 0;
+
+        for(int k = 0; k < LOOKUPS; k++){
+            result += thicknessManager.getThicknessCode(thicknesses[k]);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+package com.innerspec.bench;
+
+import com.innerspec.main.DxfMappedTokenizer;
+import com.innerspec.main.DxfReaderTokenizer;
+import com.innerspec.main.DxfTokenizer;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to tokenize a whole dxf file into group code
+ * pairs, parsing every coordinate value as a double. The memory mapped
+ * tokenizer used for normal files is compared with the reader tokenizer used
+ * for files larger than 2 GB.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TokenizerBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int entityCount;
+
+    private File dxfFile;
+    private ByteBuffer mappedFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        dxfFile = BenchmarkInputs.getDxfFile(entityCount);
+        mappedFile = DxfMappedTokenizer.mapFile(dxfFile.getPath());
+    }
+
+    @Benchmark
+    public long mappedTokenizer() throws IOException {
+        return tokenize(new DxfMappedTokenizer(mappedFile.duplicate()));
+    }
+
+    @Benchmark
+    public long readerTokenizer() throws IOException {
+        return tokenize(new DxfReaderTokenizer(new FileReader(dxfFile)));
+    }
+
+    /**
+     * Reads every pair of a file. Group codes 10 to 59 hold coordinates,
+     * radii and angles, which are parsed the same way the entities do.
+     *
+     * @return  A value depending on every pair, so that none are skipped
+     */
+    private long tokenize(DxfTokenizer scan) throws IOException {
+        long result = 0;
+
+        while(scan.next()){
+            int code = scan.getGroupCode();
+            result += code;
+
+            if(code >= 10 && code < 60){
+                result += Double.doubleToRawLongBits(scan.getDoubleValue());
+            }
+        }
+
+        scan.close();
+        return result;
+    }
+}
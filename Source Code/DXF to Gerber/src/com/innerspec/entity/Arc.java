@@ -1,21 +1,18 @@
 
 package com.innerspec.entity;
 
-import com.innerspec.main.GerberFileManager;
-import com.innerspec.main.LayerManager;
-import com.innerspec.main.Layer;
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.DxfTokenizer;
 import com.innerspec.main.GerberFile;
-import com.innerspec.main.ThicknessManager;
-import java.io.BufferedReader;
+import com.innerspec.main.GerberFormatter;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /** 
  * Handles the processing of single arc entities in a Gerber file. 
  * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
-public class Arc {
+public class Arc extends Entity implements PathSegment {
     private double xPosCenter;
     private double yPosCenter;
     private double xPosStart;
@@ -35,86 +32,135 @@ public class Arc {
     private double xPosDown;
     private double yPosDown; 
     
-    private double xDistanceToCenter;
-    private double yDistanceToCenter;
-    
     private double extrusionDirection = 1; //Controls which way the arc faces
     
-    private boolean isCircularCodeUsed;
-    private String circularCode = "G03";
-    private String toolSelect; 
+    private GerberFormatter toolSelect; 
     private int thicknessCode;  
     private GerberFile currentGerberFile;
-    private Layer currentLayer;
-    private String currentLayerName;
-    
-    private ArrayList<Layer> layers;
-    private ArrayList<GerberFile> gerberFiles;
-    private BufferedReader scan;
     
     /**
-     * Sets up, finds, and executes the output of single arc entity data to 
-     * its Gerber file.
+     * Reads the data of a single arc entity from the DXF file. The arc is
+     * written to its Gerber file later by write().
      * 
-     * @param scan The BufferedReader that has buffered the location at which 
-     *             the entity is found.
+     * @param scan The DxfTokenizer that is positioned at the start of the 
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
      */
-    public Arc(BufferedReader scan){
-        this.scan = scan;
-        
-        gerberFiles = GerberFileManager.getGerberFiles();
-        layers      = LayerManager.getLayers();
-        
-        /** Searches DXF file for data needed to generate the arc */
-        currentLayerName   = fileSearch("  8");
-        xPosCenter         = Double.parseDouble(fileSearch(" 10"));
-        yPosCenter         = Double.parseDouble(fileSearch(" 20"));
-        radius             = Double.parseDouble(fileSearch(" 40"));
-        extrusionDirection = Double.parseDouble(fileSearchExtrusionDirection());
-        startAngle         = Double.parseDouble(fileSearch(" 50"));
-        endAngle           = Double.parseDouble(fileSearch(" 51"));
+    public Arc(DxfTokenizer scan) throws IOException {
+        //Reads the group codes of the entity, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+            
+            switch(scan.getGroupCode()){
+                case 8:
+                    currentLayerName = scan.getValue();
+                    break;
+                case 10:
+                    xPosCenter = scan.getDoubleValue();
+                    break;
+                case 20:
+                    yPosCenter = scan.getDoubleValue();
+                    break;
+                case 40:
+                    radius = scan.getDoubleValue();
+                    break;
+                case 50:
+                    startAngle = scan.getDoubleValue();
+                    break;
+                case 51:
+                    endAngle = scan.getDoubleValue();
+                    break;
+                case 230:
+                    //The extrusion direction is 1.0 unless the code exists
+                    extrusionDirection = scan.getDoubleValue();
+                    break;
+            }
+        }
 
         setPositions();
         setPosStartAndEnd();
+    }
+    
+    /**
+     * Creates an arc from its center and end points, such as an arc segment
+     * of a polyline. The arc is drawn counterclockwise from the start point 
+     * to the end point, which are kept exactly so that the arc joins the
+     * segments next to it.
+     */
+    Arc(double xPosCenter, double yPosCenter, double xPosStart, 
+            double yPosStart, double xPosEnd, double yPosEnd){
+        this.xPosCenter = xPosCenter;
+        this.yPosCenter = yPosCenter;
+        this.radius = Math.hypot(xPosStart - xPosCenter, 
+                yPosStart - yPosCenter);
+        this.startAngle = toDegrees(xPosStart - xPosCenter, 
+                yPosStart - yPosCenter);
+        this.endAngle = toDegrees(xPosEnd - xPosCenter, 
+                yPosEnd - yPosCenter);
         
-        //Finds the layer and gerber file that this entity is on
-        for(Layer l : layers){
-            if(l.getName().equals(currentLayerName)){
-                currentLayer = l;
-                currentGerberFile = gerberFiles.get(currentLayer.getFileNum());
-                break;
-            }
-        }
+        setPositions();
+        setPosStartAndEnd();
         
+        this.xPosStart = xPosStart;
+        this.yPosStart = yPosStart;
+        this.xPosEnd = xPosEnd;
+        this.yPosEnd = yPosEnd;
+    }
+    
+    /**
+     * Outputs the arc to the Gerber file of its layer.
+     */
+    @Override
+    public void write(ConversionEngine engine){
+        writePath(engine, false, false);
+    }
+    
+    /**
+     * Outputs the arc to the Gerber file of its layer. The arc is drawn
+     * counterclockwise (G03) from its start point, or clockwise (G02) from 
+     * its end point if it is reversed. The move to the first point is left
+     * out if the arc continues a path.
+     */
+    @Override
+    public void writePath(ConversionEngine engine, boolean isReversed, 
+            boolean isContinued){
         //Quits if layer does not exist
-        if(currentLayer == null) return;
+        if(currentLayer == null || !currentLayer.isActive()) return;
+        
+        currentGerberFile = currentLayer.getGerberFile();
         
         //Needs start and end positions to be set
         if(isNegative()){            
-            GerberFileManager.addEntityOutOfBounds(2);
+            engine.getGerberFileManager().addEntityOutOfBounds(2);
             return;
         } 
         else if (isZeroSize()){
-            GerberFileManager.addZeroLengthEntity(2);
+            engine.getGerberFileManager().addZeroLengthEntity(2);
             return;
         }
         
-        //Gets the thickness code of the current layer from the manager
-        thicknessCode = 
-                ThicknessManager.getThicknessCode(currentLayer.getThickness());
+        //Gets the thickness code of the current layer
+        thicknessCode = currentLayer.getThicknessCode();
         
         //Tool select uses the thickness code to get the tool command
         toolSelect = getToolSelect();
         if (toolSelect != null) currentGerberFile.addOutputln(toolSelect);
         
-        currentGerberFile.addOutputln(getStartPos());
+        if(isContinued == false){
+            currentGerberFile.addOutputln(currentGerberFile.getFormatter()
+                    .formatCommand("G01", 
+                            isReversed ? getEndX() : getStartX(), 
+                            isReversed ? getEndY() : getStartY(), "D02*", 6));
+        }
         
-        addArcPiesOutput();
-
-        if(isCircularCodeUsed == false){
-            currentGerberFile.addOutputln("G03" + getEndPos());
-        } else {
-            currentGerberFile.addOutputln(getEndPos());
+        if(engine.isMultiQuadrant()){
+            addArcOutput(isReversed);
+        }
+        else {
+            addArcPiesOutput(isReversed);
         }
         
         currentGerberFile.addEntity();
@@ -166,43 +212,168 @@ public class Arc {
                         * Math.cos(endAngle/360 * (2 * Math.PI));
         yPosEnd   = yPosCenter + radius 
                         * Math.sin(endAngle/360 * (2 * Math.PI));
+        
+        //The arc is drawn counterclockwise, so it ends after it starts
+        if(endAngle < startAngle){
+            endAngle = endAngle + 360;
+        }
     }
 
     /**
-     * Adds 90 degree position intervals to the current Gerber file. Circular
-     * arcs are made every 90 degrees of the whole angle
+     * Adds the arc to the current Gerber file as a single draw in multi 
+     * quadrant mode (G75). The I and J values are the signed distances from
+     * the point the plotter is at to the center. That point is the written 
+     * first point of the arc, or the end of the segment before it if the 
+     * arc continues a path whose ends only touch within a tolerance.
+     * 
+     * The plotter takes the sweep from the written points, which can differ
+     * from the sweep of the arc once its ends are rounded to Gerber units. A
+     * draw that ends where it starts is a whole circle in G75 mode, and the
+     * end of a very short arc can be rounded onto or behind its start, which
+     * also sweeps almost a whole circle. An arc of less than a half circle 
+     * that would be written like this, or whose chord is shorter than a 
+     * Gerber unit, is drawn as a line instead. An arc of more than a half 
+     * circle whose end is rounded past its start is drawn as a whole circle
+     * followed by a line to the end.
+     * 
+     * @param isReversed    True to draw the arc clockwise from its end point
      */
-    private void addArcPiesOutput(){
-        if(endAngle < startAngle){
-            endAngle = endAngle + 360;
+    private void addArcOutput(boolean isReversed){
+        GerberFormatter formatter = currentGerberFile.getFormatter();
+        String code = isReversed ? "G02" : "G03";
+        int xFirst = formatter.getLastX();
+        int yFirst = formatter.getLastY();
+        int xLast = isReversed ? getStartX() : getEndX();
+        int yLast = isReversed ? getStartY() : getEndY();
+        int xCenter = toSignedGerberUnits(xPosCenter);
+        int yCenter = toSignedGerberUnits(yPosCenter);
+        
+        double writtenSweep = Math.toDegrees(
+                Math.atan2(yLast - yCenter, xLast - xCenter) 
+                - Math.atan2(yFirst - yCenter, xFirst - xCenter));
+        if(isReversed){
+            writtenSweep = -writtenSweep;
+        }
+        if(writtenSweep < 0){
+            writtenSweep += 360;
         }
+        boolean isClosed = xFirst == xLast && yFirst == yLast;
+        double chord = 2 * radius 
+                * Math.sin(Math.toRadians(getSweepAngle()) / 2);
+        
+        if(getSweepAngle() < 180 && (isClosed || chord < 0.00001 
+                || writtenSweep == 0 || writtenSweep >= 180)){
+            currentGerberFile.addOutputln(formatter.formatCommand("G01", 
+                    xLast, yLast, "D01*", 6));
+            return;
+        }
+        if(getSweepAngle() >= 180 && !isClosed && writtenSweep < 180){
+            currentGerberFile.addOutputln(formatter.formatCommand(code, 
+                    xFirst, yFirst, xCenter - xFirst, yCenter - yFirst, 
+                    "D01*", 6));
+            currentGerberFile.addOutputln(formatter.formatCommand("G01", 
+                    xLast, yLast, "D01*", 6));
+            return;
+        }
+        
+        currentGerberFile.addOutputln(formatter.formatCommand(code, 
+                xLast, yLast, xCenter - xFirst, yCenter - yFirst, "D01*", 6));
+    }
+    
+    /**
+     * Adds the draws of the arc to the current Gerber file. Gerber format 
+     * requires that position intervals must be written every 90 degrees, 
+     * even though the plotter may not stop, so a draw ends at every right, 
+     * up, left and down point the arc passes and at the last point of the 
+     * arc.
+     * 
+     * The I and J values of each draw are the distances from the point the 
+     * draw starts at to the center. A point that is rounded onto the point
+     * the plotter is at, such as the right point of an arc that starts a 
+     * hair below it, adds no draw.
+     * 
+     * @param isReversed    True to draw the arc clockwise from its end point
+     */
+    private void addArcPiesOutput(boolean isReversed){
+        String circularCode = isReversed ? "G02" : "G03";
+        double firstAngle = isReversed ? endAngle : startAngle;
+        
+        double xDistanceToCenter 
+                = radius * Math.cos(firstAngle/360 * (2 * Math.PI));
+        double yDistanceToCenter 
+                = radius * Math.sin(firstAngle/360 * (2 * Math.PI));
+        
+        //Finds the first and last multiple of 90 degrees the arc passes
+        int firstAngleCrossed = -1;
+        int lastAngleCrossed = -1;
         
         for(int k = 0; k <= 720; k += 90){
             if(((startAngle - k) < 0) && ((k - endAngle) <= 0)){
-                isCircularCodeUsed = true;
-                
-                if(k == 0)
-                    currentGerberFile.addOutputln(circularCode + getRightPos());
-                if(k == 90)
-                    currentGerberFile.addOutputln(circularCode + getUpPos());
-                if(k == 180)
-                    currentGerberFile.addOutputln(circularCode + getLeftPos());
-                if(k == 270)
-                    currentGerberFile.addOutputln(circularCode + getDownPos());
-                if(k == 360)
-                    currentGerberFile.addOutputln(circularCode + getRightPos());
-                if(k == 450)
-                    currentGerberFile.addOutputln(circularCode + getUpPos());
-                if(k == 540)
-                    currentGerberFile.addOutputln(circularCode + getLeftPos());
-                if(k == 630)
-                    currentGerberFile.addOutputln(circularCode + getDownPos());
-                if(k == 720)
-                    currentGerberFile.addOutputln(circularCode + getRightPos());
-                
+                if(firstAngleCrossed < 0) firstAngleCrossed = k;
+                lastAngleCrossed = k;
+            }
+        }
+        
+        int pointCount = firstAngleCrossed < 0 ? 0 
+                : (lastAngleCrossed - firstAngleCrossed) / 90 + 1;
+        
+        for(int n = 0; n < pointCount; n++){
+            int k = isReversed ? lastAngleCrossed - n * 90 
+                    : firstAngleCrossed + n * 90;
+            double x;
+            double y;
+            
+            if(k % 360 == 0){
+                x = xPosRight;
+                y = yPosRight;
+            }
+            else if(k % 360 == 90){
+                x = xPosUp;
+                y = yPosUp;
+            }
+            else if(k % 360 == 180){
+                x = xPosLeft;
+                y = yPosLeft;
+            }
+            else {
+                x = xPosDown;
+                y = yPosDown;
+            }
+            
+            if(isAtPen(x, y) == false){
+                currentGerberFile.addOutputln(getDraw(circularCode, x, y, 
+                        xDistanceToCenter, yDistanceToCenter));
                 circularCode = "";
             }
+            
+            //The right and left points are level with the center
+            if(k % 180 == 0){
+                xDistanceToCenter = radius;
+                yDistanceToCenter = 0.0;
+            }
+            else {
+                xDistanceToCenter = 0.0;
+                yDistanceToCenter = radius;
+            }
         }
+        
+        if(isReversed && isAtPen(xPosStart, yPosStart) == false){
+            currentGerberFile.addOutputln(getDraw(circularCode, xPosStart, 
+                    yPosStart, xDistanceToCenter, yDistanceToCenter));
+        }
+        else if(isReversed == false && isAtPen(xPosEnd, yPosEnd) == false){
+            currentGerberFile.addOutputln(getDraw(circularCode, xPosEnd, 
+                    yPosEnd, xDistanceToCenter, yDistanceToCenter));
+        }
+    }
+    
+    /**
+     * Checks if a point of the arc is written at the point the plotter is at.
+     */
+    private boolean isAtPen(double x, double y){
+        GerberFormatter formatter = currentGerberFile.getFormatter();
+        return toGerberUnits(x) == formatter.getLastX() 
+                && toGerberUnits(y) == formatter.getLastY();
     }
     
     /**
@@ -211,10 +382,11 @@ public class Arc {
      * change then the aperture heading is referenced to find the number of the
      * tool with the correct thickness.
      * 
-     * @return A string with the thickness code that can be output to the file,
-     *         null if the thickness code is already active.
+     * @return The formatter holding the tool select command that can be 
+     *         output to the file, null if the thickness code is already 
+     *         active.
      */
-    private String getToolSelect(){
+    private GerberFormatter getToolSelect(){
         //Prints tool select
         if(currentGerberFile.getOldThicknessCode() != 0 
                 && currentGerberFile.getOldThicknessCode() == thicknessCode){
@@ -222,200 +394,253 @@ public class Arc {
         }
         else {
             currentGerberFile.setOldThicknessCode(thicknessCode);
-            return "G54D" + thicknessCode + "*";
+            return currentGerberFile.getFormatter()
+                    .formatToolSelect(thicknessCode);
         }
     }
     
     /**
-     * Returns the start position of the arc.
+     * Returns a circular draw to a point of the arc.
      * 
-     * Additionally, it sets the x and y distance to the center
+     * @param prefix    The circular code written before the position, or 
+     *                  empty
+     * @param x         The x position of the point
+     * @param y         The y position of the point
+     * @param i         The x distance to the center from the previous point
+     * @param j         The y distance to the center from the previous point
      */
-    private String getStartPos(){
-        String output = "G01X" + padSixPlaces(xPosStart) 
-                           + "Y" + padSixPlaces(yPosStart) + "D02*";
-        
-        xDistanceToCenter = radius * Math.cos(startAngle/360 * (2 * Math.PI));
-        yDistanceToCenter = radius * Math.sin(startAngle/360 * (2 * Math.PI));
-        return output;
+    private GerberFormatter getDraw(String prefix, double x, double y, 
+            double i, double j){
+        return currentGerberFile.getFormatter().formatCommand(prefix, 
+                toGerberUnits(x), toGerberUnits(y), toGerberUnits(i), 
+                toGerberUnits(j), "D01*", 6);
+    }
+    
+    @Override
+    public int getStartX(){
+        return toGerberUnits(xPosStart);
+    }
+    
+    @Override
+    public int getStartY(){
+        return toGerberUnits(yPosStart);
+    }
+    
+    @Override
+    public int getEndX(){
+        return toGerberUnits(xPosEnd);
+    }
+    
+    @Override
+    public int getEndY(){
+        return toGerberUnits(yPosEnd);
     }
     
     /**
-     * Returns the right position of the arc. Gerber format requires that
-     * position intervals must be written every 90 degrees, even though the 
-     * plotter may not stop.
-     * 
-     * Additionally, it sets the x and y distance to the center.
+     * Returns the x position of the center in Gerber units.
      */
-    private String getRightPos(){
-        String output = "X" + padSixPlaces(xPosRight) 
-                      + "Y" + padSixPlaces(yPosRight) 
-                      + "I" + padSixPlaces(xDistanceToCenter) 
-                      + "J" + padSixPlaces(yDistanceToCenter) + "D01*";
-        
-        xDistanceToCenter = radius;
-        yDistanceToCenter = 0.0;
-        return output;
+    public int getCenterX(){
+        return toGerberUnits(xPosCenter);
+    }
+    
+    public int getCenterY(){
+        return toGerberUnits(yPosCenter);
     }
     
     /**
-     * Returns the up position of the arc. Gerber format requires that
-     * position intervals must be written every 90 degrees, even though the 
-     * plotter may not stop.
-     * 
-     * Additionally, it sets the x and y distance to the center.
+     * Returns the angle in degrees the arc turns through counterclockwise 
+     * from its start point to its end point.
      */
-    private String getUpPos(){
-        String output = "X" + padSixPlaces(xPosUp) 
-                      + "Y" + padSixPlaces(yPosUp) 
-                      + "I" + padSixPlaces(xDistanceToCenter) 
-                      + "J" + padSixPlaces(yDistanceToCenter) + "D01*";
-        
-        xDistanceToCenter = 0.0;
-        yDistanceToCenter = radius;
-        return output;
+    public double getSweepAngle(){
+        return endAngle - startAngle;
+    }
+    
+    @Override
+    public boolean isWritable(){
+        return currentLayer != null && currentLayer.isActive() 
+                && isNegative() == false && isZeroSize() == false;
+    }
+    
+    @Override
+    public int getApertureCode(ConversionEngine engine){
+        return currentLayer.getThicknessCode();
     }
     
     /**
-     * Returns the left position of the arc. Gerber format requires that
-     * position intervals must be written every 90 degrees, even though the 
-     * plotter may not stop.
-     * 
-     * Additionally, it sets the x and y distance to the center.
+     * Returns the smallest x position of the arc, which is the left point if
+     * the arc passes it.
      */
-    private String getLeftPos(){
-        String output = "X" + padSixPlaces(xPosLeft) 
-                      + "Y" + padSixPlaces(yPosLeft) 
-                      + "I" + padSixPlaces(xDistanceToCenter) 
-                      + "J" + padSixPlaces(yDistanceToCenter) + "D01*";
+    @Override
+    public double getMinX(){
+        double minX = Math.min(xPosStart, xPosEnd);
+        return isPassing(180) ? Math.min(minX, xPosLeft) : minX;
+    }
+    
+    /**
+     * Returns the smallest y position of the arc, which is the down point if
+     * the arc passes it.
+     */
+    @Override
+    public double getMinY(){
+        double minY = Math.min(yPosStart, yPosEnd);
+        return isPassing(270) ? Math.min(minY, yPosDown) : minY;
+    }
+    
+    @Override
+    public void translate(double dx, double dy){
+        xPosCenter += dx;
+        yPosCenter += dy;
+        xPosStart += dx;
+        yPosStart += dy;
+        xPosEnd += dx;
+        yPosEnd += dy;
+        xPosRight += dx;
+        yPosRight += dy;
+        xPosUp += dx;
+        yPosUp += dy;
+        xPosLeft += dx;
+        yPosLeft += dy;
+        xPosDown += dx;
+        yPosDown += dy;
+    }
+    
+    /**
+     * Returns a copy of the arc placed by a transformation. An arc that is
+     * mirrored is drawn the other way around, so the copy starts at the
+     * placed end point to stay counterclockwise.
+     */
+    @Override
+    public Entity transform(Transform transform, CurveFitter fitter){
+        Entity entity;
+        
+        if(transform.isUniform() == false){
+            Polyline polyline = getTransformedCurve(transform, fitter, 
+                    xPosCenter, yPosCenter, radius, startAngle, endAngle);
+            polyline.entityType = 2;
+            entity = polyline;
+        }
+        else if(transform.isMirrored()){
+            entity = new Arc(transform.getX(xPosCenter, yPosCenter), 
+                    transform.getY(xPosCenter, yPosCenter), 
+                    transform.getX(xPosEnd, yPosEnd), 
+                    transform.getY(xPosEnd, yPosEnd), 
+                    transform.getX(xPosStart, yPosStart), 
+                    transform.getY(xPosStart, yPosStart));
+        }
+        else {
+            entity = new Arc(transform.getX(xPosCenter, yPosCenter), 
+                    transform.getY(xPosCenter, yPosCenter), 
+                    transform.getX(xPosStart, yPosStart), 
+                    transform.getY(xPosStart, yPosStart), 
+                    transform.getX(xPosEnd, yPosEnd), 
+                    transform.getY(xPosEnd, yPosEnd));
+        }
         
-        xDistanceToCenter = radius;
-        yDistanceToCenter = 0.0;
-        return output;
+        entity.currentLayerName = currentLayerName;
+        return entity;
     }
     
     /**
-     * Returns the down position of the arc. Gerber format requires that
-     * position intervals must be written every 90 degrees, even though the 
-     * plotter may not stop.
+     * Returns the lines and arcs that follow a circle or arc placed by a 
+     * transformation that does not scale all directions by the same amount,
+     * which turns the curve into part of an ellipse. Gerber files cannot 
+     * draw ellipses, so the placed curve is fitted like an ELLIPSE entity,
+     * within the curve tolerance of the conversion. A mirrored curve goes 
+     * around the other way, so like a mirrored arc it starts at the placed
+     * end point.
      * 
-     * Additionally, it sets the x and y distance to the center.
+     * @param fitter        Fits the ellipse, or returns the pieces of an 
+     *                      earlier ellipse of the same shape
+     * @param startAngle    The angle the curve starts at, in degrees
+     * @param endAngle      The angle the curve ends at counterclockwise, in
+     *                      degrees and larger than the start angle
+     * @return              A polyline of the lines and arcs between the 
+     *                      placed ends of the curve
      */
-    private String getDownPos(){
-        String output = "X" + padSixPlaces(xPosDown) 
-                      + "Y" + padSixPlaces(yPosDown) 
-                      + "I" + padSixPlaces(xDistanceToCenter)
-                      + "J" + padSixPlaces(yDistanceToCenter) + "D01*";
+    static Polyline getTransformedCurve(Transform transform, 
+            CurveFitter fitter, double xCenter, double yCenter, double radius,
+            double startAngle, double endAngle){
+        //The placed radii along x and y, two conjugate radii of the ellipse
+        Transform linear = transform.getLinearPart();
+        double xU = linear.getX(radius, 0);
+        double yU = linear.getY(radius, 0);
+        double xV = linear.getX(0, radius);
+        double yV = linear.getY(0, radius);
+        
+        //The angle of the curve at which the ellipse is farthest from its
+        //center, the end of the major axis
+        double majorAngle = Math.atan2(2 * (xU * xV + yU * yV), 
+                xU * xU + yU * yU - xV * xV - yV * yV) / 2;
+        double cos = Math.cos(majorAngle);
+        double sin = Math.sin(majorAngle);
+        double xMajor = xU * cos + xV * sin;
+        double yMajor = yU * cos + yV * sin;
+        double ratio = Math.hypot(xV * cos - xU * sin, yV * cos - yU * sin) 
+                / Math.hypot(xMajor, yMajor);
+        
+        double start = Math.toRadians(startAngle) - majorAngle;
+        double end = Math.toRadians(endAngle) - majorAngle;
+        Ellipse ellipse = transform.isMirrored()
+                ? new Ellipse(transform.getX(xCenter, yCenter), 
+                        transform.getY(xCenter, yCenter), xMajor, yMajor, 
+                        ratio, -end, -start)
+                : new Ellipse(transform.getX(xCenter, yCenter), 
+                        transform.getY(xCenter, yCenter), xMajor, yMajor, 
+                        ratio, start, end);
+        
+        if(ellipse.isValid() == false){
+            //A transformation that flattens the curve leaves a line
+            double first = Math.toRadians(transform.isMirrored() 
+                    ? endAngle : startAngle);
+            double last = Math.toRadians(transform.isMirrored() 
+                    ? startAngle : endAngle);
+            Entity line = new Line(xCenter + radius * Math.cos(first), 
+                    yCenter + radius * Math.sin(first), 
+                    xCenter + radius * Math.cos(last), 
+                    yCenter + radius * Math.sin(last));
+            return new Polyline(new Entity[]{line.transform(transform, 
+                    fitter)}, new boolean[1]);
+        }
         
-        xDistanceToCenter = 0.0;
-        yDistanceToCenter = radius;
-        return output;
+        return ellipse.getPolyline(fitter);
     }
     
     /**
-     * Returns the end position of the arc.
+     * Checks if the arc passes an angle on its way from the start angle to
+     * the end angle.
+     * 
+     * @param angle     The angle in degrees, from 0 to 360
      */
-    private String getEndPos(){
-        String output = "X" + padSixPlaces(xPosEnd)
-                      + "Y" + padSixPlaces(yPosEnd) 
-                      + "I" + padSixPlaces(xDistanceToCenter) 
-                      + "J" + padSixPlaces(yDistanceToCenter) + "D01*";
-        
-        return output;
+    private boolean isPassing(double angle){
+        //The first time the angle is reached after the start angle
+        double nextAngle = angle + 360 * Math.ceil((startAngle - angle) / 360);
+        return nextAngle <= endAngle;
     }
     
     /** 
-     * Rounds and formats a value to six integer places. If the value does not
-     * take up all six places, then zeros are added onto the front.
+     * Converts a value to Gerber units (five decimal places). The formatter
+     * pads the result to six integer places by adding zeros onto the front.
      * 
-     * @param input The number to be padded
-     * @return 
+     * @param input The number to be converted
+     * @return The absolute value of the input in Gerber units
      */
-    private String padSixPlaces(double input){
-        int x = (int)(Math.abs(input) * 100000);
-        int y = (int)Math.round(x);
-        return String.format("%06d", y);
+    private int toGerberUnits(double input){
+        return (int)(Math.abs(input) * 100000);
     }
     
     /**
-     * Searches the DXF file for a Search Code. Once this code is reached the
-     * next line is returned unless another entity or the end of the section 
-     * is reached. 
-     * 
-     * @param searchCode The DXF code that signals an element of the DXF file or
-     *                   entity. The code index can be found in many places such
-     *                   as http://www.autodesk.com/techpubs/autocad/acad2000/
-     *                   dxf/group_codes_in_numerical_order_dxf_01.htm
-     * 
-     * @return The line proceeding the search code, or null if the code is not
-     *         found.
+     * Returns the angle of a point around the center, from 0 to 360 degrees.
      */
-    private String fileSearch(String searchCode){
-        //Search for searchCode
-        String readLine;
-        
-        try {
-            while((readLine = scan.readLine()) != null){     
-                if(readLine.equals(searchCode)){
-                    return scan.readLine();
-                }
-                else if(readLine.equals("ENDSEC") || readLine.equals("  0")){
-                    break;
-                }
-            }
-        } catch(IOException e){
-            e.printStackTrace();
-        }
-        
-        return null;
+    private static double toDegrees(double x, double y){
+        double angle = Math.toDegrees(Math.atan2(y, x));
+        return angle < 0 ? angle + 360 : angle;
     }
     
     /** 
-     * Searches the file for a Search Code until an Immediate Code or Secondary
-     * Code is reached. The immediate code is only used to check the line
-     * directly after the current line, while the secondary code is checked in
-     * all subsequent lines.
-     * 
-     * A special method is needed for the extrusion direction in order to
-     * account for different DXF versions and the case that a extrusion
-     * direction might not exist.
-     * 
-     * This function searches for the "230" code which signals an extrusion
-     * direction. Otherwise, if the code is not found then the " 50" (start 
-     * angle) or "100" codes will be reached and the searching stopped.
-     * 
-     * @return The extrusion direction of the arc, either 1.0 or -1.0
+     * Rounds a distance to Gerber units, keeping its sign.
      */
-    private String fileSearchExtrusionDirection(){
-        
-        try {
-            //Search for searchCode
-            String readLine;
-            
-            //Checks if immediate code is equal to the next line
-            //The reader is reset to its previous line afterwards
-            scan.mark(50);
-            
-            if(scan.readLine().equals(" 50")){
-                scan.reset();                
-                return "1.0";
-            }
-            scan.reset();
-            
-            while((readLine = scan.readLine()) != null){
-                if(readLine.equals("230")){
-                    return scan.readLine();
-                }
-                else if(readLine.equals("100") 
-                        || readLine.equals("ENDSEC") 
-                        || readLine.equals("  0")){
-                    break;
-                }
-            }
-        } catch(IOException e){
-            e.printStackTrace();
-        }
-        return "1.0";
+    private int toSignedGerberUnits(double input){
+        return (int)Math.round(input * 100000);
     }
     
     /** 
@@ -434,11 +659,15 @@ public class Arc {
      * prevent users from accidentally missing an invisible entity, that
      * plotters might handle differently
      * 
+     * The ends are compared as they are written, so an arc of less than a 
+     * half circle whose ends are written at the same point has zero size.
+     * A longer arc whose ends meet is drawn as a whole circle.
+     * 
      * @return True if the entity has a zero size, false if the entity has
      *         valid dimensions
      */
     private boolean isZeroSize(){
-        return (xPosStart - xPosEnd == 0 && yPosStart - yPosEnd == 0) 
-                || (radius <= 0);
+        return (getStartX() == getEndX() && getStartY() == getEndY()
+                && getSweepAngle() < 180) || (radius <= 0);
     }
 }
@@ -0,0 +1,359 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.DxfTokenizer;
+import com.innerspec.main.Layer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds a block of the BLOCKS section of a DXF file, a group of entities that
+ * is placed in the drawing by INSERT entities.
+ *
+ * Once all blocks are read, each block is resolved: the inserts of other
+ * blocks inside it are replaced by placed copies of their entities, and all
+ * entities are moved so that the base point of the block is at the origin.
+ * The resolved entities are grouped by layer. Entities on layer "0" take the
+ * layer of the insert that places them.
+ *
+ * The entities a block writes to one layer are prepared for writing once for
+ * every rotation and scale the block is inserted with (see getFragment()),
+ * and every insert of the block writes the same prepared entities moved to
+ * its insertion point. A via placed 20,000 times is read, resolved and
+ * prepared once.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Block {
+    /** The layer of the entities that take the layer of their insert. */
+    public static final String INHERITED_LAYER = "0";
+
+    private String name;
+    private double xPosBase;
+    private double yPosBase;
+
+    /** The entities and inserts of the block, until it is resolved. */
+    private ArrayList<Entity> entities = new ArrayList<Entity>();
+    private ArrayList<Insert> inserts = new ArrayList<Insert>();
+
+    /** The names of the unsupported entities of the block and its inserts. */
+    private ArrayList<String> otherEntityNames = new ArrayList<String>();
+
+    /** The resolved entities by layer name, null until resolved. */
+    private LinkedHashMap<String, ArrayList<Entity>> layerEntities;
+
+    /** True while the inserts of the block are resolved. */
+    private boolean isResolving = false;
+
+    /**
+     * Fits the ellipses that the circles and arcs of the block turn into
+     * when they are inserted with different x and y scales.
+     */
+    private CurveFitter curveFitter;
+
+    /** The prepared entities by getFragmentKey(). */
+    private HashMap<String, Fragment> fragments
+            = new HashMap<String, Fragment>();
+
+    /**
+     * Reads the name and base point of a block from the DXF file. The
+     * entities of the block are added afterwards with addEntity() and
+     * addInsert().
+     *
+     * @param scan The DxfTokenizer that is positioned at the start of the
+     *             BLOCK entity. It is left at the "0" code of the first
+     *             entity of the block.
+     * @param curveFitter   Fits the ellipses the circles and arcs of the
+     *                      block turn into
+     * @throws IOException Error reading file.
+     */
+    public Block(DxfTokenizer scan, CurveFitter curveFitter)
+            throws IOException {
+        this.curveFitter = curveFitter;
+
+        //Reads the group codes of the block, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            switch(scan.getGroupCode()){
+                case 2:
+                    name = scan.getValue();
+                    break;
+                case 10:
+                    xPosBase = scan.getDoubleValue();
+                    break;
+                case 20:
+                    yPosBase = scan.getDoubleValue();
+                    break;
+            }
+        }
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public void addEntity(Entity entity){
+        entities.add(entity);
+    }
+
+    public void addInsert(Insert insert){
+        inserts.add(insert);
+    }
+
+    /**
+     * Counts an entity of the block that is not supported by the converter.
+     */
+    public void addOtherEntity(String name){
+        otherEntityNames.add(name);
+    }
+
+    /**
+     * Returns the names of the unsupported entities of the block, including
+     * the blocks inserted in it and the inserts of blocks that do not exist.
+     * Valid once the block is resolved.
+     */
+    public ArrayList<String> getOtherEntityNames(){
+        return otherEntityNames;
+    }
+
+    /**
+     * Returns the names of the layers the block draws on, including
+     * INHERITED_LAYER. Valid once the block is resolved.
+     */
+    public Set<String> getLayerNames(){
+        return layerEntities.keySet();
+    }
+
+    /**
+     * Replaces the inserts of the block by placed copies of the entities of
+     * their blocks, which are resolved first. An insert of a block that
+     * inserts the block itself, directly or through other blocks, is counted
+     * as an unsupported INSERT.
+     *
+     * All blocks are resolved before the ENTITIES section is parsed, so that
+     * the parsing threads only read them.
+     *
+     * @param blocks    All blocks of the DXF file by name
+     */
+    public void resolve(Map<String, Block> blocks){
+        if(layerEntities != null || isResolving){
+            return;
+        }
+
+        isResolving = true;
+        layerEntities = new LinkedHashMap<String, ArrayList<Entity>>();
+        Transform toBase = Transform.getTranslation(-xPosBase, -yPosBase);
+
+        for(Entity entity : entities){
+            entity.translate(-xPosBase, -yPosBase);
+            addResolvedEntity(entity.getLayerName(), entity);
+        }
+
+        for(Insert insert : inserts){
+            Block block = blocks.get(insert.getBlockName());
+
+            if(block == null || block.isResolving){
+                otherEntityNames.add("INSERT");
+                continue;
+            }
+
+            block.resolve(blocks);
+            otherEntityNames.addAll(block.otherEntityNames);
+
+            for(int copy = 0; copy < insert.getCopyCount(); copy++){
+                Transform transform = insert.getTransform(copy).then(toBase);
+
+                for(Map.Entry<String, ArrayList<Entity>> layer
+                        : block.layerEntities.entrySet()){
+                    String layerName = layer.getKey();
+
+                    if(layerName.equals(INHERITED_LAYER)){
+                        layerName = insert.getLayerName();
+                    }
+
+                    for(Entity entity : layer.getValue()){
+                        addResolvedEntity(layerName,
+                                entity.transform(transform, curveFitter));
+                    }
+                }
+            }
+        }
+
+        //Only the resolved entities are needed from now on
+        entities = null;
+        inserts = null;
+        isResolving = false;
+    }
+
+    private void addResolvedEntity(String layerName, Entity entity){
+        if(layerName == null){
+            layerName = INHERITED_LAYER;
+        }
+
+        ArrayList<Entity> layer = layerEntities.get(layerName);
+
+        if(layer == null){
+            layer = new ArrayList<Entity>();
+            layerEntities.put(layerName, layer);
+        }
+
+        layer.add(entity);
+    }
+
+    /**
+     * Returns the entities the block draws on a layer, placed with the
+     * rotation and scale of a transformation and ready to be written to the
+     * layer. The entities are prepared the first time they are needed and
+     * shared by all inserts with the same rotation and scale afterwards, 
+     * whose insertion points are the same fraction of a Gerber unit away 
+     * from a whole unit. That is all of them for insertion points given to 
+     * five decimal places.
+     *
+     * Called while the parsed entities are added to the entity store, which
+     * happens on a single thread.
+     *
+     * @param blockLayerName    The name of the layer in the block, which is
+     *                          INHERITED_LAYER for the entities that take the
+     *                          layer of their insert
+     * @param transform         The transformation of the insert
+     * @param layer             The layer the entities are written to
+     */
+    Fragment getFragment(String blockLayerName, Transform transform,
+            Layer layer){
+        double xFraction = Fragment.getFraction(transform.getXOffset());
+        double yFraction = Fragment.getFraction(transform.getYOffset());
+        String key = blockLayerName + '\n' + layer.getName() + '\n'
+                + transform.getLinearKey() + '\n' + xFraction + ','
+                + yFraction;
+        Fragment fragment = fragments.get(key);
+
+        if(fragment == null){
+            fragment = new Fragment(layerEntities.get(blockLayerName),
+                    transform.getLinearPart(), curveFitter, layer, xFraction,
+                    yFraction);
+            fragments.put(key, fragment);
+        }
+
+        return fragment;
+    }
+
+    /**
+     * The entities a block draws on a layer, placed with the rotation and
+     * scale of an insert. The entities are moved so that they start just
+     * past the origin: every position written for them is positive, and an
+     * insert writes them by moving all positions by the same whole number
+     * of Gerber units.
+     *
+     * The entities are moved by whole units plus the fraction of a unit the
+     * insertion point is away from a whole unit, so every position they 
+     * write is the position they would write if they were drawn at their 
+     * place in the drawing. Rounding the positions inside the block and the
+     * insertion point separately would put the inserted entities one unit 
+     * off, and their ends would not meet the ends of the entities around 
+     * them.
+     */
+    static class Fragment {
+        /** A Gerber unit in inches. */
+        private static final double UNIT = 0.00001;
+
+        /**
+         * The fractions of a unit are kept to a thousandth of a unit, so that
+         * insertion points that rounding errors moved just off a whole unit 
+         * still share a fragment.
+         */
+        private static final double FRACTION_PRECISION = 1000;
+
+        /**
+         * A thousandth of a unit added to every position, so that a position
+         * on a whole unit is not truncated to the unit below by the rounding
+         * errors of the transformation.
+         */
+        private static final double NUDGE = 0.001;
+
+        private Entity[] entities;
+
+        /**
+         * The smallest position drawn by the entities, relative to the
+         * insertion point, before they were moved.
+         */
+        private double minX = Double.POSITIVE_INFINITY;
+        private double minY = Double.POSITIVE_INFINITY;
+
+        /** The whole units the entities were moved by. */
+        private int xMargin;
+        private int yMargin;
+
+        /**
+         * The fraction of a unit the insertion points are away from a whole
+         * unit, between -0.5 and 0.5.
+         */
+        private double xFraction;
+        private double yFraction;
+
+        private Fragment(ArrayList<Entity> blockEntities, Transform transform,
+                CurveFitter curveFitter, Layer layer, double xFraction,
+                double yFraction){
+            this.xFraction = xFraction;
+            this.yFraction = yFraction;
+            entities = new Entity[blockEntities.size()];
+
+            for(int k = 0; k < entities.length; k++){
+                entities[k] = blockEntities.get(k).transform(transform,
+                        curveFitter);
+                entities[k].setLayer(layer);
+                minX = Math.min(minX, entities[k].getMinX());
+                minY = Math.min(minY, entities[k].getMinY());
+            }
+
+            //Keeps every position at least half a unit from the origin
+            xMargin = (int)Math.ceil(-minX / UNIT) + 1;
+            yMargin = (int)Math.ceil(-minY / UNIT) + 1;
+
+            for(Entity entity : entities){
+                entity.translate((xMargin + xFraction + NUDGE) * UNIT,
+                        (yMargin + yFraction + NUDGE) * UNIT);
+            }
+        }
+
+        /**
+         * Returns the fraction of a Gerber unit a position in inches is away
+         * from the nearest whole unit.
+         */
+        static double getFraction(double position){
+            double units = position / UNIT;
+            return Math.round((units - Math.round(units)) * FRACTION_PRECISION)
+                    / FRACTION_PRECISION;
+        }
+
+        Entity[] getEntities(){
+            return entities;
+        }
+
+        double getMinX(){
+            return minX;
+        }
+
+        double getMinY(){
+            return minY;
+        }
+
+        /**
+         * Returns the x position in Gerber units the entities are written
+         * relative to, for an insertion point at a position in inches.
+         */
+        int getXPosition(double xInsertion){
+            return (int)Math.round(xInsertion / UNIT - xFraction) - xMargin;
+        }
+
+        int getYPosition(double yInsertion){
+            return (int)Math.round(yInsertion / UNIT - yFraction) - yMargin;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.GerberFormatter;
+import com.innerspec.main.Layer;
+
+/**
+ * Handles the processing of a copy of a block placed by an INSERT entity, for
+ * one of the layers the block draws on.
+ *
+ * The reference does not hold entities of its own. Once its layer is set it
+ * gets the prepared entities of its block (see Block.getFragment()), which
+ * are shared with all references of the block that have the same rotation,
+ * scale and layer. They are written with the formatter of the Gerber file
+ * offset to the position of the reference.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class BlockReference extends Entity {
+    private Block block;
+
+    /** The name of the layer of the entities in the block. */
+    private String blockLayerName;
+
+    private Transform transform;
+
+    /** The prepared entities of the block, null until the layer is set. */
+    private Block.Fragment fragment;
+
+    /** The distance the reference was moved after it was placed. */
+    private double xShift = 0;
+    private double yShift = 0;
+
+    /**
+     * @param block             The block, which has been resolved
+     * @param blockLayerName    The name of a layer of the block, see
+     *                          Block.getLayerNames()
+     * @param layerName         The name of the layer the entities are drawn
+     *                          on, which is the layer of the insert for
+     *                          Block.INHERITED_LAYER
+     * @param transform         The transformation of the copy
+     */
+    public BlockReference(Block block, String blockLayerName, String layerName,
+            Transform transform){
+        this.block = block;
+        this.blockLayerName = blockLayerName;
+        this.currentLayerName = layerName;
+        this.transform = transform;
+    }
+
+    /**
+     * Sets the layer of the reference and gets the prepared entities of its
+     * block for the layer.
+     */
+    @Override
+    public void setLayer(Layer layer){
+        super.setLayer(layer);
+
+        if(layer != null){
+            fragment = block.getFragment(blockLayerName, 
+                    transform.then(Transform.getTranslation(xShift, yShift)),
+                    layer);
+        }
+    }
+
+    /**
+     * Returns the prepared entities of the block, whose positions are
+     * relative to getXPosition() and getYPosition(). Empty until the layer
+     * is set.
+     */
+    public Entity[] getEntities(){
+        return fragment != null ? fragment.getEntities() : new Entity[0];
+    }
+
+    /**
+     * Outputs the entities of the block to the Gerber file of the layer. The
+     * positions of the entities are offset by the formatter, so they are
+     * written without being copied or moved.
+     */
+    @Override
+    public void write(ConversionEngine engine){
+        //Quits if layer does not exist
+        if(currentLayer == null || !currentLayer.isActive()) return;
+
+        if(isNegative()){
+            engine.getGerberFileManager().addEntityOutOfBounds(4);
+            return;
+        }
+
+        GerberFormatter formatter = currentLayer.getGerberFile()
+                .getFormatter();
+        formatter.setOffset(getXPosition(), getYPosition());
+
+        try {
+            for(Entity entity : fragment.getEntities()){
+                entity.write(engine);
+            }
+        }
+        finally {
+            formatter.setOffset(0, 0);
+        }
+    }
+
+    /**
+     * Returns the x position the prepared entities are written relative to,
+     * in Gerber units. References that return the same getEntities() array
+     * draw the same shape at their own position.
+     */
+    public int getXPosition(){
+        return fragment.getXPosition(transform.getXOffset() + xShift);
+    }
+
+    public int getYPosition(){
+        return fragment.getYPosition(transform.getYOffset() + yShift);
+    }
+
+    @Override
+    public boolean isWritable(){
+        return currentLayer != null && currentLayer.isActive()
+                && isNegative() == false;
+    }
+
+    @Override
+    public int getStartX(){
+        return fragment.getEntities()[0].getStartX() + getXPosition();
+    }
+
+    @Override
+    public int getStartY(){
+        return fragment.getEntities()[0].getStartY() + getYPosition();
+    }
+
+    @Override
+    public int getEndX(){
+        Entity[] entities = fragment.getEntities();
+        return entities[entities.length - 1].getEndX() + getXPosition();
+    }
+
+    @Override
+    public int getEndY(){
+        Entity[] entities = fragment.getEntities();
+        return entities[entities.length - 1].getEndY() + getYPosition();
+    }
+
+    /**
+     * Returns the aperture code of the first entity of the block.
+     */
+    @Override
+    public int getApertureCode(ConversionEngine engine){
+        return fragment.getEntities()[0].getApertureCode(engine);
+    }
+
+    @Override
+    public double getMinX(){
+        return transform.getXOffset() + xShift + fragment.getMinX();
+    }
+
+    @Override
+    public double getMinY(){
+        return transform.getYOffset() + yShift + fragment.getMinY();
+    }
+
+    @Override
+    public void translate(double dx, double dy){
+        xShift += dx;
+        yShift += dy;
+    }
+
+    @Override
+    public Entity transform(Transform transform, CurveFitter fitter){
+        return new BlockReference(block, blockLayerName, currentLayerName,
+                this.transform.then(Transform.getTranslation(xShift, yShift))
+                        .then(transform));
+    }
+
+    /**
+     * Checks if any entity of the block draws in negative coordinates (which
+     * cannot be mapped in the Gerber format).
+     */
+    private boolean isNegative(){
+        return getMinX() < 0 || getMinY() < 0;
+    }
+}
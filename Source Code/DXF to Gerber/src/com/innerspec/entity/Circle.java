@@ -1,23 +1,19 @@
 
 package com.innerspec.entity;
 
-import com.innerspec.main.GerberFileManager;
-import com.innerspec.main.LayerManager;
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.DxfTokenizer;
 import com.innerspec.main.Layer;
 import com.innerspec.main.GerberFile;
-import com.innerspec.main.PrimaryFileSelectorFrame;
-import com.innerspec.main.ThicknessManager;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import com.innerspec.main.GerberFormatter;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /** 
  * Handles the processing of single circle entities in a Gerber file. 
  * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
-public class Circle {
+public class Circle extends Entity {
     private double xPosCenter;
     private double yPosCenter;
     private double radius;
@@ -30,55 +26,75 @@ public class Circle {
     private double xPosDown;
     private double yPosDown;
     private int thicknessCode;
-    private String toolSelect;
+    private GerberFormatter toolSelect;
     
     private GerberFile currentGerberFile;    
-    private String currentLayerName;
-    private Layer currentLayer;    
-    
-    private ArrayList<GerberFile> gerberFiles;
-    private ArrayList<Layer> layers;
-    private BufferedReader scan;
     
     /**
-     * Sets up, finds, and executes the output of single circle entity data to 
-     * its Gerber file.
+     * Reads the data of a single circle entity from the DXF file. The circle
+     * is written to its Gerber file later by write().
      * 
-     * @param scan The BufferedReader that has buffered the location at which 
-     *             the entity is found.
+     * @param scan The DxfTokenizer that is positioned at the start of the 
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
      */
-    public Circle(BufferedReader scan){
-        this.scan   = scan;
-        
-        layers = LayerManager.getLayers();
-        gerberFiles = GerberFileManager.getGerberFiles();
-        
-        /** Searches DXF file for data needed to generate the circle */
-        currentLayerName = fileSearch("  8");
-        xPosCenter    = Double.parseDouble(fileSearch(" 10"));
-        yPosCenter    = Double.parseDouble(fileSearch(" 20"));
-        radius        = Double.parseDouble(fileSearch(" 40"));
-        
-        setPositions();        
-        
-        //Finds the layer and gerber file that this entity is on
-        for(Layer l : layers){
-            if(l.getName().equals(currentLayerName)){
-                currentLayer = l;
-                currentGerberFile = gerberFiles.get(currentLayer.getFileNum());
+    public Circle(DxfTokenizer scan) throws IOException {
+        //Reads the group codes of the entity, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+            
+            switch(scan.getGroupCode()){
+                case 8:
+                    currentLayerName = scan.getValue();
+                    break;
+                case 10:
+                    xPosCenter = scan.getDoubleValue();
+                    break;
+                case 20:
+                    yPosCenter = scan.getDoubleValue();
+                    break;
+                case 40:
+                    radius = scan.getDoubleValue();
+                    break;
             }
         }
         
+        setPositions();
+    }
+    
+    /**
+     * Creates a circle from its center and radius, such as a circle of a 
+     * block placed where the block is inserted.
+     */
+    Circle(double xPosCenter, double yPosCenter, double radius){
+        this.xPosCenter = xPosCenter;
+        this.yPosCenter = yPosCenter;
+        this.radius = radius;
+        
+        setPositions();
+    }
+    
+    /**
+     * Outputs the circle to the Gerber file of its layer, either as a drawn
+     * circle or as a flash if its layer is flashed.
+     */
+    @Override
+    public void write(ConversionEngine engine){
         //Quits if layer does not exist
-        if(currentLayer == null)return;
+        if(currentLayer == null || !currentLayer.isActive()) return;
+        
+        currentGerberFile = currentLayer.getGerberFile();
         
         //Needs positions to be set
         if(isNegative()){
-            GerberFileManager.addEntityOutOfBounds(1);
+            engine.getGerberFileManager().addEntityOutOfBounds(1);
             return;
         }
         else if(isZeroSize()){
-            GerberFileManager.addZeroLengthEntity(1);
+            engine.getGerberFileManager().addZeroLengthEntity(1);
             return;
         }
         
@@ -88,7 +104,8 @@ public class Circle {
             double diameter = (double)Math.round(radius * 2 * 1000) / 1000;
             
             //Diameter is used as a thickness instead of a user preset
-            thicknessCode = ThicknessManager.getThicknessCode(diameter);
+            thicknessCode = engine.getThicknessManager()
+                    .getThicknessCode(diameter);
             
             toolSelect = getToolSelect();
             if (toolSelect != null) currentGerberFile.addOutputln(toolSelect);
@@ -96,12 +113,17 @@ public class Circle {
             writeFlashedCircle();
         } 
         else {            
-            thicknessCode = ThicknessManager.getThicknessCode(currentLayer.getThickness());
+            thicknessCode = currentLayer.getThicknessCode();
             
             toolSelect = getToolSelect();
             if (toolSelect != null) currentGerberFile.addOutputln(toolSelect);
             
-            writeCircle();
+            if(engine.isMultiQuadrant()){
+                writeFullCircle();
+            }
+            else {
+                writeCircle();
+            }
         }
         
         currentGerberFile.addEntity();
@@ -119,6 +141,18 @@ public class Circle {
         currentGerberFile.addOutputln(getEndPositionString());
     }
     
+    /** 
+     * Outputs a regular circle in multi quadrant mode (G75), as a single 
+     * draw from the right position back to itself.
+     */
+    private void writeFullCircle(){
+        currentGerberFile.addOutputln(getRightPositionString());
+        currentGerberFile.addOutputln(currentGerberFile.getFormatter()
+                .formatCommand("G03", toGerberUnits(xPosRight), 
+                        toGerberUnits(yPosRight), -toGerberUnits(radius), 0, 
+                        "D01*", 6));
+    }
+    
     /**
      * Outputs a flashed circle, writing the center position and a D03 code.
      */
@@ -133,10 +167,11 @@ public class Circle {
      * change then the aperture heading is referenced to find the number of the
      * tool with the correct thickness.
      * 
-     * @return A string with the thickness code that can be output to the file,
-     *         null if the thickness code is already active.
+     * @return The formatter holding the tool select command that can be 
+     *         output to the file, null if the thickness code is already 
+     *         active.
      */
-    private String getToolSelect(){
+    private GerberFormatter getToolSelect(){
         //Prints tool select
         if(currentGerberFile.getOldThicknessCode() != 0 
                 && currentGerberFile.getOldThicknessCode() == thicknessCode){
@@ -144,7 +179,8 @@ public class Circle {
         } 
         else {
             currentGerberFile.setOldThicknessCode(thicknessCode);
-            return "G54D" + thicknessCode + "*";
+            return currentGerberFile.getFormatter()
+                    .formatToolSelect(thicknessCode);
         }
     }
     
@@ -165,9 +201,10 @@ public class Circle {
     /** 
      * Returns the center position of the circle.
      */
-    private String getCenterPositionString(){
-        return "X" + padSixPlaces(xPosCenter) 
-             + "Y" + padSixPlaces(yPosCenter) + "D02*";
+    private GerberFormatter getCenterPositionString(){
+        return currentGerberFile.getFormatter().formatCommand("", 
+                toGerberUnits(xPosCenter), toGerberUnits(yPosCenter), 
+                "D02*", 6);
     }
     
     /**
@@ -175,9 +212,10 @@ public class Circle {
      * position intervals must be written every 90 degrees, even though the 
      * plotter may not stop.
      */
-    private String getRightPositionString(){
-        return "G01X" + padSixPlaces(xPosRight) 
-                + "Y" + padSixPlaces(yPosRight) + "D02*";
+    private GerberFormatter getRightPositionString(){
+        return currentGerberFile.getFormatter().formatCommand("G01", 
+                toGerberUnits(xPosRight), toGerberUnits(yPosRight), 
+                "D02*", 6);
     }
     
     /**
@@ -185,10 +223,10 @@ public class Circle {
      * position intervals must be written every 90 degrees, even though the 
      * plotter may not stop.
      */
-    private String getUpPositionString(){
-        return "G03X" + padSixPlaces(xPosUp) 
-                + "Y" + padSixPlaces(yPosUp) 
-                + "I" + padSixPlaces(radius) + "D01*";
+    private GerberFormatter getUpPositionString(){
+        return currentGerberFile.getFormatter().formatCommand("G03", 
+                toGerberUnits(xPosUp), toGerberUnits(yPosUp), 
+                'I', toGerberUnits(radius), "D01*", 6);
     }
     
     /**
@@ -196,10 +234,10 @@ public class Circle {
      * position intervals must be written every 90 degrees, even though the 
      * plotter may not stop.
      */
-    private String getLeftPositionString(){
-        return "X" + padSixPlaces(xPosLeft) 
-             + "Y" + padSixPlaces(yPosLeft) 
-             + "J" + padSixPlaces(radius) + "D01*";
+    private GerberFormatter getLeftPositionString(){
+        return currentGerberFile.getFormatter().formatCommand("", 
+                toGerberUnits(xPosLeft), toGerberUnits(yPosLeft), 
+                'J', toGerberUnits(radius), "D01*", 6);
     }
     
     /**
@@ -207,67 +245,118 @@ public class Circle {
      * position intervals must be written every 90 degrees, even though the 
      * plotter may not stop.
      */
-    private String getDownPositionString(){
-        return "X" + padSixPlaces(xPosDown) 
-             + "Y" + padSixPlaces(yPosDown) 
-             + "I" + padSixPlaces(radius) + "D01*";
+    private GerberFormatter getDownPositionString(){
+        return currentGerberFile.getFormatter().formatCommand("", 
+                toGerberUnits(xPosDown), toGerberUnits(yPosDown), 
+                'I', toGerberUnits(radius), "D01*", 6);
     }
     
     /**
      * Returns the end position of the plotter on the circle. 
      */
-    private String getEndPositionString(){
-        return "X" + padSixPlaces(xPosRight) 
-             + "Y" + padSixPlaces(yPosRight)
-             + "J" + padSixPlaces(radius) + "D01*";
+    private GerberFormatter getEndPositionString(){
+        return currentGerberFile.getFormatter().formatCommand("", 
+                toGerberUnits(xPosRight), toGerberUnits(yPosRight), 
+                'J', toGerberUnits(radius), "D01*", 6);
     }
     
     /** 
-     * Rounds and formats a value to six integer places. If the value does not
-     * take up all six places, then zeros are added onto the front.
+     * Rounds a value to Gerber units (five decimal places). The formatter
+     * pads the result to six integer places by adding zeros onto the front.
      * 
-     * @param input The number to be padded
-     * @return 
+     * @param input The number to be converted
+     * @return The input in Gerber units
      */
-    private String padSixPlaces(double input){
-        //if < 6 add 0's on to front
-        double x = (input * 100000);
-        int y = (int)Math.round(x);
-        return String.format("%06d", y);
+    private int toGerberUnits(double input){
+        return (int)Math.round(input * 100000);
     }
     
    
+    @Override
+    public boolean isWritable(){
+        return currentLayer != null && currentLayer.isActive() 
+                && isNegative() == false && isZeroSize() == false;
+    }
+    
     /**
-     * Searches the DXF file for a Search Code. Once this code is reached the
-     * next line is returned unless another entity or the end of the section 
-     * is reached. 
-     * 
-     * @param searchCode The DXF code that signals an element of the DXF file or
-     *                   entity. The code index can be found in many places such
-     *                   as http://www.autodesk.com/techpubs/autocad/acad2000/
-     *                   dxf/group_codes_in_numerical_order_dxf_01.htm
-     * 
-     * @return The line proceeding the search code, or null if the code is not
-     *         found.
+     * Returns the x position of the center if the circle is flashed, or of
+     * the right position where a drawn circle starts and ends.
+     */
+    @Override
+    public int getStartX(){
+        return toGerberUnits(currentLayer != null && currentLayer.isFlashed() 
+                ? xPosCenter : xPosRight);
+    }
+    
+    @Override
+    public int getStartY(){
+        return toGerberUnits(yPosCenter);
+    }
+    
+    @Override
+    public int getEndX(){
+        return getStartX();
+    }
+    
+    @Override
+    public int getEndY(){
+        return getStartY();
+    }
+    
+    /**
+     * Returns the code of the diameter of the circle if it is flashed, or 
+     * the code of the layer width if it is drawn.
      */
-    private String fileSearch(String searchCode){
-        //Search for searchCode
-        String readLine;
+    @Override
+    public int getApertureCode(ConversionEngine engine){
+        if(currentLayer.isFlashed()){
+            return engine.getThicknessManager()
+                    .getThicknessCode(getFlashDiameter());
+        }
         
-        try {
-            while((readLine = scan.readLine()) != null){                
-                if(readLine.equals(searchCode)){
-                    return scan.readLine();
-                }
-                else if(readLine.equals("ENDSEC") || readLine.equals("  0")){
-                    break;
-                }
-            }
-        } catch(IOException e){
-            e.printStackTrace();
+        return currentLayer.getThicknessCode();
+    }
+    
+    @Override
+    public double getMinX(){
+        return xPosLeft;
+    }
+    
+    @Override
+    public double getMinY(){
+        return yPosDown;
+    }
+    
+    @Override
+    public void translate(double dx, double dy){
+        xPosCenter += dx;
+        yPosCenter += dy;
+        setPositions();
+    }
+    
+    /**
+     * Returns a copy of the circle placed by a transformation, or the lines
+     * of the ellipse it turns into if the transformation does not scale all
+     * directions by the same amount.
+     */
+    @Override
+    public Entity transform(Transform transform, CurveFitter fitter){
+        Entity entity;
+        
+        if(transform.isUniform()){
+            entity = new Circle(transform.getX(xPosCenter, yPosCenter), 
+                    transform.getY(xPosCenter, yPosCenter), 
+                    radius * transform.getScale());
+        }
+        else {
+            Polyline polyline = Arc.getTransformedCurve(transform, fitter, 
+                    xPosCenter, yPosCenter, radius, 0, 360);
+            polyline.entityType = 1;
+            entity = polyline;
         }
         
-        return null;
+        entity.currentLayerName = currentLayerName;
+        return entity;
     }
     
     /** 
@@ -295,93 +384,44 @@ public class Circle {
     }
     
     /**
-     * Searches for circles on flashed layers and adds their diameters to the
-     * thicknesses list. 
-     * 
-     * @throws IOException Error reading file.
+     * Returns the diameter of the circle rounded to the nearest thousandth,
+     * which is the aperture size used when the circle is flashed.
      */
-    public static void addFlashedCircleThicknesses() throws IOException{
-        
-        String line;
-        String layerName;
-        Double flashDiameter;
-        BufferedReader reader;
-        boolean inEntitySection = false;
-        
-        ArrayList<Layer> layers = LayerManager.getLayers();
-        
-        reader = new BufferedReader(
-                new FileReader(PrimaryFileSelectorFrame.getDxfLocation()));
-
-        while((line = reader.readLine()) != null){
-
-            //Only looks for entities in entity section
-            if(line.compareTo("ENTITIES") == 0) inEntitySection = true;
-
-            if(inEntitySection == true && line.equals("  0")){
-                //Reads the name of the entity after the "  0" code
-                line = reader.readLine();
-                
-                //Checks if the entity is a circle
-                if (line.equals("CIRCLE")) {
-                    //Searches the file for the layer name
-                    layerName = flashFileSearch("  8", reader);
-
-                    //Finds the radius/diameter using the " 40" code
-                    flashDiameter = 2 * Double.parseDouble(flashFileSearch(" 40", reader));
-                    
-                    //Rounds to the nearest thosandths place
-                    flashDiameter = (double)Math.round(flashDiameter * 1000) / 1000;
-                    
-                    //Finds layer object that holds the entity and adds its
-                    //thickness.
-                    for (Layer layer: layers){
-                        if (layer.isFlashed() && 
-                                layerName.equals(layer.getName())){
-
-                            ThicknessManager.addThickness(flashDiameter);
-                        }
-                    }
-                }
-                //Once ENDSEC is reached, the loop increments out of the file
-                else if (line.equals("ENDSEC")){
-                    inEntitySection = false;
-                }	
-            }
-        }
-        
-        reader.close();
+    public double getFlashDiameter(){
+        return (double)Math.round(radius * 2 * 1000) / 1000;
     }
     
     /**
-     * Searches the DXF file within a flashed circle to find the value of a 
-     * DXF code.
-     * 
-     * @param searchCode The The DXF code that signals an element of the DXF file or
-     *                   entity. The code index can be found in many places such
-     *                   as http://www.autodesk.com/techpubs/autocad/acad2000/
-     *                   dxf/group_codes_in_numerical_order_dxf_01.htm
-     * 
-     * @param reader     The BufferedReader that holds the location in the file
-     *                   that is incremented and searched through.
+     * Searches the entity store for circles on flashed layers and adds their 
+     * diameters to the thicknesses list. Circles are visited in the order they
+     * appear in the DXF file, so aperture codes are assigned in file order.
+     * The circles of a block are visited where the block is inserted.
      * 
-     * @return              Returns the value of the line after the search code.
-     * @throws IOException  Error reading file.
+     * @param engine    The conversion whose circles are searched
      */
-    private static String flashFileSearch(String searchCode, BufferedReader reader) throws IOException{
-        String line;
-        
-        //Reads until another entity
-        while((line = reader.readLine()) != null){
-            if(line.equals(searchCode)){
-                return reader.readLine();
+    public static void addFlashedCircleThicknesses(ConversionEngine engine){
+        for(Entity entity : engine.getEntityManager().getEntities()){
+            if(entity instanceof Circle){
+                addFlashedCircleThickness(engine, (Circle)entity);
             }
-            else if(line.equals("  0")){
-                break;
+            else if(entity instanceof BlockReference){
+                for(Entity blockEntity 
+                        : ((BlockReference)entity).getEntities()){
+                    if(blockEntity instanceof Circle){
+                        addFlashedCircleThickness(engine, (Circle)blockEntity);
+                    }
+                }
             }
         }
+    }
+    
+    private static void addFlashedCircleThickness(ConversionEngine engine, 
+            Circle circle){
+        Layer layer = circle.getLayer();
         
-        return null;
+        if(layer != null && layer.isActive() && layer.isFlashed()){
+            engine.getThicknessManager().addThickness(
+                    circle.getFlashDiameter());
+        }
     }
 }
-
@@ -0,0 +1,155 @@
+package com.innerspec.entity;
+
+import java.util.ArrayList;
+
+/**
+ * Holds the data of a curve that Gerber files cannot draw, an ELLIPSE or a
+ * SPLINE entity. A curve is not written itself, it is replaced by a polyline
+ * of the lines and arcs fitted by a CurveFitter.
+ *
+ * The points of a curve are given relative to its origin, so that curves of
+ * the same shape at different positions have the same key and share their
+ * fitted pieces.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public abstract class Curve {
+    /** The number of digits of the values in a key. */
+    private static final double KEY_PRECISION = 1e9;
+
+    protected String layerName;
+
+    /** The position the points of the curve are relative to. */
+    protected double xOrigin;
+    protected double yOrigin;
+
+    public String getLayerName(){
+        return layerName;
+    }
+
+    /**
+     * Checks if the curve has the data it needs to be drawn.
+     */
+    public abstract boolean isValid();
+
+    /**
+     * Returns the polyline of the lines and arcs that replace the curve.
+     *
+     * @param fitter    Fits the curve, or returns the pieces of an earlier
+     *                  curve of the same shape
+     * @return          The polyline, on the layer of the curve
+     */
+    public Polyline getPolyline(CurveFitter fitter){
+        double[][] pieces = fitter.getPieces(this);
+        Entity[] segments = new Entity[pieces.length];
+        boolean[] isReversed = new boolean[pieces.length];
+        int count = 0;
+
+        for(double[] piece : pieces){
+            double x1 = piece[0] + xOrigin;
+            double y1 = piece[1] + yOrigin;
+            double x2 = piece[2] + xOrigin;
+            double y2 = piece[3] + yOrigin;
+
+            if(x1 == x2 && y1 == y2){
+                continue;
+            }
+
+            if(piece.length == 4){
+                segments[count] = new Line(x1, y1, x2, y2);
+            }
+            else if(piece[6] > 0){
+                segments[count] = new Arc(piece[4] + xOrigin,
+                        piece[5] + yOrigin, x1, y1, x2, y2);
+            }
+            else {
+                //A clockwise arc is a counterclockwise arc drawn backwards
+                segments[count] = new Arc(piece[4] + xOrigin,
+                        piece[5] + yOrigin, x2, y2, x1, y1);
+                isReversed[count] = true;
+            }
+
+            count++;
+        }
+
+        Entity[] newSegments = new Entity[count];
+        boolean[] newReversed = new boolean[count];
+        System.arraycopy(segments, 0, newSegments, 0, count);
+        System.arraycopy(isReversed, 0, newReversed, 0, count);
+
+        Polyline polyline = new Polyline(newSegments, newReversed);
+        polyline.currentLayerName = layerName;
+        polyline.entityType = getEntityType();
+        return polyline;
+    }
+
+    /**
+     * Returns the lines and arcs that replace the curve as the points of a
+     * polyline, such as an edge of a hatch boundary.
+     *
+     * @param fitter    Fits the curve, or returns the pieces of an earlier
+     *                  curve of the same shape
+     * @return          The x, y and bulge of the start of each line or arc,
+     *                  followed by the end of the last one
+     */
+    ArrayList<double[]> getPoints(CurveFitter fitter){
+        double[][] pieces = fitter.getPieces(this);
+        ArrayList<double[]> points = new ArrayList<double[]>();
+
+        for(double[] piece : pieces){
+            double bulge = 0;
+
+            if(piece.length > 4){
+                //The bulge is the tangent of a quarter of the swept angle
+                double sweep = piece[6] * (Math.atan2(piece[3] - piece[5],
+                        piece[2] - piece[4]) - Math.atan2(piece[1] - piece[5],
+                        piece[0] - piece[4]));
+                sweep = sweep < 0 ? sweep + 2 * Math.PI : sweep;
+                bulge = piece[6] * Math.tan(sweep / 4);
+            }
+
+            points.add(new double[]{piece[0] + xOrigin, piece[1] + yOrigin,
+                    bulge});
+        }
+
+        if(pieces.length > 0){
+            double[] last = pieces[pieces.length - 1];
+            points.add(new double[]{last[2] + xOrigin, last[3] + yOrigin, 0});
+        }
+
+        return points;
+    }
+
+    /**
+     * Returns the counter the curve is counted in when it is left out, see
+     * GerberFileManager.addEntityOutOfBounds().
+     */
+    abstract int getEntityType();
+
+    /**
+     * Returns the point of the curve at a parameter, relative to the origin.
+     *
+     * @return  The x and y position of the point
+     */
+    abstract double[] getPoint(double parameter);
+
+    /**
+     * Returns the parameters the curve starts and ends at, in increasing
+     * order, with the parameters in between where the curve may have a
+     * corner.
+     */
+    abstract double[] getBreaks();
+
+    /**
+     * Returns a key that is equal for curves of the same shape.
+     */
+    abstract String getKey();
+
+    /**
+     * Adds a value to a key, rounded so that values that only differ by
+     * the rounding of their origin are equal.
+     */
+    static void appendKeyValue(StringBuilder key, double value){
+        key.append(Math.round(value * KEY_PRECISION)).append(',');
+    }
+}
@@ -0,0 +1,279 @@
+package com.innerspec.entity;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replaces the curves that Gerber files cannot draw, the ELLIPSE and SPLINE
+ * entities, by as few lines and arcs as possible that stay within a distance
+ * of the curve (the chordal tolerance).
+ *
+ * A curve is fitted greedily from its start: each piece is made as long as
+ * it can be while a line, or otherwise the arc through the ends and the
+ * middle of the piece, stays within the tolerance at points sampled along
+ * it. The longest piece is found by halving the piece until it fits and
+ * then bisecting between the length that fits and the length that does not.
+ * Pieces never cross a break of the curve, such as a knot of a spline where
+ * the curve may have a corner.
+ *
+ * The pieces are fitted relative to the origin of the curve (the center of
+ * an ellipse, the first point of a spline) and are kept by the defining
+ * parameters of the curve relative to its origin, so a shape that is drawn
+ * many times is only fitted once. The curves of a file are read by several
+ * EntityChunks at the same time, so the fitter can be used from any thread.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class CurveFitter {
+    /** The tolerance in inches used unless another one is set. */
+    public static final double DEFAULT_TOLERANCE = 0.0001;
+
+    /** The points checked along each piece, besides its ends. */
+    private static final int SAMPLES = 16;
+
+    /** The bisections between a piece that fits and one that does not. */
+    private static final int REFINE_STEPS = 12;
+
+    /** The halvings after which a piece is drawn as a line regardless. */
+    private static final int MAX_DEPTH = 40;
+
+    /**
+     * The largest radius of an arc piece in inches, since the center offsets
+     * of an arc are written with two integer digits. Flatter pieces are
+     * split into lines.
+     */
+    private static final double MAX_RADIUS = 50;
+
+    private final double tolerance;
+
+    /** The fitted pieces of each shape, by the key of the curve. */
+    private ConcurrentHashMap<String, double[][]> fits
+            = new ConcurrentHashMap<String, double[][]>();
+
+    private AtomicInteger curveCount = new AtomicInteger();
+    private AtomicInteger pieceCount = new AtomicInteger();
+
+    /**
+     * @param tolerance     The largest distance in inches between a curve
+     *                      and its lines and arcs
+     */
+    public CurveFitter(double tolerance){
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance(){
+        return tolerance;
+    }
+
+    /**
+     * @return  The number of curves that were replaced by lines and arcs
+     */
+    public int getCurveCount(){
+        return curveCount.get();
+    }
+
+    /**
+     * @return  The number of different shapes that were fitted, which is
+     *          less than getCurveCount() if shapes are repeated
+     */
+    public int getFitCount(){
+        return fits.size();
+    }
+
+    /**
+     * @return  The number of lines and arcs that replace the curves
+     */
+    public int getPieceCount(){
+        return pieceCount.get();
+    }
+
+    /**
+     * Returns the pieces of a curve relative to its origin, fitting the
+     * curve if its shape has not been fitted before. A line is held as its
+     * end points {x1, y1, x2, y2}, an arc as its end points and center
+     * followed by 1 if it goes counterclockwise or -1 if it goes clockwise.
+     *
+     * @param curve     The curve, which is valid
+     * @return          The pieces from the start to the end of the curve,
+     *                  shared with every curve of the same shape
+     */
+    double[][] getPieces(Curve curve){
+        String key = curve.getKey();
+        double[][] pieces = fits.get(key);
+
+        if(pieces == null){
+            pieces = fit(curve);
+
+            //Another chunk may have fitted the same shape in the meantime
+            double[][] previous = fits.putIfAbsent(key, pieces);
+            pieces = previous != null ? previous : pieces;
+        }
+
+        curveCount.incrementAndGet();
+        pieceCount.addAndGet(pieces.length);
+        return pieces;
+    }
+
+    /**
+     * Fits the pieces of a curve, from break to break.
+     */
+    private double[][] fit(Curve curve){
+        ArrayList<double[]> pieces = new ArrayList<double[]>();
+        double[] breaks = curve.getBreaks();
+        double[] point = curve.getPoint(breaks[0]);
+
+        for(int k = 0; k + 1 < breaks.length; k++){
+            double start = breaks[k];
+            double end = breaks[k + 1];
+
+            while(start < end){
+                double fitted = end;
+                double[] piece = fitPiece(curve, start, end, point);
+
+                if(piece == null){
+                    double bad = end;
+                    fitted = start + (end - start) / 2;
+                    int depth = 0;
+
+                    while((piece = fitPiece(curve, start, fitted, point))
+                            == null && depth++ < MAX_DEPTH){
+                        bad = fitted;
+                        fitted = start + (fitted - start) / 2;
+                    }
+
+                    if(piece == null){
+                        //Too short to matter, so the line stays in place
+                        double[] next = curve.getPoint(fitted);
+                        piece = new double[]{point[0], point[1], next[0],
+                                next[1]};
+                    }
+
+                    for(int step = 0; step < REFINE_STEPS; step++){
+                        double middle = fitted + (bad - fitted) / 2;
+                        double[] longer = fitPiece(curve, start, middle,
+                                point);
+
+                        if(longer != null){
+                            fitted = middle;
+                            piece = longer;
+                        }
+                        else {
+                            bad = middle;
+                        }
+                    }
+                }
+
+                pieces.add(piece);
+                point = new double[]{piece[2], piece[3]};
+                start = fitted;
+            }
+        }
+
+        return pieces.toArray(new double[pieces.size()][]);
+    }
+
+    /**
+     * Tries to replace part of a curve by a single line or arc.
+     *
+     * @param start     The parameter the piece starts at
+     * @param end       The parameter the piece ends at
+     * @param first     The point the piece starts at, which is the end of the
+     *                  piece before it
+     * @return          The line or arc, null if neither stays within the
+     *                  tolerance
+     */
+    private double[] fitPiece(Curve curve, double start, double end,
+            double[] first){
+        double[] last = curve.getPoint(end);
+        double[][] samples = new double[SAMPLES][];
+
+        for(int k = 0; k < SAMPLES; k++){
+            samples[k] = curve.getPoint(start
+                    + (end - start) * (k + 1) / (SAMPLES + 1));
+        }
+
+        if(isLine(first, last, samples)){
+            return new double[]{first[0], first[1], last[0], last[1]};
+        }
+
+        //The arc through the ends and the sample in the middle
+        double[] middle = samples[SAMPLES / 2];
+        double ax = middle[0] - first[0];
+        double ay = middle[1] - first[1];
+        double bx = last[0] - first[0];
+        double by = last[1] - first[1];
+        double cross = ax * by - ay * bx;
+
+        if(cross == 0){
+            return null;
+        }
+
+        double a = ax * ax + ay * ay;
+        double b = bx * bx + by * by;
+        double xCenter = first[0] + (by * a - ay * b) / (2 * cross);
+        double yCenter = first[1] + (ax * b - bx * a) / (2 * cross);
+        double radius = Math.hypot(first[0] - xCenter, first[1] - yCenter);
+
+        //A positive cross product turns the path counterclockwise
+        double direction = cross > 0 ? 1 : -1;
+        double sweep = getAngle(first, last, xCenter, yCenter, direction);
+
+        if(radius > MAX_RADIUS || sweep > Math.PI){
+            return null;
+        }
+
+        for(double[] sample : samples){
+            double distance = Math.hypot(sample[0] - xCenter,
+                    sample[1] - yCenter);
+
+            if(Math.abs(distance - radius) > tolerance
+                    || getAngle(first, sample, xCenter, yCenter, direction)
+                    > sweep){
+                return null;
+            }
+        }
+
+        return new double[]{first[0], first[1], last[0], last[1], xCenter,
+                yCenter, direction};
+    }
+
+    /**
+     * Checks if all samples of a piece are within the tolerance of the line
+     * between its ends.
+     */
+    private boolean isLine(double[] first, double[] last,
+            double[][] samples){
+        double dx = last[0] - first[0];
+        double dy = last[1] - first[1];
+        double length = dx * dx + dy * dy;
+
+        for(double[] sample : samples){
+            double ratio = length == 0 ? 0 : ((sample[0] - first[0]) * dx
+                    + (sample[1] - first[1]) * dy) / length;
+            ratio = Math.max(0, Math.min(1, ratio));
+
+            if(Math.hypot(first[0] + ratio * dx - sample[0],
+                    first[1] + ratio * dy - sample[1]) > tolerance){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the angle from one point to another around a center, in
+     * radians from 0 to 2 pi.
+     *
+     * @param direction     1 to measure counterclockwise, -1 to measure
+     *                      clockwise
+     */
+    private static double getAngle(double[] from, double[] to,
+            double xCenter, double yCenter, double direction){
+        double angle = direction * (Math.atan2(to[1] - yCenter,
+                to[0] - xCenter) - Math.atan2(from[1] - yCenter,
+                from[0] - xCenter));
+        return angle < 0 ? angle + 2 * Math.PI : angle;
+    }
+}
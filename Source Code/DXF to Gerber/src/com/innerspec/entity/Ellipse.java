@@ -0,0 +1,172 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.DxfTokenizer;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Holds the data of an ELLIPSE entity, which is replaced by lines and arcs
+ * (see Curve).
+ *
+ * The ellipse is given by its center, the end point of its major axis
+ * relative to the center, the ratio of the minor axis to the major axis and
+ * the parameters it starts and ends at, in radians. The point at a parameter
+ * t is center + major * cos(t) + minor * sin(t), where the minor axis is the
+ * major axis turned a quarter turn counterclockwise (clockwise if the
+ * ellipse faces the other way) and scaled by the ratio.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Ellipse extends Curve {
+    private double xMajor;
+    private double yMajor;
+    private double ratio;
+    private double startParameter = 0;
+    private double endParameter = 2 * Math.PI;
+
+    private double extrusionDirection = 1;
+
+    /**
+     * Reads the data of an ellipse from the DXF file.
+     *
+     * @param scan The DxfTokenizer that is positioned at the start of the
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
+     */
+    public Ellipse(DxfTokenizer scan) throws IOException {
+        //Reads the group codes of the entity, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            switch(scan.getGroupCode()){
+                case 8:
+                    layerName = scan.getValue();
+                    break;
+                case 10:
+                    xOrigin = scan.getDoubleValue();
+                    break;
+                case 20:
+                    yOrigin = scan.getDoubleValue();
+                    break;
+                case 11:
+                    xMajor = scan.getDoubleValue();
+                    break;
+                case 21:
+                    yMajor = scan.getDoubleValue();
+                    break;
+                case 40:
+                    ratio = scan.getDoubleValue();
+                    break;
+                case 41:
+                    startParameter = scan.getDoubleValue();
+                    break;
+                case 42:
+                    endParameter = scan.getDoubleValue();
+                    break;
+                case 230:
+                    //The extrusion direction is 1.0 unless the code exists
+                    extrusionDirection = scan.getDoubleValue();
+                    break;
+            }
+        }
+
+        setEndParameter();
+    }
+
+    /**
+     * Creates an elliptic arc from its data, such as an edge of a hatch
+     * boundary.
+     *
+     * @param xMajor            The x of the end of the major axis, relative
+     *                          to the center
+     * @param ratio             The ratio of the minor axis to the major axis
+     * @param startParameter    The parameter the arc starts at, in radians
+     * @param endParameter      The parameter the arc ends at
+     *                          counterclockwise, in radians
+     */
+    Ellipse(double xCenter, double yCenter, double xMajor, double yMajor,
+            double ratio, double startParameter, double endParameter){
+        this.xOrigin = xCenter;
+        this.yOrigin = yCenter;
+        this.xMajor = xMajor;
+        this.yMajor = yMajor;
+        this.ratio = ratio;
+        this.startParameter = startParameter;
+        this.endParameter = endParameter;
+
+        setEndParameter();
+    }
+
+    /**
+     * Moves the end parameter after the start parameter, since the ellipse
+     * always goes from the start to the end parameter.
+     */
+    private void setEndParameter(){
+        while(endParameter <= startParameter){
+            endParameter += 2 * Math.PI;
+        }
+    }
+
+    @Override
+    public boolean isValid(){
+        return (xMajor != 0 || yMajor != 0) && ratio > 0;
+    }
+
+    @Override
+    int getEntityType(){
+        return 5;
+    }
+
+    @Override
+    double[] getPoint(double parameter){
+        double cos = Math.cos(parameter);
+        double sin = Math.sin(parameter) * ratio
+                * Math.signum(extrusionDirection);
+
+        return new double[]{xMajor * cos - yMajor * sin,
+                yMajor * cos + xMajor * sin};
+    }
+
+    /**
+     * Breaks the ellipse at the ends of its axes, where its curvature is
+     * largest or smallest, so that the pieces of a whole ellipse are
+     * symmetric.
+     */
+    @Override
+    double[] getBreaks(){
+        ArrayList<Double> breaks = new ArrayList<Double>();
+        breaks.add(startParameter);
+
+        double quarter = Math.PI / 2;
+        double next = quarter * (Math.floor(startParameter / quarter) + 1);
+
+        while(next < endParameter){
+            breaks.add(next);
+            next += quarter;
+        }
+
+        breaks.add(endParameter);
+
+        double[] values = new double[breaks.size()];
+
+        for(int k = 0; k < values.length; k++){
+            values[k] = breaks.get(k);
+        }
+
+        return values;
+    }
+
+    @Override
+    String getKey(){
+        StringBuilder key = new StringBuilder("ELLIPSE,");
+        appendKeyValue(key, xMajor);
+        appendKeyValue(key, yMajor);
+        appendKeyValue(key, ratio * Math.signum(extrusionDirection));
+        appendKeyValue(key, startParameter);
+        appendKeyValue(key, endParameter);
+        return key.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.Layer;
+
+/**
+ * The common type of all entities held in the entity store. Entities are
+ * parsed once while the DXF file is read and written to their Gerber file
+ * afterwards, so the DXF file never has to be opened a second time.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public abstract class Entity {
+    /** The layer that the entity was drawn on in the DXF file. */
+    protected Layer currentLayer;
+
+    /**
+     * The name of the layer the entity was drawn on, as read from the "  8"
+     * code of the entity.
+     */
+    protected String currentLayerName;
+
+    public String getLayerName(){
+        return currentLayerName;
+    }
+
+    public Layer getLayer(){
+        return currentLayer;
+    }
+
+    /**
+     * Sets the layer the entity is drawn on. The name read from the dxf file
+     * is replaced by the name held by the layer, so that all entities of a 
+     * layer share a single string.
+     */
+    public void setLayer(Layer layer){
+        this.currentLayer = layer;
+        
+        if(layer != null){
+            this.currentLayerName = layer.getName();
+        }
+    }
+
+    /**
+     * Writes the entity to the Gerber file of its layer. Nothing is written if
+     * the layer was removed or deactivated by the user.
+     *
+     * @param engine    The conversion that holds the Gerber files, apertures
+     *                  and counters
+     */
+    public abstract void write(ConversionEngine engine);
+
+    /**
+     * Checks if the entity is written when write() is called: its layer is
+     * active and it is neither out of bounds nor of zero size.
+     */
+    public abstract boolean isWritable();
+
+    /**
+     * Returns the x position of the first point written for the entity, in
+     * Gerber units.
+     */
+    public abstract int getStartX();
+
+    public abstract int getStartY();
+
+    /**
+     * Returns the x position the entity leaves the plotter at, in Gerber 
+     * units.
+     */
+    public abstract int getEndX();
+
+    public abstract int getEndY();
+
+    /**
+     * Returns the code of the aperture the entity is written with. Valid once
+     * the layers are prepared.
+     *
+     * @param engine    The conversion that holds the apertures
+     */
+    public abstract int getApertureCode(ConversionEngine engine);
+
+    /**
+     * Returns the smallest x position drawn by the entity, in inches,
+     * including the width of the curve of arcs and circles.
+     */
+    public abstract double getMinX();
+
+    public abstract double getMinY();
+
+    /**
+     * Moves the entity. Called before the entity is written, to shift the 
+     * drawing away from negative coordinates.
+     *
+     * @param dx    The distance to move along x, in inches
+     * @param dy    The distance to move along y, in inches
+     */
+    public abstract void translate(double dx, double dy);
+
+    /**
+     * Returns a copy of the entity placed by a transformation, such as an
+     * entity of a block placed where the block is inserted. The copy keeps
+     * the layer name of the entity and has no layer until setLayer() is
+     * called.
+     *
+     * @param transform     The transformation of the copy
+     * @param fitter        Fits the ellipse a circle or an arc turns into if
+     *                      the transformation does not scale all directions
+     *                      by the same amount
+     * @return              The copy, which is a polyline if the
+     *                      transformation turns a circle or an arc into an
+     *                      ellipse
+     */
+    public abstract Entity transform(Transform transform, CurveFitter fitter);
+}
@@ -0,0 +1,794 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.DxfTokenizer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Holds the data of a HATCH entity, which fills the area inside its boundary
+ * loops. A hatch is not written itself, it is replaced by a Region of its
+ * loops, whether it is filled solid or with a pattern.
+ *
+ * Each loop is a polyline with bulges, or a chain of edges that are lines,
+ * circular arcs, elliptic arcs or splines. The elliptic arcs and splines are
+ * replaced by lines and arcs (see CurveFitter), and each edge is turned so
+ * that it starts where the edge before it ends, since the edges of a loop
+ * may be stored in either direction.
+ *
+ * A loop inside an odd number of other loops is a hole, as in the "normal"
+ * hatch style. The "outer" style leaves out the loops inside of holes and
+ * the "ignore" style only fills the outermost loops.
+ *
+ * A contour of a Gerber region is always filled, so each hole is joined to
+ * the loop around it by a cut-in: a line from the rightmost point of the 
+ * hole to the nearest point of the loop to its right, which the contour 
+ * follows to the hole, around the hole the other way and back. The holes 
+ * are joined from the rightmost one to the left, so a cut-in ends on the 
+ * loop or on a hole that is already joined, and never crosses a hole.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Hatch {
+    /** The "92" flag of a loop that is a polyline instead of edges. */
+    private static final int POLYLINE_LOOP = 2;
+
+    /** The "75" hatch styles that do not fill every loop. */
+    private static final int OUTER_STYLE = 1;
+    private static final int IGNORE_STYLE = 2;
+
+    /** The "72" types of the edges of a loop. */
+    private static final int LINE_EDGE = 1;
+    private static final int ARC_EDGE = 2;
+    private static final int ELLIPSE_EDGE = 3;
+    private static final int SPLINE_EDGE = 4;
+
+    /** The points checked along each arc of a loop, besides its ends. */
+    private static final int ARC_SAMPLES = 7;
+
+    /** The distance at which a cut-in ends at a point of its contour. */
+    private static final double POINT_TOLERANCE = 0.000001;
+
+    private String layerName;
+    private int style = 0;
+    private double extrusionDirection = 1;
+
+    /** False if a loop has an edge that cannot be read. */
+    private boolean isValid = true;
+
+    /** The x, y and bulge of the points of each loop. */
+    private ArrayList<ArrayList<double[]>> loops
+            = new ArrayList<ArrayList<double[]>>();
+
+    /**
+     * Reads the data of a hatch from the DXF file. The codes of each loop
+     * follow its "92" code, up to the next loop or the "75" code after the
+     * last loop.
+     *
+     * @param scan      The DxfTokenizer that is positioned at the start of
+     *                  the entity. It is left at the "0" code of the next
+     *                  entity.
+     * @param fitter    Replaces the elliptic arcs and splines of the loops
+     * @throws IOException Error reading file.
+     */
+    public Hatch(DxfTokenizer scan, CurveFitter fitter) throws IOException {
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            switch(scan.getGroupCode()){
+                case 8:
+                    layerName = scan.getValue();
+                    break;
+                case 75:
+                    style = (int)scan.getDoubleValue();
+                    break;
+                case 92:
+                    readLoop(scan, (int)scan.getDoubleValue(), fitter);
+                    break;
+                case 230:
+                    //The extrusion direction is 1.0 unless the code exists
+                    extrusionDirection = scan.getDoubleValue();
+                    break;
+            }
+        }
+
+        //Mirrors the loops of hatches that face the other way
+        if(extrusionDirection < 0){
+            for(ArrayList<double[]> points : loops){
+                for(double[] point : points){
+                    point[0] = -point[0];
+                    point[2] = -point[2];
+                }
+            }
+        }
+    }
+
+    public String getLayerName(){
+        return layerName;
+    }
+
+    /**
+     * Checks if every edge of the loops could be read.
+     */
+    public boolean isValid(){
+        return isValid;
+    }
+
+    /**
+     * Returns the region that fills the hatch, with a contour for each 
+     * filled loop that has the holes right inside of it joined in. Loops 
+     * that do not enclose an area are left out.
+     */
+    public Region getRegion(){
+        ArrayList<ArrayList<double[]>> loopPoints
+                = new ArrayList<ArrayList<double[]>>();
+        ArrayList<ArrayList<double[]>> outlines
+                = new ArrayList<ArrayList<double[]>>();
+
+        for(ArrayList<double[]> points : loops){
+            if(new Polyline(points, true).getSegments().length > 1){
+                loopPoints.add(points);
+                outlines.add(getOutline(points));
+            }
+        }
+
+        //The number of other loops that each loop is inside of
+        int count = loopPoints.size();
+        int[] depths = new int[count];
+
+        for(int i = 0; i < count; i++){
+            double[] point = outlines.get(i).get(0);
+
+            for(int j = 0; j < count; j++){
+                if(j != i && isInside(point, outlines.get(j))){
+                    depths[i]++;
+                }
+            }
+        }
+
+        int maxDepth = style == OUTER_STYLE ? 1
+                : style == IGNORE_STYLE ? 0 : count;
+        ArrayList<Polyline> contours = new ArrayList<Polyline>();
+
+        for(int i = 0; i < count; i++){
+            if(depths[i] % 2 == 1 || depths[i] > maxDepth){
+                continue;
+            }
+
+            ArrayList<ArrayList<double[]>> holes
+                    = new ArrayList<ArrayList<double[]>>();
+
+            for(int j = 0; j < count; j++){
+                if(depths[j] == depths[i] + 1 && depths[j] <= maxDepth
+                        && isInside(outlines.get(j).get(0), outlines.get(i))){
+                    holes.add(loopPoints.get(j));
+                }
+            }
+
+            contours.add(new Polyline(getJoinedPoints(loopPoints.get(i),
+                    holes), true));
+        }
+
+        Region region = new Region(contours.toArray(
+                new Polyline[contours.size()]), 7);
+        region.currentLayerName = layerName;
+        return region;
+    }
+
+    /**
+     * Returns the points of a filled loop with its holes joined in by 
+     * cut-ins, which is the contour of the loop in the region.
+     *
+     * @param loop      The points of the filled loop
+     * @param holes     The points of the holes right inside of the loop
+     */
+    private static ArrayList<double[]> getJoinedPoints(
+            ArrayList<double[]> loop, ArrayList<ArrayList<double[]>> holes){
+        ArrayList<double[]> contour = new ArrayList<double[]>();
+
+        for(double[] point : loop){
+            contour.add(point.clone());
+        }
+
+        //Each hole goes around the other way to the loop, starting at its
+        //rightmost point
+        boolean isLoopCounterclockwise = getArea(getOutline(loop)) > 0;
+        ArrayList<ArrayList<double[]>> startedHoles
+                = new ArrayList<ArrayList<double[]>>();
+
+        for(ArrayList<double[]> hole : holes){
+            if(getArea(getOutline(hole)) > 0 == isLoopCounterclockwise){
+                ArrayList<double[]> closed = new ArrayList<double[]>(hole);
+                closed.add(hole.get(0));
+                hole = getReversed(closed);
+                hole.remove(hole.size() - 1);
+            }
+
+            startedHoles.add(getRightmostStart(hole));
+        }
+
+        Collections.sort(startedHoles, new Comparator<ArrayList<double[]>>(){
+            @Override
+            public int compare(ArrayList<double[]> first,
+                    ArrayList<double[]> second){
+                return Double.compare(second.get(0)[0], first.get(0)[0]);
+            }
+        });
+
+        for(ArrayList<double[]> hole : startedHoles){
+            addCutIn(contour, hole);
+        }
+
+        return contour;
+    }
+
+    /**
+     * Joins a hole to a contour by a cut-in from the first point of the hole,
+     * its rightmost point, to the nearest point of the contour to its right.
+     * An edge of the contour that the cut-in ends inside of is split there.
+     */
+    private static void addCutIn(ArrayList<double[]> contour,
+            ArrayList<double[]> hole){
+        double[] start = hole.get(0);
+        int nearestEdge = -1;
+        double nearestX = Double.POSITIVE_INFINITY;
+
+        for(int k = 0; k < contour.size(); k++){
+            double x = getCrossing(contour.get(k),
+                    contour.get((k + 1) % contour.size()), start);
+
+            if(x < nearestX){
+                nearestX = x;
+                nearestEdge = k;
+            }
+        }
+
+        if(nearestEdge < 0){
+            return;
+        }
+
+        double[] first = contour.get(nearestEdge);
+        double[] second = contour.get((nearestEdge + 1) % contour.size());
+        double[] end = {nearestX, start[1], 0};
+        int index;
+
+        if(getDistance(end, first) < POINT_TOLERANCE
+                || getDistance(end, second) < POINT_TOLERANCE){
+            //The contour leaves the point again after the hole
+            int vertex = getDistance(end, first) < POINT_TOLERANCE
+                    ? nearestEdge : (nearestEdge + 1) % contour.size();
+            double[] point = contour.get(vertex);
+            end = point.clone();
+            point[2] = 0;
+            index = vertex + 1;
+        }
+        else {
+            double[] bulges = getSplitBulges(first, second, end);
+            first[2] = bulges[0];
+            end[2] = bulges[1];
+            contour.add(nearestEdge + 1, new double[]{end[0], end[1], 0});
+            index = nearestEdge + 2;
+        }
+
+        ArrayList<double[]> cutIn = new ArrayList<double[]>(hole);
+        cutIn.add(new double[]{start[0], start[1], 0});
+        cutIn.add(end);
+        contour.addAll(index, cutIn);
+    }
+
+    /**
+     * Reads the codes of a loop, up to the next loop or the end of the
+     * loops.
+     *
+     * @param flags     The "92" flags of the loop
+     */
+    private void readLoop(DxfTokenizer scan, int flags, CurveFitter fitter)
+            throws IOException {
+        ArrayList<Integer> codes = new ArrayList<Integer>();
+        ArrayList<Double> values = new ArrayList<Double>();
+
+        while(scan.next()){
+            int code = scan.getGroupCode();
+
+            if(code == 0 || code == 75 || code == 92){
+                scan.pushBack();
+                break;
+            }
+
+            //The handles of the objects the loop was made from are not numbers
+            if(code != 330){
+                codes.add(code);
+                values.add(scan.getDoubleValue());
+            }
+        }
+
+        ArrayList<double[]> points = (flags & POLYLINE_LOOP) != 0
+                ? getPolylinePoints(codes, values)
+                : getEdgePoints(codes, values, fitter);
+
+        if(points == null){
+            isValid = false;
+        }
+        else {
+            loops.add(points);
+        }
+    }
+
+    /**
+     * Returns the points of a loop that is a polyline. Every "10" code
+     * starts a new point, the "20" and "42" codes that follow it belong to
+     * that point.
+     */
+    private static ArrayList<double[]> getPolylinePoints(
+            ArrayList<Integer> codes, ArrayList<Double> values){
+        ArrayList<double[]> points = new ArrayList<double[]>();
+
+        for(int k = 0; k < codes.size(); k++){
+            int code = codes.get(k);
+
+            if(code == 10){
+                points.add(new double[]{values.get(k), 0, 0});
+            }
+            else if((code == 20 || code == 42) && points.isEmpty() == false){
+                points.get(points.size() - 1)[code == 20 ? 1 : 2]
+                        = values.get(k);
+            }
+        }
+
+        return points;
+    }
+
+    /**
+     * Returns the points of a loop that is a chain of edges. Every "72" code
+     * starts a new edge.
+     *
+     * @return  The points, null if an edge cannot be read
+     */
+    private static ArrayList<double[]> getEdgePoints(ArrayList<Integer> codes,
+            ArrayList<Double> values, CurveFitter fitter){
+        ArrayList<ArrayList<double[]>> edges
+                = new ArrayList<ArrayList<double[]>>();
+        int start = codes.indexOf(72);
+
+        while(start >= 0){
+            int end = start + 1;
+
+            while(end < codes.size() && codes.get(end) != 72){
+                end++;
+            }
+
+            ArrayList<double[]> edge = getEdge(values.get(start).intValue(),
+                    codes.subList(start + 1, end),
+                    values.subList(start + 1, end), fitter);
+
+            if(edge == null){
+                return null;
+            }
+            else if(edge.size() > 1){
+                edges.add(edge);
+            }
+
+            start = end < codes.size() ? end : -1;
+        }
+
+        ArrayList<double[]> points = new ArrayList<double[]>();
+
+        for(int k = 0; k < edges.size(); k++){
+            ArrayList<double[]> edge = edges.get(k);
+
+            if(k == 0 && edges.size() > 1){
+                //The first edge ends at the second edge
+                ArrayList<double[]> next = edges.get(1);
+
+                if(getGap(edge.get(0), next)
+                        < getGap(edge.get(edge.size() - 1), next)){
+                    edge = getReversed(edge);
+                }
+            }
+            else if(k > 0){
+                double[] last = points.remove(points.size() - 1);
+
+                if(getDistance(last, edge.get(edge.size() - 1))
+                        < getDistance(last, edge.get(0))){
+                    edge = getReversed(edge);
+                }
+            }
+
+            points.addAll(edge);
+        }
+
+        return points;
+    }
+
+    /**
+     * Returns the points of an edge of a loop, from its start to its end.
+     *
+     * @param type      The "72" type of the edge
+     * @param codes     The codes of the edge after its type
+     * @param values    The values of those codes
+     * @return          The points, null if the edge cannot be read
+     */
+    private static ArrayList<double[]> getEdge(int type, List<Integer> codes,
+            List<Double> values, CurveFitter fitter){
+        ArrayList<double[]> points = new ArrayList<double[]>();
+
+        //Clockwise arcs are stored with their angles mirrored
+        double direction = getValue(codes, values, 73, 1) != 0 ? 1 : -1;
+
+        switch(type){
+            case LINE_EDGE:
+                points.add(new double[]{getValue(codes, values, 10, 0),
+                        getValue(codes, values, 20, 0), 0});
+                points.add(new double[]{getValue(codes, values, 11, 0),
+                        getValue(codes, values, 21, 0), 0});
+                return points;
+            case ARC_EDGE: {
+                double xCenter = getValue(codes, values, 10, 0);
+                double yCenter = getValue(codes, values, 20, 0);
+                double radius = getValue(codes, values, 40, 0);
+                double startAngle = getValue(codes, values, 50, 0);
+                double sweep = getValue(codes, values, 51, 360) - startAngle;
+
+                //An arc from 0 to 360 degrees is a whole circle
+                while(sweep <= 0){
+                    sweep += 360;
+                }
+                while(sweep > 360){
+                    sweep -= 360;
+                }
+
+                //The arc is split in two, since a whole circle has no bulge
+                double bulge = direction * Math.tan(Math.toRadians(sweep) / 8);
+
+                for(int k = 0; k < 3; k++){
+                    double angle = Math.toRadians(direction
+                            * (startAngle + sweep * k / 2));
+                    points.add(new double[]{
+                            xCenter + radius * Math.cos(angle),
+                            yCenter + radius * Math.sin(angle),
+                            k < 2 ? bulge : 0});
+                }
+
+                return radius > 0 ? points : null;
+            }
+            case ELLIPSE_EDGE: {
+                double ratio = getValue(codes, values, 40, 0);
+                double startAngle = getValue(codes, values, 50, 0);
+                double endAngle = getValue(codes, values, 51, 360);
+                double startParameter = getParameter(startAngle, ratio);
+                double endParameter = endAngle - startAngle >= 360
+                        ? startParameter + 2 * Math.PI
+                        : getParameter(endAngle, ratio);
+
+                //A clockwise arc is a counterclockwise arc drawn backwards
+                Ellipse ellipse = new Ellipse(getValue(codes, values, 10, 0),
+                        getValue(codes, values, 20, 0),
+                        getValue(codes, values, 11, 0),
+                        getValue(codes, values, 21, 0), ratio,
+                        direction > 0 ? startParameter : -endParameter,
+                        direction > 0 ? endParameter : -startParameter);
+
+                if(ellipse.isValid() == false){
+                    return null;
+                }
+
+                points = ellipse.getPoints(fitter);
+                return direction > 0 ? points : getReversed(points);
+            }
+            case SPLINE_EDGE: {
+                ArrayList<Double> knots = new ArrayList<Double>();
+                ArrayList<Double> weights = new ArrayList<Double>();
+                ArrayList<double[]> controlPoints = new ArrayList<double[]>();
+
+                for(int k = 0; k < codes.size(); k++){
+                    int code = codes.get(k);
+
+                    if(code == 10){
+                        controlPoints.add(new double[]{values.get(k), 0});
+                    }
+                    else if(code == 20 && controlPoints.isEmpty() == false){
+                        controlPoints.get(controlPoints.size() - 1)[1]
+                                = values.get(k);
+                    }
+                    else if(code == 40){
+                        knots.add(values.get(k));
+                    }
+                    else if(code == 42){
+                        weights.add(values.get(k));
+                    }
+                }
+
+                Spline spline = new Spline(
+                        (int)getValue(codes, values, 94, 3), knots, weights,
+                        controlPoints);
+
+                return spline.isValid() && controlPoints.isEmpty() == false
+                        ? spline.getPoints(fitter) : null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the value of the first code of an edge that is equal to a
+     * code, or a default value if the edge does not have the code.
+     */
+    private static double getValue(List<Integer> codes, List<Double> values,
+            int code, double defaultValue){
+        int k = codes.indexOf(code);
+        return k >= 0 ? values.get(k) : defaultValue;
+    }
+
+    /**
+     * Converts an angle of an elliptic arc to the parameter of the ellipse
+     * at that angle.
+     *
+     * @param angle     The angle from the major axis, in degrees
+     * @param ratio     The ratio of the minor axis to the major axis
+     */
+    private static double getParameter(double angle, double ratio){
+        double radians = Math.toRadians(angle);
+        return Math.atan2(Math.sin(radians) / ratio, Math.cos(radians));
+    }
+
+    /**
+     * Returns the points of an edge from its end to its start. The bulge of
+     * each point belongs to the segment that starts at it, so the bulges
+     * move by one point and change sign.
+     */
+    private static ArrayList<double[]> getReversed(ArrayList<double[]> points){
+        ArrayList<double[]> reversed = new ArrayList<double[]>();
+
+        for(int k = points.size() - 1; k >= 0; k--){
+            double[] point = points.get(k);
+            reversed.add(new double[]{point[0], point[1],
+                    k > 0 ? -points.get(k - 1)[2] : 0});
+        }
+
+        return reversed;
+    }
+
+    /**
+     * Returns the distance from a point to the nearest end of an edge.
+     */
+    private static double getGap(double[] point, ArrayList<double[]> edge){
+        return Math.min(getDistance(point, edge.get(0)),
+                getDistance(point, edge.get(edge.size() - 1)));
+    }
+
+    private static double getDistance(double[] first, double[] second){
+        return Math.hypot(second[0] - first[0], second[1] - first[1]);
+    }
+
+    /**
+     * Returns points along a closed loop, with points along its arcs, to
+     * check which loops are inside of it.
+     */
+    private static ArrayList<double[]> getOutline(ArrayList<double[]> points){
+        ArrayList<double[]> outline = new ArrayList<double[]>();
+
+        for(int k = 0; k < points.size(); k++){
+            double[] first = points.get(k);
+            double[] second = points.get((k + 1) % points.size());
+            outline.add(first);
+
+            double[] arc = getArc(first, second);
+
+            if(arc == null){
+                continue;
+            }
+
+            for(int m = 1; m <= ARC_SAMPLES; m++){
+                outline.add(getArcPoint(arc, arc[4] * m / (ARC_SAMPLES + 1)));
+            }
+        }
+
+        return outline;
+    }
+
+    /**
+     * Returns the arc from a point of a loop to the next point, as its 
+     * center x and y, radius, start angle and sweep angle (negative for a
+     * clockwise arc), or null if the segment is a line.
+     */
+    private static double[] getArc(double[] first, double[] second){
+        double chord = getDistance(first, second);
+
+        if(first[2] == 0 || chord == 0){
+            return null;
+        }
+
+        //The center of the arc, as in Polyline
+        double angle = 4 * Math.atan(first[2]);
+        double distance = chord / (2 * Math.tan(angle / 2));
+        double xCenter = (first[0] + second[0]) / 2
+                - (second[1] - first[1]) / chord * distance;
+        double yCenter = (first[1] + second[1]) / 2
+                + (second[0] - first[0]) / chord * distance;
+        double radius = Math.hypot(first[0] - xCenter, first[1] - yCenter);
+        double startAngle = Math.atan2(first[1] - yCenter,
+                first[0] - xCenter);
+
+        return new double[]{xCenter, yCenter, radius, startAngle, angle};
+    }
+
+    /**
+     * Returns the point of an arc at an angle from its start.
+     */
+    private static double[] getArcPoint(double[] arc, double angle){
+        return new double[]{arc[0] + arc[2] * Math.cos(arc[3] + angle),
+                arc[1] + arc[2] * Math.sin(arc[3] + angle)};
+    }
+
+    /**
+     * Returns the angle from the start of an arc to a point on it, in the
+     * direction of the arc, or NaN if the point is not on the arc.
+     */
+    private static double getArcAngle(double[] arc, double x, double y){
+        double angle = Math.atan2(y - arc[1], x - arc[0]) - arc[3];
+
+        if(arc[4] < 0){
+            angle = -angle;
+        }
+
+        angle -= 2 * Math.PI * Math.floor(angle / (2 * Math.PI));
+        return angle <= Math.abs(arc[4]) ? Math.copySign(angle, arc[4])
+                : Double.NaN;
+    }
+
+    /**
+     * Returns the bulges of the two parts of a segment of a loop that is
+     * split at a point on it.
+     */
+    private static double[] getSplitBulges(double[] first, double[] second,
+            double[] point){
+        double[] arc = getArc(first, second);
+
+        if(arc == null){
+            return new double[]{0, 0};
+        }
+
+        double angle = getArcAngle(arc, point[0], point[1]);
+
+        if(Double.isNaN(angle)){
+            angle = arc[4] / 2;
+        }
+
+        return new double[]{Math.tan(angle / 4),
+                Math.tan((arc[4] - angle) / 4)};
+    }
+
+    /**
+     * Returns the signed area of an outline, which is positive if it goes
+     * counterclockwise.
+     */
+    private static double getArea(ArrayList<double[]> outline){
+        double area = 0;
+
+        for(int k = 0; k < outline.size(); k++){
+            double[] first = outline.get(k);
+            double[] second = outline.get((k + 1) % outline.size());
+            area += first[0] * second[1] - second[0] * first[1];
+        }
+
+        return area / 2;
+    }
+
+    /**
+     * Returns a copy of the points of a hole that starts at its rightmost
+     * point. An arc that reaches further right than all of the points is 
+     * split at its rightmost point. An arc whose rightmost point is one of
+     * its ends is not split, which would leave a piece with no length.
+     */
+    private static ArrayList<double[]> getRightmostStart(
+            ArrayList<double[]> hole){
+        int rightmost = 0;
+        double[] split = null;
+        double maxX = Double.NEGATIVE_INFINITY;
+
+        for(int k = 0; k < hole.size(); k++){
+            if(hole.get(k)[0] > maxX){
+                maxX = hole.get(k)[0];
+                rightmost = k;
+            }
+        }
+
+        for(int k = 0; k < hole.size(); k++){
+            double[] arc = getArc(hole.get(k),
+                    hole.get((k + 1) % hole.size()));
+
+            if(arc != null && arc[0] + arc[2] > maxX + POINT_TOLERANCE
+                    && Double.isNaN(getArcAngle(arc, arc[0] + arc[2], 
+                    arc[1])) == false){
+                maxX = arc[0] + arc[2];
+                rightmost = k;
+                split = new double[]{maxX, arc[1], 0};
+            }
+        }
+
+        ArrayList<double[]> points = new ArrayList<double[]>();
+
+        for(int m = 0; m < hole.size(); m++){
+            points.add(hole.get((rightmost + m) % hole.size()).clone());
+        }
+
+        if(split != null){
+            double[] bulges = getSplitBulges(points.get(0),
+                    points.get(1 % points.size()), split);
+            points.get(0)[2] = bulges[0];
+            split[2] = bulges[1];
+            points.add(points.remove(0));
+            points.add(0, split);
+        }
+
+        return points;
+    }
+
+    /**
+     * Returns the x position where a ray from a point to the right crosses
+     * a segment of a loop, or infinity if it does not cross it.
+     */
+    private static double getCrossing(double[] first, double[] second,
+            double[] point){
+        double[] arc = getArc(first, second);
+        double nearestX = Double.POSITIVE_INFINITY;
+
+        if(arc == null){
+            if((first[1] > point[1]) != (second[1] > point[1])){
+                double x = first[0] + (point[1] - first[1])
+                        * (second[0] - first[0]) / (second[1] - first[1]);
+
+                if(x > point[0]){
+                    nearestX = x;
+                }
+            }
+
+            return nearestX;
+        }
+
+        double height = point[1] - arc[1];
+
+        if(Math.abs(height) > arc[2]){
+            return nearestX;
+        }
+
+        double width = Math.sqrt(arc[2] * arc[2] - height * height);
+
+        for(double x : new double[]{arc[0] - width, arc[0] + width}){
+            if(x > point[0] && x < nearestX
+                    && Double.isNaN(getArcAngle(arc, x, point[1])) == false){
+                nearestX = x;
+            }
+        }
+
+        return nearestX;
+    }
+
+    /**
+     * Checks if a point is inside of an outline, by counting the sides of
+     * the outline that a ray from the point to the right crosses.
+     */
+    private static boolean isInside(double[] point,
+            ArrayList<double[]> outline){
+        boolean isInside = false;
+
+        for(int k = 0; k < outline.size(); k++){
+            double[] first = outline.get(k);
+            double[] second = outline.get((k + 1) % outline.size());
+
+            if((first[1] > point[1]) != (second[1] > point[1])
+                    && point[0] < first[0] + (point[1] - first[1])
+                    * (second[0] - first[0]) / (second[1] - first[1])){
+                isInside = !isInside;
+            }
+        }
+
+        return isInside;
+    }
+}
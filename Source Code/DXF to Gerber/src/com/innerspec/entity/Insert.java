@@ -0,0 +1,164 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.DxfTokenizer;
+import java.io.IOException;
+
+/**
+ * Holds the data of an INSERT entity, which places a copy of a block. The
+ * block is scaled, rotated and moved to the insertion point. An INSERT with
+ * more than one column or row (the MINSERT of AutoCAD) places a copy of the
+ * block in every cell of a rectangular array, which is rotated with the
+ * block.
+ *
+ * An insert is not written itself, it is replaced by a BlockReference for
+ * every copy of the block and every layer of the block.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Insert {
+    private String blockName;
+    private String layerName;
+
+    private double xPosInsert;
+    private double yPosInsert;
+    private double xScale = 1;
+    private double yScale = 1;
+    private double rotation;
+
+    private int columnCount = 1;
+    private int rowCount = 1;
+    private double columnSpacing;
+    private double rowSpacing;
+
+    private double extrusionDirection = 1;
+
+    /** True if ATTRIB entities and a SEQEND entity follow the insert. */
+    private boolean hasAttributes = false;
+
+    /**
+     * Reads the data of an insert from the DXF file, along with the
+     * attributes that follow it.
+     *
+     * @param scan The DxfTokenizer that is positioned at the start of the
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
+     */
+    public Insert(DxfTokenizer scan) throws IOException {
+        //Reads the group codes of the entity, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            switch(scan.getGroupCode()){
+                case 2:
+                    blockName = scan.getValue();
+                    break;
+                case 8:
+                    layerName = scan.getValue();
+                    break;
+                case 10:
+                    xPosInsert = scan.getDoubleValue();
+                    break;
+                case 20:
+                    yPosInsert = scan.getDoubleValue();
+                    break;
+                case 41:
+                    xScale = scan.getDoubleValue();
+                    break;
+                case 42:
+                    yScale = scan.getDoubleValue();
+                    break;
+                case 44:
+                    columnSpacing = scan.getDoubleValue();
+                    break;
+                case 45:
+                    rowSpacing = scan.getDoubleValue();
+                    break;
+                case 50:
+                    rotation = scan.getDoubleValue();
+                    break;
+                case 66:
+                    hasAttributes = scan.getDoubleValue() != 0;
+                    break;
+                case 70:
+                    columnCount = Math.max(1, (int)scan.getDoubleValue());
+                    break;
+                case 71:
+                    rowCount = Math.max(1, (int)scan.getDoubleValue());
+                    break;
+                case 230:
+                    //The extrusion direction is 1.0 unless the code exists
+                    extrusionDirection = scan.getDoubleValue();
+                    break;
+            }
+        }
+
+        if(hasAttributes){
+            skipAttributes(scan);
+        }
+    }
+
+    /**
+     * Skips the ATTRIB entities that hold the text attributes of the insert,
+     * up to and including their SEQEND entity.
+     */
+    private void skipAttributes(DxfTokenizer scan) throws IOException {
+        boolean isSequenceEnd = false;
+
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                if(isSequenceEnd || (scan.valueEquals("ATTRIB") == false
+                        && scan.valueEquals("SEQEND") == false)){
+                    scan.pushBack();
+                    break;
+                }
+
+                isSequenceEnd = scan.valueEquals("SEQEND");
+            }
+        }
+    }
+
+    public String getBlockName(){
+        return blockName;
+    }
+
+    public String getLayerName(){
+        return layerName;
+    }
+
+    /**
+     * Returns the number of copies of the block placed by the insert.
+     */
+    public int getCopyCount(){
+        return columnCount * rowCount;
+    }
+
+    /**
+     * Returns the transformation that places a copy of the block, for a
+     * block whose base point is at the origin. The copies are numbered by
+     * row, starting from the first column of the first row.
+     *
+     * @param copy  The number of the copy, less than getCopyCount()
+     */
+    public Transform getTransform(int copy){
+        //The array is rotated with the block, but not scaled
+        double xCell = (copy % columnCount) * columnSpacing;
+        double yCell = (copy / columnCount) * rowSpacing;
+        double cos = Math.cos(Math.toRadians(rotation));
+        double sin = Math.sin(Math.toRadians(rotation));
+
+        Transform transform = Transform.getInsertTransform(
+                xPosInsert + cos * xCell - sin * yCell,
+                yPosInsert + sin * xCell + cos * yCell,
+                xScale, yScale, rotation);
+
+        if(extrusionDirection < 0){
+            //Mirrors inserts that face the other way, like arcs
+            transform = transform.then(new Transform(-1, 0, 0, 1, 0, 0));
+        }
+
+        return transform;
+    }
+}
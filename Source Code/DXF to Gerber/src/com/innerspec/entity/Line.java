@@ -1,96 +1,203 @@
 
 package com.innerspec.entity;
 
-import com.innerspec.main.GerberFileManager;
-import com.innerspec.main.LayerManager;
-import com.innerspec.main.Layer;
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.DxfTokenizer;
 import com.innerspec.main.GerberFile;
-import com.innerspec.main.ThicknessManager;
-import java.io.BufferedReader;
+import com.innerspec.main.GerberFormatter;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /** 
  * Handles the processing of single line entities in a Gerber file. 
  * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
-public class Line {
+public class Line extends Entity implements PathSegment {
     private double xPosOne;
     private double yPosOne;
     private double xPosTwo;
     private double yPosTwo;
     
-    private String toolSelect;
+    private GerberFormatter toolSelect;
     private int thicknessCode;
     private GerberFile currentGerberFile;
-    private Layer currentLayer = null;
-    private String currentLayerName;
     
-    private ArrayList<Layer> layers;
-    private ArrayList<GerberFile> gerberFiles;
-    private BufferedReader scan;   
-    
-    public Line(BufferedReader scan){
-        this.scan = scan;
-        
-        gerberFiles = GerberFileManager.getGerberFiles();
-        layers = LayerManager.getLayers();
-    
-        // Searches DXF file for data needed to generate the circle 
-        currentLayerName = fileSearch("  8");
-        xPosOne          = Double.parseDouble(fileSearch(" 10"));
-        yPosOne          = Double.parseDouble(fileSearch(" 20"));
-        xPosTwo          = Double.parseDouble(fileSearch(" 11"));
-        yPosTwo          = Double.parseDouble(fileSearch(" 21"));
-        
-        //Finds the layer and gerber file that this entity is on
-        for(Layer l : layers){
-            if(l.getName().equals(currentLayerName)){
-                currentLayer = l;
-                currentGerberFile = gerberFiles.get(currentLayer.getFileNum());
+    /**
+     * Reads the data of a single line entity from the DXF file. The line is
+     * written to its Gerber file later by write().
+     * 
+     * @param scan The DxfTokenizer that is positioned at the start of the 
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
+     */
+    public Line(DxfTokenizer scan) throws IOException {
+        //Reads the group codes of the entity, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
                 break;
             }
+            
+            switch(scan.getGroupCode()){
+                case 8:
+                    currentLayerName = scan.getValue();
+                    break;
+                case 10:
+                    xPosOne = scan.getDoubleValue();
+                    break;
+                case 20:
+                    yPosOne = scan.getDoubleValue();
+                    break;
+                case 11:
+                    xPosTwo = scan.getDoubleValue();
+                    break;
+                case 21:
+                    yPosTwo = scan.getDoubleValue();
+                    break;
+            }
         }
-        
-        
+    }
+    
+    /**
+     * Creates a line from its points, such as a straight segment of a 
+     * polyline.
+     */
+    Line(double xPosOne, double yPosOne, double xPosTwo, double yPosTwo){
+        this.xPosOne = xPosOne;
+        this.yPosOne = yPosOne;
+        this.xPosTwo = xPosTwo;
+        this.yPosTwo = yPosTwo;
+    }
+    
+    /**
+     * Outputs the line to the Gerber file of its layer.
+     */
+    @Override
+    public void write(ConversionEngine engine){
+        writePath(engine, false, false);
+    }
+    
+    /**
+     * Outputs the line to the Gerber file of its layer, as a move to its 
+     * first point and a draw to the other point, or as a single draw if it
+     * continues a path.
+     */
+    @Override
+    public void writePath(ConversionEngine engine, boolean isReversed, 
+            boolean isContinued){
         //Quits if layer does not exist
-        if(currentLayer == null) {
+        if(currentLayer == null || !currentLayer.isActive()) {
             return;
         }
         
+        currentGerberFile = currentLayer.getGerberFile();
+        
         if(isNegative()){
-            GerberFileManager.addEntityOutOfBounds(0);
+            engine.getGerberFileManager().addEntityOutOfBounds(0);
             return;
         }
         else if(isZeroSize()){
-            GerberFileManager.addZeroLengthEntity(0);
+            engine.getGerberFileManager().addZeroLengthEntity(0);
             return;
         }
 
         //Gets the thickness code of the current layer
-        thicknessCode = 
-                ThicknessManager.getThicknessCode(currentLayer.getThickness());
+        thicknessCode = currentLayer.getThicknessCode();
 
         toolSelect = getToolSelect();
         if (toolSelect != null) currentGerberFile.addOutputln(toolSelect);
         
-        currentGerberFile.addOutputln(getStartPos());
-        currentGerberFile.addOutputln(getEndPos());
+        if(isContinued){
+            //The mode is set again, since the path may continue from an arc
+            currentGerberFile.addOutputln(currentGerberFile.getFormatter()
+                    .formatCommand("G01", 
+                            isReversed ? getStartX() : getEndX(), 
+                            isReversed ? getStartY() : getEndY(), "D01*", 0));
+        }
+        else if(isReversed){
+            currentGerberFile.addOutputln(currentGerberFile.getFormatter()
+                    .formatCommand("G01", getEndX(), getEndY(), "D02*", 0));
+            currentGerberFile.addOutputln(currentGerberFile.getFormatter()
+                    .formatCommand("", getStartX(), getStartY(), "D01*", 0));
+        }
+        else {
+            currentGerberFile.addOutputln(getStartPos());
+            currentGerberFile.addOutputln(getEndPos());
+        }
         
         currentGerberFile.addEntity();
     }
     
+    @Override
+    public int getStartX(){
+        return (int)(xPosOne * 100000);
+    }
+    
+    @Override
+    public int getStartY(){
+        return (int)(yPosOne * 100000);
+    }
+    
+    @Override
+    public int getEndX(){
+        return (int)(xPosTwo * 100000);
+    }
+    
+    @Override
+    public int getEndY(){
+        return (int)(yPosTwo * 100000);
+    }
+    
+    @Override
+    public boolean isWritable(){
+        return currentLayer != null && currentLayer.isActive() 
+                && isNegative() == false && isZeroSize() == false;
+    }
+    
+    @Override
+    public int getApertureCode(ConversionEngine engine){
+        return currentLayer.getThicknessCode();
+    }
+    
+    @Override
+    public double getMinX(){
+        return Math.min(xPosOne, xPosTwo);
+    }
+    
+    @Override
+    public double getMinY(){
+        return Math.min(yPosOne, yPosTwo);
+    }
+    
+    @Override
+    public void translate(double dx, double dy){
+        xPosOne += dx;
+        yPosOne += dy;
+        xPosTwo += dx;
+        yPosTwo += dy;
+    }
+
+    @Override
+    public Entity transform(Transform transform, CurveFitter fitter){
+        Line line = new Line(transform.getX(xPosOne, yPosOne),
+                transform.getY(xPosOne, yPosOne),
+                transform.getX(xPosTwo, yPosTwo),
+                transform.getY(xPosTwo, yPosTwo));
+        line.currentLayerName = currentLayerName;
+        return line;
+    }
+
     /**
      * Returns the tool used to write the entity. If the tool is the same as the
      * previous tool, then there is no need to change. If the tool does need to
      * change then the aperture heading is referenced to find the number of the
      * tool with the correct thickness.
      * 
-     * @return A string with the thickness code that can be output to the file,
-     *         null if the thickness code is already active.
+     * @return The formatter holding the tool select command that can be 
+     *         output to the file, null if the thickness code is already 
+     *         active.
      */
-    private String getToolSelect(){
+    private GerberFormatter getToolSelect(){
     
         //Prints tool select
         if(currentGerberFile.getOldThicknessCode() != 0 
@@ -99,57 +206,25 @@ public class Line {
         }
         else {
             currentGerberFile.setOldThicknessCode(thicknessCode);
-            return "G54D" + thicknessCode + "*";
+            return currentGerberFile.getFormatter()
+                    .formatToolSelect(thicknessCode);
         }
     }
     
     /**
      * Returns the start position of the line.
      */    
-    private String getStartPos(){
-        return "G01X" + (int)(xPosOne * 100000) 
-                + "Y" + (int)(yPosOne * 100000) + "D02*";
+    private GerberFormatter getStartPos(){
+        return currentGerberFile.getFormatter().formatCommand("G01", 
+                getStartX(), getStartY(), "D02*", 0);
     }
     
     /**
      * Returns the end position of the line.
      */
-    private String getEndPos(){
-        return "X" + (int)(xPosTwo * 100000) 
-             + "Y" + (int)(yPosTwo * 100000) + "D01*";
-    }
-    
-    /**
-     * Searches the DXF file for a Search Code. Once this code is reached the
-     * next line is returned unless another entity or the end of the section 
-     * is reached. 
-     * 
-     * @param searchCode The DXF code that signals an element of the DXF file or
-     *                   entity. The code index can be found in many places such
-     *                   as http://www.autodesk.com/techpubs/autocad/acad2000/
-     *                   dxf/group_codes_in_numerical_order_dxf_01.htm
-     * 
-     * @return The line proceeding the search code, or null if the code is not
-     *         found.
-     */
-    private String fileSearch(String searchCode){
-        //Search for searchCode
-        String readLine;
-        
-        try {
-            while((readLine = scan.readLine()) != null){                
-                if(readLine.equals(searchCode)){
-                    return scan.readLine();
-                }
-                else if(readLine.equals("ENDSEC") || readLine.equals("  0")){
-                    break;
-                }
-            }
-        } catch(IOException e){
-            e.printStackTrace();
-        }
-        
-        return null;
+    private GerberFormatter getEndPos(){
+        return currentGerberFile.getFormatter().formatCommand("", 
+                getEndX(), getEndY(), "D01*", 0);
     }
     
     /** 
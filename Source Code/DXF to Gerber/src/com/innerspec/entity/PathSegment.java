@@ -0,0 +1,49 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.Layer;
+
+/**
+ * An entity that draws an open path from a start point to an end point, such
+ * as a line or an arc. Segments on the same layer whose ends touch can be
+ * written as one continuous path, so that the pen is only lifted (D02) once
+ * for the whole path instead of once per segment.
+ *
+ * The points are given in Gerber units, the same integer coordinates that are
+ * written to the Gerber file.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public interface PathSegment {
+    int getStartX();
+
+    int getStartY();
+
+    int getEndX();
+
+    int getEndY();
+
+    /**
+     * Returns the layer the segment is drawn on.
+     */
+    Layer getLayer();
+
+    /**
+     * Checks if the segment is written when write() is called: its layer is
+     * active and it is neither out of bounds nor of zero size. Only such
+     * segments can be part of a path.
+     */
+    boolean isWritable();
+
+    /**
+     * Writes the segment as part of a path.
+     *
+     * @param engine        The conversion that holds the Gerber files
+     * @param isReversed    True to draw the segment from its end point to its
+     *                      start point
+     * @param isContinued   True if the pen is already at the first point of
+     *                      the segment, so no D02 move is written
+     */
+    void writePath(ConversionEngine engine, boolean isReversed,
+            boolean isContinued);
+}
@@ -0,0 +1,458 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.DxfTokenizer;
+import com.innerspec.main.Layer;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Handles the processing of polyline entities in a Gerber file, both the
+ * LWPOLYLINE entity and the older POLYLINE entity that is followed by a
+ * VERTEX entity for each of its points and a SEQEND entity.
+ *
+ * Each segment between two points is a straight line, or an arc if the bulge
+ * of its first point is not 0. The bulge is the tangent of a quarter of the
+ * angle of the arc, and is negative if the arc goes clockwise. The segments
+ * are kept as Line and Arc entities and the polyline is written as one
+ * continuous path, with a single move to its first point.
+ *
+ * The widths of the polyline are ignored, like the widths of other entities
+ * the polyline is drawn with the thickness of its layer.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Polyline extends Entity implements PathSegment {
+    /** The "70" flag of a polyline that is closed. */
+    private static final int CLOSED = 1;
+
+    /** The "70" flags of POLYLINE entities that hold meshes. */
+    private static final int MESH = 16 | 64;
+
+    /** The "70" flags of VERTEX entities that are not points of the path. */
+    private static final int CONTROL_POINT = 16 | 128;
+
+    /** The lines and arcs of the polyline, in the order they are drawn. */
+    private Entity[] segments;
+
+    /** True for the arcs that are drawn clockwise, from their end point. */
+    private boolean[] isSegmentReversed;
+
+    /**
+     * The counter the polyline is counted in when it is left out, which is
+     * the counter of the curve for the lines and arcs of a Curve.
+     */
+    int entityType = 3;
+
+    private ArrayList<double[]> points = new ArrayList<double[]>();
+    private int flags = 0;
+    private double extrusionDirection = 1;
+
+    /**
+     * Reads the data of a polyline from the DXF file. The polyline is
+     * written to its Gerber file later by write().
+     *
+     * @param scan          The DxfTokenizer that is positioned at the start
+     *                      of the entity. It is left at the "0" code of the
+     *                      next entity.
+     * @param isLightweight True for an LWPOLYLINE, which holds its points,
+     *                      false for a POLYLINE, which is followed by them
+     * @throws IOException  Error reading file.
+     */
+    public Polyline(DxfTokenizer scan, boolean isLightweight)
+            throws IOException {
+        readCodes(scan, isLightweight);
+
+        if(isLightweight == false){
+            readVertices(scan);
+        }
+
+        setSegments();
+
+        //The points are only needed to create the segments
+        points = null;
+    }
+
+    /**
+     * Creates a polyline from its segments, such as the lines of a curve or
+     * a polyline placed by a transformation.
+     *
+     * @param segments          The lines and arcs in the order they are drawn
+     * @param isSegmentReversed True for the arcs that are drawn clockwise
+     */
+    Polyline(Entity[] segments, boolean[] isSegmentReversed){
+        this.segments = segments;
+        this.isSegmentReversed = isSegmentReversed;
+        this.points = null;
+    }
+
+    /**
+     * Creates a polyline from its points, such as the boundary of a hatch or
+     * the corners of a solid.
+     *
+     * @param points    The x, y and bulge of each point
+     * @param isClosed  True to add a segment from the last point to the
+     *                  first
+     */
+    Polyline(ArrayList<double[]> points, boolean isClosed){
+        this.points = points;
+        this.flags = isClosed ? CLOSED : 0;
+
+        setSegments();
+        this.points = null;
+    }
+
+    /**
+     * Reads the group codes of the entity, in any order. Every "10" code of
+     * an LWPOLYLINE starts a new point, the "20" and "42" codes that follow
+     * it belong to that point.
+     */
+    private void readCodes(DxfTokenizer scan, boolean isLightweight)
+            throws IOException {
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            switch(scan.getGroupCode()){
+                case 8:
+                    currentLayerName = scan.getValue();
+                    break;
+                case 10:
+                    if(isLightweight){
+                        points.add(new double[]{scan.getDoubleValue(), 0, 0});
+                    }
+                    break;
+                case 20:
+                    if(isLightweight && points.isEmpty() == false){
+                        points.get(points.size() - 1)[1]
+                                = scan.getDoubleValue();
+                    }
+                    break;
+                case 42:
+                    if(isLightweight && points.isEmpty() == false){
+                        points.get(points.size() - 1)[2]
+                                = scan.getDoubleValue();
+                    }
+                    break;
+                case 70:
+                    flags = (int)scan.getDoubleValue();
+                    break;
+                case 230:
+                    //The extrusion direction is 1.0 unless the code exists
+                    extrusionDirection = scan.getDoubleValue();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads the VERTEX entities that follow a POLYLINE, up to and including
+     * its SEQEND entity.
+     */
+    private void readVertices(DxfTokenizer scan) throws IOException {
+        while(scan.next()){
+            if(scan.valueEquals("VERTEX")){
+                double[] point = new double[3];
+                int vertexFlags = 0;
+
+                while(scan.next()){
+                    if(scan.getGroupCode() == 0){
+                        scan.pushBack();
+                        break;
+                    }
+
+                    switch(scan.getGroupCode()){
+                        case 10:
+                            point[0] = scan.getDoubleValue();
+                            break;
+                        case 20:
+                            point[1] = scan.getDoubleValue();
+                            break;
+                        case 42:
+                            point[2] = scan.getDoubleValue();
+                            break;
+                        case 70:
+                            vertexFlags = (int)scan.getDoubleValue();
+                            break;
+                    }
+                }
+
+                if((vertexFlags & CONTROL_POINT) == 0){
+                    points.add(point);
+                }
+            }
+            else if(scan.valueEquals("SEQEND")){
+                //Skips the codes of the SEQEND entity
+                while(scan.next()){
+                    if(scan.getGroupCode() == 0){
+                        scan.pushBack();
+                        break;
+                    }
+                }
+
+                break;
+            }
+            else {
+                //The polyline ends without a SEQEND entity
+                scan.pushBack();
+                break;
+            }
+        }
+
+        if((flags & MESH) != 0){
+            //Meshes are surfaces, not paths
+            points.clear();
+        }
+    }
+
+    /**
+     * Creates the lines and arcs between the points. Points that are at the
+     * same position as the point before them are skipped.
+     */
+    private void setSegments(){
+        ArrayList<Entity> newSegments = new ArrayList<Entity>();
+        ArrayList<Boolean> newReversed = new ArrayList<Boolean>();
+
+        int count = points.size();
+        int segmentCount = (flags & CLOSED) != 0 ? count : count - 1;
+
+        for(int k = 0; k < segmentCount; k++){
+            double[] first = points.get(k);
+            double[] second = points.get((k + 1) % count);
+
+            //Mirrors the points of polylines that face the other way
+            double x1 = first[0] * extrusionDirection;
+            double y1 = first[1];
+            double x2 = second[0] * extrusionDirection;
+            double y2 = second[1];
+            double bulge = first[2] * extrusionDirection;
+
+            if(x1 == x2 && y1 == y2){
+                continue;
+            }
+
+            if(bulge == 0){
+                newSegments.add(new Line(x1, y1, x2, y2));
+                newReversed.add(false);
+            }
+            else {
+                //The distance from the middle of the chord to the center
+                double chord = Math.hypot(x2 - x1, y2 - y1);
+                double angle = 4 * Math.atan(bulge);
+                double distance = chord / (2 * Math.tan(angle / 2));
+
+                //The center is left of the chord for a counterclockwise arc
+                double xCenter = (x1 + x2) / 2 - (y2 - y1) / chord * distance;
+                double yCenter = (y1 + y2) / 2 + (x2 - x1) / chord * distance;
+
+                if(bulge > 0){
+                    newSegments.add(new Arc(xCenter, yCenter, x1, y1, x2, y2));
+                    newReversed.add(false);
+                }
+                else {
+                    //A clockwise arc is a counterclockwise arc drawn backwards
+                    newSegments.add(new Arc(xCenter, yCenter, x2, y2, x1, y1));
+                    newReversed.add(true);
+                }
+            }
+        }
+
+        segments = newSegments.toArray(new Entity[newSegments.size()]);
+        isSegmentReversed = new boolean[segments.length];
+
+        for(int k = 0; k < segments.length; k++){
+            isSegmentReversed[k] = newReversed.get(k);
+        }
+    }
+
+    /**
+     * Sets the layer of the polyline and of its segments.
+     */
+    @Override
+    public void setLayer(Layer layer){
+        super.setLayer(layer);
+
+        for(Entity segment : segments){
+            segment.setLayer(layer);
+        }
+    }
+
+    /**
+     * Outputs the polyline to the Gerber file of its layer.
+     */
+    @Override
+    public void write(ConversionEngine engine){
+        writePath(engine, false, false);
+    }
+
+    /**
+     * Outputs the polyline to the Gerber file of its layer, as a move to its
+     * first point and a draw along each segment. The move is left out if the
+     * polyline continues a path.
+     *
+     * A segment whose ends are rounded to the same point is left out, 
+     * since it draws nothing and the next segment starts where it ends. 
+     * If the first segment is left out, the move goes to the first segment 
+     * that is written.
+     */
+    @Override
+    public void writePath(ConversionEngine engine, boolean isReversed,
+            boolean isContinued){
+        //Quits if layer does not exist
+        if(currentLayer == null || !currentLayer.isActive()) return;
+
+        if(isNegative()){
+            engine.getGerberFileManager().addEntityOutOfBounds(entityType);
+            return;
+        }
+        else if(isZeroSize()){
+            engine.getGerberFileManager().addZeroLengthEntity(entityType);
+            return;
+        }
+
+        boolean isDrawing = isContinued;
+
+        for(int m = 0; m < segments.length; m++){
+            int k = isReversed ? segments.length - 1 - m : m;
+
+            if(getSegment(k).isWritable()){
+                getSegment(k).writePath(engine,
+                        isSegmentReversed[k] != isReversed, isDrawing);
+                isDrawing = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the lines and arcs of the polyline, in the order they are
+     * drawn. Arcs are drawn from their end point if they go clockwise.
+     */
+    public Entity[] getSegments(){
+        return segments;
+    }
+
+    @Override
+    public int getStartX(){
+        return isSegmentReversed[0] ? getSegment(0).getEndX()
+                : getSegment(0).getStartX();
+    }
+
+    @Override
+    public int getStartY(){
+        return isSegmentReversed[0] ? getSegment(0).getEndY()
+                : getSegment(0).getStartY();
+    }
+
+    @Override
+    public int getEndX(){
+        int last = segments.length - 1;
+        return isSegmentReversed[last] ? getSegment(last).getStartX()
+                : getSegment(last).getEndX();
+    }
+
+    @Override
+    public int getEndY(){
+        int last = segments.length - 1;
+        return isSegmentReversed[last] ? getSegment(last).getStartY()
+                : getSegment(last).getEndY();
+    }
+
+    @Override
+    public boolean isWritable(){
+        return currentLayer != null && currentLayer.isActive()
+                && isNegative() == false && isZeroSize() == false;
+    }
+
+    @Override
+    public int getApertureCode(ConversionEngine engine){
+        return currentLayer.getThicknessCode();
+    }
+
+    @Override
+    public double getMinX(){
+        double minX = Double.POSITIVE_INFINITY;
+
+        for(Entity segment : segments){
+            minX = Math.min(minX, segment.getMinX());
+        }
+
+        return minX;
+    }
+
+    @Override
+    public double getMinY(){
+        double minY = Double.POSITIVE_INFINITY;
+
+        for(Entity segment : segments){
+            minY = Math.min(minY, segment.getMinY());
+        }
+
+        return minY;
+    }
+
+    @Override
+    public void translate(double dx, double dy){
+        for(Entity segment : segments){
+            segment.translate(dx, dy);
+        }
+    }
+
+    /**
+     * Returns a copy of the polyline placed by a transformation. A mirrored
+     * arc segment starts at the other end, so it is drawn the other way. 
+     * This is also true of the lines and arcs a mirrored arc segment turns 
+     * into if the transformation makes it part of an ellipse.
+     */
+    @Override
+    public Entity transform(Transform transform, CurveFitter fitter){
+        Entity[] newSegments = new Entity[segments.length];
+        boolean[] newReversed = new boolean[segments.length];
+
+        for(int k = 0; k < segments.length; k++){
+            newSegments[k] = segments[k].transform(transform, fitter);
+            newReversed[k] = isSegmentReversed[k] != (transform.isMirrored()
+                    && segments[k] instanceof Arc);
+        }
+
+        Polyline polyline = new Polyline(newSegments, newReversed);
+        polyline.currentLayerName = currentLayerName;
+        polyline.entityType = entityType;
+        return polyline;
+    }
+
+    private PathSegment getSegment(int k){
+        return (PathSegment)segments[k];
+    }
+
+    /**
+     * Checks if any segment of the polyline draws in negative coordinates
+     * (which cannot be mapped in the Gerber format).
+     */
+    boolean isNegative(){
+        for(Entity segment : segments){
+            if(segment.getMinX() < 0 || segment.getMinY() < 0){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if none of the segments of the polyline has a size once it is
+     * rounded to Gerber units, such as a polyline with less than two points
+     * or with all of its points at the same position. Only checked for a 
+     * polyline on an active layer that is not negative.
+     */
+    boolean isZeroSize(){
+        for(Entity segment : segments){
+            if(segment.isWritable()){
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,302 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.DxfTokenizer;
+import com.innerspec.main.GerberFile;
+import com.innerspec.main.GerberFormatter;
+import com.innerspec.main.Layer;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Handles the processing of a filled area in a Gerber file, a SOLID entity
+ * or the boundary loops of a HATCH entity (see Hatch). The area is written
+ * as a region (G36/G37) instead of being drawn with the aperture of its
+ * layer, so a filled copper area is a few contours instead of many strokes.
+ *
+ * Each contour is a closed polyline of lines and arcs, and all of them are
+ * written in one G36/G37 block. A contour of a Gerber region is always 
+ * filled, so the holes of a hatch are part of the contour around them, 
+ * joined to it by a cut-in that is drawn once in each direction (see 
+ * Hatch). The polarity of the file is never changed, so a region does not 
+ * erase anything that was written before it.
+ *
+ * The corners of a SOLID are drawn in the order 1, 2, 4, 3, and a SOLID with
+ * three corners repeats its third corner.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Region extends Entity {
+    /** The contours, each with its holes joined in. */
+    private Polyline[] contours;
+
+    /** The counter the region is counted in when it is left out. */
+    private int entityType;
+
+    /**
+     * Reads the data of a SOLID entity from the DXF file. The solid is
+     * written to its Gerber file later by write().
+     *
+     * @param scan The DxfTokenizer that is positioned at the start of the
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
+     */
+    public Region(DxfTokenizer scan) throws IOException {
+        double[] corners = new double[8];
+        boolean hasFourthCorner = false;
+        double extrusionDirection = 1;
+
+        //Reads the group codes of the entity, in any order
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            int code = scan.getGroupCode();
+
+            if(code == 8){
+                currentLayerName = scan.getValue();
+            }
+            else if(code >= 10 && code <= 13){
+                corners[2 * (code - 10)] = scan.getDoubleValue();
+                hasFourthCorner |= code == 13;
+            }
+            else if(code >= 20 && code <= 23){
+                corners[2 * (code - 20) + 1] = scan.getDoubleValue();
+            }
+            else if(code == 230){
+                //The extrusion direction is 1.0 unless the code exists
+                extrusionDirection = scan.getDoubleValue();
+            }
+        }
+
+        if(hasFourthCorner == false){
+            corners[6] = corners[4];
+            corners[7] = corners[5];
+        }
+
+        //The corners in the order they are drawn, without repeated corners
+        ArrayList<double[]> points = new ArrayList<double[]>();
+
+        for(int corner : new int[]{0, 1, 3, 2}){
+            double[] point = {corners[2 * corner] * extrusionDirection,
+                    corners[2 * corner + 1], 0};
+            double[] last = points.isEmpty() ? null
+                    : points.get(points.size() - 1);
+
+            if(last == null || last[0] != point[0] || last[1] != point[1]){
+                points.add(point);
+            }
+        }
+
+        double[] first = points.get(0);
+        double[] last = points.get(points.size() - 1);
+
+        if(points.size() > 1 && first[0] == last[0] && first[1] == last[1]){
+            points.remove(points.size() - 1);
+        }
+
+        if(points.size() < 3){
+            contours = new Polyline[0];
+        }
+        else {
+            contours = new Polyline[]{new Polyline(points, true)};
+        }
+
+        entityType = 8;
+    }
+
+    /**
+     * Creates a region from its contours, such as the loops of a hatch or a
+     * region placed by a transformation.
+     *
+     * @param contours      The closed polylines
+     * @param entityType    The counter of the entity, see
+     *                      GerberFileManager.addEntityOutOfBounds()
+     */
+    Region(Polyline[] contours, int entityType){
+        this.contours = contours;
+        this.entityType = entityType;
+    }
+
+    /**
+     * Sets the layer of the region and of its contours.
+     */
+    @Override
+    public void setLayer(Layer layer){
+        super.setLayer(layer);
+
+        for(Polyline contour : contours){
+            contour.setLayer(layer);
+        }
+    }
+
+    /**
+     * Outputs the region to the Gerber file of its layer. The contours are
+     * written in one G36/G37 block, each from a move to its first point.
+     * A contour whose segments all round to single points is left out, as
+     * are the segments of a contour that do (see Polyline.writePath()).
+     *
+     * The aperture of the layer is selected before the region, since a tool
+     * select is not allowed inside of it.
+     */
+    @Override
+    public void write(ConversionEngine engine){
+        //Quits if layer does not exist
+        if(currentLayer == null || !currentLayer.isActive()) return;
+
+        if(isNegative()){
+            engine.getGerberFileManager().addEntityOutOfBounds(entityType);
+            return;
+        }
+        else if(isZeroSize() || isRoundedAway()){
+            engine.getGerberFileManager().addZeroLengthEntity(entityType);
+            return;
+        }
+
+        GerberFile gerberFile = currentLayer.getGerberFile();
+        GerberFormatter formatter = gerberFile.getFormatter();
+        int thicknessCode = currentLayer.getThicknessCode();
+
+        if(gerberFile.getOldThicknessCode() == 0
+                || gerberFile.getOldThicknessCode() != thicknessCode){
+            gerberFile.setOldThicknessCode(thicknessCode);
+            gerberFile.addOutputln(formatter.formatToolSelect(thicknessCode));
+        }
+
+        gerberFile.startRegion();
+
+        for(Polyline contour : contours){
+            if(contour.isZeroSize()){
+                continue;
+            }
+
+            contour.writePath(engine, false, false);
+
+            //Closes a contour whose ends are rounded apart
+            if(contour.getEndX() != contour.getStartX()
+                    || contour.getEndY() != contour.getStartY()){
+                gerberFile.addOutputln(formatter.formatCommand("G01",
+                        contour.getStartX(), contour.getStartY(), "D01*", 0));
+            }
+        }
+
+        gerberFile.endRegion();
+    }
+
+    @Override
+    public boolean isWritable(){
+        return currentLayer != null && currentLayer.isActive()
+                && isNegative() == false && isZeroSize() == false
+                && isRoundedAway() == false;
+    }
+
+    @Override
+    public int getStartX(){
+        return contours[0].getStartX();
+    }
+
+    @Override
+    public int getStartY(){
+        return contours[0].getStartY();
+    }
+
+    /**
+     * Returns the x position the region ends at, the first point of its last
+     * contour.
+     */
+    @Override
+    public int getEndX(){
+        return contours[contours.length - 1].getStartX();
+    }
+
+    @Override
+    public int getEndY(){
+        return contours[contours.length - 1].getStartY();
+    }
+
+    @Override
+    public int getApertureCode(ConversionEngine engine){
+        return currentLayer.getThicknessCode();
+    }
+
+    @Override
+    public double getMinX(){
+        double minX = Double.POSITIVE_INFINITY;
+
+        for(Polyline contour : contours){
+            minX = Math.min(minX, contour.getMinX());
+        }
+
+        return minX;
+    }
+
+    @Override
+    public double getMinY(){
+        double minY = Double.POSITIVE_INFINITY;
+
+        for(Polyline contour : contours){
+            minY = Math.min(minY, contour.getMinY());
+        }
+
+        return minY;
+    }
+
+    @Override
+    public void translate(double dx, double dy){
+        for(Polyline contour : contours){
+            contour.translate(dx, dy);
+        }
+    }
+
+    @Override
+    public Entity transform(Transform transform, CurveFitter fitter){
+        Polyline[] newContours = new Polyline[contours.length];
+
+        for(int k = 0; k < contours.length; k++){
+            newContours[k] = (Polyline)contours[k].transform(transform, 
+                    fitter);
+        }
+
+        Region region = new Region(newContours, entityType);
+        region.currentLayerName = currentLayerName;
+        return region;
+    }
+
+    /**
+     * Checks if any contour of the region draws in negative coordinates
+     * (which cannot be mapped in the Gerber format).
+     */
+    private boolean isNegative(){
+        for(Polyline contour : contours){
+            if(contour.isNegative()){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if every contour of the region has no size once it is rounded
+     * to Gerber units. Only checked for a region on an active layer.
+     */
+    private boolean isRoundedAway(){
+        for(Polyline contour : contours){
+            if(contour.isZeroSize() == false){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the region has no contours, because its points do not
+     * enclose an area.
+     */
+    public boolean isZeroSize(){
+        return contours.length == 0;
+    }
+}
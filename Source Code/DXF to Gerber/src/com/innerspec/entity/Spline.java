@@ -0,0 +1,294 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.DxfTokenizer;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Holds the data of a SPLINE entity, which is replaced by lines and arcs
+ * (see Curve).
+ *
+ * The spline is a NURBS curve given by its degree, its knots, its control
+ * points and, if it is rational, the weights of the control points. It is
+ * drawn over the knots from the degree to the number of control points, and
+ * the point at a parameter is found with the algorithm of de Boor. A spline
+ * may have a corner at a knot, so the fitted pieces are broken at every
+ * knot.
+ *
+ * A spline that only holds the points it was drawn through (its fit points)
+ * is drawn as lines between those points.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Spline extends Curve {
+    /** The "70" flag of a spline that is closed. */
+    private static final int CLOSED = 1;
+
+    private int flags = 0;
+    private int degree = 3;
+    private ArrayList<Double> knots = new ArrayList<Double>();
+    private ArrayList<Double> weights = new ArrayList<Double>();
+    private ArrayList<double[]> controlPoints = new ArrayList<double[]>();
+    private ArrayList<double[]> fitPoints = new ArrayList<double[]>();
+
+    /**
+     * Reads the data of a spline from the DXF file. Every "10" code starts
+     * a new control point and every "11" code a new fit point, the "20" and
+     * "21" codes that follow them belong to those points.
+     *
+     * @param scan The DxfTokenizer that is positioned at the start of the
+     *             entity. It is left at the "0" code of the next entity.
+     * @throws IOException Error reading file.
+     */
+    public Spline(DxfTokenizer scan) throws IOException {
+        while(scan.next()){
+            if(scan.getGroupCode() == 0){
+                scan.pushBack();
+                break;
+            }
+
+            switch(scan.getGroupCode()){
+                case 8:
+                    layerName = scan.getValue();
+                    break;
+                case 10:
+                    controlPoints.add(new double[]{scan.getDoubleValue(), 0});
+                    break;
+                case 20:
+                    if(controlPoints.isEmpty() == false){
+                        controlPoints.get(controlPoints.size() - 1)[1]
+                                = scan.getDoubleValue();
+                    }
+                    break;
+                case 11:
+                    fitPoints.add(new double[]{scan.getDoubleValue(), 0});
+                    break;
+                case 21:
+                    if(fitPoints.isEmpty() == false){
+                        fitPoints.get(fitPoints.size() - 1)[1]
+                                = scan.getDoubleValue();
+                    }
+                    break;
+                case 40:
+                    knots.add(scan.getDoubleValue());
+                    break;
+                case 41:
+                    weights.add(scan.getDoubleValue());
+                    break;
+                case 70:
+                    flags = (int)scan.getDoubleValue();
+                    break;
+                case 71:
+                    degree = (int)scan.getDoubleValue();
+                    break;
+            }
+        }
+
+        if(hasControlPoints() == false && (flags & CLOSED) != 0
+                && fitPoints.size() > 2){
+            fitPoints.add(fitPoints.get(0).clone());
+        }
+
+        setOrigin();
+    }
+
+    /**
+     * Creates a spline from its data, such as an edge of a hatch boundary.
+     *
+     * @param degree        The degree of the spline
+     * @param knots         The knots
+     * @param weights       The weights of the control points, empty if the
+     *                      spline is not rational
+     * @param controlPoints The x and y of each control point
+     */
+    Spline(int degree, ArrayList<Double> knots, ArrayList<Double> weights,
+            ArrayList<double[]> controlPoints){
+        this.degree = degree;
+        this.knots = knots;
+        this.weights = weights;
+        this.controlPoints = controlPoints;
+
+        setOrigin();
+    }
+
+    /**
+     * Moves the origin to the first point, so that the points are kept
+     * relative to it.
+     */
+    private void setOrigin(){
+        ArrayList<double[]> points = hasControlPoints() ? controlPoints
+                : fitPoints;
+
+        if(points.isEmpty() == false){
+            xOrigin = points.get(0)[0];
+            yOrigin = points.get(0)[1];
+
+            for(double[] point : points){
+                point[0] -= xOrigin;
+                point[1] -= yOrigin;
+            }
+        }
+    }
+
+    /**
+     * Checks if the control points, knots and weights of the spline belong
+     * together, or if it has at least two fit points otherwise.
+     */
+    @Override
+    public boolean isValid(){
+        if(hasControlPoints() == false){
+            return fitPoints.size() > 1;
+        }
+
+        if(degree < 1 || knots.size() != controlPoints.size() + degree + 1){
+            return false;
+        }
+
+        for(int k = 1; k < knots.size(); k++){
+            if(knots.get(k) < knots.get(k - 1)){
+                return false;
+            }
+        }
+
+        if(weights.isEmpty() == false){
+            if(weights.size() != controlPoints.size()){
+                return false;
+            }
+
+            for(double weight : weights){
+                if(weight <= 0){
+                    return false;
+                }
+            }
+        }
+
+        return getStart() < getEnd();
+    }
+
+    @Override
+    int getEntityType(){
+        return 6;
+    }
+
+    @Override
+    double[] getPoint(double parameter){
+        if(hasControlPoints() == false){
+            int k = Math.min((int)parameter, fitPoints.size() - 2);
+            double ratio = parameter - k;
+            double[] first = fitPoints.get(k);
+            double[] second = fitPoints.get(k + 1);
+
+            return new double[]{first[0] + (second[0] - first[0]) * ratio,
+                    first[1] + (second[1] - first[1]) * ratio};
+        }
+
+        //The span of the knots the parameter is in
+        int span = degree;
+        while(span < controlPoints.size() - 1 && knots.get(span + 1)
+                <= parameter && knots.get(span + 1) < getEnd()){
+            span++;
+        }
+
+        //The weighted control points that affect the span
+        double[][] points = new double[degree + 1][];
+
+        for(int j = 0; j <= degree; j++){
+            double[] point = controlPoints.get(span - degree + j);
+            double weight = weights.isEmpty() ? 1
+                    : weights.get(span - degree + j);
+            points[j] = new double[]{point[0] * weight, point[1] * weight,
+                    weight};
+        }
+
+        for(int r = 1; r <= degree; r++){
+            for(int j = degree; j >= r; j--){
+                double left = knots.get(span - degree + j);
+                double right = knots.get(span + 1 + j - r);
+                double alpha = right > left
+                        ? (parameter - left) / (right - left) : 0;
+
+                for(int m = 0; m < 3; m++){
+                    points[j][m] = (1 - alpha) * points[j - 1][m]
+                            + alpha * points[j][m];
+                }
+            }
+        }
+
+        return new double[]{points[degree][0] / points[degree][2],
+                points[degree][1] / points[degree][2]};
+    }
+
+    /**
+     * Breaks the spline at each of its knots, or at each of its fit points
+     * if it has no control points.
+     */
+    @Override
+    double[] getBreaks(){
+        ArrayList<Double> breaks = new ArrayList<Double>();
+
+        if(hasControlPoints() == false){
+            for(int k = 0; k < fitPoints.size(); k++){
+                breaks.add((double)k);
+            }
+        }
+        else {
+            for(int k = degree; k <= controlPoints.size(); k++){
+                if(breaks.isEmpty()
+                        || knots.get(k) > breaks.get(breaks.size() - 1)){
+                    breaks.add(knots.get(k));
+                }
+            }
+        }
+
+        double[] values = new double[breaks.size()];
+
+        for(int k = 0; k < values.length; k++){
+            values[k] = breaks.get(k);
+        }
+
+        return values;
+    }
+
+    @Override
+    String getKey(){
+        StringBuilder key = new StringBuilder("SPLINE,");
+        key.append(hasControlPoints() ? degree : 0).append(';');
+
+        for(double knot : knots){
+            appendKeyValue(key, knot);
+        }
+
+        key.append(';');
+
+        for(double weight : weights){
+            appendKeyValue(key, weight);
+        }
+
+        key.append(';');
+
+        for(double[] point : hasControlPoints() ? controlPoints : fitPoints){
+            appendKeyValue(key, point[0]);
+            appendKeyValue(key, point[1]);
+        }
+
+        return key.toString();
+    }
+
+    private boolean hasControlPoints(){
+        return controlPoints.isEmpty() == false;
+    }
+
+    /**
+     * Returns the knot the spline starts at.
+     */
+    private double getStart(){
+        return knots.get(degree);
+    }
+
+    /**
+     * Returns the knot the spline ends at.
+     */
+    private double getEnd(){
+        return knots.get(controlPoints.size());
+    }
+}
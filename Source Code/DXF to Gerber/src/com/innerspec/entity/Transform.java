@@ -0,0 +1,140 @@
+package com.innerspec.entity;
+
+/**
+ * An affine transformation of the drawing plane, used to place the entities
+ * of a block where it is inserted. A point (x, y) is moved to
+ * <pre>
+ *     x' = a * x + b * y + e
+ *     y' = c * x + d * y + f
+ * </pre>
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class Transform {
+    /** The relative difference below which two scales are the same. */
+    private static final double SCALE_TOLERANCE = 1e-9;
+
+    private final double a;
+    private final double b;
+    private final double c;
+    private final double d;
+    private final double e;
+    private final double f;
+
+    public Transform(double a, double b, double c, double d, double e,
+            double f){
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.e = e;
+        this.f = f;
+    }
+
+    /**
+     * Creates the transformation of an INSERT entity, which scales a point
+     * of its block, rotates it counterclockwise and moves it to the
+     * insertion point.
+     *
+     * @param x         The x position of the insertion point
+     * @param y         The y position of the insertion point
+     * @param xScale    The scale along the x axis of the block
+     * @param yScale    The scale along the y axis of the block
+     * @param rotation  The rotation in degrees
+     */
+    public static Transform getInsertTransform(double x, double y,
+            double xScale, double yScale, double rotation){
+        double cos = Math.cos(Math.toRadians(rotation));
+        double sin = Math.sin(Math.toRadians(rotation));
+
+        return new Transform(cos * xScale, -sin * yScale, sin * xScale,
+                cos * yScale, x, y);
+    }
+
+    /**
+     * Creates a transformation that only moves points.
+     */
+    public static Transform getTranslation(double dx, double dy){
+        return new Transform(1, 0, 0, 1, dx, dy);
+    }
+
+    /**
+     * Returns the transformation that applies this transformation first and
+     * then another one.
+     *
+     * @param outer     The transformation applied second
+     */
+    public Transform then(Transform outer){
+        return new Transform(
+                outer.a * a + outer.b * c, outer.a * b + outer.b * d,
+                outer.c * a + outer.d * c, outer.c * b + outer.d * d,
+                outer.a * e + outer.b * f + outer.e,
+                outer.c * e + outer.d * f + outer.f);
+    }
+
+    /**
+     * Returns the transformation without its translation, so that it keeps
+     * the origin in place.
+     */
+    public Transform getLinearPart(){
+        return new Transform(a, b, c, d, 0, 0);
+    }
+
+    public double getX(double x, double y){
+        return a * x + b * y + e;
+    }
+
+    public double getY(double x, double y){
+        return c * x + d * y + f;
+    }
+
+    /**
+     * Returns the x position the origin is moved to.
+     */
+    public double getXOffset(){
+        return e;
+    }
+
+    public double getYOffset(){
+        return f;
+    }
+
+    /**
+     * Checks if the transformation scales all directions by the same amount,
+     * so that circles stay circles. The transformation may mirror.
+     */
+    public boolean isUniform(){
+        double tolerance = SCALE_TOLERANCE * (Math.abs(a) + Math.abs(b)
+                + Math.abs(c) + Math.abs(d));
+
+        if(isMirrored()){
+            return Math.abs(a + d) <= tolerance && Math.abs(b - c) <= tolerance;
+        }
+
+        return Math.abs(a - d) <= tolerance && Math.abs(b + c) <= tolerance;
+    }
+
+    /**
+     * Checks if the transformation mirrors the drawing, which turns
+     * counterclockwise arcs into clockwise arcs.
+     */
+    public boolean isMirrored(){
+        return a * d - b * c < 0;
+    }
+
+    /**
+     * Returns the factor lengths are scaled by, if the transformation is
+     * uniform.
+     */
+    public double getScale(){
+        return Math.sqrt(Math.abs(a * d - b * c));
+    }
+
+    /**
+     * Returns a key that is equal for transformations with the same linear
+     * part, that is the same rotation, scale and mirroring.
+     */
+    String getLinearKey(){
+        return a + "," + b + "," + c + "," + d;
+    }
+}
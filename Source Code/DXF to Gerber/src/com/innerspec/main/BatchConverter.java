@@ -0,0 +1,321 @@
+package com.innerspec.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts many dxf files in one run of the command line converter. The files
+ * are handed to a fixed number of worker threads, each of which converts its
+ * file with a ConversionEngine of its own. The counters of every file are 
+ * added to a combined summary that is printed with the throughput of the 
+ * batch. The metrics report of each converted file can be written to a file
+ * as well, one line per file in the order the files finish.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class BatchConverter {
+    /** Held while the summary is changed. */
+    private final Object summaryLock = new Object();
+
+    /** Provides the layer settings and the overwrite policy. */
+    private CommandLineConverter settings;
+
+    private int threadCount;
+
+    private int convertedFiles = 0;
+    private int failedFiles = 0;
+    private long entityQuantity = 0;
+
+    private LinkedHashMap<String, Integer> otherEntities
+            = new LinkedHashMap<String, Integer>();
+    private int otherEntitiesTotal = 0;
+
+    private int[] entitiesOutOfBounds
+            = new int[GerberFileManager.ENTITY_LABELS.length];
+    private int[] zeroLengthEntities
+            = new int[GerberFileManager.ENTITY_LABELS.length];
+
+    /** Receives the metrics reports, null if they are not written. */
+    private PrintWriter metricsWriter;
+
+    /** Discards the progress of each file; the batch prints a summary. */
+    private static final ProgressListener SILENT_LISTENER
+            = new ProgressListener(){
+        @Override
+        public void addProgressEvent(String eventName, int eventProgress){
+        }
+
+        @Override
+        public void updateProgress(int entitiesWritten, int entityTotal,
+                long bytesWritten){
+        }
+
+        @Override
+        public void setDoneWriting(boolean val){
+        }
+    };
+
+    /**
+     * @param settings      The command line converter holding the layer
+     *                      settings and overwrite policy of the batch
+     * @param threadCount   The number of files converted at the same time
+     */
+    BatchConverter(CommandLineConverter settings, int threadCount){
+        this.settings = settings;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Converts the dxf files and prints one line per file followed by the
+     * summary of the batch.
+     *
+     * @param dxfPaths  The paths of the dxf files
+     * @return          EXIT_SUCCESS, or EXIT_BATCH_ERROR if a file could not
+     *                  be converted
+     */
+    int convert(ArrayList<String> dxfPaths){
+        long startTime = System.nanoTime();
+
+        if(settings.getMetricsPath() != null){
+            try {
+                metricsWriter = new PrintWriter(
+                        new FileWriter(settings.getMetricsPath()));
+            }
+            catch(IOException e){
+                System.err.println("Could not write metrics: "
+                        + e.getMessage());
+                return CommandLineConverter.EXIT_INPUT_ERROR;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(threadCount, dxfPaths.size()));
+        ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+
+        for(final String dxfPath : dxfPaths){
+            results.add(pool.submit(new Callable<String>(){
+                @Override
+                public String call(){
+                    return convertFile(dxfPath);
+                }
+            }));
+        }
+
+        pool.shutdown();
+
+        //Prints the results in the order the files were given
+        for(int k = 0; k < results.size(); k++){
+            try {
+                System.out.println(results.get(k).get());
+            }
+            catch(InterruptedException e){
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                break;
+            }
+            catch(ExecutionException e){
+                e.printStackTrace();
+                System.out.println("FAILED\t" + dxfPaths.get(k));
+
+                synchronized(summaryLock){
+                    failedFiles++;
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        if(metricsWriter != null){
+            metricsWriter.close();
+        }
+
+        synchronized(summaryLock){
+            printSummary(seconds);
+            return failedFiles > 0 ? CommandLineConverter.EXIT_BATCH_ERROR
+                    : CommandLineConverter.EXIT_SUCCESS;
+        }
+    }
+
+    /**
+     * Converts a single file of the batch. Runs on a worker thread.
+     *
+     * @param dxfPath   The path of the dxf file
+     * @return          The result line of the file
+     */
+    private String convertFile(String dxfPath){
+        ArrayList<EntityChunk> chunks;
+        ConversionEngine engine = new ConversionEngine();
+        settings.applyParseSettings(engine);
+        long parseStart = System.nanoTime();
+
+        //Each file is parsed on its worker thread instead of in chunks
+        try {
+            chunks = EntityManager.parseDxfFile(dxfPath, false, 
+                    engine.getCurveFitter());
+        }
+        catch(IOException e){
+            return fail(dxfPath, e.toString());
+        }
+        catch(NumberFormatException e){
+            return fail(dxfPath, e.toString());
+        }
+
+        for(EntityChunk chunk : chunks){
+            if(chunk.error != null){
+                return fail(dxfPath, chunk.error.toString());
+            }
+        }
+
+        engine.getMetrics().addPhaseTime(ConversionMetrics.PARSE,
+                System.nanoTime() - parseStart);
+        engine.getEntityManager().addChunks(dxfPath, chunks);
+        chunks = null;
+
+        ArrayList<Layer> layers = engine.getLayers();
+
+        if(layers.isEmpty()){
+            return fail(dxfPath, "No layers found in file.");
+        }
+
+        settings.applyLayerSettings(layers, false);
+        settings.applyOutputSettings(engine);
+        engine.prepareLayers();
+
+        String policy = settings.getOverwritePolicy();
+
+        if(policy.equals("fail")){
+            for(Layer l : layers){
+                if(new File(l.getFilePath()).exists()){
+                    return fail(dxfPath, l.getFilePath()
+                            + " already exists.");
+                }
+            }
+        }
+
+        engine.setCanOverwriteAll(policy.equals("always"));
+        engine.setOverwritePrompt(settings);
+        engine.startWriting(SILENT_LISTENER);
+
+        String report = engine.getMetrics().getReport();
+
+        synchronized(summaryLock){
+            if(metricsWriter != null){
+                metricsWriter.println(report);
+            }
+
+            return addResult(dxfPath, engine.getGerberFileManager());
+        }
+    }
+
+    /**
+     * Adds the counters of a file that has been written to the summary.
+     * Called while holding the lock.
+     *
+     * @param dxfPath   The path of the dxf file
+     * @param manager   The manager that wrote the Gerber files of the file
+     * @return          The result line of the file
+     */
+    private String addResult(String dxfPath, GerberFileManager manager){
+        int writtenFiles = 0;
+
+        for(Object o : manager.getGerberFiles()){
+            if(((GerberFile)o).canWrite()){
+                writtenFiles++;
+            }
+        }
+
+        int fileEntities = manager.getEntityQuantity();
+
+        convertedFiles++;
+        entityQuantity += fileEntities;
+
+        ArrayList<String> names = manager.getOtherEntities();
+        ArrayList<Integer> quantities = manager.getOtherEntityQuantities();
+
+        for(int k = 0; k < names.size(); k++){
+            Integer total = otherEntities.get(names.get(k));
+            otherEntities.put(names.get(k),
+                    (total == null ? 0 : total) + quantities.get(k));
+            otherEntitiesTotal += quantities.get(k);
+        }
+
+        for(int i = 0; i < entitiesOutOfBounds.length; i++){
+            entitiesOutOfBounds[i] += manager.getEntitiesOutOfBounds()[i];
+            zeroLengthEntities[i] += manager.getZeroLengthEntities()[i];
+        }
+
+        return "OK\t" + dxfPath + "\t" + fileEntities + " Entities, "
+                + writtenFiles + " Gerber File(s)";
+    }
+
+    private String fail(String dxfPath, String reason){
+        synchronized(summaryLock){
+            failedFiles++;
+        }
+
+        return "FAILED\t" + dxfPath + "\t" + reason;
+    }
+
+    private void printSummary(double seconds){
+        System.out.println("\nBatch Complete.");
+        System.out.println(convertedFiles + " Files Converted, "
+                + failedFiles + " Failed in "
+                + String.format("%.2f", seconds) + " s");
+        System.out.println(String.format("%.1f Files/s, %.0f Entities/s",
+                (convertedFiles + failedFiles) / seconds,
+                entityQuantity / seconds));
+        System.out.println(entityQuantity + " Entities Processed");
+
+        if(otherEntities.isEmpty()){
+            System.out.println("\n0 Unsupported Entities Found.");
+        }
+        else {
+            System.out.println("\n" + otherEntitiesTotal
+                    + " Unsupported Entities Found:");
+
+            for(Map.Entry<String, Integer> e : otherEntities.entrySet()){
+                System.out.println("\t" + e.getValue() + " " + e.getKey()
+                        + (e.getValue() == 1 ? " Entity Found"
+                        : " Entities Found"));
+            }
+        }
+
+        printEntityCounts(entitiesOutOfBounds, "Entities Out of Bounds");
+        printEntityCounts(zeroLengthEntities, "Zero Size Entities");
+    }
+
+    /**
+     * Prints the number of entities of each type in a counter, with the 
+     * labels of GerberFileManager.
+     */
+    private void printEntityCounts(int[] counts, String title){
+        int total = 0;
+
+        for(int count : counts){
+            total += count;
+        }
+
+        if(total == 0){
+            System.out.println("\n0 " + title + ".");
+        }
+        else {
+            System.out.println("\n" + total + " " + title + ":");
+
+            for(int i = 0; i < counts.length; i++){
+                System.out.println("\t" + counts[i] + " " 
+                        + GerberFileManager.ENTITY_LABELS[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.Arc;
+import com.innerspec.entity.Block;
+import com.innerspec.entity.Circle;
+import com.innerspec.entity.Curve;
+import com.innerspec.entity.CurveFitter;
+import com.innerspec.entity.Ellipse;
+import com.innerspec.entity.Hatch;
+import com.innerspec.entity.Insert;
+import com.innerspec.entity.Line;
+import com.innerspec.entity.Polyline;
+import com.innerspec.entity.Region;
+import com.innerspec.entity.Spline;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+/**
+ * Holds the blocks of the BLOCKS section of a dxf file by name. The section
+ * comes before the ENTITIES section, so the blocks are read and resolved
+ * before the entities are parsed, and the EntityChunks only read them while
+ * they replace INSERT entities by block references.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class BlockTable {
+    private LinkedHashMap<String, Block> blocks
+            = new LinkedHashMap<String, Block>();
+
+    /** Replaces the ellipses and splines of the blocks by lines and arcs. */
+    private CurveFitter curveFitter;
+
+    /**
+     * @param curveFitter   Fits the ellipses and splines of the dxf file
+     */
+    BlockTable(CurveFitter curveFitter){
+        this.curveFitter = curveFitter;
+    }
+
+    /**
+     * Reads the blocks of the BLOCKS section and resolves them.
+     *
+     * @param scan  The tokenizer positioned after the name of the section.
+     *              It is left after the ENDSEC code of the section.
+     * @throws IOException  Error reading file.
+     */
+    void readBlocks(DxfTokenizer scan) throws IOException {
+        Block block = null;
+
+        while(scan.next()){
+            if(scan.getGroupCode() != 0){
+                continue;
+            }
+
+            if(scan.valueEquals("BLOCK")){
+                block = new Block(scan, curveFitter);
+            }
+            else if(scan.valueEquals("ENDBLK")){
+                if(block != null && block.getName() != null){
+                    blocks.put(block.getName(), block);
+                }
+
+                block = null;
+            }
+            else if(scan.valueEquals("ENDSEC")){
+                break;
+            }
+            else if(scan.valueEquals("EOF")){
+                scan.pushBack();
+                break;
+            }
+            else if(block == null){
+                //Entities outside of a block are not valid
+                continue;
+            }
+            else if(scan.valueEquals("LINE")){
+                block.addEntity(new Line(scan));
+            }
+            else if(scan.valueEquals("CIRCLE")){
+                block.addEntity(new Circle(scan));
+            }
+            else if(scan.valueEquals("ARC")){
+                block.addEntity(new Arc(scan));
+            }
+            else if(scan.valueEquals("LWPOLYLINE")){
+                block.addEntity(new Polyline(scan, true));
+            }
+            else if(scan.valueEquals("POLYLINE")){
+                block.addEntity(new Polyline(scan, false));
+            }
+            else if(scan.valueEquals("INSERT")){
+                block.addInsert(new Insert(scan));
+            }
+            else if(scan.valueEquals("ELLIPSE")){
+                addCurve(block, new Ellipse(scan), "ELLIPSE");
+            }
+            else if(scan.valueEquals("SPLINE")){
+                addCurve(block, new Spline(scan), "SPLINE");
+            }
+            else if(scan.valueEquals("HATCH")){
+                addHatch(block, new Hatch(scan, curveFitter));
+            }
+            else if(scan.valueEquals("SOLID")){
+                addRegion(block, new Region(scan));
+            }
+            else {
+                //Unrecognized entity
+                block.addOtherEntity(scan.getValue());
+            }
+        }
+
+        for(Block b : blocks.values()){
+            b.resolve(blocks);
+        }
+    }
+
+    /**
+     * Adds the lines and arcs of an ellipse or spline to a block, or counts
+     * it as unsupported if its data does not describe a curve.
+     */
+    private void addCurve(Block block, Curve curve, String name){
+        if(curve.isValid()){
+            block.addEntity(curve.getPolyline(curveFitter));
+        }
+        else {
+            block.addOtherEntity(name);
+        }
+    }
+
+    /**
+     * Adds the region of a hatch to a block, or counts it as unsupported if
+     * a boundary edge cannot be read.
+     */
+    private void addHatch(Block block, Hatch hatch){
+        if(hatch.isValid()){
+            addRegion(block, hatch.getRegion());
+        }
+        else {
+            block.addOtherEntity("HATCH");
+        }
+    }
+
+    /**
+     * Adds a region to a block unless it has no area, since the entities of
+     * a block are placed by their smallest position.
+     */
+    private void addRegion(Block block, Region region){
+        if(region.isZeroSize() == false){
+            block.addEntity(region);
+        }
+    }
+
+    /**
+     * @param name  The name of a block
+     * @return      The resolved block, null if the dxf file has no block of
+     *              that name
+     */
+    Block getBlock(String name){
+        return name != null ? blocks.get(name) : null;
+    }
+}
@@ -0,0 +1,587 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.CurveFitter;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Converts a dxf file without any windows, so that the converter can run on
+ * build servers. Layer settings that would be entered in the DataFrame are
+ * given as arguments instead, and the results are printed to the console.
+ * No AWT or Swing classes are loaded.
+ *
+ * Usage:
+ * <pre>
+ * java -cp DXF_to_GBR.jar com.innerspec.main.CommandLineConverter
+ *      [-l LAYER=FILE[,WIDTH][,flash]]... [--skip-unlisted]
+ *      [--overwrite never|always|fail] [--list FILE] [-j THREADS]
+ *      [--chain] [--chain-tolerance INCHES] [--optimize-travel]
+ *      [--multi-quadrant] [--shift-origin] [--step-repeat]
+ *      [--flash-pads] [--curve-tolerance INCHES] [--metrics FILE]
+ *      input.dxf|directory...
+ * </pre>
+ *
+ * Layers without a -l argument use the same defaults as the DataFrame (a
+ * layer named "TOP_5MIL" is written to TOP.gbr with a width of 0.005), unless
+ * --skip-unlisted is given.
+ *
+ * More than one dxf file, a directory of dxf files or a file list (one path 
+ * per line) is converted in batch mode by a BatchConverter.
+ *
+ * With --metrics, the ConversionMetrics report of the conversion is written
+ * to a file, one line of JSON per converted dxf file.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class CommandLineConverter implements ProgressListener, OverwritePrompt {
+    /** The conversion finished. */
+    public static final int EXIT_SUCCESS = 0;
+
+    /** The arguments could not be understood. */
+    public static final int EXIT_USAGE = 1;
+
+    /** The dxf file could not be read or has no layers. */
+    public static final int EXIT_INPUT_ERROR = 2;
+
+    /** A Gerber file already exists and the overwrite policy is "fail". */
+    public static final int EXIT_FILE_EXISTS = 3;
+
+    /** One or more files of a batch could not be converted. */
+    public static final int EXIT_BATCH_ERROR = 4;
+
+    private static final String USAGE =
+            "Usage: CommandLineConverter [-l LAYER=FILE[,WIDTH][,flash]]... "
+            + "[--skip-unlisted]\n"
+            + "                            [--overwrite never|always|fail] "
+            + "[--list FILE] [-j THREADS]\n"
+            + "                            [--chain] [--chain-tolerance "
+            + "INCHES] [--optimize-travel]\n"
+            + "                            [--multi-quadrant] "
+            + "[--shift-origin] [--step-repeat]\n"
+            + "                            [--flash-pads] [--curve-tolerance "
+            + "INCHES]\n"
+            + "                            [--metrics FILE]\n"
+            + "                            input.dxf|directory...\n\n"
+            + "  -l, --layer      Sets the Gerber file name, line width (in "
+            + "inches) and\n"
+            + "                   flash state of a layer. Can be repeated.\n"
+            + "  --skip-unlisted  Only converts the layers given with -l.\n"
+            + "  --overwrite      What to do with existing Gerber files "
+            + "(default: fail).\n"
+            + "  --list           Converts the dxf files listed in FILE, one "
+            + "per line.\n"
+            + "  -j, --threads    The number of files converted at the same "
+            + "time in\n"
+            + "                   batch mode (default: number of "
+            + "processors).\n"
+            + "  --chain          Draws the lines and arcs of a layer whose "
+            + "ends touch as\n"
+            + "                   continuous paths, with one move per path.\n"
+            + "  --chain-tolerance  The distance in inches within which ends "
+            + "touch\n"
+            + "                   (default: 0, the same Gerber coordinates). "
+            + "Implies --chain.\n"
+            + "  --optimize-travel  Groups the entities of each Gerber file "
+            + "by aperture and\n"
+            + "                   orders them by position, to save tool "
+            + "changes and travel.\n"
+            + "  --multi-quadrant  Writes each arc and circle as a single G75 "
+            + "command instead\n"
+            + "                   of quarter circle pieces.\n"
+            + "  --shift-origin   Moves the drawing away from negative "
+            + "coordinates instead\n"
+            + "                   of leaving out the entities drawn there.\n"
+            + "  --step-repeat    Writes blocks inserted on a regular grid "
+            + "once, inside a\n"
+            + "                   step and repeat (%SR) command.\n"
+            + "  --flash-pads     Flashes small closed shapes drawn more than "
+            + "once, such as\n"
+            + "                   rectangular and obround pads, with "
+            + "aperture macros.\n"
+            + "  --curve-tolerance  The largest distance in inches between an "
+            + "ellipse or\n"
+            + "                   spline and the lines and arcs that replace "
+            + "it\n"
+            + "                   (default: 0.0001).\n"
+            + "  --metrics        Writes the timing and counters of each "
+            + "conversion to\n"
+            + "                   FILE, one line of JSON per dxf file.\n";
+
+    private String dxfPath;
+    private String overwritePolicy = "fail";
+    private boolean isSkippingUnlisted = false;
+
+    /** The dxf files and directories given as arguments. */
+    private ArrayList<String> inputPaths = new ArrayList<String>();
+
+    /** The file listing the dxf files of a batch, null if not given. */
+    private String listPath;
+
+    /** The file the metrics reports are written to, null if not given. */
+    private String metricsPath;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    private boolean isChainingPaths = false;
+    private double chainTolerance = 0;
+    private boolean isOptimizingTravel = false;
+    private boolean isMultiQuadrant = false;
+    private boolean isShiftingOrigin = false;
+    private boolean isStepAndRepeat = false;
+    private boolean isFlashingPads = false;
+    private double curveTolerance = CurveFitter.DEFAULT_TOLERANCE;
+
+    /** The layer settings given with -l, by layer name. */
+    private HashMap<String, String[]> layerSettings
+            = new HashMap<String, String[]>();
+
+    /**
+     * Runs a conversion and exits with a status code.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) {
+        System.exit(new CommandLineConverter().run(args));
+    }
+
+    /**
+     * Runs a conversion.
+     *
+     * @param args  The command line arguments
+     * @return      One of the EXIT_ status codes
+     */
+    public int run(String args[]){
+        try {
+            parseArguments(args);
+        }
+        catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        if(listPath != null || inputPaths.size() > 1
+                || new File(inputPaths.get(0)).isDirectory()){
+            ArrayList<String> dxfPaths;
+
+            try {
+                dxfPaths = findDxfFiles();
+            }
+            catch(IOException e){
+                System.err.println("Could not find DXF files: " 
+                        + e.getMessage());
+                return EXIT_INPUT_ERROR;
+            }
+
+            if(dxfPaths.isEmpty()){
+                System.err.println("No DXF files found.");
+                return EXIT_INPUT_ERROR;
+            }
+
+            return new BatchConverter(this, threadCount).convert(dxfPaths);
+        }
+
+        //Gerber files are written next to the dxf file, which needs a folder
+        dxfPath = new File(inputPaths.get(0)).getAbsolutePath();
+
+        if(new File(dxfPath).isFile() == false){
+            System.err.println("DXF file not found: " + dxfPath);
+            return EXIT_INPUT_ERROR;
+        }
+
+        ConversionEngine engine = new ConversionEngine();
+        applyParseSettings(engine);
+        engine.readDxfFile(dxfPath);
+
+        //A partly read file is not converted, its Gerber files would be cut
+        if(engine.getReadError() != null){
+            System.err.println("Could not read " + dxfPath + ": " 
+                    + engine.getReadError());
+            return EXIT_INPUT_ERROR;
+        }
+
+        ArrayList<Layer> layers = engine.getLayers();
+
+        if(layers.isEmpty()){
+            System.err.println("No layers found in file.");
+            return EXIT_INPUT_ERROR;
+        }
+
+        try {
+            applyLayerSettings(layers, true);
+        }
+        catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            return EXIT_USAGE;
+        }
+
+        applyOutputSettings(engine);
+        engine.prepareLayers();
+
+        if(overwritePolicy.equals("fail")){
+            for(Layer l : layers){
+                if(new File(l.getFilePath()).exists()){
+                    System.err.println(l.getFilePath() + " already exists.");
+                    return EXIT_FILE_EXISTS;
+                }
+            }
+        }
+
+        engine.setCanOverwriteAll(overwritePolicy.equals("always"));
+        engine.setOverwritePrompt(this);
+        engine.startWriting(this);
+
+        if(metricsPath != null){
+            try {
+                writeMetrics(engine.getMetrics().getReport());
+            }
+            catch(IOException e){
+                System.err.println("Could not write metrics: " 
+                        + e.getMessage());
+                return EXIT_INPUT_ERROR;
+            }
+        }
+
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Writes a metrics report to the --metrics file, replacing the file.
+     *
+     * @throws IOException  Error writing file.
+     */
+    private void writeMetrics(String report) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(metricsPath));
+
+        try {
+            writer.println(report);
+        }
+        finally {
+            writer.close();
+        }
+
+        if(writer.checkError()){
+            throw new IOException("Cannot write " + metricsPath);
+        }
+    }
+
+    /**
+     * Reads the command line arguments.
+     *
+     * @throws IllegalArgumentException The arguments are not valid.
+     */
+    private void parseArguments(String args[]){
+        for(int k = 0; k < args.length; k++){
+            String arg = args[k];
+
+            if(arg.equals("-l") || arg.equals("--layer")){
+                String setting = nextArgument(args, ++k, arg);
+                int equalsIndex = setting.indexOf('=');
+
+                if(equalsIndex <= 0){
+                    throw new IllegalArgumentException(
+                            "Invalid layer setting: " + setting);
+                }
+
+                layerSettings.put(setting.substring(0, equalsIndex),
+                        setting.substring(equalsIndex + 1).split(","));
+            }
+            else if(arg.equals("--skip-unlisted")){
+                isSkippingUnlisted = true;
+            }
+            else if(arg.equals("--overwrite")){
+                overwritePolicy = nextArgument(args, ++k, arg);
+
+                if(!overwritePolicy.equals("never")
+                        && !overwritePolicy.equals("always")
+                        && !overwritePolicy.equals("fail")){
+                    throw new IllegalArgumentException(
+                            "Invalid overwrite policy: " + overwritePolicy);
+                }
+            }
+            else if(arg.equals("--list")){
+                listPath = nextArgument(args, ++k, arg);
+            }
+            else if(arg.equals("--metrics")){
+                metricsPath = nextArgument(args, ++k, arg);
+            }
+            else if(arg.equals("--chain")){
+                isChainingPaths = true;
+            }
+            else if(arg.equals("--optimize-travel")){
+                isOptimizingTravel = true;
+            }
+            else if(arg.equals("--multi-quadrant")){
+                isMultiQuadrant = true;
+            }
+            else if(arg.equals("--shift-origin")){
+                isShiftingOrigin = true;
+            }
+            else if(arg.equals("--step-repeat")){
+                isStepAndRepeat = true;
+            }
+            else if(arg.equals("--flash-pads")){
+                isFlashingPads = true;
+            }
+            else if(arg.equals("--chain-tolerance")){
+                String tolerance = nextArgument(args, ++k, arg);
+
+                try {
+                    chainTolerance = Double.parseDouble(tolerance);
+                }
+                catch(NumberFormatException e){
+                    chainTolerance = -1;
+                }
+
+                if(chainTolerance < 0){
+                    throw new IllegalArgumentException(
+                            "Invalid chain tolerance: " + tolerance);
+                }
+
+                isChainingPaths = true;
+            }
+            else if(arg.equals("--curve-tolerance")){
+                String tolerance = nextArgument(args, ++k, arg);
+
+                try {
+                    curveTolerance = Double.parseDouble(tolerance);
+                }
+                catch(NumberFormatException e){
+                    curveTolerance = -1;
+                }
+
+                if(curveTolerance <= 0){
+                    throw new IllegalArgumentException(
+                            "Invalid curve tolerance: " + tolerance);
+                }
+            }
+            else if(arg.equals("-j") || arg.equals("--threads")){
+                String threads = nextArgument(args, ++k, arg);
+
+                try {
+                    threadCount = Integer.parseInt(threads);
+                }
+                catch(NumberFormatException e){
+                    threadCount = 0;
+                }
+
+                if(threadCount < 1){
+                    throw new IllegalArgumentException(
+                            "Invalid number of threads: " + threads);
+                }
+            }
+            else if(arg.startsWith("-")){
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            else {
+                inputPaths.add(arg);
+            }
+        }
+
+        if(inputPaths.isEmpty() && listPath == null){
+            throw new IllegalArgumentException("No DXF file given.");
+        }
+    }
+
+    /**
+     * Finds the dxf files of a batch: the files given as arguments, the dxf 
+     * files in the directories given as arguments and their subdirectories 
+     * and the files in the file list.
+     *
+     * The Gerber files of a dxf file are written to its directory, so each 
+     * panel of a batch is normally kept in a directory of its own.
+     *
+     * @throws IOException  A directory or the file list cannot be read.
+     */
+    private ArrayList<String> findDxfFiles() throws IOException {
+        ArrayList<String> dxfPaths = new ArrayList<String>();
+
+        for(String path : inputPaths){
+            File file = new File(path);
+
+            if(file.isDirectory()){
+                addDirectory(file, dxfPaths);
+            }
+            else {
+                dxfPaths.add(file.getAbsolutePath());
+            }
+        }
+
+        if(listPath != null){
+            BufferedReader reader 
+                    = new BufferedReader(new FileReader(listPath));
+
+            try {
+                String line;
+
+                while((line = reader.readLine()) != null){
+                    if(line.trim().length() > 0){
+                        dxfPaths.add(new File(line.trim()).getAbsolutePath());
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+
+        return dxfPaths;
+    }
+
+    /**
+     * Adds the dxf files of a directory and its subdirectories, sorted by 
+     * name.
+     */
+    private void addDirectory(File directory, ArrayList<String> dxfPaths)
+            throws IOException {
+        File[] files = directory.listFiles();
+
+        if(files == null){
+            throw new IOException("Cannot read directory " + directory);
+        }
+
+        Arrays.sort(files);
+
+        for(File f : files){
+            if(f.isDirectory()){
+                addDirectory(f, dxfPaths);
+            }
+            else if(f.getName().toLowerCase().endsWith(".dxf")){
+                dxfPaths.add(f.getAbsolutePath());
+            }
+        }
+    }
+
+    private String nextArgument(String args[], int index, String option){
+        if(index >= args.length){
+            throw new IllegalArgumentException(option + " needs a value.");
+        }
+        return args[index];
+    }
+
+    /**
+     * Sets the file name, thickness and flashed state of each layer from the
+     * -l arguments, or from the layer name if the layer is not listed.
+     *
+     * @param layers    The layers of the dxf file
+     * @param isStrict  True if every listed layer has to exist. The files of
+     *                  a batch do not all have the same layers.
+     * @throws IllegalArgumentException A listed layer does not exist or has
+     *                                  an invalid width.
+     */
+    void applyLayerSettings(ArrayList<Layer> layers, boolean isStrict){
+        HashSet<String> unknownLayers
+                = new HashSet<String>(layerSettings.keySet());
+
+        for(Layer layer : layers){
+            String[] setting = layerSettings.get(layer.getName());
+            unknownLayers.remove(layer.getName());
+
+            layer.setDefaultAttributes();
+
+            if(setting == null){
+                if(isSkippingUnlisted){
+                    layer.setIsActive(false);
+                }
+                continue;
+            }
+
+            layer.setFileName(setting[0]);
+
+            for(int k = 1; k < setting.length; k++){
+                if(setting[k].equalsIgnoreCase("flash")){
+                    layer.setIsFlashed(true);
+                }
+                else {
+                    try {
+                        layer.setThickness(Double.parseDouble(setting[k]));
+                    }
+                    catch(NumberFormatException e){
+                        throw new IllegalArgumentException("Invalid width for "
+                                + "layer " + layer.getName() + ": "
+                                + setting[k]);
+                    }
+                }
+            }
+        }
+
+        if(isStrict && unknownLayers.isEmpty() == false){
+            throw new IllegalArgumentException("Layers not found in file: "
+                    + unknownLayers);
+        }
+    }
+
+    /**
+     * Sets the options of the parsing given as arguments on an engine. 
+     * Called before the dxf file is read.
+     *
+     * @param engine    The conversion of a dxf file
+     */
+    void applyParseSettings(ConversionEngine engine){
+        engine.setCurveTolerance(curveTolerance);
+    }
+
+    /**
+     * Sets the options of the Gerber output given as arguments on an engine.
+     * Called before the layers are prepared, which shifts the origin.
+     *
+     * @param engine    The conversion of a dxf file
+     */
+    void applyOutputSettings(ConversionEngine engine){
+        engine.setIsChainingPaths(isChainingPaths);
+        engine.setChainTolerance(chainTolerance);
+        engine.setIsOptimizingTravel(isOptimizingTravel);
+        engine.setIsMultiQuadrant(isMultiQuadrant);
+        engine.setIsShiftingOrigin(isShiftingOrigin);
+        engine.setIsStepAndRepeat(isStepAndRepeat);
+        engine.setIsFlashingPads(isFlashingPads);
+    }
+
+    /**
+     * @return  "never", "always" or "fail"
+     */
+    String getOverwritePolicy(){
+        return overwritePolicy;
+    }
+
+    /**
+     * @return  The file the metrics reports are written to, or null
+     */
+    String getMetricsPath(){
+        return metricsPath;
+    }
+
+    @Override
+    public void addProgressEvent(String eventName, int eventProgress){
+        System.out.println(eventName);
+    }
+
+    @Override
+    public void updateProgress(int entitiesWritten, int entityTotal,
+            long bytesWritten){
+        //Only the results are printed
+    }
+
+    @Override
+    public void setDoneWriting(boolean val){
+        System.out.println("\nConversion Complete.");
+    }
+
+    /**
+     * Existing files are only reached here with the "never" policy, since
+     * "always" overwrites all files and "fail" stops before writing.
+     */
+    @Override
+    public int confirmOverwrite(String fileName){
+        System.out.println(fileName + " already exists, skipped.");
+        return SKIP;
+    }
+}
@@ -0,0 +1,349 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.CurveFitter;
+import java.util.ArrayList;
+
+/**
+ * Holds the state of a single dxf to Gerber conversion: the entities and
+ * layers of the dxf file, the apertures, the Gerber files and the counters of
+ * the conversion. Each conversion uses its own engine, so several files can be
+ * converted at the same time in one process.
+ *
+ * A conversion is run in three steps:
+ * <pre>
+ * ConversionEngine engine = new ConversionEngine();
+ * engine.readDxfFile(dxfPath);
+ *
+ * //Set the file name, thickness and flashed state of engine.getLayers()
+ *
+ * engine.prepareLayers();
+ * engine.startWriting(listener);
+ * </pre>
+ *
+ * The curve tolerance is the only setting used while the file is read, so
+ * it is set before readDxfFile(). The time spent in each step is recorded in
+ * the ConversionMetrics of the engine.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class ConversionEngine {
+    private EntityManager entityManager = new EntityManager(this);
+    private LayerManager layerManager = new LayerManager(this);
+    private ThicknessManager thicknessManager = new ThicknessManager();
+    private GerberFileManager gerberFileManager = new GerberFileManager(this);
+    private ConversionMetrics metrics = new ConversionMetrics(this);
+
+    /**
+     * Asks whether existing files are overwritten. Existing files are kept
+     * if no prompt is set.
+     */
+    private OverwritePrompt overwritePrompt;
+
+    private boolean canOverwriteAll = false;
+
+    /** True to join touching lines and arcs into paths when writing. */
+    private boolean isChainingPaths = false;
+
+    /** The distance in inches within which the ends of segments touch. */
+    private double chainTolerance = 0;
+
+    /** True to order the entities of each Gerber file to save travel. */
+    private boolean isOptimizingTravel = false;
+
+    /** True to write each arc and circle as a single G75 arc command. */
+    private boolean isMultiQuadrant = false;
+
+    /** True to move the drawing away from negative coordinates. */
+    private boolean isShiftingOrigin = false;
+
+    /** True to write grids of block references with step and repeat. */
+    private boolean isStepAndRepeat = false;
+
+    /** True to flash repeated small closed shapes with aperture macros. */
+    private boolean isFlashingPads = false;
+
+    /** Replaces the ellipses and splines of the dxf file by lines and arcs. */
+    private CurveFitter curveFitter 
+            = new CurveFitter(CurveFitter.DEFAULT_TOLERANCE);
+
+    /** Finds the shapes that are flashed, null if none are. */
+    private PadFinder padFinder;
+
+    /** The distance the entities were moved along x and y, in inches. */
+    private double[] originShift = {0,0};
+
+    /** Set from another thread to stop the conversion. */
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Parses the dxf file for its layers and entities. If the file cannot
+     * be read to its end, getReadError() returns the error and the file 
+     * should not be converted.
+     *
+     * @param dxfPath   The path of the dxf file to convert
+     */
+    public void readDxfFile(String dxfPath){
+        entityManager.readDxfFile(dxfPath);
+    }
+
+    /**
+     * @return  The error that stopped the dxf file from being read, null if
+     *          the whole file was read
+     */
+    public Exception getReadError(){
+        return entityManager.getReadError();
+    }
+
+    /**
+     * Returns the layers of the dxf file, in the order they were found. The
+     * file name, thickness and flashed state of each layer are set before
+     * prepareLayers() is called.
+     *
+     * @return  The layers of the dxf file
+     */
+    public ArrayList<Layer> getLayers(){
+        return layerManager.getLayers();
+    }
+
+    /**
+     * Removes the layers that are not written and adds the apertures of the
+     * remaining layers. Called once the layer attributes are set. If the 
+     * origin is shifted, the entities are moved here. If pads are flashed,
+     * their aperture macros are added last.
+     */
+    public void prepareLayers(){
+        long startTime = System.nanoTime();
+        layerManager.prepareLayers(entityManager.getDxfLocation());
+
+        if(isShiftingOrigin){
+            originShift = layerManager.shiftOrigin();
+        }
+
+        if(isFlashingPads){
+            padFinder = new PadFinder(this);
+            metrics.setPads(padFinder.getApertureCount(), 
+                    padFinder.getFlashCount());
+        }
+        metrics.addPhaseTime(ConversionMetrics.APERTURES,
+                System.nanoTime() - startTime);
+    }
+
+    /**
+     * Creates and writes the Gerber files.
+     *
+     * @param listener  Receives the results of the conversion
+     */
+    public void startWriting(ProgressListener listener){
+        gerberFileManager.startWriting(listener);
+    }
+
+    /**
+     * Asks the conversion to stop. The Gerber files are checked for the 
+     * request at regular intervals while they are written; once it is seen
+     * the partially written files are deleted. Can be called from any thread.
+     */
+    public void cancel(){
+        isCancelled = true;
+    }
+
+    public boolean isCancelled(){
+        return isCancelled;
+    }
+
+    public void setOverwritePrompt(OverwritePrompt prompt){
+        overwritePrompt = prompt;
+    }
+
+    public OverwritePrompt getOverwritePrompt(){
+        return overwritePrompt;
+    }
+
+    /**
+     * @param val   True to overwrite existing Gerber files without asking
+     *              the overwrite prompt
+     */
+    public void setCanOverwriteAll(boolean val){
+        canOverwriteAll = val;
+    }
+
+    public boolean canOverwriteAll(){
+        return canOverwriteAll;
+    }
+
+    /**
+     * @param val   True to write the lines and arcs of a layer whose ends
+     *              touch as continuous paths, with one D02 move per path
+     */
+    public void setIsChainingPaths(boolean val){
+        isChainingPaths = val;
+    }
+
+    public boolean isChainingPaths(){
+        return isChainingPaths;
+    }
+
+    /**
+     * Sets the distance within which the ends of two segments are joined. 
+     * With the default of 0 the ends have to be at the same position in the 
+     * Gerber file, so the drawing does not change.
+     *
+     * @param tolerance     The distance in inches
+     */
+    public void setChainTolerance(double tolerance){
+        chainTolerance = tolerance;
+    }
+
+    public double getChainTolerance(){
+        return chainTolerance;
+    }
+
+    /**
+     * @param val   True to write the entities of each Gerber file grouped by
+     *              aperture and ordered by position, instead of in the order
+     *              of the dxf file
+     */
+    public void setIsOptimizingTravel(boolean val){
+        isOptimizingTravel = val;
+    }
+
+    public boolean isOptimizingTravel(){
+        return isOptimizingTravel;
+    }
+
+    /**
+     * Sets how arcs and circles are written. By default they are cut into
+     * quarter circle pieces, which every plotter reads (single quadrant 
+     * mode, G74). In multi quadrant mode (G75) each arc or circle is written
+     * as one command with signed center offsets, which is shorter and 
+     * faster to write but needs an RS-274X reader.
+     *
+     * @param val   True to write the Gerber files in multi quadrant mode
+     */
+    public void setIsMultiQuadrant(boolean val){
+        isMultiQuadrant = val;
+    }
+
+    public boolean isMultiQuadrant(){
+        return isMultiQuadrant;
+    }
+
+    /**
+     * Sets what happens to entities at negative positions, which cannot be
+     * written in the Gerber format. By default they are left out and 
+     * counted as out of bounds. If the origin is shifted, all entities are
+     * moved by the same distance so that the drawing starts at 0, which 
+     * keeps the layers of the file aligned with each other.
+     *
+     * @param val   True to shift the origin
+     */
+    public void setIsShiftingOrigin(boolean val){
+        isShiftingOrigin = val;
+    }
+
+    public boolean isShiftingOrigin(){
+        return isShiftingOrigin;
+    }
+
+    /**
+     * Sets how blocks inserted on a regular grid are written, such as the
+     * copies of a MINSERT array. By default every copy is written on its
+     * own. With step and repeat, the copy at the lower left of the grid is
+     * written once inside an %SR command, and the plotter repeats it.
+     *
+     * @param val   True to write grids of block references with step and
+     *              repeat
+     */
+    public void setIsStepAndRepeat(boolean val){
+        isStepAndRepeat = val;
+    }
+
+    public boolean isStepAndRepeat(){
+        return isStepAndRepeat;
+    }
+
+    /**
+     * Sets how small closed shapes that are drawn many times are written,
+     * such as rectangular pads drawn as four lines. By default they are 
+     * drawn segment by segment. If pads are flashed, each shape is defined
+     * once as an aperture macro (%AM) in the headers, and every copy is
+     * written as a single flash (D03).
+     *
+     * @param val   True to flash repeated pads
+     */
+    public void setIsFlashingPads(boolean val){
+        isFlashingPads = val;
+    }
+
+    public boolean isFlashingPads(){
+        return isFlashingPads;
+    }
+
+    /**
+     * Sets how closely ellipses and splines are followed by the lines and 
+     * arcs that replace them. A smaller tolerance needs more pieces. Must be
+     * set before the dxf file is read.
+     *
+     * @param tolerance     The largest distance in inches between a curve 
+     *                      and its pieces
+     */
+    public void setCurveTolerance(double tolerance){
+        curveFitter = new CurveFitter(tolerance);
+    }
+
+    public double getCurveTolerance(){
+        return curveFitter.getTolerance();
+    }
+
+    /**
+     * Returns the fitter of the ellipses and splines, which also counts the
+     * curves that were replaced.
+     */
+    CurveFitter getCurveFitter(){
+        return curveFitter;
+    }
+
+    /**
+     * Returns the pads found by prepareLayers(), null if pads are not 
+     * flashed.
+     */
+    PadFinder getPadFinder(){
+        return padFinder;
+    }
+
+    /**
+     * Returns the distance the entities were moved along x and y by 
+     * prepareLayers(), in inches. Both are 0 if the origin is not shifted or
+     * nothing is drawn at a negative position.
+     */
+    public double[] getOriginShift(){
+        return originShift;
+    }
+
+    public String getDxfLocation(){
+        return entityManager.getDxfLocation();
+    }
+
+    public EntityManager getEntityManager(){
+        return entityManager;
+    }
+
+    public LayerManager getLayerManager(){
+        return layerManager;
+    }
+
+    public ThicknessManager getThicknessManager(){
+        return thicknessManager;
+    }
+
+    public GerberFileManager getGerberFileManager(){
+        return gerberFileManager;
+    }
+
+    /**
+     * Returns the timing and counters of the conversion, which are complete
+     * once startWriting() returns.
+     */
+    public ConversionMetrics getMetrics(){
+        return metrics;
+    }
+}
@@ -0,0 +1,492 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.CurveFitter;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Collects the timing and the counters of a conversion, so that a slow
+ * conversion can be traced to the phase that is slow. Every ConversionEngine
+ * has its own metrics, which are filled in while the conversion runs:
+ * <pre>
+ * PARSE        Tokenizing the dxf file, parsing its entities and fitting
+ *              its ellipses and splines
+ * LAYERS       Merging the parsed chunks and finding the layer of each entity
+ * APERTURES    Preparing the layers and collecting the flashed apertures
+ * FILES        Creating the Gerber files and writing their headers
+ * FORMAT       Formatting the commands of the entities
+ * OUTPUT       Writing the formatted commands to the Gerber files
+ * CHAIN        Indexing the ends of lines and arcs to join them into paths
+ * ORDER        Ordering the entities of each Gerber file to save travel
+ * REPEAT       Finding the block references placed on grids
+ * </pre>
+ * The time spent writing is measured each time a Gerber file flushes its
+ * buffer, so the FORMAT phase is the time spent writing the entities minus
+ * the OUTPUT phase. The FILES phase includes the time the user takes to
+ * answer the overwrite prompt.
+ *
+ * getReport() returns the metrics as a single line of JSON, the machine
+ * readable version of the text written by GerberFileManager.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class ConversionMetrics {
+    public static final int PARSE = 0;
+    public static final int LAYERS = 1;
+    public static final int APERTURES = 2;
+    public static final int FILES = 3;
+    public static final int FORMAT = 4;
+    public static final int OUTPUT = 5;
+    public static final int CHAIN = 6;
+    public static final int ORDER = 7;
+    public static final int REPEAT = 8;
+
+    /** The names of the phases used in the report, by phase. */
+    public static final String[] PHASE_NAMES
+            = {"parse", "layers", "apertures", "files", "format", "output",
+               "chain", "order", "repeat"};
+
+    /** The names of the entity types used in the report, by entity type. */
+    private static final String[] ENTITY_NAMES 
+            = {"LINE", "CIRCLE", "ARC", "POLYLINE", "INSERT", "ELLIPSE",
+               "SPLINE", "HATCH", "SOLID"};
+
+    private ConversionEngine engine;
+
+    private long[] phaseTimes = new long[PHASE_NAMES.length];
+
+    private long bytesRead = 0;
+
+    /** 
+     * The number of lines, circles, arcs, polylines, inserts, ellipses,
+     * splines, hatches and solids that were parsed.
+     */
+    private long[] entityCounts = {0,0,0,0,0,0,0,0,0};
+
+    /** The number of D02 moves left out by joining segments into paths. */
+    private long movesSaved = 0;
+
+    private boolean isTravelOptimized = false;
+
+    /** The tool selects in file order and after ordering. */
+    private int[] toolChanges = {0,0};
+
+    /** The length of the D02 moves in file order and after ordering. */
+    private double[] travel = {0,0};
+
+    private boolean isStepRepeated = false;
+
+    /** The grids written with step and repeat, and the copies they hold. */
+    private int[] stepRepeats = {0,0};
+
+    private boolean isFlashingPads = false;
+
+    /** The aperture macros of the pads, and the pads flashed with them. */
+    private int[] pads = {0,0};
+
+    /**
+     * @param engine    The conversion that is measured
+     */
+    ConversionMetrics(ConversionEngine engine){
+        this.engine = engine;
+    }
+
+    /**
+     * Adds time to a phase.
+     *
+     * @param phase     One of the phase constants
+     * @param nanos     The time spent in the phase, in nanoseconds
+     */
+    void addPhaseTime(int phase, long nanos){
+        phaseTimes[phase] += nanos;
+    }
+
+    /**
+     * @param phase     One of the phase constants
+     * @return          The time spent in the phase, in nanoseconds
+     */
+    public long getPhaseTime(int phase){
+        return phaseTimes[phase];
+    }
+
+    /**
+     * @return  The time spent in all phases, in nanoseconds
+     */
+    public long getTotalTime(){
+        long total = 0;
+
+        for(long time : phaseTimes){
+            total += time;
+        }
+
+        return total;
+    }
+
+    void setBytesRead(long bytesRead){
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * @return  The size of the dxf file that was read
+     */
+    public long getBytesRead(){
+        return bytesRead;
+    }
+
+    /**
+     * Adds the number of lines, circles, arcs, polylines and inserts parsed
+     * from a chunk.
+     */
+    void addEntityCounts(int[] counts){
+        for(int i = 0; i < entityCounts.length; i++){
+            entityCounts[i] += counts[i];
+        }
+    }
+
+    /**
+     * @return  The number of parsed lines, circles, arcs, polylines and
+     *          inserts
+     */
+    public long[] getEntityCounts(){
+        return entityCounts;
+    }
+
+    void addMovesSaved(int moves){
+        movesSaved += moves;
+    }
+
+    /**
+     * @return  The number of D02 moves left out by joining lines and arcs 
+     *          into paths
+     */
+    public long getMovesSaved(){
+        return movesSaved;
+    }
+
+    /**
+     * Sets the tool selects and travel of all Gerber files in file order and
+     * in the order the entities were written.
+     *
+     * @param toolChanges   The tool selects before and after ordering
+     * @param travel        The length in inches of the D02 moves before and
+     *                      after ordering
+     */
+    void setTravel(int[] toolChanges, double[] travel){
+        isTravelOptimized = true;
+        this.toolChanges = toolChanges;
+        this.travel = travel;
+    }
+
+    /**
+     * @return  True if the entities were ordered to save travel
+     */
+    public boolean isTravelOptimized(){
+        return isTravelOptimized;
+    }
+
+    /**
+     * @param isOptimized   True for the new order, false for the file order
+     * @return              The number of tool selects written to all Gerber
+     *                      files, 0 if the entities were not ordered
+     */
+    public int getToolChanges(boolean isOptimized){
+        return toolChanges[isOptimized ? 1 : 0];
+    }
+
+    /**
+     * @param isOptimized   True for the new order, false for the file order
+     * @return              The length in inches of the D02 moves of all 
+     *                      Gerber files, 0 if the entities were not ordered
+     */
+    public double getTravel(boolean isOptimized){
+        return travel[isOptimized ? 1 : 0];
+    }
+
+    /**
+     * Sets the grids of block references that were found to be written with
+     * step and repeat.
+     *
+     * @param grids     The number of grids
+     * @param copies    The number of references in the grids
+     */
+    void setStepRepeats(int grids, int copies){
+        isStepRepeated = true;
+        stepRepeats = new int[]{grids, copies};
+    }
+
+    /**
+     * @return  True if grids of block references were looked for
+     */
+    public boolean isStepRepeated(){
+        return isStepRepeated;
+    }
+
+    /**
+     * @return  The number of grids written with step and repeat
+     */
+    public int getStepRepeatGrids(){
+        return stepRepeats[0];
+    }
+
+    /**
+     * @return  The number of block references written as part of a grid
+     */
+    public int getStepRepeatCopies(){
+        return stepRepeats[1];
+    }
+
+    /**
+     * Sets the pads that were found to be flashed with aperture macros.
+     *
+     * @param apertures The number of aperture macros
+     * @param flashes   The number of pads flashed
+     */
+    void setPads(int apertures, int flashes){
+        isFlashingPads = true;
+        pads = new int[]{apertures, flashes};
+    }
+
+    /**
+     * @return  True if repeated pads were looked for
+     */
+    public boolean isFlashingPads(){
+        return isFlashingPads;
+    }
+
+    /**
+     * @return  The number of aperture macros added for pads
+     */
+    public int getPadApertures(){
+        return pads[0];
+    }
+
+    /**
+     * @return  The number of pads written as a single flash
+     */
+    public int getPadFlashes(){
+        return pads[1];
+    }
+
+    /**
+     * @return  The number of lines written to all Gerber files
+     */
+    public long getLinesWritten(){
+        long lines = 0;
+
+        for(GerberFile g : getGerberFiles()){
+            lines += g.getLinesWritten();
+        }
+
+        return lines;
+    }
+
+    /**
+     * @return  The number of bytes written to all Gerber files
+     */
+    public long getBytesWritten(){
+        long bytes = 0;
+
+        for(GerberFile g : getGerberFiles()){
+            bytes += g.getBytesWritten();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return  The number of aperture selections written to all Gerber files
+     */
+    public int getApertureChanges(){
+        int changes = 0;
+
+        for(GerberFile g : getGerberFiles()){
+            changes += g.getApertureChanges();
+        }
+
+        return changes;
+    }
+
+    /**
+     * Returns the time spent writing to the Gerber files so far, which is
+     * added to the OUTPUT phase once the entities are written.
+     */
+    long getOutputTime(){
+        long time = 0;
+
+        for(GerberFile g : getGerberFiles()){
+            time += g.getOutputTime();
+        }
+
+        return time;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<GerberFile> getGerberFiles(){
+        return engine.getGerberFileManager().getGerberFiles();
+    }
+
+    /**
+     * Returns the metrics as a single line of JSON. Times are given in
+     * milliseconds.
+     *
+     * @return  The machine readable report of the conversion
+     */
+    public String getReport(){
+        GerberFileManager manager = engine.getGerberFileManager();
+        StringBuilder s = new StringBuilder();
+
+        s.append("{\"dxfFile\":").append(quote(engine.getDxfLocation()));
+        s.append(",\"bytesRead\":").append(bytesRead);
+        s.append(",\"totalMs\":").append(millis(getTotalTime()));
+
+        s.append(",\"phasesMs\":{");
+        for(int i = 0; i < phaseTimes.length; i++){
+            s.append(i == 0 ? "" : ",").append(quote(PHASE_NAMES[i]))
+                    .append(':').append(millis(phaseTimes[i]));
+        }
+        s.append('}');
+
+        s.append(",\"entities\":{");
+        for(int i = 0; i < entityCounts.length; i++){
+            s.append(i == 0 ? "" : ",").append(quote(ENTITY_NAMES[i]))
+                    .append(':').append(entityCounts[i]);
+        }
+        s.append('}');
+
+        s.append(",\"unsupportedEntities\":{");
+        ArrayList<String> names = manager.getOtherEntities();
+        for(int k = 0; k < names.size(); k++){
+            s.append(k == 0 ? "" : ",").append(quote(names.get(k)))
+                    .append(':').append(manager.getOtherEntityQuantities()
+                    .get(k));
+        }
+        s.append('}');
+
+        s.append(",\"entitiesProcessed\":").append(manager.getEntityQuantity());
+        s.append(",\"entitiesOutOfBounds\":")
+                .append(sum(manager.getEntitiesOutOfBounds()));
+        s.append(",\"zeroSizeEntities\":")
+                .append(sum(manager.getZeroLengthEntities()));
+        s.append(",\"linesWritten\":").append(getLinesWritten());
+        s.append(",\"bytesWritten\":").append(getBytesWritten());
+        s.append(",\"apertureChanges\":").append(getApertureChanges());
+        s.append(",\"movesSaved\":").append(movesSaved);
+        s.append(",\"originShiftInches\":[")
+                .append(inches(engine.getOriginShift()[0])).append(',')
+                .append(inches(engine.getOriginShift()[1])).append(']');
+
+        if(isTravelOptimized){
+            s.append(",\"travelOptimization\":{\"toolChangesBefore\":")
+                    .append(getToolChanges(false));
+            s.append(",\"toolChangesAfter\":").append(getToolChanges(true));
+            s.append(",\"travelInchesBefore\":")
+                    .append(inches(getTravel(false)));
+            s.append(",\"travelInchesAfter\":")
+                    .append(inches(getTravel(true)));
+            s.append('}');
+        }
+
+        CurveFitter fitter = engine.getCurveFitter();
+
+        if(fitter.getCurveCount() > 0){
+            s.append(",\"curves\":{\"toleranceInches\":")
+                    .append(fitter.getTolerance());
+            s.append(",\"curves\":").append(fitter.getCurveCount());
+            s.append(",\"shapesFitted\":").append(fitter.getFitCount());
+            s.append(",\"pieces\":").append(fitter.getPieceCount());
+            s.append('}');
+        }
+
+        if(isFlashingPads){
+            s.append(",\"pads\":{\"apertures\":").append(getPadApertures());
+            s.append(",\"flashes\":").append(getPadFlashes());
+            s.append('}');
+        }
+
+        if(isStepRepeated){
+            s.append(",\"stepAndRepeat\":{\"grids\":")
+                    .append(getStepRepeatGrids());
+            s.append(",\"copies\":").append(getStepRepeatCopies());
+            s.append('}');
+        }
+
+        //Throughput of reading and of writing, per second
+        s.append(",\"parseBytesPerSecond\":")
+                .append(perSecond(bytesRead, phaseTimes[PARSE]));
+        s.append(",\"writeEntitiesPerSecond\":")
+                .append(perSecond(manager.getEntityQuantity(),
+                        phaseTimes[FORMAT] + phaseTimes[OUTPUT]));
+
+        s.append(",\"gerberFiles\":[");
+        ArrayList<GerberFile> files = getGerberFiles();
+        for(int k = 0; k < files.size(); k++){
+            GerberFile g = files.get(k);
+
+            s.append(k == 0 ? "{" : ",{");
+            s.append("\"path\":").append(quote(g.getGerberFilePath()));
+            s.append(",\"written\":").append(g.canWrite());
+            s.append(",\"layers\":").append(g.getLayerNumber());
+            s.append(",\"entities\":").append(g.getEntityQuantity());
+            s.append(",\"lines\":").append(g.getLinesWritten());
+            s.append(",\"bytes\":").append(g.getBytesWritten());
+            s.append(",\"apertureChanges\":").append(g.getApertureChanges());
+            s.append(",\"stepRepeats\":").append(g.getStepRepeatCount());
+            s.append(",\"regions\":").append(g.getRegionCount());
+            s.append(",\"outputMs\":").append(millis(g.getOutputTime()));
+            s.append('}');
+        }
+        s.append("]}");
+
+        return s.toString();
+    }
+
+    private static int sum(int[] counts){
+        int total = 0;
+
+        for(int count : counts){
+            total += count;
+        }
+
+        return total;
+    }
+
+    private static String millis(long nanos){
+        return String.format(Locale.US, "%.3f", nanos / 1e6);
+    }
+
+    private static String inches(double inches){
+        return String.format(Locale.US, "%.3f", inches);
+    }
+
+    private static long perSecond(long count, long nanos){
+        return nanos > 0 ? Math.round(count / (nanos / 1e9)) : 0;
+    }
+
+    /**
+     * Returns a string as a JSON string, with the characters that are not
+     * allowed escaped. Windows paths contain backslashes.
+     */
+    private static String quote(String value){
+        if(value == null){
+            return "null";
+        }
+
+        StringBuilder s = new StringBuilder("\"");
+
+        for(int k = 0; k < value.length(); k++){
+            char c = value.charAt(k);
+
+            if(c == '"' || c == '\\'){
+                s.append('\\').append(c);
+            }
+            else if(c < ' '){
+                s.append(String.format("\\u%04x", (int)c));
+            }
+            else {
+                s.append(c);
+            }
+        }
+
+        return s.append('"').toString();
+    }
+}
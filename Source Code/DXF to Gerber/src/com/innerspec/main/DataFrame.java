@@ -1,8 +1,6 @@
 
 package com.innerspec.main;
 
-import com.innerspec.entity.Circle;
-import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import javax.swing.ImageIcon;
@@ -16,7 +14,8 @@ import javax.swing.ImageIcon;
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
 public class DataFrame extends javax.swing.JFrame {
-    private ArrayList<Layer> layers = LayerManager.getLayers();
+    private ArrayList<Layer> layers 
+            = PrimaryFileSelectorFrame.getEngine().getLayers();
     
     private final double MIN_THICKNESS = 0.001;
     private final double MAX_THICKNESS = 1.0;         
@@ -152,49 +151,16 @@ public class DataFrame extends javax.swing.JFrame {
      * @param evt       User presses the "ENTER" button
      */
     private void nextButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_nextButtonActionPerformed
-        String name;
-        String fileName;
-        double thickness;
-        boolean isActive;
-        
         for(int k = 0; k < layers.size(); k++){ 
             Layer layer = layers.get(k); 
             
-            name = layer.getName();
-            fileName = jTable.getValueAt(k, 4).toString();
-            thickness = Double.parseDouble(jTable.getValueAt(k, 3).toString());
-            isActive = layer.isActive();
-            
-            
-            
-            /*
-            * Makes sure layer, fileName, and thickness are valid.
-            * Changes existing layer values to those in the table.
-            * Removes invalid or empty layers.
-            */
-            if(name != null
-                    && fileName  != null 
-                    && thickness != 0.0 
-                    && isActive){
-                layer.setFileName(fileName); 
-                layer.setThickness(thickness);
-                ThicknessManager.addThickness(thickness);
-            }
-            else {
-                layers.remove(k);
-                k--;
-            }
+            //Changes existing layer values to those in the table.
+            layer.setFileName(jTable.getValueAt(k, 4).toString()); 
+            layer.setThickness(
+                    Double.parseDouble(jTable.getValueAt(k, 3).toString()));
         }
         
-        try {
-            Circle.addFlashedCircleThicknesses();
-        } catch (IOException e){
-            e.printStackTrace();
-        }
-        
-        for(Layer l : layers){
-            l.setFilePath(PrimaryFileSelectorFrame.getDxfLocation());
-        }
+        PrimaryFileSelectorFrame.getEngine().prepareLayers();
         
         //Hide this frame and present progress frame
         setVisible(false);
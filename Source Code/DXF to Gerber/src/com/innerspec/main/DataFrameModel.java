@@ -14,7 +14,8 @@ import javax.swing.table.AbstractTableModel;
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
 public class DataFrameModel extends AbstractTableModel{
-    ArrayList<Layer> layers = LayerManager.getLayers();
+    ArrayList<Layer> layers 
+            = PrimaryFileSelectorFrame.getEngine().getLayers();
     
     @Override
     public int getRowCount(){
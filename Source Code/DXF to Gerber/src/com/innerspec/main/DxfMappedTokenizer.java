@@ -0,0 +1,313 @@
+package com.innerspec.main;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A DxfTokenizer that scans the bytes of a memory mapped DXF file. Group
+ * codes and numeric values are parsed directly from the mapped bytes, so the
+ * file is never decoded to characters and Strings are only created when a
+ * value is asked for with getValue() (layer and entity names).
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class DxfMappedTokenizer extends DxfTokenizer {
+    private ByteBuffer buffer;
+
+    /** Index of the next unread byte in the buffer. */
+    private int position;
+
+    /** Index after the last byte that is read. */
+    private int limit;
+
+    /** Start and end (exclusive) of the last line that was read. */
+    private int lineStart;
+    private int lineEnd;
+
+    private int valueStart;
+    private int valueEnd;
+
+    /** Used to create Strings the same way FileReader decodes the file. */
+    private Charset charset = Charset.defaultCharset();
+
+    /** Reused to copy the bytes of a value when a String is created. */
+    private byte[] valueBytes = new byte[256];
+
+    /**
+     * Tokenizes the bytes of a buffer from its position to its limit.
+     *
+     * @param buffer    The bytes of the DXF file or of a part of it.
+     */
+    public DxfMappedTokenizer(ByteBuffer buffer){
+        this.buffer   = buffer;
+        this.position = buffer.position();
+        this.limit    = buffer.limit();
+    }
+
+    /**
+     * Maps a DXF file into memory. The file channel is closed straight away,
+     * the mapping stays valid until the buffer is garbage collected.
+     *
+     * @param dxfPath   The path of the dxf file
+     * @return          The read-only mapping of the whole file
+     * @throws IOException  Error reading file, or the file is too large to
+     *                      be mapped into a single buffer.
+     */
+    public static ByteBuffer mapFile(String dxfPath) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(dxfPath, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+
+            if(channel.size() > Integer.MAX_VALUE){
+                throw new IOException("File too large to be mapped: "
+                        + dxfPath);
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Finds the first entity that starts at or after an offset of a mapped
+     * DXF file. An entity starts with a "0" group code line followed by the
+     * name of the entity. Group code lines only hold digits, so a "0" value
+     * line is never followed by a name and cannot be mistaken for the start
+     * of an entity.
+     * 
+     * The VERTEX, ATTRIB and SEQEND entities that follow a POLYLINE or an
+     * INSERT belong to it, so they are never returned as the start of an
+     * entity.
+     *
+     * @param buffer    The mapped DXF file
+     * @param offset    The offset to start searching from
+     * @param limit     The offset to stop searching at
+     * @return          The offset of the "0" line of the entity, or limit if 
+     *                  there is no entity before limit.
+     */
+    public static int findEntityStart(ByteBuffer buffer, int offset,
+            int limit){
+        //Moves to the start of a line
+        while(offset > 0 && offset < limit && buffer.get(offset - 1) != '\n'){
+            offset++;
+        }
+
+        while(offset < limit){
+            int nextLine = nextLineStart(buffer, offset, limit);
+            int lineAfterNext = nextLineStart(buffer, nextLine, limit);
+
+            if(isZeroCode(buffer, offset, nextLine)
+                    && nextLine < limit
+                    && isGroupCode(buffer, nextLine, lineAfterNext) == false
+                    && isName(buffer, nextLine, lineAfterNext, "VERTEX") 
+                            == false
+                    && isName(buffer, nextLine, lineAfterNext, "SEQEND") 
+                            == false
+                    && isName(buffer, nextLine, lineAfterNext, "ATTRIB") 
+                            == false){
+                return offset;
+            }
+
+            offset = nextLine;
+        }
+
+        return limit;
+    }
+
+    /**
+     * Returns the offset of the line after the line starting at offset.
+     */
+    private static int nextLineStart(ByteBuffer buffer, int offset, int limit){
+        while(offset < limit && buffer.get(offset) != '\n'){
+            offset++;
+        }
+        return Math.min(offset + 1, limit);
+    }
+
+    /**
+     * Checks if a line holds only a "0", with any padding.
+     */
+    private static boolean isZeroCode(ByteBuffer buffer, int start, int end){
+        boolean hasZero = false;
+
+        for(int k = start; k < end; k++){
+            byte b = buffer.get(k);
+
+            if(b == '0' && hasZero == false){
+                hasZero = true;
+            }
+            else if(b > ' '){
+                return false;
+            }
+        }
+
+        return hasZero;
+    }
+
+    /**
+     * Checks if a line holds a name, with any padding.
+     */
+    private static boolean isName(ByteBuffer buffer, int start, int end, 
+            String name){
+        while(start < end && buffer.get(start) <= ' ') start++;
+        while(end > start && buffer.get(end - 1) <= ' ') end--;
+        
+        if(end - start != name.length()){
+            return false;
+        }
+        
+        for(int k = 0; k < name.length(); k++){
+            if(buffer.get(start + k) != name.charAt(k)){
+                return false;
+            }
+        }
+        
+        return true;
+    }
+
+    /**
+     * Checks if a line holds only an integer, with any padding.
+     */
+    private static boolean isGroupCode(ByteBuffer buffer, int start, int end){
+        boolean hasDigits = false;
+
+        for(int k = start; k < end; k++){
+            byte b = buffer.get(k);
+
+            if(b >= '0' && b <= '9'){
+                hasDigits = true;
+            }
+            else if(b > ' ' && b != '-'){
+                return false;
+            }
+        }
+
+        return hasDigits;
+    }
+
+    /**
+     * Returns the offset in the buffer of the next unread line.
+     */
+    public int getPosition(){
+        return position;
+    }
+
+    @Override
+    protected boolean readPair() throws IOException {
+        if(readLine() == false){
+            return false;
+        }
+
+        groupCode = parseGroupCode(lineStart, lineEnd);
+
+        if(readLine() == false){
+            return false;
+        }
+
+        valueStart = lineStart;
+        valueEnd   = lineEnd;
+        return true;
+    }
+
+    /**
+     * Finds the next line in the buffer. The line is stored in lineStart and
+     * lineEnd without the line terminator.
+     *
+     * @return False if the end of the buffer is reached
+     */
+    private boolean readLine(){
+        if(position >= limit){
+            return false;
+        }
+
+        int scanPosition = position;
+
+        while(scanPosition < limit && buffer.get(scanPosition) != '\n'){
+            scanPosition++;
+        }
+
+        lineStart = position;
+        lineEnd   = scanPosition;
+        position  = scanPosition + 1;
+
+        if(lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r'){
+            lineEnd--;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a group code line as an integer, ignoring any padding.
+     *
+     * @throws IOException  The line is not a valid group code.
+     */
+    private int parseGroupCode(int start, int end) throws IOException {
+        while(start < end && buffer.get(start) <= ' ') start++;
+        while(end > start && buffer.get(end - 1) <= ' ') end--;
+
+        if(start == end){
+            throw new IOException("Missing DXF group code");
+        }
+
+        boolean isNegative = buffer.get(start) == '-';
+        int code = 0;
+
+        for(int k = isNegative ? start + 1 : start; k < end; k++){
+            byte b = buffer.get(k);
+
+            if(b < '0' || b > '9'){
+                throw new IOException("Invalid DXF group code: "
+                        + decode(start, end));
+            }
+            code = code * 10 + (b - '0');
+        }
+
+        return isNegative ? -code : code;
+    }
+
+    @Override
+    protected char valueCharAt(int index){
+        return (char)(buffer.get(valueStart + index) & 0xFF);
+    }
+
+    @Override
+    protected int valueLength(){
+        return valueEnd - valueStart;
+    }
+
+    @Override
+    public String getValue(){
+        return decode(valueStart, valueEnd);
+    }
+
+    /**
+     * Creates a String from a range of the buffer.
+     */
+    private String decode(int start, int end){
+        int length = end - start;
+
+        if(valueBytes.length < length){
+            valueBytes = new byte[length];
+        }
+
+        for(int k = 0; k < length; k++){
+            valueBytes[k] = buffer.get(start + k);
+        }
+
+        return new String(valueBytes, 0, length, charset);
+    }
+
+    @Override
+    public void close(){
+        //The mapping is released when the buffer is garbage collected
+        buffer = null;
+    }
+}
@@ -0,0 +1,182 @@
+package com.innerspec.main;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A DxfTokenizer that reads the DXF file through a Reader. Lines are read
+ * into a reusable character buffer and the value of each pair is kept as a
+ * range of that buffer, so no String is created per line.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class DxfReaderTokenizer extends DxfTokenizer {
+    private static final int BUFFER_SIZE = 65536;
+
+    private Reader reader;
+    private char[] buffer = new char[BUFFER_SIZE];
+
+    /** Index of the next unread character in the buffer. */
+    private int position = 0;
+
+    /** Number of valid characters in the buffer. */
+    private int limit = 0;
+
+    private boolean isEndOfFile = false;
+
+    /** Start and end (exclusive) of the last line that was read. */
+    private int lineStart;
+    private int lineEnd;
+
+    private int valueStart;
+    private int valueEnd;
+
+    /**
+     * @param reader    The Reader of the DXF file. It is closed by close().
+     */
+    public DxfReaderTokenizer(Reader reader){
+        this.reader = reader;
+    }
+
+    @Override
+    protected boolean readPair() throws IOException {
+        if(readLine() == false){
+            return false;
+        }
+
+        groupCode = parseGroupCode(lineStart, lineEnd);
+
+        if(readLine() == false){
+            return false;
+        }
+
+        valueStart = lineStart;
+        valueEnd   = lineEnd;
+        return true;
+    }
+
+    /**
+     * Finds the next line in the buffer, refilling the buffer from the reader
+     * when needed. The line is stored in lineStart and lineEnd without the
+     * line terminator.
+     *
+     * @return False if the end of the file is reached
+     * @throws IOException  Error reading file.
+     */
+    private boolean readLine() throws IOException {
+        int scanPosition = position;
+
+        while(true){
+            for(; scanPosition < limit; scanPosition++){
+                if(buffer[scanPosition] == '\n'){
+                    lineStart = position;
+                    lineEnd   = scanPosition;
+                    position  = scanPosition + 1;
+
+                    if(lineEnd > lineStart && buffer[lineEnd - 1] == '\r'){
+                        lineEnd--;
+                    }
+                    return true;
+                }
+            }
+
+            if(isEndOfFile){
+                //The last line of the file might not have a line terminator
+                if(position < limit){
+                    lineStart = position;
+                    lineEnd   = limit;
+                    position  = limit;
+
+                    if(buffer[lineEnd - 1] == '\r'){
+                        lineEnd--;
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            scanPosition -= position;
+            fillBuffer();
+        }
+    }
+
+    /**
+     * Moves the unread part of the buffer to its beginning and fills the rest
+     * from the reader. The buffer is grown if a single line does not fit.
+     *
+     * @throws IOException  Error reading file.
+     */
+    private void fillBuffer() throws IOException {
+        int remaining = limit - position;
+
+        if(remaining == buffer.length){
+            char[] newBuffer = new char[buffer.length * 2];
+            System.arraycopy(buffer, position, newBuffer, 0, remaining);
+            buffer = newBuffer;
+        }
+        else {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+
+        position = 0;
+        limit = remaining;
+
+        int read = reader.read(buffer, limit, buffer.length - limit);
+
+        if(read == -1){
+            isEndOfFile = true;
+        }
+        else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Parses a group code line as an integer, ignoring any padding.
+     *
+     * @throws IOException  The line is not a valid group code.
+     */
+    private int parseGroupCode(int start, int end) throws IOException {
+        while(start < end && buffer[start] <= ' ') start++;
+        while(end > start && buffer[end - 1] <= ' ') end--;
+
+        if(start == end){
+            throw new IOException("Missing DXF group code");
+        }
+
+        boolean isNegative = buffer[start] == '-';
+        int code = 0;
+
+        for(int k = isNegative ? start + 1 : start; k < end; k++){
+            char c = buffer[k];
+
+            if(c < '0' || c > '9'){
+                throw new IOException("Invalid DXF group code: "
+                        + new String(buffer, start, end - start));
+            }
+            code = code * 10 + (c - '0');
+        }
+
+        return isNegative ? -code : code;
+    }
+
+    @Override
+    protected char valueCharAt(int index){
+        return buffer[valueStart + index];
+    }
+
+    @Override
+    protected int valueLength(){
+        return valueEnd - valueStart;
+    }
+
+    @Override
+    public String getValue(){
+        return new String(buffer, valueStart, valueEnd - valueStart);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
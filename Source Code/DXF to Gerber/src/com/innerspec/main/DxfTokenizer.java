@@ -0,0 +1,231 @@
+package com.innerspec.main;
+
+import java.io.IOException;
+
+/**
+ * Splits a DXF file into its (group code, value) pairs. Every pair in a DXF
+ * file takes two lines: the group code and the value that belongs to it. The
+ * group code is parsed as an integer, so any padding of the code line is
+ * accepted, and the value is only turned into a String when it is asked for.
+ *
+ * Entities read their pairs with next() until a "0" group code is reached,
+ * which starts the next entity. pushBack() is then used to hand that pair
+ * back to the caller.
+ *
+ * The group codes can be found in many places such as
+ * http://www.autodesk.com/techpubs/autocad/acad2000/dxf/
+ * group_codes_in_numerical_order_dxf_01.htm
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public abstract class DxfTokenizer {
+    /** Powers of ten that can be represented exactly as a double. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Largest mantissa that can be converted to a double without rounding. */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    protected int groupCode;
+
+    private boolean isPushedBack = false;
+
+    /**
+     * Moves to the next pair of the file, unless the current pair has been
+     * pushed back.
+     *
+     * @return True if a pair was read, false if the end of the file is reached
+     * @throws IOException  Error reading file.
+     */
+    public boolean next() throws IOException {
+        if(isPushedBack){
+            isPushedBack = false;
+            return true;
+        }
+
+        return readPair();
+    }
+
+    /**
+     * Makes the next call of next() return the current pair again. This is
+     * used once an entity reaches the "0" code of the following entity.
+     */
+    public void pushBack(){
+        isPushedBack = true;
+    }
+
+    /**
+     * Returns the group code of the current pair.
+     */
+    public int getGroupCode(){
+        return groupCode;
+    }
+
+    /**
+     * Reads the next group code and value from the file.
+     *
+     * @return True if a pair was read, false if the end of the file is reached
+     * @throws IOException  Error reading file or an invalid group code.
+     */
+    protected abstract boolean readPair() throws IOException;
+
+    /**
+     * Returns the character at an index of the current value.
+     */
+    protected abstract char valueCharAt(int index);
+
+    /**
+     * Returns the number of characters in the current value.
+     */
+    protected abstract int valueLength();
+
+    /**
+     * Returns the value of the current pair as a String. This creates a new
+     * String, so it should only be used for names such as layer names.
+     */
+    public abstract String getValue();
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException  Error closing file.
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * Checks if the value of the current pair is equal to a String without
+     * creating a String for the value.
+     *
+     * @param s     The String to compare the value to
+     * @return      True if the value is equal to s
+     */
+    public boolean valueEquals(String s){
+        int length = valueLength();
+
+        if(length != s.length()){
+            return false;
+        }
+
+        for(int k = 0; k < length; k++){
+            if(valueCharAt(k) != s.charAt(k)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the value of the current pair as a double. Plain decimal values,
+     * which make up nearly all of the coordinates in a DXF file, are converted
+     * without creating a String. The result is always the same as
+     * Double.parseDouble() of the value.
+     *
+     * @return  The value of the current pair
+     * @throws NumberFormatException    The value is not a number.
+     */
+    public double getDoubleValue(){
+        int length = valueLength();
+        int k = 0;
+
+        //Leading and trailing whitespace is allowed, as in Double.parseDouble()
+        while(k < length && valueCharAt(k) <= ' ') k++;
+        while(length > k && valueCharAt(length - 1) <= ' ') length--;
+
+        boolean isNegative = false;
+
+        if(k < length && (valueCharAt(k) == '-' || valueCharAt(k) == '+')){
+            isNegative = valueCharAt(k) == '-';
+            k++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean hasDigits = false;
+        boolean isExact = true;
+        boolean inFraction = false;
+
+        for(; k < length; k++){
+            char c = valueCharAt(k);
+
+            if(c >= '0' && c <= '9'){
+                hasDigits = true;
+
+                if(mantissa == 0 && c == '0'){
+                    //Leading zeros do not count as digits
+                    if(inFraction) exponent--;
+                    continue;
+                }
+
+                if(digits < 18){
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if(inFraction) exponent--;
+                }
+                else {
+                    isExact = false;
+                }
+            }
+            else if(c == '.' && inFraction == false){
+                inFraction = true;
+            }
+            else if((c == 'e' || c == 'E') && hasDigits){
+                int exponentValue = 0;
+                boolean isExponentNegative = false;
+                k++;
+
+                if(k < length
+                        && (valueCharAt(k) == '-' || valueCharAt(k) == '+')){
+                    isExponentNegative = valueCharAt(k) == '-';
+                    k++;
+                }
+
+                if(k == length || length - k > 3){
+                    isExact = false;
+                    break;
+                }
+
+                for(; k < length; k++){
+                    c = valueCharAt(k);
+                    if(c < '0' || c > '9'){
+                        return parseDoubleSlow();
+                    }
+                    exponentValue = exponentValue * 10 + (c - '0');
+                }
+
+                exponent += isExponentNegative ? -exponentValue : exponentValue;
+            }
+            else {
+                return parseDoubleSlow();
+            }
+        }
+
+        if(hasDigits == false || isExact == false
+                || mantissa >= MAX_EXACT_MANTISSA
+                || exponent < -22 || exponent > 22){
+            return parseDoubleSlow();
+        }
+
+        double value = (double)mantissa;
+
+        if(exponent < 0){
+            value = value / POWERS_OF_TEN[-exponent];
+        }
+        else if(exponent > 0){
+            value = value * POWERS_OF_TEN[exponent];
+        }
+
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * Converts the value using Double.parseDouble(). Used for values that
+     * cannot be converted exactly by getDoubleValue().
+     */
+    private double parseDoubleSlow(){
+        return Double.parseDouble(getValue());
+    }
+}
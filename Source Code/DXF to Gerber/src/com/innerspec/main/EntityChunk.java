@@ -0,0 +1,237 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.Arc;
+import com.innerspec.entity.Block;
+import com.innerspec.entity.BlockReference;
+import com.innerspec.entity.Circle;
+import com.innerspec.entity.Curve;
+import com.innerspec.entity.CurveFitter;
+import com.innerspec.entity.Ellipse;
+import com.innerspec.entity.Entity;
+import com.innerspec.entity.Hatch;
+import com.innerspec.entity.Insert;
+import com.innerspec.entity.Line;
+import com.innerspec.entity.Polyline;
+import com.innerspec.entity.Region;
+import com.innerspec.entity.Spline;
+import com.innerspec.entity.Transform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses one part of the ENTITIES section of a dxf file. The section is split
+ * into chunks at entity boundaries so that the chunks can be parsed at the
+ * same time on a fork/join pool.
+ *
+ * A chunk does not change any shared state. The entities, layer names and
+ * unsupported entity names are kept in the order they were found and are
+ * merged into the managers by EntityManager in chunk order, so the result is
+ * the same as parsing the whole section on one thread.
+ *
+ * INSERT entities are replaced by a BlockReference for every copy of the
+ * block and every layer of the block. The blocks are resolved before the
+ * chunks are parsed and are only read by the chunks.
+ *
+ * ELLIPSE and SPLINE entities are replaced by the polyline of lines and arcs
+ * fitted by the CurveFitter of the file, which is shared by the chunks.
+ * HATCH and SOLID entities are replaced by a Region that fills their area.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class EntityChunk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private DxfTokenizer scan;
+
+    /** The blocks of the dxf file, which are placed by INSERT entities. */
+    private BlockTable blocks;
+
+    /** Replaces the ellipses and splines by lines and arcs. */
+    private CurveFitter curveFitter;
+
+    /** The supported entities of the chunk in file order. */
+    ArrayList<Entity> entities = new ArrayList<Entity>();
+
+    /** The layer names of the chunk in the order they are first found. */
+    ArrayList<String> layerNames = new ArrayList<String>();
+
+    /** The names of the unsupported entities of the chunk in file order. */
+    ArrayList<String> otherEntityNames = new ArrayList<String>();
+
+    /** 
+     * The number of lines, circles, arcs, polylines, inserts, ellipses,
+     * splines, hatches and solids.
+     */
+    int[] entityCounts = {0,0,0,0,0,0,0,0,0};
+
+    /** True once the ENDSEC (or EOF) code of the section is reached. */
+    boolean isEndOfSection = false;
+
+    /** Any error that stopped the chunk from being parsed. */
+    Exception error;
+
+    private HashSet<String> foundLayerNames = new HashSet<String>();
+
+    /**
+     * @param scan      The tokenizer of the chunk, positioned at the "0" code
+     *                  of the first entity in the chunk.
+     * @param blocks    The resolved blocks of the dxf file
+     * @param curveFitter   Fits the ellipses and splines of the dxf file
+     */
+    EntityChunk(DxfTokenizer scan, BlockTable blocks, 
+            CurveFitter curveFitter){
+        this.scan = scan;
+        this.blocks = blocks;
+        this.curveFitter = curveFitter;
+    }
+
+    @Override
+    protected void compute(){
+        try {
+            while(scan.next()){
+                int code = scan.getGroupCode();
+
+                if(code == 0){
+                    if (scan.valueEquals("LINE")) {
+                        addEntity(new Line(scan));
+                        entityCounts[0]++;
+                    }
+                    else if (scan.valueEquals("CIRCLE")) {
+                        addEntity(new Circle(scan));
+                        entityCounts[1]++;
+                    }
+                    else if (scan.valueEquals("ARC")) {
+                        addEntity(new Arc(scan));
+                        entityCounts[2]++;
+                    }
+                    else if (scan.valueEquals("LWPOLYLINE")) {
+                        addEntity(new Polyline(scan, true));
+                        entityCounts[3]++;
+                    }
+                    else if (scan.valueEquals("POLYLINE")) {
+                        addEntity(new Polyline(scan, false));
+                        entityCounts[3]++;
+                    }
+                    else if (scan.valueEquals("INSERT")) {
+                        addInsert(new Insert(scan));
+                    }
+                    else if (scan.valueEquals("ELLIPSE")) {
+                        addCurve(new Ellipse(scan), "ELLIPSE", 5);
+                    }
+                    else if (scan.valueEquals("SPLINE")) {
+                        addCurve(new Spline(scan), "SPLINE", 6);
+                    }
+                    else if (scan.valueEquals("HATCH")) {
+                        addHatch(new Hatch(scan, curveFitter));
+                    }
+                    else if (scan.valueEquals("SOLID")) {
+                        addEntity(new Region(scan));
+                        entityCounts[8]++;
+                    }
+                    else if (scan.valueEquals("ENDSEC")
+                            || scan.valueEquals("EOF")){
+                        isEndOfSection = true;
+                        break;
+                    }
+                    else {
+                        //Unrecognized entity
+                        otherEntityNames.add(scan.getValue());
+                    }
+                }
+                else if(code == 8){
+                    //Layer of an unrecognized entity
+                    addLayerName(scan.getValue());
+                }
+            }
+
+            scan.close();
+        }
+        catch(IOException e){
+            error = e;
+        }
+        catch(NumberFormatException e){
+            error = e;
+        }
+    }
+
+    private void addEntity(Entity entity){
+        addLayerName(entity.getLayerName());
+        entities.add(entity);
+    }
+
+    /**
+     * Adds the lines and arcs of an ellipse or spline as a polyline. A curve
+     * whose data does not describe a curve is counted as unsupported.
+     *
+     * @param name      The name of the entity
+     * @param counter   The counter of the entity in entityCounts
+     */
+    private void addCurve(Curve curve, String name, int counter){
+        if(curve.isValid() == false){
+            otherEntityNames.add(name);
+            addLayerName(curve.getLayerName());
+            return;
+        }
+
+        addEntity(curve.getPolyline(curveFitter));
+        entityCounts[counter]++;
+    }
+
+    /**
+     * Adds the region of a hatch. A hatch with a boundary edge that cannot
+     * be read is counted as unsupported.
+     */
+    private void addHatch(Hatch hatch){
+        if(hatch.isValid() == false){
+            otherEntityNames.add("HATCH");
+            addLayerName(hatch.getLayerName());
+            return;
+        }
+
+        addEntity(hatch.getRegion());
+        entityCounts[7]++;
+    }
+
+    /**
+     * Adds a block reference for every copy of the block of an insert and 
+     * every layer the block draws on. The unsupported entities of the block
+     * are counted for every copy.
+     */
+    private void addInsert(Insert insert){
+        Block block = blocks.getBlock(insert.getBlockName());
+        
+        if(block == null){
+            //The block does not exist
+            otherEntityNames.add("INSERT");
+            addLayerName(insert.getLayerName());
+            return;
+        }
+        
+        entityCounts[4]++;
+        
+        for(int copy = 0; copy < insert.getCopyCount(); copy++){
+            Transform transform = insert.getTransform(copy);
+            
+            for(String blockLayerName : block.getLayerNames()){
+                String layerName = blockLayerName;
+                
+                if(blockLayerName.equals(Block.INHERITED_LAYER)){
+                    layerName = insert.getLayerName();
+                }
+                
+                addEntity(new BlockReference(block, blockLayerName, 
+                        layerName, transform));
+            }
+            
+            otherEntityNames.addAll(block.getOtherEntityNames());
+        }
+    }
+
+    private void addLayerName(String layerName){
+        if(layerName != null && foundLayerNames.add(layerName)){
+            layerNames.add(layerName);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.CurveFitter;
+import com.innerspec.entity.Entity;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads the selected dxf file in a single pass. The file is memory mapped
+ * and scanned byte by byte with a DxfMappedTokenizer; large ENTITIES
+ * sections are split into EntityChunks that are parsed in parallel. While the
+ * file is read the layers array is populated, unsupported entities are
+ * counted and every
+ * supported entity is parsed into the entity store. All later stages (the
+ * flashed circle apertures and the Gerber output) run against the store, so
+ * the dxf file is only opened once per conversion.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class EntityManager {
+    /** Contains the supported entities of the dxf file in file order. */
+    private ArrayList<Entity> entities = new ArrayList<Entity>();
+
+    /** The path of the dxf file that was read. */
+    private String dxfPath;
+
+    private ConversionEngine engine;
+
+    /**
+     * The error that stopped a chunk from being parsed, null if the whole
+     * ENTITIES section was read. The chunks after it are not added.
+     */
+    private Exception readError;
+
+    /**
+     * Sections smaller than this are parsed as a single chunk, since starting
+     * the pool would take longer than parsing them.
+     */
+    private static final int MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * @param engine    The conversion the entities belong to
+     */
+    EntityManager(ConversionEngine engine){
+        this.engine = engine;
+    }
+
+    /**
+     * Parses the dxf file for its layers and entities.
+     *
+     * Layers are added to the LayerManager in the order they are first found,
+     * including the layers of unsupported entities, so that the user can
+     * still modify them in the DataFrame.
+     *
+     * An error that stops the file from being read is kept (see 
+     * getReadError()), so that a partly read file is not converted.
+     *
+     * @param dxfPath   The path of the selected dxf file
+     */
+    void readDxfFile(String dxfPath){
+        this.dxfPath = dxfPath;
+
+        try {
+            long startTime = System.nanoTime();
+            ArrayList<EntityChunk> chunks = parseDxfFile(dxfPath, true,
+                    engine.getCurveFitter());
+            engine.getMetrics().addPhaseTime(ConversionMetrics.PARSE,
+                    System.nanoTime() - startTime);
+
+            addChunks(dxfPath, chunks);
+        } catch(IOException e){
+            e.printStackTrace();
+            readError = e;
+        } catch(NumberFormatException n){
+            n.printStackTrace();
+            readError = n;
+        }
+    }
+
+    /**
+     * Parses the ENTITIES section of a dxf file into chunks. Nothing is added
+     * to the managers, so the file can be parsed before its conversion is
+     * started; the chunks are added afterwards with addChunks().
+     *
+     * @param dxfPath       The path of the dxf file
+     * @param isParallel    True to split large sections into chunks that are
+     *                      parsed on a fork/join pool, false to parse the
+     *                      section on the calling thread.
+     * @param curveFitter   Fits the ellipses and splines of the file
+     * @return              The parsed chunks in file order
+     * @throws IOException  Error reading file.
+     */
+    static ArrayList<EntityChunk> parseDxfFile(String dxfPath,
+            boolean isParallel, CurveFitter curveFitter) throws IOException {
+        ArrayList<EntityChunk> chunks = new ArrayList<EntityChunk>();
+
+        if(new File(dxfPath).length() > Integer.MAX_VALUE){
+            //Too large to be mapped, so the file is read on one thread
+            DxfTokenizer scan 
+                    = new DxfReaderTokenizer(new FileReader(dxfPath));
+            BlockTable blocks = new BlockTable(curveFitter);
+
+            if(findEntitySection(scan, blocks)){
+                EntityChunk chunk = new EntityChunk(scan, blocks, 
+                        curveFitter);
+                chunk.compute();
+                chunks.add(chunk);
+            }
+            else {
+                scan.close();
+            }
+        }
+        else {
+            readMappedFile(DxfMappedTokenizer.mapFile(dxfPath), isParallel, 
+                    curveFitter, chunks);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Splits the ENTITIES section of a mapped dxf file into chunks at entity
+     * boundaries and parses the chunks on a fork/join pool.
+     *
+     * @param buffer        The mapped dxf file
+     * @param isParallel    False to parse the section as a single chunk
+     * @param curveFitter   Fits the ellipses and splines of the file
+     * @param chunks        Receives the parsed chunks in file order
+     * @throws IOException  Error reading file.
+     */
+    private static void readMappedFile(ByteBuffer buffer, boolean isParallel,
+            CurveFitter curveFitter, ArrayList<EntityChunk> chunks)
+            throws IOException {
+        DxfMappedTokenizer scan = new DxfMappedTokenizer(buffer.duplicate());
+        BlockTable blocks = new BlockTable(curveFitter);
+
+        if(findEntitySection(scan, blocks) == false){
+            return;
+        }
+
+        int sectionStart = scan.getPosition();
+        int sectionEnd   = buffer.limit();
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        int chunkCount = Math.min(processors * 4,
+                (sectionEnd - sectionStart) / MIN_CHUNK_SIZE);
+
+        if(chunkCount <= 1 || isParallel == false){
+            EntityChunk chunk = new EntityChunk(scan, blocks, curveFitter);
+            chunk.compute();
+            chunks.add(chunk);
+            return;
+        }
+
+        int chunkSize = (sectionEnd - sectionStart) / chunkCount;
+        int chunkStart = sectionStart;
+
+        while(chunkStart < sectionEnd){
+            int chunkEnd = DxfMappedTokenizer.findEntityStart(buffer,
+                    Math.min(chunkStart + chunkSize, sectionEnd), sectionEnd);
+
+            ByteBuffer chunkBuffer = buffer.duplicate();
+            chunkBuffer.limit(chunkEnd);
+            chunkBuffer.position(chunkStart);
+
+            chunks.add(new EntityChunk(new DxfMappedTokenizer(chunkBuffer), 
+                    blocks, curveFitter));
+            chunkStart = chunkEnd;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(processors);
+
+        try {
+            for(EntityChunk chunk : chunks){
+                pool.execute(chunk);
+            }
+
+            for(EntityChunk chunk : chunks){
+                chunk.join();
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Moves a tokenizer to the start of the ENTITIES section. The BLOCKS
+     * section is read on the way, since it comes before the ENTITIES section.
+     *
+     * @param scan      The tokenizer at the start of the dxf file
+     * @param blocks    Receives the blocks of the dxf file
+     * @return          False if the file has no ENTITIES section
+     * @throws IOException  Error reading file.
+     */
+    private static boolean findEntitySection(DxfTokenizer scan, 
+            BlockTable blocks) throws IOException {
+        while(scan.next()){
+            if(scan.getGroupCode() == 2 && scan.valueEquals("ENTITIES")){
+                return true;
+            }
+            else if(scan.getGroupCode() == 2 && scan.valueEquals("BLOCKS")){
+                blocks.readBlocks(scan);
+            }
+            else if(scan.getGroupCode() == 0 && scan.valueEquals("EOF")){
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the parsed chunks of a dxf file to the managers in file order,
+     * until the end of the ENTITIES section.
+     *
+     * @param dxfPath   The path of the dxf file the chunks were parsed from
+     * @param chunks    The chunks returned by parseDxfFile()
+     */
+    void addChunks(String dxfPath, ArrayList<EntityChunk> chunks){
+        long startTime = System.nanoTime();
+        this.dxfPath = dxfPath;
+
+        for(EntityChunk chunk : chunks){
+            if(addChunk(chunk)){
+                break;
+            }
+        }
+
+        engine.getMetrics().setBytesRead(new File(dxfPath).length());
+        engine.getMetrics().addPhaseTime(ConversionMetrics.LAYERS,
+                System.nanoTime() - startTime);
+    }
+
+    /**
+     * Adds the layers, entities and unsupported entities of a parsed chunk to
+     * their managers.
+     *
+     * @param chunk     A chunk that has been parsed
+     * @return          True if the chunk reached the end of the section, or
+     *                  stopped because of an error
+     */
+    private boolean addChunk(EntityChunk chunk){
+        for(String layerName : chunk.layerNames){
+            engine.getLayerManager().addLayer(layerName);
+        }
+
+        for(Entity entity : chunk.entities){
+            addEntity(entity);
+        }
+
+        for(String name : chunk.otherEntityNames){
+            engine.getGerberFileManager().addOtherEntity(name);
+        }
+
+        engine.getMetrics().addEntityCounts(chunk.entityCounts);
+
+        if(chunk.error != null){
+            chunk.error.printStackTrace();
+            readError = chunk.error;
+            return true;
+        }
+
+        return chunk.isEndOfSection;
+    }
+
+    /**
+     * Adds an entity to the entity store, resolves the layer it is drawn
+     * on and adds the entity to the area drawn by the layer.
+     *
+     * @param entity    The entity that has just been parsed
+     */
+    private void addEntity(Entity entity){
+        Layer layer = engine.getLayerManager().addLayer(entity.getLayerName());
+        
+        entity.setLayer(layer);
+        
+        if(layer != null){
+            layer.addExtent(entity.getMinX(), entity.getMinY());
+        }
+        
+        entities.add(entity);
+    }
+
+    /** Returns the "entities" ArrayList which contains all supported entities
+     * in the dxf file.
+     *
+     * @return entities
+     */
+    public ArrayList<Entity> getEntities(){
+        return entities;
+    }
+
+    /**
+     * Returns the error that stopped the dxf file from being read, such as a
+     * value that is not a number. The entities before the error were added,
+     * the entities after it were not.
+     *
+     * @return  The error, null if the whole file was read
+     */
+    public Exception getReadError(){
+        return readError;
+    }
+
+    /** Returns the file path of the dxf file that was read.
+     *
+     * @return dxfPath
+     */
+    public String getDxfLocation(){
+        return dxfPath;
+    }
+}
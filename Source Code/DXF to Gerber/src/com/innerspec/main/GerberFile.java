@@ -1,26 +1,63 @@
 
 package com.innerspec.main;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import javax.swing.JFrame;
-import javax.swing.JOptionPane;
+import java.util.Locale;
 
 /** 
  * A data type containing information about each Gerber file. 
  * 
+ * The file is written as entities are output to it. Lines are collected in a
+ * buffer of a fixed size that is flushed to the file whenever it is full, so
+ * only a small part of the file is held in memory at once. The aperture 
+ * header is written first, which requires all apertures (including flashed 
+ * circle diameters) to be known before the file is created.
+ * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
 public class GerberFile {
     
-    public static boolean canOverwriteAll = false;
+    /** The line separator written after each line of the file. */
+    private static final byte[] NEW_LINE 
+            = System.getProperty("line.separator").getBytes();
     
     /** Contains all layers within the Gerber file. */
     public  ArrayList<Layer> fileLayers = new ArrayList<Layer>();
-    private ArrayList<String> fileOutputLines = new ArrayList<String>();
+    
+    /** The size of the buffer that is flushed to the file when full. */
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+    
+    /** Contains the bytes of the lines that have not been flushed yet. */
+    private byte[] fileOutputBytes = new byte[OUTPUT_BUFFER_SIZE];
+    private int fileOutputLength = 0;
+    
+    /** The number of bytes written to the file so far. */
+    private long bytesWritten = 0;
+    
+    /** The number of lines output to the file so far. */
+    private long linesWritten = 0;
+    
+    /** The time spent writing to and closing the file, in nanoseconds. */
+    private long outputTime = 0;
+    
+    /** The number of times a new aperture was selected. */
+    private int apertureChanges = 0;
+    
+    /** The number of step and repeat blocks written. */
+    private int stepRepeatCount = 0;
+    
+    /** The number of regions (G36) written. */
+    private int regionCount = 0;
+    
+    /** The open Gerber file, null if the file cannot be written. */
+    private OutputStream fileOutputStream;
+    
+    /** Formats the commands of the entities written to this file. */
+    private GerberFormatter formatter = new GerberFormatter();
     
     private String filePath;
     private String fileName;
@@ -32,21 +69,17 @@ public class GerberFile {
     
     /** Used to denote which file a layer belongs to. */
     private int fileNumber = 0;
-    
-    
-    /** 
-     * The main output string that contains all the lines that are going to
-     * be written to the Gerber file
-     */
-    private String fileOutput = "";
- 
+
+
     /**
      * Creates a Gerber file using the first layer's file path (and name)
      * that is added to it.
      * 
      * @param layer     The primary layer that is used to for its filePath.
+     * @param engine    The conversion that provides the apertures and the
+     *                  overwrite settings.
      */
-    public GerberFile(Layer layer){
+    public GerberFile(Layer layer, ConversionEngine engine){
         this.filePath = layer.getFilePath();
         this.fileName = layer.getFileName();
         
@@ -54,44 +87,29 @@ public class GerberFile {
         try {
             File file = new File(filePath);
             if (file.createNewFile() == false){
-                if(canOverwriteAll){
+                if(engine.canOverwriteAll()){
                     file.delete();
                     file.createNewFile();
                     canWrite = true;
                 }
                 else {
-                    /*  
-                     *  Uses yes/no/cancel dialog to check if the user only 
-                     *  wants to overwrite or not overwrite one file or 
-                     *  overwrite all the files.   
-                     */
-                    Object[] options = {"Yes", "No", "Overwrite All"};
-                
-                    JFrame fileExistsFrame = new JFrame();
-                    
-                    int n = JOptionPane.showOptionDialog(fileExistsFrame,
-                        this.fileName + " already exists.\n" + "Overwrite?",
-                        "File Already Exists",
-                        JOptionPane.YES_NO_CANCEL_OPTION,
-                        JOptionPane.QUESTION_MESSAGE,
-                        null,
-                        options,
-                        options[2]);
+                    int n = OverwritePrompt.SKIP;
                     
+                    //Existing files are kept if no prompt is set
+                    if(engine.getOverwritePrompt() != null){
+                        n = engine.getOverwritePrompt()
+                                .confirmOverwrite(this.fileName);
+                    }
                     
-                    if(n == JOptionPane.YES_OPTION){
+                    if(n == OverwritePrompt.OVERWRITE){
                         file.delete();
                         file.createNewFile();
                         canWrite = true;
                     }
-                    else if(n == JOptionPane.NO_OPTION){
-                        canWrite = false;
-                    }
-                    //"Overwrite All" replaces the cancel option
-                    else if(n == JOptionPane.CANCEL_OPTION){
+                    else if(n == OverwritePrompt.OVERWRITE_ALL){
                         file.delete();
                         file.createNewFile();
-                        canOverwriteAll = true;
+                        engine.setCanOverwriteAll(true);
                         canWrite = true;
                     }
                     else {
@@ -106,12 +124,20 @@ public class GerberFile {
          catch (IOException e) {
              e.printStackTrace();
          }
+        
+        openFile();
 
         //Prints gerber header        
         addOutputln ("*%FSLAX25Y25*%");
         addOutputln ("G70*");
+        
+        //Arcs are written as single commands in multi quadrant mode
+        if(engine.isMultiQuadrant()){
+            addOutputln ("G75*");
+        }
+        
         addOutputln ("%IPPOS*%");
-        addOutputln (ThicknessManager.getThicknessArrayOutput());
+        addOutputln (engine.getThicknessManager().getThicknessArrayOutput());
 
         addLayer(layer);    
     }
@@ -154,49 +180,242 @@ public class GerberFile {
     }
     
     public void setOldThicknessCode(int thicknessCode){
+        if(thicknessCode != oldThicknessCode){
+            apertureChanges++;
+        }
+        
         this.oldThicknessCode = thicknessCode;
     }
     
+    public int getApertureChanges(){
+        return apertureChanges;
+    }
+    
     public int getOldThicknessCode(){
         return oldThicknessCode;
     }
     
-    public void printLines(){
+    /**
+     * Opens the Gerber file for writing if the user allowed it to be written.
+     */
+    private void openFile(){
         if (canWrite == true) {
-            File gbrFile;
-
             try {
-                gbrFile = new File(filePath);
-
-                BufferedWriter writer = 
-                        new BufferedWriter(new FileWriter(gbrFile, true));
-
-                for(String line: fileOutputLines){
-                    if(line != null)
-                        writer.write(line);
-                    else
-                        writer.newLine();
-                }
-
-                writer.close();
-            } 
-            catch(NullPointerException e) {
-                System.out.println("ERROR: gbrPrintLn");
+                fileOutputStream = new FileOutputStream(new File(filePath));
+            }
+            catch(IOException e){
+                System.out.println("ERROR: FILEOPEN");
+                e.printStackTrace();
+                canWrite = false;
             }
+        }
+    }
+    
+    /**
+     * Writes the buffered lines to the Gerber file and empties the buffer.
+     */
+    private void flush(){
+        if (fileOutputStream != null && fileOutputLength > 0) {
+            long startTime = System.nanoTime();
+            
+            try {
+                fileOutputStream.write(fileOutputBytes, 0, fileOutputLength);
+                bytesWritten += fileOutputLength;
+            } 
             catch(IOException e){
                 System.out.println("ERROR: FILEPRINTLN");
                 e.printStackTrace();
+                closeStream();
+                canWrite = false;
+            }
+            
+            outputTime += System.nanoTime() - startTime;
+        }
+        
+        fileOutputLength = 0;
+    }
+    
+    /**
+     * Writes the remaining buffered lines and closes the Gerber file. Called
+     * once the end code has been added.
+     */
+    public void close(){
+        flush();
+        
+        long startTime = System.nanoTime();
+        closeStream();
+        outputTime += System.nanoTime() - startTime;
+    }
+    
+    /**
+     * Closes the Gerber file without finishing it and deletes it. Used when
+     * the conversion is cancelled, so that no partially written file is left
+     * behind. Files that were skipped are not touched.
+     */
+    public void delete(){
+        if (canWrite == true) {
+            closeStream();
+            fileOutputLength = 0;
+            canWrite = false;
+            
+            if(new File(filePath).delete() == false){
+                System.out.println("ERROR: FILEDELETE\t" + filePath);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of bytes output to the file so far, including the 
+     * bytes that have not been flushed yet.
+     */
+    public long getBytesWritten(){
+        return canWrite ? bytesWritten + fileOutputLength : 0;
+    }
+    
+    /**
+     * Returns the number of lines output to the file so far.
+     */
+    public long getLinesWritten(){
+        return linesWritten;
+    }
+    
+    /**
+     * Returns the time spent writing to and closing the file, in 
+     * nanoseconds.
+     */
+    public long getOutputTime(){
+        return outputTime;
+    }
+    
+    private void closeStream(){
+        if (fileOutputStream != null) {
+            try {
+                fileOutputStream.close();
+            }
+            catch(IOException e){
+                e.printStackTrace();
             }
+            
+            fileOutputStream = null;
         }
     }
     
     public void addOutputln(String line){
-        fileOutputLines.add(line);
-        fileOutputLines.add(null);
+        addOutput(line);
+        addBytes(NEW_LINE, NEW_LINE.length);
+        linesWritten++;
+    }
+    
+    /**
+     * Adds the command held by a formatter as a line of the file.
+     * 
+     * @param line  The formatter holding the formatted command
+     */
+    public void addOutputln(GerberFormatter line){
+        addBytes(line.getBuffer(), line.length());
+        addBytes(NEW_LINE, NEW_LINE.length);
+        linesWritten++;
     }
     
     public void addOutput(String line) {
-        fileOutputLines.add(line);
+        int length = line.length();
+        int k = 0;
+        
+        while(k < length){
+            if(fileOutputLength == fileOutputBytes.length){
+                flush();
+            }
+            
+            int end = Math.min(length, 
+                    k + fileOutputBytes.length - fileOutputLength);
+            
+            for(; k < end; k++){
+                fileOutputBytes[fileOutputLength++] = (byte)line.charAt(k);
+            }
+        }
+    }
+    
+    private void addBytes(byte[] bytes, int length){
+        int k = 0;
+        
+        while(k < length){
+            if(fileOutputLength == fileOutputBytes.length){
+                flush();
+            }
+            
+            int count = Math.min(length - k, 
+                    fileOutputBytes.length - fileOutputLength);
+            
+            System.arraycopy(bytes, k, fileOutputBytes, fileOutputLength, 
+                    count);
+            fileOutputLength += count;
+            k += count;
+        }
+    }
+    
+    /**
+     * Starts a step and repeat block. The objects written until 
+     * endStepAndRepeat() is called are drawn once by the plotter for every
+     * cell of a grid, so a block inserted many times is only written once.
+     * 
+     * @param columns   The number of copies along x, at least 1
+     * @param rows      The number of copies along y, at least 1
+     * @param xStep     The distance between columns in Gerber units, 0 if 
+     *                  there is one column
+     * @param yStep     The distance between rows in Gerber units, 0 if there
+     *                  is one row
+     */
+    public void startStepAndRepeat(int columns, int rows, int xStep, 
+            int yStep){
+        addOutputln("%SRX" + columns + "Y" + rows 
+                + "I" + toInches(xStep) + "J" + toInches(yStep) + "*%");
+        stepRepeatCount++;
+    }
+    
+    /**
+     * Ends the step and repeat block started by startStepAndRepeat().
+     */
+    public void endStepAndRepeat(){
+        addOutputln("%SR*%");
+    }
+    
+    public int getStepRepeatCount(){
+        return stepRepeatCount;
+    }
+    
+    /**
+     * Starts a region. The contours drawn until endRegion() is called are 
+     * filled instead of being drawn with the aperture. Each contour starts
+     * with a move (D02) and has to end at the point it starts at.
+     */
+    public void startRegion(){
+        addOutputln("G36*");
+        regionCount++;
+    }
+    
+    /**
+     * Ends the region started by startRegion().
+     */
+    public void endRegion(){
+        addOutputln("G37*");
+    }
+    
+    public int getRegionCount(){
+        return regionCount;
+    }
+    
+    /**
+     * Returns a distance in Gerber units as a decimal number of inches.
+     */
+    private static String toInches(int distance){
+        return String.format(Locale.US, "%.5f", distance / 100000.0);
+    }
+    
+    /**
+     * Returns the formatter used to format commands for this file.
+     */
+    public GerberFormatter getFormatter(){
+        return formatter;
     }
     
     public boolean canWrite(){
@@ -1,170 +1,321 @@
 
 package com.innerspec.main;
 
-import com.innerspec.entity.Line;
-import com.innerspec.entity.Arc;
-import com.innerspec.entity.Circle;
-import java.io.BufferedReader;
-import java.io.IOException;
+import com.innerspec.entity.Entity;
 import java.util.ArrayList;
-import java.io.FileReader;
+import java.util.HashMap;
+import java.util.Locale;
 
 /** 
- * Handles the creation and writing of Gerber file data.
+ * Handles the creation and writing of Gerber file data for a conversion.
  * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
 public class GerberFileManager {
-    private static ArrayList<Layer> layers 
-            = LayerManager.getLayers();
+    /** The number of entities written between checks for cancellation. */
+    private static final int CHECK_INTERVAL = 1024;
     
-    private static ArrayList<GerberFile> gerberFiles 
+    /** The minimum time between two progress updates, in nanoseconds. */
+    private static final long PROGRESS_INTERVAL = 100000000L;
+    
+    /** 
+     * The names of the entities in the out of bounds and zero size 
+     * counters, in the order of their entity types (see 
+     * addEntityOutOfBounds()).
+     */
+    static final String[] ENTITY_LABELS = {"Line(s)", "Circle(s)",
+            "Arc(s)", "Polyline(s)", "Insert(s)", "Ellipse(s)", "Spline(s)",
+            "Hatch(es)", "Solid(s)"};
+    
+    private ArrayList<GerberFile> gerberFiles 
             = new ArrayList<GerberFile>();
     
-    private static ProgressFrame progressFrame;
+    /** The Gerber files of the "gerberFiles" ArrayList by file path. */
+    private HashMap<String, GerberFile> gerberFilesByPath 
+            = new HashMap<String, GerberFile>();
+    
+    private ConversionEngine engine;
+    private ProgressListener progressListener;
+    
+    /** Joins lines and arcs into paths, null if paths are not joined. */
+    private PathChainer pathChainer;
+    
+    /** Orders the entities to write, null if they are written in order. */
+    private TravelOptimizer travelOptimizer;
+    
+    /** 
+     * Finds the grids of block references written with step and repeat, null
+     * if every reference is written on its own.
+     */
+    private StepRepeatFinder stepRepeatFinder;
     
-    private static BufferedReader scan;
-    private static int fileNum = 0;    
-    private static int entityQuantity = 0; 
+    private int fileNum = 0;    
+    private int entityQuantity = 0; 
     
-    private static ArrayList<String> otherEntityNames       = new ArrayList<String>();
-    private static ArrayList<Integer> otherEntityQuantities = new ArrayList<Integer>(); 
+    private ArrayList<String> otherEntityNames       = new ArrayList<String>();
+    private ArrayList<Integer> otherEntityQuantities = new ArrayList<Integer>(); 
     
-    private static int[] entitiesOutOfBounds = {0,0,0};
-    private static int[] zeroLengthEntities = {0,0,0};
-    private static int otherEntitiesTotal = 0;
+    private int[] entitiesOutOfBounds = new int[ENTITY_LABELS.length];
+    private int[] zeroLengthEntities = new int[ENTITY_LABELS.length];
+    private int otherEntitiesTotal = 0;
+    
+    /**
+     * @param engine    The conversion the Gerber files belong to
+     */
+    GerberFileManager(ConversionEngine engine){
+        this.engine = engine;
+    }
     
     /** Starts process to create and write to Gerber files.
      * 
      * Loops through all layers, calling createGerberFile() to create all 
      * unique Gerber files.
-     * Afterwards, searchAndWriteEntities() is called to write all entities to 
-     * the files. 
+     * Afterwards, writeEntities() is called to write all entities to the 
+     * files. 
+     * 
+     * If the conversion is cancelled while the entities are written, the 
+     * Gerber files are deleted and no results are reported.
+     * 
+     * @param listener  Receives the results of the conversion, such as the 
+     *                  ProgressFrame.
      */
-    public static void startWriting() {
+    void startWriting(ProgressListener listener) {
         
-        progressFrame = PrimaryFileSelectorFrame.getProgressFrame();
+        progressListener = listener;
+        ConversionMetrics metrics = engine.getMetrics();
+        long startTime = System.nanoTime();
         
         //creates files and thicknesses
         //Nested for loop used to repeat 
         //for (Layer primary : layers) {
-            for (Layer l : layers) {
+            for (Layer l : engine.getLayers()) {
                 createGerberFile(l);
             }
         //}
         
-        searchAndWriteEntities();
-        writeProgressOutput();
+        long writeTime = System.nanoTime();
+        metrics.addPhaseTime(ConversionMetrics.FILES, writeTime - startTime);
+        
+        if(engine.isChainingPaths()){
+            pathChainer = new PathChainer(engine.getEntityManager()
+                    .getEntities(), engine.getChainTolerance(), 
+                    engine.getPadFinder());
+            
+            startTime = writeTime;
+            writeTime = System.nanoTime();
+            metrics.addPhaseTime(ConversionMetrics.CHAIN, 
+                    writeTime - startTime);
+        }
+        
+        if(engine.isStepAndRepeat()){
+            stepRepeatFinder = new StepRepeatFinder(engine);
+            metrics.setStepRepeats(stepRepeatFinder.getGridCount(), 
+                    stepRepeatFinder.getCopyCount());
+            
+            startTime = writeTime;
+            writeTime = System.nanoTime();
+            metrics.addPhaseTime(ConversionMetrics.REPEAT, 
+                    writeTime - startTime);
+        }
+        
+        if(engine.isOptimizingTravel()){
+            travelOptimizer = new TravelOptimizer(engine, pathChainer, 
+                    stepRepeatFinder);
+            metrics.setTravel(new int[]{
+                    travelOptimizer.getToolChangesBefore(), 
+                    travelOptimizer.getToolChangesAfter()}, new double[]{
+                    travelOptimizer.getTravelBefore(), 
+                    travelOptimizer.getTravelAfter()});
+            
+            startTime = writeTime;
+            writeTime = System.nanoTime();
+            metrics.addPhaseTime(ConversionMetrics.ORDER, 
+                    writeTime - startTime);
+        }
+        
+        long outputTime = metrics.getOutputTime();
+        
+        boolean isWritten = writeEntities();
+        
+        //The time spent in the files is split from the formatting
+        outputTime = metrics.getOutputTime() - outputTime;
+        metrics.addPhaseTime(ConversionMetrics.OUTPUT, outputTime);
+        metrics.addPhaseTime(ConversionMetrics.FORMAT, 
+                System.nanoTime() - writeTime - outputTime);
+        
+        if(isWritten){
+            writeProgressOutput();
+        }
+        else {
+            for(GerberFile g : gerberFiles){
+                g.delete();
+            }
+            
+            progressListener.addProgressEvent("\nConversion Cancelled. "
+                    + "Partially written Gerber files were deleted.", 100);
+        }
     }
     
     /** Creates a Gerber file for a layer or adds it to the file. Synchronizes
-     * the fileNum of the layer and Gerber file to which a layer belongs to.
+     * the fileNum of the layer and Gerber file to which a layer belongs to,
+     * and gives the layer its Gerber file so that the entities of the layer 
+     * do not have to look it up.
      * 
      * @param   layer     The layer of which a Gerber file will be created or 
      *                    added to.
      */
-    private static void createGerberFile(Layer layer) {
+    private void createGerberFile(Layer layer) {
         /*
-        * First checks to see if the gerber file array is empty.
-        *
         * Creates a Gerber file from the layer or adds the layer to a gerber 
         * file if its file already exists.
         */
         
-        boolean isUsed = false;
+        GerberFile gerberFile = gerberFilesByPath.get(layer.getFilePath());
         
-        if (gerberFiles.isEmpty()) {
-            //Avoids adding to fileNum which starts from 0
-            GerberFile gerberFile = new GerberFile(layer);
-            
-            layer.setFileNum(gerberFile.getFileNumber());
-            gerberFiles.add(gerberFile);
+        if (gerberFile != null) {
+            gerberFile.addLayer(layer);
         } else {
-            for (GerberFile gerberFile : gerberFiles) {
-                if (gerberFile.getGerberFilePath().equals(layer.getFilePath())){
-                    isUsed = true;
-                    layer.setFileNum(gerberFile.getFileNumber());
-                    gerberFile.addLayer(layer);
-                }
-            }
-            if (isUsed == false) {
+            gerberFile = new GerberFile(layer, engine); 
+            
+            //Avoids adding to fileNum for the first file, which starts from 0
+            if (gerberFiles.isEmpty() == false) {
                 fileNum++;
-                GerberFile gerberFile = new GerberFile(layer); 
-                
                 gerberFile.setFileNumber(fileNum);
-                layer.setFileNum(gerberFile.getFileNumber());
-                gerberFiles.add(gerberFile);
             }
+            
+            gerberFiles.add(gerberFile);
+            gerberFilesByPath.put(gerberFile.getGerberFilePath(), gerberFile);
         }
+        
+        layer.setFileNum(gerberFile.getFileNumber());
+        layer.setGerberFile(gerberFile);
     }
 
     /**
-     * Searches the dxf file for each entity (line, arc, or circle) and writes 
-     * to a Gerber file using the startEntityWriting() method.
+     * Writes each entity (line, arc, or circle) in the entity store to its 
+     * Gerber file. The entity store is filled by EntityManager when the dxf 
+     * file is read, so the dxf file is not read again here.
+     * 
+     * If paths are joined, the first line or arc of each path is written 
+     * with the rest of the path, and the other segments of the path are 
+     * skipped when they are reached. The same goes for the block references
+     * of a grid found by the StepRepeatFinder, which are written in a step
+     * and repeat block when the first of them is reached, and for the 
+     * entities of a pad found by the PadFinder, which are written as one 
+     * flash. If the travel is optimized, the units
+     * of the TravelOptimizer are written in its order instead.
      * 
-     * Once a NullPointerException is thrown (reaching the end of the dxf file), 
-     * the end code is written to all Gerber files.
+     * Once all entities are written, the end code is written to all Gerber 
+     * files.
+     * 
+     * @return  False if the conversion was cancelled before all entities were
+     *          written
      */
-    private static void searchAndWriteEntities() {
-        String line = "";
+    private boolean writeEntities() {
+        ArrayList<Entity> entities = engine.getEntityManager().getEntities();
+        long lastUpdate = System.nanoTime();
+        int nextCheck = CHECK_INTERVAL;
+        int segment = 0;
+        int count = travelOptimizer != null ? travelOptimizer.getUnitCount()
+                : entities.size();
+        PadFinder padFinder = engine.getPadFinder();
         
-        try {
-            scan = new BufferedReader(
-                    new FileReader(PrimaryFileSelectorFrame.getDxfLocation()));
-            
-            boolean inEntitySection = false;
+        for(int k = 0; k < count; k++){
+            if(travelOptimizer != null){
+                entityQuantity += travelOptimizer.writeUnit(k);
+            }
+            else if(padFinder != null && padFinder.isPadMember(k)){
+                if(padFinder.isPadStart(k)){
+                    entityQuantity += padFinder.writePad(k);
+                }
+            }
+            else if(pathChainer != null && segment < pathChainer.getSegmentCount()
+                    && pathChainer.getEntityIndex(segment) == k){
+                if(pathChainer.buildPath(segment)){
+                    writePath();
+                }
+                
+                segment++;
+            }
+            else if(stepRepeatFinder != null && stepRepeatFinder.isRepeated(k)){
+                if(stepRepeatFinder.isGridStart(k)){
+                    entityQuantity += stepRepeatFinder.writeGrid(k);
+                }
+            }
+            else {
+                entities.get(k).write(engine);
+                entityQuantity++;
+            }
             
-            //changed second br.readLine() to line
-            while((line = scan.readLine()) != null){
+            if(entityQuantity >= nextCheck){
+                nextCheck = entityQuantity + CHECK_INTERVAL;
+                
+                if(engine.isCancelled()){
+                    return false;
+                }
                 
-                //Only looks for entities in entity section
-                if(line.compareTo("ENTITIES") == 0) inEntitySection = true;
+                long time = System.nanoTime();
                 
-                if(inEntitySection == true){
-                    if(line.equals("  0")){
-                        //Reads the line after the "  0" code
-                        line = scan.readLine();
-                        
-                        if (line.equals("LINE")) {
-                            Line l = new Line(scan);
-                            entityQuantity++;
-                        }
-                        else if (line.equals("CIRCLE")) {
-                            Circle c = new Circle(scan);
-                            entityQuantity++;
-                        }
-                        else if (line.equals("ARC")) {
-                            Arc a = new Arc(scan);
-                            entityQuantity++;
-                        }
-                        else if (line.equals("ENDSEC")){
-                            inEntitySection = false;
-                        } 
-                        else {
-                            //Unrecognized entity
-                            addOtherEntity(line);
-                            otherEntitiesTotal++;
-                        }
-                    }		
+                if(time - lastUpdate >= PROGRESS_INTERVAL){
+                    progressListener.updateProgress(entityQuantity, 
+                            entities.size(), getBytesWritten());
+                    lastUpdate = time;
                 }
             }
-            
-            scan.close();
-            
-        } catch(IOException e){
-            e.printStackTrace();
-        } catch(NullPointerException n){
-            n.printStackTrace();
         }
         
+        if(engine.isCancelled()){
+            return false;
+        }
+        
+        progressListener.updateProgress(entityQuantity, entities.size(), 
+                getBytesWritten());
+        
         for(GerberFile g : gerberFiles){
             //Prints the end code in all gerber files
             g.addOutputln("M02*");
-            g.printLines();
+            g.close();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Writes the last path built by the path chainer. Only the first segment
+     * of the path starts with a move.
+     */
+    private void writePath(){
+        int length = pathChainer.getPathLength();
+        
+        for(int k = 0; k < length; k++){
+            pathChainer.getPathSegment(k).writePath(engine, 
+                    pathChainer.isPathReversed(k), k > 0);
+        }
+        
+        entityQuantity += length;
+        engine.getMetrics().addMovesSaved(length - 1);
+    }
+    
+    /**
+     * Returns the number of bytes output to all Gerber files so far.
+     */
+    private long getBytesWritten(){
+        long bytes = 0;
+        
+        for(GerberFile g : gerberFiles){
+            bytes += g.getBytesWritten();
         }
+        
+        return bytes;
     }
     
-    private static void addOtherEntity(String name){
+    /**
+     * Counts an entity that is not supported by the converter. Called by
+     * EntityManager while the dxf file is read.
+     * 
+     * @param name  The name of the unsupported entity
+     */
+    void addOtherEntity(String name){
         int index = 0;
         boolean isFound = false;
         
@@ -177,6 +328,8 @@ public class GerberFileManager {
             index++;
         }
         
+        otherEntitiesTotal++;
+        
         if(isFound == false){
             otherEntityNames.add(name);
             otherEntityQuantities.add(1);
@@ -186,13 +339,67 @@ public class GerberFileManager {
         }
     }
     
-    private static void writeProgressOutput(){
-        progressFrame.addProgressEvent("DXF Input File: \n"
-                + "\t" + PrimaryFileSelectorFrame.getDxfLocation() + "\n", 0);
+    private void writeProgressOutput(){
+        progressListener.addProgressEvent("DXF Input File: \n"
+                + "\t" + engine.getDxfLocation() + "\n", 0);
         
-        progressFrame.addProgressEvent(entityQuantity 
+        progressListener.addProgressEvent(entityQuantity 
                 + " Entities Processed", 0);
         
+        double[] shift = engine.getOriginShift();
+        
+        if(shift[0] > 0 || shift[1] > 0){
+            progressListener.addProgressEvent(String.format(Locale.US, 
+                    "\nOrigin Shifted By: X %.3f in, Y %.3f in", shift[0], 
+                    shift[1]), 0);
+        }
+        
+        if(travelOptimizer != null){
+            ConversionMetrics metrics = engine.getMetrics();
+            
+            progressListener.addProgressEvent(String.format(Locale.US, 
+                    "\nTool Changes: %d (%d in file order)"
+                    + "\nTravel: %.3f in (%.3f in in file order)", 
+                    metrics.getToolChanges(true), 
+                    metrics.getToolChanges(false), metrics.getTravel(true),
+                    metrics.getTravel(false)), 0);
+        }
+        
+        if(engine.getCurveFitter().getCurveCount() > 0){
+            progressListener.addProgressEvent(String.format(Locale.US, 
+                    "\nCurves Fitted: %d ellipses and splines (%d shapes) as "
+                    + "%d lines and arcs", 
+                    engine.getCurveFitter().getCurveCount(), 
+                    engine.getCurveFitter().getFitCount(), 
+                    engine.getCurveFitter().getPieceCount()), 0);
+        }
+        
+        int regionCount = 0;
+        
+        for(GerberFile g : gerberFiles){
+            regionCount += g.getRegionCount();
+        }
+        
+        if(regionCount > 0){
+            progressListener.addProgressEvent(String.format(Locale.US, 
+                    "\nRegions Filled: %d regions (G36) for hatches and "
+                    + "solids", regionCount), 0);
+        }
+        
+        if(engine.getPadFinder() != null){
+            progressListener.addProgressEvent(String.format(Locale.US, 
+                    "\nPads Flashed: %d pads with %d aperture macros", 
+                    engine.getPadFinder().getFlashCount(), 
+                    engine.getPadFinder().getApertureCount()), 0);
+        }
+        
+        if(stepRepeatFinder != null){
+            progressListener.addProgressEvent(String.format(Locale.US, 
+                    "\nStep and Repeat: %d grids of %d block copies", 
+                    stepRepeatFinder.getGridCount(), 
+                    stepRepeatFinder.getCopyCount()), 0);
+        }
+        
         boolean hasWrittenFiles = false;
         
         /* 
@@ -214,7 +421,7 @@ public class GerberFileManager {
                 s = "\n" + otherEntitiesTotal
                         + " Unsupported Entities Found:";
 
-                progressFrame.addProgressEvent(s, 0);
+                progressListener.addProgressEvent(s, 0);
 
                 for(String name: otherEntityNames){
                     if(otherEntityQuantities.get(index) == 1){
@@ -226,13 +433,13 @@ public class GerberFileManager {
                             + " " + name + " Entities Found";
                     }
 
-                    progressFrame.addProgressEvent(s, 0);
+                    progressListener.addProgressEvent(s, 0);
 
                     index++;
                 }
             }
             else {
-                progressFrame.addProgressEvent("\n0 Unsupported Entities "
+                progressListener.addProgressEvent("\n0 Unsupported Entities "
                         + "Found.", index);
             }
             
@@ -241,35 +448,22 @@ public class GerberFileManager {
             String outOfBoundsError = "";
             int totalBoundsErrors = 0;
 
-            for(int i = 0; i < 3; i++){
-                if(i == 0){
-                    outOfBoundsError = outOfBoundsError + "\t" 
-                            + entitiesOutOfBounds[i] 
-                            + " Line(s)\n";
-                }
-                else if (i == 1){
-                    outOfBoundsError = outOfBoundsError + "\t" 
-                            + entitiesOutOfBounds[i] 
-                            + " Circle(s)\n";
-                }
-                else if (i == 2){
-                    outOfBoundsError = outOfBoundsError + "\t" 
-                            + entitiesOutOfBounds[i] 
-                            + " Arc(s)\n";
-                }
-
+            for(int i = 0; i < ENTITY_LABELS.length; i++){
+                outOfBoundsError = outOfBoundsError + "\t" 
+                        + entitiesOutOfBounds[i] + " " + ENTITY_LABELS[i] 
+                        + "\n";
                 totalBoundsErrors += entitiesOutOfBounds[i];
             }
             
             if(totalBoundsErrors > 0){
                 //Writes error message if there are any bounds errors
-                progressFrame.addProgressEvent("\n" + totalBoundsErrors 
+                progressListener.addProgressEvent("\n" + totalBoundsErrors 
                         + " Entities Out of Bounds:", 0);
 
-                progressFrame.addProgressEvent(outOfBoundsError, 0);
+                progressListener.addProgressEvent(outOfBoundsError, 0);
             }
             else{
-                progressFrame.addProgressEvent("\n0 Entities Out of Bounds.", 0);
+                progressListener.addProgressEvent("\n0 Entities Out of Bounds.", 0);
             }
             
             /* Writes entities that are of zero length or size */
@@ -277,69 +471,88 @@ public class GerberFileManager {
             String zeroLengthError = "";
             int totalZeroLengthErrors = 0;
 
-            for(int i = 0; i < 3; i++){
-                if(i == 0){
-                    zeroLengthError = zeroLengthError + "\t" 
-                            + zeroLengthEntities[i] 
-                            + " Line(s)\n";
-                }
-                else if (i == 1){
-                    zeroLengthError = zeroLengthError + "\t" 
-                            + zeroLengthEntities[i] 
-                            + " Circle(s)\n";
-                }
-                else if (i == 2){
-                    zeroLengthError = zeroLengthError + "\t" 
-                            + zeroLengthEntities[i] 
-                            + " Arc(s)";
+            for(int i = 0; i < ENTITY_LABELS.length; i++){
+                zeroLengthError = zeroLengthError + "\t" 
+                        + zeroLengthEntities[i] + " " + ENTITY_LABELS[i];
+                
+                if(i < ENTITY_LABELS.length - 1){
+                    zeroLengthError = zeroLengthError + "\n";
                 }
-
                 totalZeroLengthErrors += zeroLengthEntities[i];
             }
             
             if(totalZeroLengthErrors > 0){
                 //Writes error message if there are any bounds errors
-                progressFrame.addProgressEvent("\n" + totalZeroLengthErrors 
+                progressListener.addProgressEvent("\n" + totalZeroLengthErrors 
                         + " Zero Size Entities Found:", 0);
 
-                progressFrame.addProgressEvent(zeroLengthError, 0);
+                progressListener.addProgressEvent(zeroLengthError, 0);
             }
             else{
-                progressFrame.addProgressEvent("\n0 Zero Size Entities.", 0);
+                progressListener.addProgressEvent("\n0 Zero Size Entities.", 0);
             }
             
-            progressFrame.addProgressEvent("\nGerber Files Created:", 100);
+            progressListener.addProgressEvent("\nGerber Files Created:", 100);
             
             for(GerberFile g: gerberFiles){
                 if(g.canWrite()){
-                    progressFrame.addProgressEvent("\t" + g.getGerberFilePath(), 0);
+                    progressListener.addProgressEvent("\t" + g.getGerberFilePath(), 0);
                 }
             }
         }
         else {
-            progressFrame.addProgressEvent("\nNo Gerber Files Written!", 100);
+            progressListener.addProgressEvent("\nNo Gerber Files Written!", 100);
         }
         
-        progressFrame.setDoneWriting(true);
+        progressListener.setDoneWriting(true);
     }
     
-    public static ArrayList getGerberFiles() {
+    public ArrayList getGerberFiles() {
         return gerberFiles;
     }
     
-    public static ArrayList<String> getOtherEntities(){
+    public ArrayList<String> getOtherEntities(){
         return otherEntityNames;
     }
     
+    /** Returns the number of times each unsupported entity was found, in the
+     * order of getOtherEntities().
+     */
+    public ArrayList<Integer> getOtherEntityQuantities(){
+        return otherEntityQuantities;
+    }
+    
+    public int getEntityQuantity(){
+        return entityQuantity;
+    }
+    
+    /**
+     * @return  The number of out of bounds lines, circles, arcs, polylines,
+     *          inserts, ellipses, splines, hatches and solids
+     */
+    public int[] getEntitiesOutOfBounds(){
+        return entitiesOutOfBounds;
+    }
+    
+    /**
+     * @return  The number of zero size lines, circles, arcs, polylines,
+     *          inserts, ellipses, splines, hatches and solids
+     */
+    public int[] getZeroLengthEntities(){
+        return zeroLengthEntities;
+    }
+    
     /**
      * 
-     * @param entityType 0 for line, 1 for circle, and 2 for arc 
+     * @param entityType 0 for line, 1 for circle, 2 for arc, 3 for 
+     *                   polyline, 4 for insert, 5 for ellipse, 6 for
+     *                   spline, 7 for hatch and 8 for solid
      */
-    public static void addEntityOutOfBounds(int entityType){
+    public void addEntityOutOfBounds(int entityType){
         entitiesOutOfBounds[entityType]++;
     }
     
-    public static void addZeroLengthEntity(int entityType){
+    public void addZeroLengthEntity(int entityType){
         zeroLengthEntities[entityType]++;
     }
 }
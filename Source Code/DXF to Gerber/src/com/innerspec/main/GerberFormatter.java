@@ -0,0 +1,227 @@
+package com.innerspec.main;
+
+/**
+ * Formats single Gerber commands into a reusable byte buffer. Coordinates are
+ * written digit by digit, so no Strings are created while the entities of a
+ * Gerber file are formatted. Each GerberFile owns one formatter, which is
+ * reused for every command written to that file.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class GerberFormatter {
+    private byte[] buffer = new byte[128];
+    private int length = 0;
+
+    /** Holds the digits of a number while it is written, lowest first. */
+    private byte[] digits = new byte[20];
+
+    /** Added to the x and y coordinates of every command, in Gerber units. */
+    private int xOffset = 0;
+    private int yOffset = 0;
+
+    /** The position of the last command formatted, without the offset. */
+    private int lastX = 0;
+    private int lastY = 0;
+
+    /**
+     * Sets the offset added to the x and y coordinates of the commands
+     * formatted from now on, such as the position of a block reference. The
+     * center offsets of circular draws are not changed.
+     *
+     * @param xOffset   The x offset in Gerber units, 0 for none
+     * @param yOffset   The y offset in Gerber units, 0 for none
+     */
+    public void setOffset(int xOffset, int yOffset){
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+    }
+
+    /**
+     * Returns the x position of the last move, draw or flash formatted,
+     * which is where the plotter is once the command is written, such as
+     * the end of the segment a path continues from. The offset is not
+     * included.
+     */
+    public int getLastX(){
+        return lastX;
+    }
+
+    public int getLastY(){
+        return lastY;
+    }
+
+    private void setLastPosition(int x, int y){
+        lastX = x;
+        lastY = y;
+    }
+
+    /**
+     * Clears the buffer and starts a new command with a prefix such as "G01".
+     *
+     * @param prefix    The start of the command, can be empty.
+     * @return          This formatter
+     */
+    public GerberFormatter startCommand(String prefix){
+        length = 0;
+        append(prefix);
+        return this;
+    }
+
+    /**
+     * Formats a move or draw command, for example "G01X100Y200D02*".
+     *
+     * @param prefix    The G code written before the coordinates, can be empty
+     * @param x         The x coordinate in Gerber units
+     * @param y         The y coordinate in Gerber units
+     * @param dCode     The D code and end of the command, such as "D02*"
+     * @param width     The minimum number of characters of each coordinate
+     * @return          This formatter
+     */
+    public GerberFormatter formatCommand(String prefix, int x, int y,
+            String dCode, int width){
+        startCommand(prefix);
+        setLastPosition(x, y);
+        appendCoordinate('X', x + xOffset, width);
+        appendCoordinate('Y', y + yOffset, width);
+        append(dCode);
+        return this;
+    }
+
+    /**
+     * Formats a circular interpolation command with a single center offset,
+     * for example "G03X100Y200I50D01*".
+     *
+     * @param offsetAxis    'I' or 'J'
+     * @param offset        The center offset in Gerber units
+     * @return              This formatter
+     */
+    public GerberFormatter formatCommand(String prefix, int x, int y,
+            char offsetAxis, int offset, String dCode, int width){
+        startCommand(prefix);
+        setLastPosition(x, y);
+        appendCoordinate('X', x + xOffset, width);
+        appendCoordinate('Y', y + yOffset, width);
+        appendCoordinate(offsetAxis, offset, width);
+        append(dCode);
+        return this;
+    }
+
+    /**
+     * Formats a circular interpolation command with both center offsets, for
+     * example "X100Y200I50J0D01*".
+     *
+     * @param i     The x offset of the center in Gerber units
+     * @param j     The y offset of the center in Gerber units
+     * @return      This formatter
+     */
+    public GerberFormatter formatCommand(String prefix, int x, int y, int i,
+            int j, String dCode, int width){
+        startCommand(prefix);
+        setLastPosition(x, y);
+        appendCoordinate('X', x + xOffset, width);
+        appendCoordinate('Y', y + yOffset, width);
+        appendCoordinate('I', i, width);
+        appendCoordinate('J', j, width);
+        append(dCode);
+        return this;
+    }
+
+    /**
+     * Formats a tool select command, for example "G54D10*".
+     *
+     * @param thicknessCode     The aperture code of the tool
+     * @return                  This formatter
+     */
+    public GerberFormatter formatToolSelect(int thicknessCode){
+        startCommand("G54D");
+        appendInteger(thicknessCode, 0);
+        append("*");
+        return this;
+    }
+
+    /**
+     * Appends an axis letter followed by a coordinate.
+     */
+    public void appendCoordinate(char axis, int value, int width){
+        ensureCapacity(1);
+        buffer[length++] = (byte)axis;
+        appendInteger(value, width);
+    }
+
+    /**
+     * Appends an integer padded with zeros to a minimum width. The result is
+     * the same as String.format("%0" + width + "d", value); the minus sign of
+     * a negative value counts towards the width.
+     *
+     * @param value     The integer to append
+     * @param width     The minimum number of characters, 0 for no padding
+     */
+    public void appendInteger(int value, int width){
+        long remaining = value;
+        boolean isNegative = remaining < 0;
+
+        if(isNegative){
+            remaining = -remaining;
+            width--;
+        }
+
+        int digitCount = 0;
+
+        do {
+            digits[digitCount++] = (byte)('0' + remaining % 10);
+            remaining = remaining / 10;
+        } while(remaining > 0);
+
+        ensureCapacity(Math.max(digitCount, width) + 1);
+
+        if(isNegative){
+            buffer[length++] = '-';
+        }
+
+        for(int k = digitCount; k < width; k++){
+            buffer[length++] = '0';
+        }
+
+        while(digitCount > 0){
+            buffer[length++] = digits[--digitCount];
+        }
+    }
+
+    /**
+     * Appends an ASCII String to the buffer.
+     */
+    public void append(String s){
+        int size = s.length();
+        ensureCapacity(size);
+
+        for(int k = 0; k < size; k++){
+            buffer[length++] = (byte)s.charAt(k);
+        }
+    }
+
+    private void ensureCapacity(int extra){
+        if(length + extra > buffer.length){
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2,
+                    length + extra)];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+    }
+
+    /**
+     * Returns the buffer holding the formatted command. Only the first
+     * length() bytes are valid.
+     */
+    public byte[] getBuffer(){
+        return buffer;
+    }
+
+    public int length(){
+        return length;
+    }
+
+    @Override
+    public String toString(){
+        return new String(buffer, 0, length);
+    }
+}
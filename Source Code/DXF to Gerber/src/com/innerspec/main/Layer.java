@@ -12,11 +12,20 @@ public class Layer {
     private String filePath;
     
     private double thickness;
+    
+    /** The aperture code of the thickness, set once the layers are prepared. */
     private int thicknessCode;
     
+    /** The Gerber file the layer is written to, set once it is created. */
+    private GerberFile gerberFile;
+    
     private boolean isActive = true;
     private boolean isFlashed = false;
     
+    /** The smallest positions drawn by the entities of the layer. */
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    
     /** 
      *  The Gerber file number that denotes which Gerber file the layer will 
      *  be written to.
@@ -33,6 +42,58 @@ public class Layer {
         fileName = f;
     }
     
+    /**
+     * Sets the thickness and file name of the layer from its name. A layer 
+     * named like "TOP_5MIL" is written to the file "TOP" with a thickness of 
+     * 0.005; any other layer is written to a file of its own name with the 
+     * default thickness of 0.005. These are the same values the DataFrame 
+     * starts with.
+     */
+    public void setDefaultAttributes(){
+        thickness = 0.005;   //Default
+        fileName = name;
+        
+        if(name.contains("MIL")
+            && name.lastIndexOf("MIL") > name.lastIndexOf("_")){
+            String stringTemp = name.substring(0, name.lastIndexOf("MIL"));
+            stringTemp = stringTemp.substring(stringTemp.lastIndexOf("_") + 1,
+                    stringTemp.length());
+
+            try {
+                thickness = Double.valueOf(stringTemp) / 1000;
+                fileName = name.substring(0, name.indexOf("_"));
+            }
+            catch(NumberFormatException e){
+                //Happens when the value between _ and MIL cannot be converted
+                //EX: TOP_AMIL
+            }
+        }
+    }
+    
+    /**
+     * Extends the area drawn by the layer with the area of an entity. Called
+     * for each entity as the dxf file is read.
+     * 
+     * @param x     The smallest x position drawn by the entity
+     * @param y     The smallest y position drawn by the entity
+     */
+    public void addExtent(double x, double y){
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+    }
+    
+    /**
+     * Returns the smallest x position drawn on the layer, or positive 
+     * infinity if the layer has no entities.
+     */
+    public double getMinX(){
+        return minX;
+    }
+    
+    public double getMinY(){
+        return minY;
+    }
+    
     public void setFileName(String fileName){
         this.fileName = fileName;
     }
@@ -76,6 +137,10 @@ public class Layer {
         this.fileNum = fileNum;
     }
     
+    public void setGerberFile(GerberFile gerberFile){
+        this.gerberFile = gerberFile;
+    }
+    
     public void setIsActive (boolean isActive){
         this.isActive = isActive;
     }
@@ -108,6 +173,14 @@ public class Layer {
         return fileNum;
     }
     
+    /**
+     * Returns the Gerber file the layer is written to, null until the Gerber
+     * files are created.
+     */
+    public GerberFile getGerberFile(){
+        return gerberFile;
+    }
+    
     public boolean isActive () {
         return isActive;
     }
@@ -1,80 +1,149 @@
 package com.innerspec.main;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import com.innerspec.entity.Circle;
+import com.innerspec.entity.Entity;
 import java.util.*;
 
 /** 
- * LayerManager contains methods to populate and return the layers array. 
+ * LayerManager contains methods to populate and return the layers array of a
+ * conversion. 
  * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
 
 public class LayerManager {
     /** Contains the unique layers of the selected dxf file */
-    private static ArrayList<Layer> layers = new ArrayList<Layer>();
+    private ArrayList<Layer> layers = new ArrayList<Layer>();
+    
+    /** The layers of the "layers" ArrayList by name. */
+    private HashMap<String, Layer> layersByName = new HashMap<String, Layer>();
+    
+    private ConversionEngine engine;
+    
+    /**
+     * @param engine    The conversion the layers belong to
+     */
+    LayerManager(ConversionEngine engine){
+        this.engine = engine;
+    }
+    
+    /** This method adds a layer name to the "layers" ArrayList, while checking 
+     *  to see if the layer is valid and does not already exist. Layers are
+     *  found by name in constant time, so files with thousands of layers are
+     *  read as fast as files with a few.
+     * 
+     *  Only used by EntityManager while the dxf file is read.
+     * 
+     * @param layerName         Name of the layer to add         
+     * @return                  The layer with the given name, or null if the
+     *                          name is not valid.
+     */
+    Layer addLayer(String layerName){
+        if(layerName == null){
+            return null;
+        }
+        
+        Layer layer = layersByName.get(layerName);
+        
+        if(layer == null){
+            layer = new Layer(layerName);
+            layers.add(layer);
+            layersByName.put(layerName, layer);
+        }
+        
+        return layer;
+    }
+    
+    /**
+     * Returns the layer with a name.
+     * 
+     * @param layerName     The name of the layer in the dxf file
+     * @return              The layer, or null if the file has no such layer or
+     *                      the layer was removed by prepareLayers()
+     */
+    public Layer getLayer(String layerName){
+        return layersByName.get(layerName);
+    }
     
     /** 
-     *  Parses the selected file for layers.
-     *  Once a layer is found, add layer is used to add it to the "layers" array
+     * Prepares the layers for writing once their file names, thicknesses and
+     * flashed states are set. Layers that are inactive or have no file name
+     * or thickness are removed, the thicknesses of the remaining layers and 
+     * of their flashed circles are added to the ThicknessManager and the 
+     * Gerber file path and aperture code of each layer is set. The aperture
+     * code is looked up once here instead of for every entity written.
+     * 
+     * Called by ConversionEngine.prepareLayers().
+     * 
+     * @param dxfPath   The path of the selected dxf file
      */
-    public static void populateLayersArray(){
- 
-        try{
-            BufferedReader scan = new BufferedReader(
-                    new FileReader(PrimaryFileSelectorFrame.getDxfLocation()));
-            
-            String line; 
-            boolean inEntitySection = false;
-
-            while((line = scan.readLine()) != null){
-                
-                //Only looks for entities in entity section
-                if(line.compareTo("ENTITIES") == 0) inEntitySection = true;
-                
-                if(inEntitySection == true){	//loops in entity section
-                    if(line.compareTo("  8") == 0) {
-                        line = scan.readLine();
-                        addLayer(line);
-                    }
-                    else if (line.compareTo("ENDSEC") == 0){
-                        break;
-                    }
-                }
-                
+    void prepareLayers(String dxfPath){
+        ArrayList<Layer> validLayers = new ArrayList<Layer>();
+        
+        for(Layer layer : layers){ 
+            /*
+            * Makes sure layer, fileName, and thickness are valid.
+            * Removes invalid or empty layers.
+            */
+            if(layer.getName() != null
+                    && layer.getFileName() != null 
+                    && layer.getThickness() != 0.0 
+                    && layer.isActive()){
+                engine.getThicknessManager().addThickness(
+                        layer.getThickness());
+                validLayers.add(layer);
+            }
+            else {
+                //Entities on removed layers are skipped when written
+                layer.setIsActive(false);
+                layersByName.remove(layer.getName());
             }
-            
-            scan.close();
         }
-        catch(IOException e){
-            e.printStackTrace();
-        }       
-        catch(NullPointerException e){
-            //When end of file is reached, a null pointer exception will occur.
-            //This is caught, but ignored.
+        
+        layers.clear();
+        layers.addAll(validLayers);
+        
+        Circle.addFlashedCircleThicknesses(engine);
+        
+        for(Layer l : layers){
+            l.setFilePath(dxfPath);
+            l.setThicknessCode(engine.getThicknessManager()
+                    .getThicknessCode(l.getThickness()));
         }
     }
-   
-    /** This method adds a layer name to the "layers" ArrayList, while checking 
-     *  to see if the layer is valid and does not already exist.
+    
+    /**
+     * Moves all entities so that nothing on the prepared layers is drawn at a
+     * negative position, which cannot be written in the Gerber format. The
+     * smallest positions of the layers are found while the dxf file is read,
+     * so the entities are only visited here if they have to be moved. The
+     * shift is rounded up to a thousandth of an inch, and the drawing is not
+     * moved along an axis without negative positions.
      * 
-     *  Only used by the populateLayersArray() method
+     * Called by ConversionEngine.prepareLayers() once the layers are 
+     * prepared.
      * 
-     * @param layerName         Name of the layer to add         
+     * @return  The distance the entities were moved along x and y, in inches
      */
-    private static void addLayer(String layerName){
-        boolean layerAlreadyExists = false;
+    double[] shiftOrigin(){
+        double minX = 0;
+        double minY = 0;
         
-        for(Layer l: layers){   
-            if(l.getName().equals(layerName)){
-                layerAlreadyExists = true;
-            }
+        for(Layer l : layers){
+            minX = Math.min(minX, l.getMinX());
+            minY = Math.min(minY, l.getMinY());
         }
         
-        if(layerAlreadyExists == false && layerName != null){
-            layers.add(new Layer(layerName));
+        double[] shift = {Math.ceil(-minX * 1000) / 1000, 
+                          Math.ceil(-minY * 1000) / 1000};
+        
+        if(shift[0] > 0 || shift[1] > 0){
+            for(Entity entity : engine.getEntityManager().getEntities()){
+                entity.translate(shift[0], shift[1]);
+            }
         }
+        
+        return shift;
     }
     
     /** Returns the "layers" Arraylist which contains all unique layers in the
@@ -82,7 +151,7 @@ public class LayerManager {
      * 
      * @return layers
      */
-    public static ArrayList getLayers(){
+    public ArrayList<Layer> getLayers(){
         return layers;
     }
 }
\ No newline at end of file
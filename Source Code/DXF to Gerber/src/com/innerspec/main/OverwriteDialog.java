@@ -0,0 +1,73 @@
+package com.innerspec.main;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+
+/**
+ * Asks the user whether an existing Gerber file should be overwritten using 
+ * a yes/no/overwrite all dialog. The Gerber files are created by the worker 
+ * thread of the ProgressFrame, so the dialog is shown on the event dispatch 
+ * thread while the worker waits for the answer.
+ * 
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class OverwriteDialog implements OverwritePrompt {
+    
+    @Override
+    public int confirmOverwrite(final String fileName){
+        if(EventQueue.isDispatchThread()){
+            return showDialog(fileName);
+        }
+        
+        final int[] answer = {SKIP};
+        
+        try {
+            EventQueue.invokeAndWait(new Runnable(){
+                @Override
+                public void run(){
+                    answer[0] = showDialog(fileName);
+                }
+            });
+        }
+        catch(InterruptedException e){
+            e.printStackTrace();
+        }
+        catch(InvocationTargetException e){
+            e.printStackTrace();
+        }
+        
+        return answer[0];
+    }
+    
+    private int showDialog(String fileName){
+        /*  
+         *  Uses yes/no/cancel dialog to check if the user only 
+         *  wants to overwrite or not overwrite one file or 
+         *  overwrite all the files.   
+         */
+        Object[] options = {"Yes", "No", "Overwrite All"};
+
+        JFrame fileExistsFrame = new JFrame();
+
+        int n = JOptionPane.showOptionDialog(fileExistsFrame,
+            fileName + " already exists.\n" + "Overwrite?",
+            "File Already Exists",
+            JOptionPane.YES_NO_CANCEL_OPTION,
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            options,
+            options[2]);
+
+        if(n == JOptionPane.YES_OPTION){
+            return OVERWRITE;
+        }
+        //"Overwrite All" replaces the cancel option
+        else if(n == JOptionPane.CANCEL_OPTION){
+            return OVERWRITE_ALL;
+        }
+        
+        return SKIP;
+    }
+}
@@ -0,0 +1,27 @@
+package com.innerspec.main;
+
+/**
+ * Decides what happens when a Gerber file that is about to be created 
+ * already exists. The GUI asks the user with an OverwriteDialog, while the
+ * command line converter uses the overwrite policy it was started with.
+ * 
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public interface OverwritePrompt {
+    /** Overwrite this file only. */
+    public static final int OVERWRITE = 0;
+    
+    /** Keep the existing file and do not write this Gerber file. */
+    public static final int SKIP = 1;
+    
+    /** Overwrite this file and every other existing file. */
+    public static final int OVERWRITE_ALL = 2;
+    
+    /**
+     * Returns whether an existing file should be overwritten.
+     * 
+     * @param fileName  The name of the Gerber file that already exists
+     * @return          OVERWRITE, SKIP or OVERWRITE_ALL
+     */
+    public int confirmOverwrite(String fileName);
+}
@@ -0,0 +1,578 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.Arc;
+import com.innerspec.entity.Entity;
+import com.innerspec.entity.Line;
+import com.innerspec.entity.PathSegment;
+import com.innerspec.entity.Polyline;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Finds the small closed shapes that are drawn many times, such as the
+ * rectangular pads of a footprint drawn as four lines or obround pads drawn
+ * as two lines and two half circles, so that each copy is written as a single
+ * flash (D03) instead of a draw per segment.
+ *
+ * A shape is a closed polyline, or a run of lines and arcs that follow each
+ * other in the dxf file on the same layer and form a closed loop. Shapes made
+ * of straight lines (rectangles and other polygons) and obrounds are found if
+ * they are at most MAX_SIZE wide and high. Every shape drawn at least
+ * MIN_COPIES times with the same line width is defined once as an aperture
+ * macro (%AM) in the aperture list of the headers, see
+ * ThicknessManager.addMacroAperture().
+ *
+ * The macros draw the same image as the strokes of the round aperture of the
+ * layer: a polygon is the lines of its sides with a circle at each corner,
+ * and an obround is the obround grown by half the line width with the obround
+ * shrunk by half the line width cleared from it (exposure off). The positions
+ * are kept in Gerber units, so every copy is drawn at the same coordinates as
+ * its segments would have been.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class PadFinder {
+    /** The number of copies below which a shape is drawn segment by segment. */
+    private static final int MIN_COPIES = 2;
+
+    /** The largest width or height of a shape, in Gerber units (0.25 in). */
+    private static final int MAX_SIZE = 25000;
+
+    /** The most lines and arcs a shape can be made of. */
+    private static final int MAX_SEGMENTS = 8;
+
+    /** The largest difference in degrees from a half circle of an arc. */
+    private static final double HALF_CIRCLE_TOLERANCE = 0.01;
+
+    /** The largest difference in Gerber units of the sides of an obround. */
+    private static final int OBROUND_TOLERANCE = 2;
+
+    private ConversionEngine engine;
+    private ArrayList<Entity> entities;
+
+    /** The number of the pad of each entity, -1 if it is not part of a pad. */
+    private int[] entityPads;
+
+    /** The first entity, entity count and segment count of each pad. */
+    private ArrayList<int[]> pads = new ArrayList<int[]>();
+
+    /** The shape of each pad and the position it is flashed at. */
+    private ArrayList<int[]> padShapes = new ArrayList<int[]>();
+
+    /** The shapes by key, see getShape(). */
+    private HashMap<String, Integer> shapes = new HashMap<String, Integer>();
+
+    /** The aperture macro primitives of each shape. */
+    private ArrayList<String> shapePrimitives = new ArrayList<String>();
+
+    /** The aperture code of each shape, 0 if it is not flashed. */
+    private int[] shapeCodes;
+
+    private int apertureCount = 0;
+    private int flashCount = 0;
+
+    /** The anchor of the last shape found by getShape(). */
+    private int anchorX;
+    private int anchorY;
+
+    /**
+     * Finds the pads of a conversion and adds the apertures of the shapes
+     * that are repeated. Called once the layers are prepared and the origin
+     * is shifted, before the Gerber file headers are written.
+     *
+     * @param engine    The conversion whose entities are searched
+     */
+    PadFinder(ConversionEngine engine){
+        this.engine = engine;
+        this.entities = engine.getEntityManager().getEntities();
+
+        entityPads = new int[entities.size()];
+        Arrays.fill(entityPads, -1);
+
+        ArrayList<int[]> candidates = new ArrayList<int[]>();
+        Entity[] run = new Entity[MAX_SEGMENTS];
+
+        for(int k = 0; k < entities.size(); k++){
+            Entity entity = entities.get(k);
+
+            if(entity.isWritable() == false){
+                continue;
+            }
+
+            if(entity instanceof Polyline){
+                Entity[] segments = ((Polyline)entity).getSegments();
+                int shape = segments.length <= MAX_SEGMENTS
+                        ? getShape(entity, segments, segments.length) : -1;
+
+                if(shape >= 0){
+                    candidates.add(new int[]{k, 1, segments.length, shape,
+                            anchorX, anchorY});
+                }
+            }
+            else if(entity instanceof Line || entity instanceof Arc){
+                int count = 1;
+                run[0] = entity;
+
+                //Extends the run until it is closed or broken
+                while(count < MAX_SEGMENTS && k + count < entities.size()){
+                    Entity next = entities.get(k + count);
+
+                    if((next instanceof Line || next instanceof Arc) == false
+                            || next.isWritable() == false
+                            || next.getLayer() != entity.getLayer()){
+                        break;
+                    }
+
+                    run[count++] = next;
+                    int[] points = getPath(run, count);
+
+                    if(points == null){
+                        break;
+                    }
+                    else if(isClosed(points, count)){
+                        int shape = getShape(entity, run, count);
+
+                        if(shape >= 0){
+                            candidates.add(new int[]{k, count, count, shape,
+                                    anchorX, anchorY});
+                            k += count - 1;
+                        }
+
+                        break;
+                    }
+                }
+            }
+        }
+
+        //Only the shapes with enough copies are flashed
+        int[] copies = new int[shapePrimitives.size()];
+
+        for(int[] candidate : candidates){
+            copies[candidate[3]]++;
+        }
+
+        shapeCodes = new int[shapePrimitives.size()];
+
+        for(int[] candidate : candidates){
+            int shape = candidate[3];
+
+            if(copies[shape] < MIN_COPIES){
+                continue;
+            }
+
+            if(shapeCodes[shape] == 0){
+                shapeCodes[shape] = engine.getThicknessManager()
+                        .addMacroAperture(shapePrimitives.get(shape));
+                apertureCount++;
+            }
+
+            for(int m = 0; m < candidate[1]; m++){
+                entityPads[candidate[0] + m] = pads.size();
+            }
+
+            pads.add(new int[]{candidate[0], candidate[1], candidate[2]});
+            padShapes.add(new int[]{shape, candidate[4], candidate[5]});
+            flashCount++;
+        }
+
+        shapes = null;
+        shapePrimitives = null;
+    }
+
+    /**
+     * @return  The number of aperture macros added
+     */
+    int getApertureCount(){
+        return apertureCount;
+    }
+
+    /**
+     * @return  The number of shapes that are flashed
+     */
+    int getFlashCount(){
+        return flashCount;
+    }
+
+    /**
+     * @param k     The index of an entity in the entity store
+     * @return      True if the entity is written as part of a pad
+     */
+    boolean isPadMember(int k){
+        return entityPads[k] >= 0;
+    }
+
+    /**
+     * @param k     The index of an entity in the entity store
+     * @return      True if the pad of the entity is flashed when the entity
+     *              is reached
+     */
+    boolean isPadStart(int k){
+        return entityPads[k] >= 0 && pads.get(entityPads[k])[0] == k;
+    }
+
+    /**
+     * @param k     The index of the first entity of a pad
+     * @return      The code of the aperture the pad is flashed with
+     */
+    int getApertureCode(int k){
+        return shapeCodes[padShapes.get(entityPads[k])[0]];
+    }
+
+    /**
+     * @param k     The index of the first entity of a pad
+     * @return      The x position the pad is flashed at, in Gerber units
+     */
+    int getFlashX(int k){
+        return padShapes.get(entityPads[k])[1];
+    }
+
+    int getFlashY(int k){
+        return padShapes.get(entityPads[k])[2];
+    }
+
+    /**
+     * Writes a pad to the Gerber file of its layer as a flash of its
+     * aperture. The aperture is only selected if it is not already active.
+     *
+     * @param k     The index of the first entity of a pad
+     * @return      The number of entities of the pad
+     */
+    int writePad(int k){
+        int[] pad = pads.get(entityPads[k]);
+        int code = getApertureCode(k);
+        GerberFile gerberFile = entities.get(k).getLayer().getGerberFile();
+
+        if(gerberFile.getOldThicknessCode() == 0
+                || gerberFile.getOldThicknessCode() != code){
+            gerberFile.setOldThicknessCode(code);
+            gerberFile.addOutputln(gerberFile.getFormatter()
+                    .formatToolSelect(code));
+        }
+
+        gerberFile.addOutputln(gerberFile.getFormatter().formatCommand("",
+                getFlashX(k), getFlashY(k), "D03*", 6));
+
+        //Counts the segments as if they were drawn
+        for(int m = 0; m < pad[2]; m++){
+            gerberFile.addEntity();
+        }
+
+        return pad[1];
+    }
+
+    /**
+     * Follows the segments in order, each from the end of the one before
+     * it. The first segment may be drawn either way.
+     *
+     * @param segments  The lines and arcs
+     * @param count     The number of segments to follow
+     * @return          The x and y of the count + 1 points of the path, or
+     *                  null if a segment does not touch the one before it
+     */
+    private static int[] getPath(Entity[] segments, int count){
+        PathSegment first = (PathSegment)segments[0];
+
+        for(int direction = 0; direction < 2; direction++){
+            int[] points = new int[2 * count + 2];
+            boolean isConnected = true;
+
+            points[0] = direction == 0 ? first.getStartX() : first.getEndX();
+            points[1] = direction == 0 ? first.getStartY() : first.getEndY();
+            points[2] = direction == 0 ? first.getEndX() : first.getStartX();
+            points[3] = direction == 0 ? first.getEndY() : first.getStartY();
+
+            for(int m = 1; m < count && isConnected; m++){
+                PathSegment segment = (PathSegment)segments[m];
+                int x = points[2 * m];
+                int y = points[2 * m + 1];
+
+                if(segment.getStartX() == x && segment.getStartY() == y){
+                    points[2 * m + 2] = segment.getEndX();
+                    points[2 * m + 3] = segment.getEndY();
+                }
+                else if(segment.getEndX() == x && segment.getEndY() == y){
+                    points[2 * m + 2] = segment.getStartX();
+                    points[2 * m + 3] = segment.getStartY();
+                }
+                else {
+                    isConnected = false;
+                }
+            }
+
+            if(isConnected){
+                return points;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isClosed(int[] points, int count){
+        return points[0] == points[2 * count]
+                && points[1] == points[2 * count + 1];
+    }
+
+    /**
+     * Returns the shape drawn by a closed loop of segments, and sets the
+     * position it is flashed at (anchorX, anchorY). Shapes with the same key
+     * draw the same image at their anchor: the key holds the aperture code
+     * of the line width and the positions relative to the anchor.
+     *
+     * @param entity    The entity holding the layer of the segments
+     * @param segments  The lines and arcs of the loop
+     * @param count     The number of segments
+     * @return          The number of the shape, -1 if the loop is not a
+     *                  polygon or an obround, or is too large
+     */
+    private int getShape(Entity entity, Entity[] segments, int count){
+        int[] points = getPath(segments, count);
+
+        if(points == null || isClosed(points, count) == false){
+            return -1;
+        }
+
+        int arcCount = 0;
+
+        for(int m = 0; m < count; m++){
+            if(segments[m] instanceof Arc){
+                arcCount++;
+            }
+        }
+
+        Layer layer = entity.getLayer();
+        double width = (double)Math.round(layer.getThickness() * 1000) / 1000;
+        StringBuilder key = new StringBuilder();
+        StringBuilder primitives = new StringBuilder();
+
+        if(arcCount == 0 && count >= 3){
+            if(isPolygon(points, count, key, primitives, width) == false){
+                return -1;
+            }
+        }
+        else if(arcCount == 2 && count == 4){
+            if(isObround(segments, key, primitives, width) == false){
+                return -1;
+            }
+        }
+        else {
+            return -1;
+        }
+
+        key.insert(0, layer.getThicknessCode() + ";");
+        Integer shape = shapes.get(key.toString());
+
+        if(shape == null){
+            shape = shapePrimitives.size();
+            shapes.put(key.toString(), shape);
+            shapePrimitives.add(primitives.toString().trim());
+        }
+
+        return shape;
+    }
+
+    /**
+     * Checks the size of a loop of lines and sets its key and primitives:
+     * a vector line (20) for each side and a circle (1) for each corner,
+     * relative to the lowest, leftmost corner. The corners are listed from
+     * that corner in the direction that gives the smaller key, so the same
+     * polygon has the same key whichever way it was drawn.
+     */
+    private boolean isPolygon(int[] points, int count, StringBuilder key,
+            StringBuilder primitives, double width){
+        int first = 0;
+        int minX = points[0];
+        int maxX = points[0];
+        int minY = points[1];
+        int maxY = points[1];
+
+        for(int m = 1; m < count; m++){
+            int x = points[2 * m];
+            int y = points[2 * m + 1];
+
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+
+            if(x < points[2 * first]
+                    || (x == points[2 * first] && y < points[2 * first + 1])){
+                first = m;
+            }
+        }
+
+        if(maxX - minX > MAX_SIZE || maxY - minY > MAX_SIZE){
+            return false;
+        }
+
+        anchorX = points[2 * first];
+        anchorY = points[2 * first + 1];
+
+        int[][] corners = new int[2][2 * count];
+
+        for(int direction = 0; direction < 2; direction++){
+            for(int m = 0; m < count; m++){
+                int corner = direction == 0 ? (first + m) % count
+                        : (first - m + count) % count;
+
+                corners[direction][2 * m] = points[2 * corner] - anchorX;
+                corners[direction][2 * m + 1] = points[2 * corner + 1]
+                        - anchorY;
+            }
+        }
+
+        String forward = Arrays.toString(corners[0]);
+        String backward = Arrays.toString(corners[1]);
+        int[] polygon = forward.compareTo(backward) <= 0 ? corners[0]
+                : corners[1];
+
+        key.append("P").append(forward.compareTo(backward) <= 0 ? forward
+                : backward);
+
+        for(int m = 0; m < count; m++){
+            int next = (m + 1) % count;
+
+            primitives.append("20,1,").append(toInches(width)).append(',')
+                    .append(toInches(polygon[2 * m])).append(',')
+                    .append(toInches(polygon[2 * m + 1])).append(',')
+                    .append(toInches(polygon[2 * next])).append(',')
+                    .append(toInches(polygon[2 * next + 1])).append(",0*\n");
+        }
+
+        for(int m = 0; m < count; m++){
+            primitives.append("1,1,").append(toInches(width)).append(',')
+                    .append(toInches(polygon[2 * m])).append(',')
+                    .append(toInches(polygon[2 * m + 1])).append("*\n");
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks that a loop of two lines and two arcs is an obround, two half
+     * circles of the same radius joined by two lines parallel to the line
+     * between their centers, and sets its key and primitives relative to the
+     * lowest, leftmost center. The obround grown by half the line width is
+     * drawn as a circle at each center and a vector line (20) between them,
+     * and the obround shrunk by half the line width is cleared the same way.
+     */
+    private boolean isObround(Entity[] segments, StringBuilder key,
+            StringBuilder primitives, double width){
+        Arc[] arcs = new Arc[2];
+        Line[] lines = new Line[2];
+        int arcCount = 0;
+        int lineCount = 0;
+
+        for(int m = 0; m < 4; m++){
+            if(segments[m] instanceof Arc){
+                arcs[arcCount++] = (Arc)segments[m];
+            }
+            else if(lineCount < 2){
+                lines[lineCount++] = (Line)segments[m];
+            }
+        }
+
+        if(lineCount != 2){
+            return false;
+        }
+
+        double[] radii = new double[2];
+
+        for(int m = 0; m < 2; m++){
+            if(Math.abs(arcs[m].getSweepAngle() - 180)
+                    > HALF_CIRCLE_TOLERANCE){
+                return false;
+            }
+
+            radii[m] = Math.hypot(arcs[m].getStartX() - arcs[m].getCenterX(),
+                    arcs[m].getStartY() - arcs[m].getCenterY());
+        }
+
+        int radius = (int)Math.round((radii[0] + radii[1]) / 2);
+        int dx = arcs[1].getCenterX() - arcs[0].getCenterX();
+        int dy = arcs[1].getCenterY() - arcs[0].getCenterY();
+        double length = Math.hypot(dx, dy);
+
+        if(Math.abs(radii[0] - radii[1]) > OBROUND_TOLERANCE || length == 0
+                || length + 2 * radius > MAX_SIZE){
+            return false;
+        }
+
+        //The lines are as long as the distance of the centers and parallel
+        for(Line line : lines){
+            int lineX = line.getEndX() - line.getStartX();
+            int lineY = line.getEndY() - line.getStartY();
+
+            if(Math.abs(Math.hypot(lineX, lineY) - length) > OBROUND_TOLERANCE
+                    || Math.abs((double)lineX * dy - (double)lineY * dx)
+                    > OBROUND_TOLERANCE * length){
+                return false;
+            }
+        }
+
+        //Each half circle bulges away from the other center
+        for(int m = 0; m < 2; m++){
+            double middleX = -(arcs[m].getStartY() - arcs[m].getCenterY());
+            double middleY = arcs[m].getStartX() - arcs[m].getCenterX();
+            int sign = m == 0 ? 1 : -1;
+
+            if(middleX * dx * sign + middleY * dy * sign >= 0){
+                return false;
+            }
+        }
+
+        Arc first = arcs[0];
+
+        if(dx < 0 || (dx == 0 && dy < 0)){
+            first = arcs[1];
+            dx = -dx;
+            dy = -dy;
+        }
+
+        anchorX = first.getCenterX();
+        anchorY = first.getCenterY();
+
+        key.append("O").append(dx).append(',').append(dy).append(',')
+                .append(radius);
+
+        double outer = 2 * radius / 100000.0 + width;
+        double inner = 2 * radius / 100000.0 - width;
+
+        addStadium(primitives, 1, outer, dx, dy);
+
+        if(inner > 0){
+            addStadium(primitives, 0, inner, dx, dy);
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds the primitives of an obround from the anchor to (dx, dy).
+     */
+    private static void addStadium(StringBuilder primitives, int exposure,
+            double diameter, int dx, int dy){
+        String size = exposure + "," + toInches(diameter) + ",";
+
+        primitives.append("1,").append(size).append(toInches(0)).append(',')
+                .append(toInches(0)).append("*\n");
+        primitives.append("1,").append(size).append(toInches(dx)).append(',')
+                .append(toInches(dy)).append("*\n");
+        primitives.append("20,").append(size).append(toInches(0)).append(',')
+                .append(toInches(0)).append(',')
+                .append(toInches(dx)).append(',').append(toInches(dy))
+                .append(",0*\n");
+    }
+
+    /**
+     * Returns a distance in Gerber units as a decimal number of inches.
+     */
+    private static String toInches(int distance){
+        return toInches(distance / 100000.0);
+    }
+
+    private static String toInches(double distance){
+        return String.format(Locale.US, "%.5f", distance);
+    }
+}
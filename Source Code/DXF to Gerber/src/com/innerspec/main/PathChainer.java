@@ -0,0 +1,363 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.Entity;
+import com.innerspec.entity.PathSegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Joins the lines and arcs of a layer whose ends touch into continuous paths,
+ * so that a path is written with a single D02 move instead of one move per
+ * segment. Segments may be drawn in reverse to continue a path.
+ *
+ * The ends of all segments are put in a hash table by their position in
+ * Gerber units when the chainer is created. A path is then built from a seed
+ * segment by following the unused segments that touch its last point and,
+ * once that runs out, the segments that touch its first point. Ends touch if
+ * their distance is at most the tolerance, with a tolerance of 0 the written
+ * coordinates have to be equal.
+ *
+ * Segments are only part of a path if they would be written (see
+ * PathSegment.isWritable()), so the counters of out of bounds and zero size
+ * entities are not changed by chaining. Segments that are flashed as part of
+ * a pad (see PadFinder) are not chained either.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class PathChainer {
+    /** The segments that can be chained, in file order. */
+    private PathSegment[] segments;
+
+    /** The index in the entity store of each segment. */
+    private int[] entityIndexes;
+
+    /** The number of the layer of each segment. */
+    private int[] layerIds;
+
+    private int[] startX;
+    private int[] startY;
+    private int[] endX;
+    private int[] endY;
+
+    /** True once a segment is part of a path. */
+    private boolean[] isUsed;
+
+    private int segmentCount = 0;
+
+    /** The maximum distance of ends that touch, in Gerber units. */
+    private int tolerance;
+
+    /** The size of a cell of the hash table, in Gerber units. */
+    private int cellSize;
+
+    /**
+     * The first end in each bucket of the hash table, -1 if empty. An end is
+     * numbered 2 * segment for the start and 2 * segment + 1 for the end.
+     */
+    private int[] buckets;
+
+    /** The next end in the same bucket, by end, -1 for the last. */
+    private int[] nextEnds;
+
+    /** The segments of the last path built, in the order they are drawn. */
+    private int[] path = new int[16];
+    private boolean[] isPathReversed = new boolean[16];
+    private int pathLength = 0;
+
+    /** The segments found before the seed, in the order they were found. */
+    private int[] head = new int[16];
+    private boolean[] isHeadReversed = new boolean[16];
+
+    /**
+     * Indexes the segments of an entity store.
+     *
+     * @param entities      The entities in file order
+     * @param tolerance     The maximum distance in inches between ends that
+     *                      are joined
+     * @param pads          The pads that are flashed, or null
+     */
+    PathChainer(ArrayList<Entity> entities, double tolerance, PadFinder pads){
+        this.tolerance = (int)Math.round(tolerance * 100000);
+        this.cellSize = Math.max(1, this.tolerance);
+
+        int count = 0;
+
+        for(int k = 0; k < entities.size(); k++){
+            if(isChainable(entities.get(k), k, pads)){
+                count++;
+            }
+        }
+
+        segments = new PathSegment[count];
+        entityIndexes = new int[count];
+        layerIds = new int[count];
+        startX = new int[count];
+        startY = new int[count];
+        endX = new int[count];
+        endY = new int[count];
+        isUsed = new boolean[count];
+
+        IdentityHashMap<Layer, Integer> layers
+                = new IdentityHashMap<Layer, Integer>();
+
+        for(int k = 0; k < entities.size(); k++){
+            Entity entity = entities.get(k);
+
+            if(isChainable(entity, k, pads)){
+                PathSegment segment = (PathSegment)entity;
+                Integer layerId = layers.get(segment.getLayer());
+
+                if(layerId == null){
+                    layerId = layers.size();
+                    layers.put(segment.getLayer(), layerId);
+                }
+
+                segments[segmentCount] = segment;
+                entityIndexes[segmentCount] = k;
+                layerIds[segmentCount] = layerId;
+                startX[segmentCount] = segment.getStartX();
+                startY[segmentCount] = segment.getStartY();
+                endX[segmentCount] = segment.getEndX();
+                endY[segmentCount] = segment.getEndY();
+                segmentCount++;
+            }
+        }
+
+        int size = 16;
+
+        while(size < segmentCount * 4){
+            size *= 2;
+        }
+
+        buckets = new int[size];
+        nextEnds = new int[segmentCount * 2];
+        Arrays.fill(buckets, -1);
+
+        //Added from the last end, so each bucket lists its first end first
+        for(int end = segmentCount * 2 - 1; end >= 0; end--){
+            int bucket = getBucket(layerIds[end / 2], getX(end) / cellSize,
+                    getY(end) / cellSize);
+            nextEnds[end] = buckets[bucket];
+            buckets[bucket] = end;
+        }
+    }
+
+    /**
+     * @return  The number of segments that can be chained
+     */
+    int getSegmentCount(){
+        return segmentCount;
+    }
+
+    /**
+     * @param segment   The number of a segment, in file order
+     * @return          The index of the segment in the entity store
+     */
+    int getEntityIndex(int segment){
+        return entityIndexes[segment];
+    }
+
+    /**
+     * Builds the path that contains a segment, from the segments that are not
+     * part of a path yet.
+     *
+     * @param seed  The number of the segment
+     * @return      False if the segment is already part of a path
+     */
+    boolean buildPath(int seed){
+        if(isUsed[seed]){
+            return false;
+        }
+
+        isUsed[seed] = true;
+        pathLength = 0;
+        addToPath(seed, false);
+
+        //Follows the path from its last point
+        int last = seed;
+        boolean isLastReversed = false;
+
+        while(true){
+            int end = findEnd(layerIds[seed],
+                    isLastReversed ? startX[last] : endX[last],
+                    isLastReversed ? startY[last] : endY[last]);
+
+            if(end < 0){
+                break;
+            }
+
+            last = end / 2;
+            //A segment touching with its end is drawn backwards
+            isLastReversed = end % 2 == 1;
+            isUsed[last] = true;
+            addToPath(last, isLastReversed);
+        }
+
+        //Follows the path back from its first point
+        int headLength = 0;
+        int first = seed;
+        boolean isFirstReversed = false;
+
+        while(true){
+            int end = findEnd(layerIds[seed],
+                    isFirstReversed ? endX[first] : startX[first],
+                    isFirstReversed ? endY[first] : startY[first]);
+
+            if(end < 0){
+                break;
+            }
+
+            first = end / 2;
+            //A segment touching with its start is drawn backwards
+            isFirstReversed = end % 2 == 0;
+            isUsed[first] = true;
+
+            if(headLength == head.length){
+                head = Arrays.copyOf(head, headLength * 2);
+                isHeadReversed = Arrays.copyOf(isHeadReversed, headLength * 2);
+            }
+
+            head[headLength] = first;
+            isHeadReversed[headLength] = isFirstReversed;
+            headLength++;
+        }
+
+        if(headLength > 0){
+            //The head is drawn first, starting with the last segment found
+            int tailLength = pathLength;
+            ensurePathCapacity(tailLength + headLength);
+
+            System.arraycopy(path, 0, path, headLength, tailLength);
+            System.arraycopy(isPathReversed, 0, isPathReversed, headLength,
+                    tailLength);
+
+            for(int k = 0; k < headLength; k++){
+                path[k] = head[headLength - 1 - k];
+                isPathReversed[k] = isHeadReversed[headLength - 1 - k];
+            }
+
+            pathLength = tailLength + headLength;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return  The number of segments of the last path built
+     */
+    int getPathLength(){
+        return pathLength;
+    }
+
+    /**
+     * @param k     The position of a segment in the last path built
+     * @return      The segment
+     */
+    PathSegment getPathSegment(int k){
+        return segments[path[k]];
+    }
+
+    /**
+     * @param k     The position of a segment in the last path built
+     * @return      The index of the segment in the entity store
+     */
+    int getPathEntityIndex(int k){
+        return entityIndexes[path[k]];
+    }
+    
+    /**
+     * @param k     The position of a segment in the last path built
+     * @return      True if the segment is drawn from its end to its start
+     */
+    boolean isPathReversed(int k){
+        return isPathReversed[k];
+    }
+
+    private void addToPath(int segment, boolean isReversed){
+        ensurePathCapacity(pathLength + 1);
+        path[pathLength] = segment;
+        isPathReversed[pathLength] = isReversed;
+        pathLength++;
+    }
+
+    private void ensurePathCapacity(int capacity){
+        if(capacity > path.length){
+            int length = Math.max(capacity, path.length * 2);
+            path = Arrays.copyOf(path, length);
+            isPathReversed = Arrays.copyOf(isPathReversed, length);
+        }
+    }
+
+    /**
+     * Finds an end of an unused segment on a layer that touches a point.
+     *
+     * @return  The number of the end, -1 if there is none
+     */
+    private int findEnd(int layerId, int x, int y){
+        int cellX = x / cellSize;
+        int cellY = y / cellSize;
+
+        //The cell of the point is searched first
+        int end = findEnd(layerId, x, y, cellX, cellY);
+
+        if(tolerance == 0){
+            return end;
+        }
+
+        for(int dx = -1; dx <= 1 && end < 0; dx++){
+            for(int dy = -1; dy <= 1 && end < 0; dy++){
+                if(dx != 0 || dy != 0){
+                    end = findEnd(layerId, x, y, cellX + dx, cellY + dy);
+                }
+            }
+        }
+
+        return end;
+    }
+
+    private int findEnd(int layerId, int x, int y, int cellX, int cellY){
+        long maxDistance = (long)tolerance * tolerance;
+
+        for(int end = buckets[getBucket(layerId, cellX, cellY)]; end >= 0;
+                end = nextEnds[end]){
+            int segment = end / 2;
+
+            if(isUsed[segment] || layerIds[segment] != layerId){
+                continue;
+            }
+
+            long dx = getX(end) - x;
+            long dy = getY(end) - y;
+
+            if(dx * dx + dy * dy <= maxDistance){
+                return end;
+            }
+        }
+
+        return -1;
+    }
+
+    private int getX(int end){
+        return end % 2 == 0 ? startX[end / 2] : endX[end / 2];
+    }
+
+    private int getY(int end){
+        return end % 2 == 0 ? startY[end / 2] : endY[end / 2];
+    }
+
+    private int getBucket(int layerId, int cellX, int cellY){
+        int hash = layerId * 0x9E3779B1 + cellX * 0x85EBCA6B
+                + cellY * 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        hash *= 0x7FEB352D;
+        hash ^= hash >>> 15;
+        return hash & (buckets.length - 1);
+    }
+
+    private static boolean isChainable(Entity entity, int k, PadFinder pads){
+        return entity instanceof PathSegment
+                && ((PathSegment)entity).isWritable()
+                && (pads == null || pads.isPadMember(k) == false);
+    }
+}
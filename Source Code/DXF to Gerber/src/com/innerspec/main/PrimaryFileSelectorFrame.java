@@ -23,6 +23,9 @@ public class PrimaryFileSelectorFrame extends javax.swing.JFrame {
     
     private static String dxfPath;
     
+    /** The conversion of the selected dxf file. */
+    private static ConversionEngine engine;
+    
     
     
     
@@ -83,8 +86,8 @@ public class PrimaryFileSelectorFrame extends javax.swing.JFrame {
     
     /** 
      * Listens for user to select and open the file. This method disposes of
-     *  the file chooser, populate the "layers" array and starts the DataFrame
-     *  window.
+     *  the file chooser, reads the dxf file into the "layers" and "entities"
+     *  arrays and starts the DataFrame window.
      *  
      * @param evt       User presses the "OPEN" button
      */
@@ -99,11 +102,23 @@ public class PrimaryFileSelectorFrame extends javax.swing.JFrame {
         if(dxfPath.substring(dxfPath.lastIndexOf("."), dxfPath.length()).equals(".dxf")){
             
             dispose();
-            //Parses .dxf file for layer names
-            LayerManager.populateLayersArray();  
+            engine = new ConversionEngine();
+            
+            //Existing Gerber files are only overwritten if the user agrees
+            engine.setOverwritePrompt(new OverwriteDialog());
+            
+            //Parses .dxf file for layer names and entities
+            engine.readDxfFile(dxfPath);
             
+            //Checks if the whole file could be read
+            if(engine.getReadError() != null){
+                JOptionPane.showMessageDialog(dialogueFrame,
+                    "The file could not be read:\n" + engine.getReadError(),
+                    "Invalid DXF File",
+                    JOptionPane.ERROR_MESSAGE);
+            }
             //Checks if layers have been found
-            if(LayerManager.getLayers().isEmpty()){
+            else if(engine.getLayers().isEmpty()){
                 JOptionPane.showMessageDialog(dialogueFrame,
                     "No layers found in file.",
                     "No Valid Layers",
@@ -172,6 +187,14 @@ public class PrimaryFileSelectorFrame extends javax.swing.JFrame {
         return dxfPath;
     }
     
+    /** Returns the conversion of the selected dxf file.
+     * 
+     * @return engine
+     */
+    public static ConversionEngine getEngine(){
+        return engine;
+    }
+    
     public static DataFrame getDataFrame(){
         return dataFrame;
     }
@@ -5,21 +5,32 @@
  */
 package com.innerspec.main;
 
+import java.awt.EventQueue;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 import javax.swing.ImageIcon;
+import javax.swing.SwingWorker;
 
 /**
  *  Displays information related to the end output of the Gerber file. Most 
  *  output information comes from GerberFileManager.
  * 
+ *  The Gerber files are written by a SwingWorker so that the window stays
+ *  responsive. The progress of the worker is shown in the progress bar and
+ *  the conversion can be cancelled with the "Cancel" button.
+ * 
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
-public class ProgressFrame extends javax.swing.JFrame {
+public class ProgressFrame extends javax.swing.JFrame 
+        implements ProgressListener {
     private int progressPercent = 0;
     private ArrayList<String> errorMessages = new ArrayList<String>();
     private boolean doneWriting = false;
     
+    /** Writes the Gerber files, null until the conversion is started. */
+    private SwingWorker<Void, Void> conversionWorker;
+    
     /**
      * Creates new form ProgressFrame
      */
@@ -44,6 +55,8 @@ public class ProgressFrame extends javax.swing.JFrame {
         this.setIconImage(icon.getImage());
         progressTextArea = new javax.swing.JTextArea();
         progressButton = new javax.swing.JButton();
+        progressBar = new javax.swing.JProgressBar();
+        cancelButton = new javax.swing.JButton();
 
         jButton1.setText("jButton1");
 
@@ -65,6 +78,15 @@ public class ProgressFrame extends javax.swing.JFrame {
             }
         });
 
+        progressBar.setStringPainted(true);
+
+        cancelButton.setText("Cancel");
+        cancelButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                cancelButtonActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -73,7 +95,10 @@ public class ProgressFrame extends javax.swing.JFrame {
                 .addContainerGap()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
-                        .addGap(0, 0, Short.MAX_VALUE)
+                        .addComponent(progressBar, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(cancelButton, javax.swing.GroupLayout.PREFERRED_SIZE, 70, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(progressButton, javax.swing.GroupLayout.PREFERRED_SIZE, 70, javax.swing.GroupLayout.PREFERRED_SIZE))
                     .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 530, Short.MAX_VALUE))
                 .addContainerGap())
@@ -84,7 +109,10 @@ public class ProgressFrame extends javax.swing.JFrame {
                 .addGap(8, 8, 8)
                 .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 247, Short.MAX_VALUE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
-                .addComponent(progressButton)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(progressBar, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(cancelButton)
+                    .addComponent(progressButton))
                 .addContainerGap())
         );
 
@@ -97,6 +125,13 @@ public class ProgressFrame extends javax.swing.JFrame {
         System.exit(0);
         //END OF PROGRAM
     }//GEN-LAST:event_progressButtonActionPerformed
+
+    private void cancelButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cancelButtonActionPerformed
+        //The worker stops at its next check and deletes the Gerber files
+        cancelButton.setEnabled(false);
+        PrimaryFileSelectorFrame.getEngine().cancel();
+        addProgressEvent("Cancelling...", 0);
+    }//GEN-LAST:event_cancelButtonActionPerformed
                     
     /**
      * @param args the command line arguments
@@ -133,14 +168,37 @@ public class ProgressFrame extends javax.swing.JFrame {
      * Signals the GerberFileManager to start writing the Gerber files. This 
      * happens only after the user has clicked the "Next" button on the
      * DataFrame.
+     * 
+     * The files are written by a SwingWorker, off the event dispatch thread.
      */
     public void initializeGerberManager(){
-        //Runs gerber generation in parallel
-        java.awt.EventQueue.invokeLater(new Runnable() {
-            public void run(){
-                GerberFileManager.startWriting();
+        conversionWorker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground(){
+                PrimaryFileSelectorFrame.getEngine()
+                        .startWriting(ProgressFrame.this);
+                return null;
             }
-        });
+            
+            @Override
+            protected void done(){
+                cancelButton.setEnabled(false);
+                progressButton.setEnabled(true);
+                
+                try {
+                    get();
+                }
+                catch(InterruptedException e){
+                    e.printStackTrace();
+                }
+                catch(ExecutionException e){
+                    e.getCause().printStackTrace();
+                    progressTextArea.append("\n\nERROR: " + e.getCause());
+                }
+            }
+        };
+        
+        conversionWorker.execute();
     }
     
     /**
@@ -156,7 +214,20 @@ public class ProgressFrame extends javax.swing.JFrame {
      *                          25 and 75 are passed to this function, then the
      *                          "Exit" button will be enabled.
      */
-    public void addProgressEvent(String eventName, int eventProgress){
+    @Override
+    public void addProgressEvent(final String eventName, 
+            final int eventProgress){
+        //Called by the worker, so the text area is changed on the EDT
+        if(EventQueue.isDispatchThread() == false){
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run(){
+                    addProgressEvent(eventName, eventProgress);
+                }
+            });
+            return;
+        }
+        
         progressPercent += eventProgress;
         progressTextArea.append("\n" + eventName);
         
@@ -166,6 +237,25 @@ public class ProgressFrame extends javax.swing.JFrame {
         }
     }
     
+    /**
+     * Shows the number of entities written and the size of the Gerber files 
+     * in the progress bar.
+     */
+    @Override
+    public void updateProgress(final int entitiesWritten, 
+            final int entityTotal, final long bytesWritten){
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run(){
+                progressBar.setMaximum(Math.max(entityTotal, 1));
+                progressBar.setValue(entitiesWritten);
+                progressBar.setString(entitiesWritten + " / " + entityTotal
+                        + " Entities, " + (bytesWritten / 1024) + " KB");
+            }
+        });
+    }
+    
+    @Override
     public void setDoneWriting(boolean val){
         doneWriting = val;
         
@@ -173,8 +263,10 @@ public class ProgressFrame extends javax.swing.JFrame {
     }
     
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JButton cancelButton;
     private javax.swing.JButton jButton1;
     private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JProgressBar progressBar;
     private javax.swing.JButton progressButton;
     private javax.swing.JTextArea progressTextArea;
     // End of variables declaration//GEN-END:variables
@@ -0,0 +1,37 @@
+package com.innerspec.main;
+
+/**
+ * Receives the progress and results of a conversion from GerberFileManager.
+ * The ProgressFrame shows them to the user, while the command line converter
+ * prints them to the console.
+ * 
+ * The methods are called on the thread that writes the Gerber files, which is
+ * not the event dispatch thread in the GUI.
+ * 
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public interface ProgressListener {
+    /**
+     * Adds an output string to the progress output.
+     * 
+     * @param eventName         The string to be output.
+     * @param eventProgress     The value to be added to the overall percent
+     *                          progress.
+     */
+    public void addProgressEvent(String eventName, int eventProgress);
+    
+    /**
+     * Called at regular intervals while the entities are written.
+     * 
+     * @param entitiesWritten   The number of entities written so far
+     * @param entityTotal       The number of entities in the dxf file
+     * @param bytesWritten      The number of bytes output to the Gerber files
+     */
+    public void updateProgress(int entitiesWritten, int entityTotal, 
+            long bytesWritten);
+    
+    /**
+     * Called once all Gerber files have been written.
+     */
+    public void setDoneWriting(boolean val);
+}
@@ -0,0 +1,365 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.BlockReference;
+import com.innerspec.entity.Entity;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Finds the block references that are placed on a regular grid, such as the
+ * copies of a MINSERT array or a panel of boards inserted one by one, so that
+ * each grid is written once in a step and repeat block (%SR) of its Gerber
+ * file instead of once per copy.
+ *
+ * References are part of the same grid if they write the same prepared
+ * entities (the same block, layer, rotation and scale, see
+ * BlockReference.getEntities()) and their positions form a complete grid of
+ * columns and rows. The steps of a Gerber grid are along the x and y axes, so
+ * arrays rotated by angles other than multiples of 90 degrees are written
+ * copy by copy. Positions may be one Gerber unit away from the grid, since the
+ * positions of the references are rounded.
+ *
+ * Grids are found greedily: starting from the lowest, leftmost reference that
+ * is not part of a grid yet, the grid is extended along x to the nearest
+ * references on the right, and along y for as long as whole rows are found.
+ * A grid is written when its first reference in file order is reached.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class StepRepeatFinder {
+    /** The number of copies below which a grid is not worth a block. */
+    private static final int MIN_COPIES = 2;
+
+    /**
+     * The smallest step in Gerber units, so that the positions a reference
+     * is looked for at around two copies never overlap.
+     */
+    private static final int MIN_STEP = 3;
+
+    /**
+     * The Gerber units a step is moved from the measured distance between
+     * two references, in the order they are tried.
+     */
+    private static final int[] STEP_OFFSETS = {0, -1, 1};
+
+    private ConversionEngine engine;
+    private ArrayList<Entity> entities;
+
+    /** The number of the grid of each entity, -1 if it is not in a grid. */
+    private int[] entityGrids;
+
+    /** The first entity in file order of each grid. */
+    private ArrayList<Integer> firstEntities = new ArrayList<Integer>();
+
+    /** The lowest, leftmost reference of each grid, which is written. */
+    private ArrayList<Integer> baseEntities = new ArrayList<Integer>();
+
+    /** The columns, rows, x step and y step of each grid. */
+    private ArrayList<int[]> gridSizes = new ArrayList<int[]>();
+
+    private int copyCount = 0;
+
+    /** The positions of the references of the shape being searched. */
+    private int[] xs;
+    private int[] ys;
+    private boolean[] isUsed;
+    private HashMap<Long, Integer> positions;
+
+    /**
+     * Finds the grids of the block references of a conversion. Called once
+     * the Gerber files are created.
+     *
+     * @param engine    The conversion whose references are searched
+     */
+    StepRepeatFinder(ConversionEngine engine){
+        this.engine = engine;
+        this.entities = engine.getEntityManager().getEntities();
+
+        entityGrids = new int[entities.size()];
+        Arrays.fill(entityGrids, -1);
+
+        //The references of each shape in file order
+        IdentityHashMap<Entity[], ArrayList<Integer>> shapes
+                = new IdentityHashMap<Entity[], ArrayList<Integer>>();
+        ArrayList<ArrayList<Integer>> shapeList
+                = new ArrayList<ArrayList<Integer>>();
+
+        for(int k = 0; k < entities.size(); k++){
+            Entity entity = entities.get(k);
+
+            if(entity instanceof BlockReference && entity.isWritable()){
+                Entity[] shape = ((BlockReference)entity).getEntities();
+                ArrayList<Integer> references = shapes.get(shape);
+
+                if(references == null){
+                    references = new ArrayList<Integer>();
+                    shapes.put(shape, references);
+                    shapeList.add(references);
+                }
+
+                references.add(k);
+            }
+        }
+
+        for(ArrayList<Integer> references : shapeList){
+            if(references.size() >= MIN_COPIES){
+                findGrids(references);
+            }
+        }
+
+        xs = null;
+        ys = null;
+        isUsed = null;
+        positions = null;
+    }
+
+    /**
+     * @return  The number of grids found
+     */
+    int getGridCount(){
+        return gridSizes.size();
+    }
+
+    /**
+     * @return  The number of references that are part of a grid
+     */
+    int getCopyCount(){
+        return copyCount;
+    }
+
+    /**
+     * @param k     The index of an entity in the entity store
+     * @return      True if the entity is written as part of a grid
+     */
+    boolean isRepeated(int k){
+        return entityGrids[k] >= 0;
+    }
+
+    /**
+     * @param k     The index of an entity in the entity store
+     * @return      True if the grid of the entity is written when the entity
+     *              is reached
+     */
+    boolean isGridStart(int k){
+        return entityGrids[k] >= 0 && firstEntities.get(entityGrids[k]) == k;
+    }
+
+    /**
+     * Writes the grid of an entity as a step and repeat block that holds the
+     * lowest, leftmost reference of the grid.
+     *
+     * @param k     The index of the first entity of a grid
+     * @return      The number of references written
+     */
+    int writeGrid(int k){
+        int grid = entityGrids[k];
+        int[] size = gridSizes.get(grid);
+        Entity base = entities.get(baseEntities.get(grid));
+        GerberFile gerberFile = base.getLayer().getGerberFile();
+
+        gerberFile.startStepAndRepeat(size[0], size[1], size[2], size[3]);
+        base.write(engine);
+        gerberFile.endStepAndRepeat();
+
+        return size[0] * size[1];
+    }
+
+    /**
+     * Finds the grids among the references of one shape.
+     *
+     * @param references    The entity indexes of the references
+     */
+    private void findGrids(ArrayList<Integer> references){
+        final int count = references.size();
+        xs = new int[count];
+        ys = new int[count];
+        isUsed = new boolean[count];
+        positions = new HashMap<Long, Integer>();
+
+        for(int m = 0; m < count; m++){
+            BlockReference reference
+                    = (BlockReference)entities.get(references.get(m));
+            xs[m] = reference.getXPosition();
+            ys[m] = reference.getYPosition();
+
+            if(positions.containsKey(getKey(xs[m], ys[m])) == false){
+                positions.put(getKey(xs[m], ys[m]), m);
+            }
+        }
+
+        //The references by row and by column, for the nearest neighbours
+        Integer[] byRow = new Integer[count];
+        Integer[] byColumn = new Integer[count];
+
+        for(int m = 0; m < count; m++){
+            byRow[m] = m;
+            byColumn[m] = m;
+        }
+
+        Arrays.sort(byRow, new Comparator<Integer>(){
+            @Override
+            public int compare(Integer a, Integer b){
+                return Long.compare(getKey(ys[a], xs[a]), getKey(ys[b], xs[b]));
+            }
+        });
+
+        Arrays.sort(byColumn, new Comparator<Integer>(){
+            @Override
+            public int compare(Integer a, Integer b){
+                return Long.compare(getKey(xs[a], ys[a]), getKey(xs[b], ys[b]));
+            }
+        });
+
+        long[] rowKeys = new long[count];
+        long[] columnKeys = new long[count];
+
+        for(int m = 0; m < count; m++){
+            rowKeys[m] = getKey(ys[byRow[m]], xs[byRow[m]]);
+            columnKeys[m] = getKey(xs[byColumn[m]], ys[byColumn[m]]);
+        }
+
+        for(int m = 0; m < count; m++){
+            int base = byRow[m];
+
+            if(isUsed[base]){
+                continue;
+            }
+
+            int[] size = getGridSize(base,
+                    getNearestStep(rowKeys, ys[base], xs[base]),
+                    getNearestStep(columnKeys, xs[base], ys[base]));
+
+            if(size[0] * size[1] >= MIN_COPIES){
+                addGrid(references, base, size);
+            }
+        }
+    }
+
+    /**
+     * Finds the largest grid that starts at a reference. The distances to
+     * the nearest references are tried first, and the steps one Gerber unit
+     * around them, since those are rounded, are only taken if they give a
+     * larger grid. A pitch of 0.25 inches is written as 0.25, not 0.24999.
+     *
+     * @return  The columns, rows, x step and y step of the grid
+     */
+    private int[] getGridSize(int base, int xStep, int yStep){
+        int[] best = {1, 1, 0, 0};
+
+        for(int xOffset : STEP_OFFSETS){
+            int xTry = xStep + xOffset;
+            int columns = 1;
+
+            while(xTry >= MIN_STEP
+                    && findUnused(xs[base] + columns * xTry, ys[base]) >= 0){
+                columns++;
+            }
+
+            for(int yOffset : STEP_OFFSETS){
+                int yTry = yStep + yOffset;
+                int rows = 1;
+
+                while(yTry >= MIN_STEP
+                        && isRowUnused(base, columns, xTry, rows * yTry)){
+                    rows++;
+                }
+
+                if(columns * rows > best[0] * best[1]){
+                    best = new int[]{columns, rows, columns > 1 ? xTry : 0,
+                            rows > 1 ? yTry : 0};
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private boolean isRowUnused(int base, int columns, int xStep,
+            int yDistance){
+        for(int column = 0; column < columns; column++){
+            if(findUnused(xs[base] + column * xStep,
+                    ys[base] + yDistance) < 0){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the references of a grid as used and adds the grid.
+     */
+    private void addGrid(ArrayList<Integer> references, int base, int[] size){
+        int grid = gridSizes.size();
+        int first = Integer.MAX_VALUE;
+
+        for(int row = 0; row < size[1]; row++){
+            for(int column = 0; column < size[0]; column++){
+                int m = findUnused(xs[base] + column * size[2],
+                        ys[base] + row * size[3]);
+                isUsed[m] = true;
+                entityGrids[references.get(m)] = grid;
+                first = Math.min(first, references.get(m));
+            }
+        }
+
+        firstEntities.add(first);
+        baseEntities.add(references.get(base));
+        gridSizes.add(size);
+        copyCount += size[0] * size[1];
+    }
+
+    /**
+     * Finds an unused reference within one Gerber unit of a position.
+     *
+     * @return  The number of the reference, -1 if there is none
+     */
+    private int findUnused(int x, int y){
+        for(int dx = -1; dx <= 1; dx++){
+            for(int dy = -1; dy <= 1; dy++){
+                Integer m = positions.get(getKey(x + dx, y + dy));
+
+                if(m != null && isUsed[m] == false){
+                    return m;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the distance to the nearest reference after a position along
+     * a row or column, with the keys sorted by the other axis first.
+     *
+     * @param keys  The sorted keys of the references
+     * @param line  The position of the row or column
+     * @param from  The position along the row or column
+     * @return      The distance, 0 if there is no reference
+     */
+    private static int getNearestStep(long[] keys, int line, int from){
+        long nearest = Long.MAX_VALUE;
+
+        for(int d = -1; d <= 1; d++){
+            //Skips the references within a Gerber unit of the position
+            int k = Arrays.binarySearch(keys, getKey(line + d, from + 2));
+            k = k < 0 ? -k - 1 : k;
+
+            if(k < keys.length && keys[k] >> 32 == line + d){
+                nearest = Math.min(nearest, (int)keys[k] ^ 0x80000000);
+            }
+        }
+
+        return nearest == Long.MAX_VALUE ? 0 : (int)(nearest - from);
+    }
+
+    /**
+     * Returns a key that sorts by the first value and then by the second.
+     */
+    private static long getKey(int first, int second){
+        return ((long)first << 32) | ((second ^ 0x80000000) & 0xFFFFFFFFL);
+    }
+}
@@ -1,84 +1,176 @@
-
 package com.innerspec.main;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
-/** 
+/**
  *  Contains the main methods for handling thicknesses for files.
- *  This is used to contain the list of thicknesses as well as to generate the 
+ *  This is used to contain the list of thicknesses as well as to generate the
  *  thickness header for each Gerber file.
- * 
+ *
+ *  Thicknesses are rounded to thousandths of an inch, and the number of
+ *  thousandths is the key of the aperture table. The table is an open
+ *  addressing hash table of ints, so looking up the code of a thickness takes
+ *  the same time for a few layer widths as for thousands of flashed circle
+ *  diameters, and creates no objects. Codes are assigned in the order the
+ *  thicknesses are added, starting with 10, and never change. The aperture
+ *  macros of the PadFinder take the codes after the thicknesses.
+ *
  * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
  */
 public class ThicknessManager {
+    /** The first aperture code, codes below 10 are reserved in Gerber. */
+    private static final int FIRST_CODE = 10;
+
+    /** Marks an unused slot of the aperture table. */
+    private static final int EMPTY = Integer.MIN_VALUE;
+
     /**Contains the list of thicknesses in their string format for gbr files. */
-    private final static ArrayList<String> thicknessArrayOutput 
+    private final ArrayList<String> thicknessArrayOutput
             = new ArrayList<String>();
-    
+
     /**Contains the list of the numeric thicknesses in the dxf/gbr files. */
-    private final static ArrayList<Double> thicknesses 
+    private final ArrayList<Double> thicknesses
             = new ArrayList<Double>();
-    
-    /** 
+
+    /** The thicknesses in thousandths of an inch, by slot. */
+    private int[] keys = newKeys(16);
+
+    /** The aperture code of the thickness in the same slot of "keys". */
+    private int[] codes = new int[16];
+
+    /** The code of the next aperture added. */
+    private int nextCode = FIRST_CODE;
+
+    /**
      * Adds a thickness to the list of thicknesses and the Gerber output list.
-     * 
+     *
      * @param thickness     The decimal form of the desired thickness
      */
-    public static void addThickness(double thickness){
-        boolean isUsed = false;
-        
-        thickness = (double)Math.round(thickness * 1000) / 1000;
-        
-        for(double t : thicknesses){
-            if(t == thickness){
-                isUsed = true;
-            }
-        }
-        
-        if(isUsed == false){
-            thicknessArrayOutput.add("%ADD" + (thicknesses.size() + 10)
+    public void addThickness(double thickness){
+        int key = getKey(thickness);
+        int slot = findSlot(key);
+
+        if(keys[slot] == EMPTY){
+            thickness = (double)key / 1000;
+
+            thicknessArrayOutput.add("%ADD" + nextCode
                 + "C," + thickness + "*%");
             thicknesses.add(thickness);
+
+            keys[slot] = key;
+            codes[slot] = nextCode++;
+
+            //Keeps the table at most half full, so that searches stay short
+            if(thicknesses.size() * 2 > keys.length){
+                resize();
+            }
         }
     }
-    
+
+    /**
+     * Adds an aperture macro (%AM) and an aperture that flashes it. The macro
+     * is named "PAD" followed by the code of its aperture, and is written to
+     * the Gerber file headers with the thicknesses.
+     *
+     * @param primitives    The primitives of the macro, each followed by "*"
+     * @return              The code of the new aperture
+     */
+    public int addMacroAperture(String primitives){
+        int code = nextCode++;
+
+        thicknessArrayOutput.add("%AMPAD" + code + "*\n" + primitives + "%");
+        thicknessArrayOutput.add("%ADD" + code + "PAD" + code + "*%");
+
+        return code;
+    }
+
     /**
-     * Uses thicknessArrayOutput to create a list of thicknesses separated into 
+     * Uses thicknessArrayOutput to create a list of thicknesses separated into
      * lines for output to Gerber file headers.
-     * 
+     *
      * @return      output      Thickness code header
      */
-    public static String getThicknessArrayOutput(){
-        String output = "";
+    public String getThicknessArrayOutput(){
+        StringBuilder output = new StringBuilder();
         for(String o : thicknessArrayOutput){
-            output = output.concat(o + "\n");
+            output.append(o).append('\n');
         }
-        return output;
+        return output.toString();
     }
-    
-    /** 
-     * Returns the thickness code (starting with 10) for a thickness in the 
-     * thicknesses array.
+
+    /**
+     * Returns the thickness code (starting with 10) for a thickness in the
+     * thicknesses array. The thickness is rounded to thousandths of an inch
+     * the same way it was when it was added.
      * Used by the entity classes (line, arc, and circle) to output the tool or
      * thickness that should be used.
-     * 
+     *
      * Returns 0 if thickness does not exist.
-     * 
+     *
      * @param thickness     Thickness of the desired code.
      * @return              Thickness code of the parameter.
      */
-    public static int getThicknessCode(double thickness){
-        for(int k = 0; k < thicknesses.size(); k++){
-            if(thickness == thicknesses.get(k)){
-                return k + 10;
-            }
+    public int getThicknessCode(double thickness){
+        int slot = findSlot(getKey(thickness));
+
+        if(keys[slot] != EMPTY){
+            return codes[slot];
         }
-        
+
         System.out.println("ERROR: Thickness does not exist:\t" + thickness);
         return 0;
     }
 
-    public static ArrayList<Double> getThicknesses(){
+    public ArrayList<Double> getThicknesses(){
         return thicknesses;
     }
+
+    /**
+     * Returns the key of a thickness: the thickness in thousandths of an inch.
+     */
+    private static int getKey(double thickness){
+        return (int)Math.round(thickness * 1000);
+    }
+
+    /**
+     * Returns the slot holding a key, or the empty slot where it would be
+     * added. The table always has an empty slot.
+     */
+    private int findSlot(int key){
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        while(keys[slot] != EMPTY && keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the aperture table. Every thickness keeps its code.
+     */
+    private void resize(){
+        int[] oldKeys = keys;
+        int[] oldCodes = codes;
+
+        keys = newKeys(oldKeys.length * 2);
+        codes = new int[oldKeys.length * 2];
+
+        for(int k = 0; k < oldKeys.length; k++){
+            if(oldKeys[k] != EMPTY){
+                int slot = findSlot(oldKeys[k]);
+                keys[slot] = oldKeys[k];
+                codes[slot] = oldCodes[k];
+            }
+        }
+    }
+
+    private static int[] newKeys(int size){
+        int[] newKeys = new int[size];
+        Arrays.fill(newKeys, EMPTY);
+        return newKeys;
+    }
 }
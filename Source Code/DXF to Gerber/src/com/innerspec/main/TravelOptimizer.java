@@ -0,0 +1,487 @@
+package com.innerspec.main;
+
+import com.innerspec.entity.Entity;
+import com.innerspec.entity.PathSegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Orders the entities of each Gerber file so that fewer apertures are
+ * selected and the plotter travels less between the things it draws. In file
+ * order the tool select commands flip back and forth between apertures and
+ * the plotter head moves all over the board.
+ *
+ * The entities are written in units: a single entity, or a whole path if the
+ * lines and arcs are joined by a PathChainer, a whole grid of block
+ * references if they are found by a StepRepeatFinder, or the flash of a pad
+ * found by the PadFinder. The units of each Gerber file
+ * are grouped by aperture, so each aperture is selected once per file, in the
+ * order the apertures were first used. The units of a group are ordered
+ * along a Hilbert curve through the board, which keeps units that are close
+ * to each other close in the file. Lines, arcs and paths are then drawn in
+ * reverse where their end is closer to the plotter than their start.
+ *
+ * The tool changes and the length of the D02 moves are counted for the file
+ * order and for the new order, and reported in the ConversionMetrics.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+class TravelOptimizer {
+    /** The number of cells of the Hilbert curve along each side. */
+    private static final int HILBERT_SIZE = 1 << 15;
+
+    private ConversionEngine engine;
+    private ArrayList<Entity> entities;
+    private StepRepeatFinder repeats;
+    private PadFinder pads;
+
+    /**
+     * The entity indexes of the units, the entities of a unit follow each
+     * other in the order they are drawn.
+     */
+    private int[] members;
+
+    /** True for the entities of a path that are drawn from end to start. */
+    private boolean[] isMemberReversed;
+    private int memberCount = 0;
+
+    /** The first member of each unit, followed by the number of members. */
+    private int[] unitFirst;
+
+    /** The Gerber file number of each unit, -1 if it is not written. */
+    private int[] fileNums;
+    private int[] apertures;
+    private int[] startX;
+    private int[] startY;
+    private int[] endX;
+    private int[] endY;
+
+    /** True if the unit is made of lines and arcs, which can be reversed. */
+    private boolean[] isReversible;
+
+    /** True if the unit is drawn from its end to its start. */
+    private boolean[] isReversed;
+    private int unitCount = 0;
+
+    /** The units in the order they are written. */
+    private int[] order;
+
+    private int toolChangesBefore;
+    private double travelBefore;
+    private int toolChangesAfter;
+    private double travelAfter;
+
+    /**
+     * Collects and orders the entities of a conversion. Called once the
+     * Gerber files are created.
+     *
+     * @param engine    The conversion whose entities are ordered
+     * @param chainer   Joins the lines and arcs into paths, or null to order
+     *                  each entity on its own
+     * @param repeats   Finds the grids of block references that are written
+     *                  as one unit, or null to order each reference on its
+     *                  own
+     */
+    TravelOptimizer(ConversionEngine engine, PathChainer chainer,
+            StepRepeatFinder repeats){
+        this.engine = engine;
+        this.entities = engine.getEntityManager().getEntities();
+        this.repeats = repeats;
+        this.pads = engine.getPadFinder();
+
+        int size = entities.size();
+        members = new int[size];
+        isMemberReversed = new boolean[size];
+        unitFirst = new int[size + 1];
+        fileNums = new int[size];
+        apertures = new int[size];
+        startX = new int[size];
+        startY = new int[size];
+        endX = new int[size];
+        endY = new int[size];
+        isReversible = new boolean[size];
+        isReversed = new boolean[size];
+
+        addUnits(chainer);
+
+        //Measures the file order first
+        order = new int[unitCount];
+        for(int k = 0; k < unitCount; k++){
+            order[k] = k;
+        }
+
+        measure();
+        toolChangesBefore = toolChangesAfter;
+        travelBefore = travelAfter;
+
+        sortUnits();
+        reverseUnits();
+        measure();
+    }
+
+    /**
+     * @return  The number of units to write
+     */
+    int getUnitCount(){
+        return unitCount;
+    }
+
+    /**
+     * Writes a unit to its Gerber file. Only the first entity of a path
+     * starts with a move, and the moves saved are counted in the
+     * ConversionMetrics.
+     *
+     * @param k     The position of the unit in the new order
+     * @return      The number of entities written, counting every copy of a
+     *              grid
+     */
+    int writeUnit(int k){
+        int unit = order[k];
+        int first = unitFirst[unit];
+        int length = unitFirst[unit + 1] - first;
+
+        if(repeats != null && repeats.isGridStart(members[first])){
+            return repeats.writeGrid(members[first]);
+        }
+        else if(pads != null && pads.isPadStart(members[first])){
+            return pads.writePad(members[first]);
+        }
+
+        for(int m = 0; m < length; m++){
+            //A reversed path is drawn from its last segment
+            int member = isReversed[unit] ? first + length - 1 - m
+                    : first + m;
+            Entity entity = entities.get(members[member]);
+
+            if(entity instanceof PathSegment){
+                ((PathSegment)entity).writePath(engine,
+                        isMemberReversed[member] != isReversed[unit], m > 0);
+            }
+            else {
+                entity.write(engine);
+            }
+        }
+
+        engine.getMetrics().addMovesSaved(length - 1);
+        return length;
+    }
+
+    /**
+     * @return  The number of tool selects in file order
+     */
+    int getToolChangesBefore(){
+        return toolChangesBefore;
+    }
+
+    /**
+     * @return  The length of the D02 moves in file order, in inches
+     */
+    double getTravelBefore(){
+        return travelBefore;
+    }
+
+    /**
+     * @return  The number of tool selects in the new order
+     */
+    int getToolChangesAfter(){
+        return toolChangesAfter;
+    }
+
+    /**
+     * @return  The length of the D02 moves in the new order, in inches
+     */
+    double getTravelAfter(){
+        return travelAfter;
+    }
+
+    /**
+     * Adds the entities in file order, each path as soon as its first
+     * segment in the file is reached, each grid as soon as its first
+     * reference is reached and each pad as soon as its first entity is
+     * reached.
+     */
+    private void addUnits(PathChainer chainer){
+        int segment = 0;
+
+        for(int k = 0; k < entities.size(); k++){
+            if(chainer != null && segment < chainer.getSegmentCount()
+                    && chainer.getEntityIndex(segment) == k){
+                if(chainer.buildPath(segment)){
+                    for(int m = 0; m < chainer.getPathLength(); m++){
+                        members[memberCount] = chainer.getPathEntityIndex(m);
+                        isMemberReversed[memberCount]
+                                = chainer.isPathReversed(m);
+                        memberCount++;
+                    }
+
+                    addUnit();
+                }
+
+                segment++;
+            }
+            else if(repeats != null && repeats.isRepeated(k)
+                    && repeats.isGridStart(k) == false){
+                //Written with its grid
+            }
+            else if(pads != null && pads.isPadMember(k)
+                    && pads.isPadStart(k) == false){
+                //Written with its pad
+            }
+            else {
+                members[memberCount] = k;
+                isMemberReversed[memberCount] = false;
+                memberCount++;
+                addUnit();
+            }
+        }
+    }
+
+    /**
+     * Adds a unit made of the members added since the last unit.
+     */
+    private void addUnit(){
+        int first = unitFirst[unitCount];
+        Entity firstEntity = entities.get(members[first]);
+        Entity lastEntity = entities.get(members[memberCount - 1]);
+
+        if(firstEntity.isWritable()){
+            fileNums[unitCount] = firstEntity.getLayer().getFileNum();
+            apertures[unitCount] = firstEntity.getApertureCode(engine);
+            isReversible[unitCount] = firstEntity instanceof PathSegment;
+
+            startX[unitCount] = isMemberReversed[first]
+                    ? firstEntity.getEndX() : firstEntity.getStartX();
+            startY[unitCount] = isMemberReversed[first]
+                    ? firstEntity.getEndY() : firstEntity.getStartY();
+            endX[unitCount] = isMemberReversed[memberCount - 1]
+                    ? lastEntity.getStartX() : lastEntity.getEndX();
+            endY[unitCount] = isMemberReversed[memberCount - 1]
+                    ? lastEntity.getStartY() : lastEntity.getEndY();
+
+            //A pad is a single flash of its own aperture
+            if(pads != null && pads.isPadStart(members[first])){
+                apertures[unitCount] = pads.getApertureCode(members[first]);
+                isReversible[unitCount] = false;
+                startX[unitCount] = pads.getFlashX(members[first]);
+                startY[unitCount] = pads.getFlashY(members[first]);
+                endX[unitCount] = startX[unitCount];
+                endY[unitCount] = startY[unitCount];
+            }
+        }
+        else {
+            //Still written, to count the out of bounds and zero size entities
+            fileNums[unitCount] = -1;
+        }
+
+        unitCount++;
+        unitFirst[unitCount] = memberCount;
+    }
+
+    /**
+     * Sorts the units by Gerber file and aperture, and each aperture along
+     * the Hilbert curve. Units that are not written come first.
+     */
+    private void sortUnits(){
+        //Numbers the groups in the order their first unit is found
+        HashMap<Long, Integer> groups = new HashMap<Long, Integer>();
+        int[] unitGroups = new int[unitCount];
+
+        for(int k = 0; k < unitCount; k++){
+            if(fileNums[k] < 0){
+                continue;
+            }
+
+            Long key = ((long)fileNums[k] << 32)
+                    | (apertures[k] & 0xFFFFFFFFL);
+            Integer group = groups.get(key);
+
+            if(group == null){
+                group = groups.size() + 1;
+                groups.put(key, group);
+            }
+
+            unitGroups[k] = group;
+        }
+
+        int[] groupStarts = new int[groups.size() + 2];
+
+        for(int k = 0; k < unitCount; k++){
+            groupStarts[unitGroups[k] + 1]++;
+        }
+
+        for(int g = 1; g < groupStarts.length; g++){
+            groupStarts[g] += groupStarts[g - 1];
+        }
+
+        //The units of a group are sorted by their index on the curve
+        long[] keys = new long[unitCount];
+        int[] positions = Arrays.copyOf(groupStarts, groupStarts.length);
+        int[] bounds = getBounds();
+        int span = Math.max(1, Math.max(bounds[2] - bounds[0],
+                bounds[3] - bounds[1]));
+
+        for(int k = 0; k < unitCount; k++){
+            long index = 0;
+
+            if(fileNums[k] >= 0){
+                long x = (long)(getMiddleX(k) - bounds[0])
+                        * (HILBERT_SIZE - 1) / span;
+                long y = (long)(getMiddleY(k) - bounds[1])
+                        * (HILBERT_SIZE - 1) / span;
+                index = getHilbertIndex((int)x, (int)y);
+            }
+
+            keys[positions[unitGroups[k]]++] = index << 32 | k;
+        }
+
+        for(int g = 1; g + 1 < groupStarts.length; g++){
+            Arrays.sort(keys, groupStarts[g], groupStarts[g + 1]);
+        }
+
+        for(int k = 0; k < unitCount; k++){
+            order[k] = (int)keys[k];
+        }
+    }
+
+    /**
+     * Draws each line, arc or path from the end that is closer to the point
+     * where the plotter is left by the previous unit of its Gerber file.
+     */
+    private void reverseUnits(){
+        int fileCount = engine.getGerberFileManager().getGerberFiles().size();
+        int[] penX = new int[fileCount];
+        int[] penY = new int[fileCount];
+
+        for(int k = 0; k < unitCount; k++){
+            int unit = order[k];
+            int file = fileNums[unit];
+
+            if(file < 0){
+                continue;
+            }
+
+            if(isReversible[unit] && getDistance(penX[file], penY[file],
+                    endX[unit], endY[unit]) < getDistance(penX[file],
+                    penY[file], startX[unit], startY[unit])){
+                isReversed[unit] = true;
+            }
+
+            penX[file] = getLastX(unit);
+            penY[file] = getLastY(unit);
+        }
+    }
+
+    /**
+     * Counts the tool selects and the length of the D02 moves of the units
+     * in the current order. The plotter of each Gerber file starts at the
+     * origin, with no aperture selected.
+     */
+    private void measure(){
+        int fileCount = engine.getGerberFileManager().getGerberFiles().size();
+        int[] penX = new int[fileCount];
+        int[] penY = new int[fileCount];
+        int[] tools = new int[fileCount];
+
+        toolChangesAfter = 0;
+        travelAfter = 0;
+
+        for(int k = 0; k < unitCount; k++){
+            int unit = order[k];
+            int file = fileNums[unit];
+
+            if(file < 0){
+                continue;
+            }
+
+            if(tools[file] != apertures[unit]){
+                tools[file] = apertures[unit];
+                toolChangesAfter++;
+            }
+
+            travelAfter += getDistance(penX[file], penY[file],
+                    getFirstX(unit), getFirstY(unit)) / 100000;
+            penX[file] = getLastX(unit);
+            penY[file] = getLastY(unit);
+        }
+    }
+
+    /**
+     * Returns the smallest and largest positions of the units that are
+     * written, as {minX, minY, maxX, maxY}.
+     */
+    private int[] getBounds(){
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE,
+                        Integer.MIN_VALUE, Integer.MIN_VALUE};
+
+        for(int k = 0; k < unitCount; k++){
+            if(fileNums[k] >= 0){
+                bounds[0] = Math.min(bounds[0], getMiddleX(k));
+                bounds[1] = Math.min(bounds[1], getMiddleY(k));
+                bounds[2] = Math.max(bounds[2], getMiddleX(k));
+                bounds[3] = Math.max(bounds[3], getMiddleY(k));
+            }
+        }
+
+        return bounds;
+    }
+
+    private int getMiddleX(int unit){
+        return startX[unit] / 2 + endX[unit] / 2;
+    }
+
+    private int getMiddleY(int unit){
+        return startY[unit] / 2 + endY[unit] / 2;
+    }
+
+    private int getFirstX(int unit){
+        return isReversed[unit] ? endX[unit] : startX[unit];
+    }
+
+    private int getFirstY(int unit){
+        return isReversed[unit] ? endY[unit] : startY[unit];
+    }
+
+    private int getLastX(int unit){
+        return isReversed[unit] ? startX[unit] : endX[unit];
+    }
+
+    private int getLastY(int unit){
+        return isReversed[unit] ? startY[unit] : endY[unit];
+    }
+
+    private static double getDistance(int x1, int y1, int x2, int y2){
+        double dx = (double)x2 - x1;
+        double dy = (double)y2 - y1;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns the position of a cell along the Hilbert curve that fills a
+     * square of HILBERT_SIZE cells along each side. Cells that are close on
+     * the curve are close on the board.
+     */
+    private static int getHilbertIndex(int x, int y){
+        int index = 0;
+
+        for(int s = HILBERT_SIZE / 2; s > 0; s /= 2){
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += s * s * ((3 * rx) ^ ry);
+
+            //Rotates the quadrant so the curve continues from the last one
+            if(ry == 0){
+                if(rx == 1){
+                    x = HILBERT_SIZE - 1 - x;
+                    y = HILBERT_SIZE - 1 - y;
+                }
+
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+
+        return index;
+    }
+}
@@ -0,0 +1,170 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.Layer;
+import com.innerspec.main.ProgressListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the arcs written in multi quadrant mode (G75), where a draw that 
+ * ends where it starts is a whole circle.
+ * 
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class ArcTest {
+    
+    private File directory;
+    private ConversionEngine engine;
+    
+    @Before
+    public void setUp() throws IOException{
+        directory = Files.createTempDirectory("arctest").toFile();
+    }
+    
+    @After
+    public void tearDown(){
+        for(File file : directory.listFiles()){
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    /**
+     * An arc far shorter than a Gerber unit must not be written as an arc,
+     * whose rounded ends would make the plotter draw almost a whole circle.
+     */
+    @Test
+    public void testShortArcIsNotCircle() throws IOException{
+        List<String> output = convert(arc(1, 1, 0.5, 0, 0.0005), 0);
+        
+        for(String line : output){
+            assertFalse(line, line.startsWith("G03") || line.startsWith("G02"));
+        }
+        assertTrue(output.contains("G01X149999Y100000D01*"));
+    }
+    
+    /**
+     * An arc whose ends are written at the same point has zero size.
+     */
+    @Test
+    public void testShortArcOnOnePointIsZeroSize() throws IOException{
+        List<String> output = convert(arc(1, 1, 0.5, 90.0001, 90.0002), 0);
+        
+        assertEquals(1, engine.getGerberFileManager()
+                .getZeroLengthEntities()[2]);
+        for(String line : output){
+            assertFalse(line, line.endsWith("D01*"));
+        }
+    }
+    
+    @Test
+    public void testQuarterArc() throws IOException{
+        List<String> output = convert(arc(1, 1, 0.5, 0, 90), 0);
+        
+        assertTrue(output.contains("G01X150000Y100000D02*"));
+        assertTrue(output.contains("G03X100000Y150000I-50000J000000D01*"));
+    }
+    
+    /**
+     * An arc continuing a path whose ends only touch within the chain 
+     * tolerance is drawn around its center from where the plotter is.
+     */
+    @Test
+    public void testChainedArcCenterFromPen() throws IOException{
+        List<String> output = convert(line(0.5, 1, 1.49998, 1) 
+                + arc(1, 1, 0.5, 0, 90), 0.0001);
+        
+        assertTrue(output.contains("X149998Y100000D01*"));
+        assertTrue(output.contains("G03X100000Y150000I-49998J000000D01*"));
+    }
+    
+    /**
+     * A bulge arc of a polyline that rounds to a single point is left out,
+     * and the rest of the polyline is still drawn.
+     */
+    @Test
+    public void testMicroBulgeArcInPolyline() throws IOException{
+        List<String> output = convert(polyline(new double[][]{{1, 1, 0}, 
+                {2, 1, 0.5}, {2.000004, 1.000004, 0}}), 0);
+        
+        assertTrue(output.contains("G01X100000Y100000D02*"));
+        assertTrue(output.contains("X200000Y100000D01*"));
+        for(String line : output){
+            assertFalse(line, line.startsWith("G03") || line.startsWith("G02"));
+        }
+        assertEquals(0, engine.getGerberFileManager()
+                .getEntitiesOutOfBounds()[3]);
+        assertEquals(0, engine.getGerberFileManager()
+                .getZeroLengthEntities()[2]);
+    }
+    
+    private List<String> convert(String entities, double chainTolerance)
+            throws IOException{
+        File dxfFile = new File(directory, "test.dxf");
+        try (PrintWriter writer = new PrintWriter(dxfFile)) {
+            writer.print("0\nSECTION\n2\nENTITIES\n" + entities 
+                    + "0\nENDSEC\n0\nEOF\n");
+        }
+        
+        engine = new ConversionEngine();
+        engine.setIsMultiQuadrant(true);
+        engine.setCanOverwriteAll(true);
+        if(chainTolerance > 0){
+            engine.setIsChainingPaths(true);
+            engine.setChainTolerance(chainTolerance);
+        }
+        engine.readDxfFile(dxfFile.getPath());
+        for(Layer layer : engine.getLayers()){
+            layer.setFileName("TOP");
+            layer.setThickness(0.005);
+        }
+        engine.prepareLayers();
+        engine.startWriting(new ProgressListener() {
+            @Override
+            public void addProgressEvent(String eventName, int eventProgress){
+            }
+            
+            @Override
+            public void updateProgress(int entitiesWritten, int entityTotal,
+                    long bytesWritten){
+            }
+            
+            @Override
+            public void setDoneWriting(boolean val){
+            }
+        });
+        
+        return Files.readAllLines(new File(directory, "TOP.gbr").toPath(),
+                Charset.forName("UTF-8"));
+    }
+    
+    private static String arc(double x, double y, double radius, 
+            double startAngle, double endAngle){
+        return "0\nARC\n8\nTOP\n10\n" + x + "\n20\n" + y + "\n40\n" + radius
+                + "\n50\n" + startAngle + "\n51\n" + endAngle + "\n";
+    }
+    
+    private static String polyline(double[][] points){
+        String entity = "0\nLWPOLYLINE\n8\nTOP\n90\n" + points.length 
+                + "\n70\n0\n";
+        for(double[] point : points){
+            entity += "10\n" + point[0] + "\n20\n" + point[1] + "\n42\n" 
+                    + point[2] + "\n";
+        }
+        return entity;
+    }
+    
+    private static String line(double x1, double y1, double x2, double y2){
+        return "0\nLINE\n8\nTOP\n10\n" + x1 + "\n20\n" + y1 + "\n11\n" + x2
+                + "\n21\n" + y2 + "\n";
+    }
+}
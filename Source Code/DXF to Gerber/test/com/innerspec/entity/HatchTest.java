@@ -0,0 +1,190 @@
+package com.innerspec.entity;
+
+import com.innerspec.main.ConversionEngine;
+import com.innerspec.main.Layer;
+import com.innerspec.main.ProgressListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the regions written for hatches, whose holes are joined to the loop
+ * around them by cut-ins instead of being cleared.
+ *
+ * @author Zachary Geier - zdgeier@gmail.com - Innerspec Technologies Inc.
+ */
+public class HatchTest {
+
+    private File directory;
+    private ConversionEngine engine;
+
+    @Before
+    public void setUp() throws IOException{
+        directory = Files.createTempDirectory("hatchtest").toFile();
+    }
+
+    @After
+    public void tearDown(){
+        for(File file : directory.listFiles()){
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * A circular hole is joined by a cut-in from its rightmost point, which
+     * is drawn once in each direction, and has no draws of zero length.
+     */
+    @Test
+    public void testCircularHole() throws IOException{
+        List<String> output = convert(hatch(rectangle(0.5, 0.2, 1.5, 0.8)
+                + circle(1.1, 0.5, 0.1), 2), true);
+
+        assertEquals(1, count(output, "G36*"));
+        assertEquals(2, count(output, "G01X150000Y50000D01*"));
+        assertEquals(1, count(output, "G01X120000Y50000D01*"));
+        assertNoZeroDraws(output);
+        assertEquals(0, engine.getGerberFileManager()
+                .getEntitiesOutOfBounds()[7]);
+        assertEquals(0, engine.getGerberFileManager()
+                .getZeroLengthEntities()[7]);
+    }
+
+    /**
+     * A hole of bulge arcs whose rightmost point is one of its points is
+     * not split there, in either arc mode.
+     */
+    @Test
+    public void testBulgeCircleHole() throws IOException{
+        String hatch = hatch(rectangle(0.5, 0.2, 1.5, 0.8)
+                + "92\n2\n72\n1\n73\n1\n93\n2\n10\n1.0\n20\n0.5\n42\n1\n"
+                + "10\n1.2\n20\n0.5\n42\n1\n", 2);
+
+        for(boolean isMultiQuadrant : new boolean[]{true, false}){
+            List<String> output = convert(hatch, isMultiQuadrant);
+
+            assertEquals(1, count(output, "G36*"));
+            assertEquals(2, count(output, "G01X150000Y50000D01*"));
+            assertNoZeroDraws(output);
+        }
+    }
+
+    /**
+     * A loop with an arc that rounds to a single point is still filled.
+     */
+    @Test
+    public void testMicroArcInLoop() throws IOException{
+        List<String> output = convert(hatch("92\n2\n72\n1\n73\n1\n93\n5\n"
+                + "10\n0.5\n20\n0.2\n42\n0\n10\n1.5\n20\n0.2\n42\n0\n"
+                + "10\n1.5\n20\n0.8\n42\n0.5\n"
+                + "10\n1.500004\n20\n0.800004\n42\n0\n"
+                + "10\n0.5\n20\n0.8\n42\n0\n", 1), true);
+
+        assertEquals(1, count(output, "G36*"));
+        assertEquals(1, count(output, "G01X50000Y80000D01*"));
+        assertEquals(0, engine.getGerberFileManager()
+                .getEntitiesOutOfBounds()[7]);
+    }
+
+    /**
+     * A hole does not erase a hatch written before it.
+     */
+    @Test
+    public void testHoleKeepsEarlierHatch() throws IOException{
+        List<String> output = convert(hatch(rectangle(2, 2, 3, 3), 1)
+                + hatch(rectangle(1, 1, 4, 4) + rectangle(1.5, 1.5, 3.5, 3.5),
+                2), true);
+
+        assertEquals(2, count(output, "G36*"));
+        for(String line : output){
+            assertFalse(line, line.startsWith("%LP"));
+        }
+        assertEquals(2, count(output, "G01X400000Y350000D01*"));
+    }
+
+    private static int count(List<String> output, String command){
+        int count = 0;
+        for(String line : output){
+            if(line.equals(command)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that no draw ends at the point the draw before it ends at.
+     */
+    private static void assertNoZeroDraws(List<String> output){
+        String last = null;
+        for(String line : output){
+            if(line.endsWith("D01*") || line.endsWith("D02*")){
+                String point = line.replaceAll("^(G0\\d)?(X\\d+Y\\d+).*$",
+                        "$2").replaceAll("([XY])0+(\\d)", "$1$2");
+                assertFalse(line, line.endsWith("D01*")
+                        && point.equals(last));
+                last = point;
+            }
+        }
+    }
+
+    private List<String> convert(String entities, boolean isMultiQuadrant)
+            throws IOException{
+        File dxfFile = new File(directory, "test.dxf");
+        try (PrintWriter writer = new PrintWriter(dxfFile)) {
+            writer.print("0\nSECTION\n2\nENTITIES\n" + entities
+                    + "0\nENDSEC\n0\nEOF\n");
+        }
+
+        engine = new ConversionEngine();
+        engine.setIsMultiQuadrant(isMultiQuadrant);
+        engine.setCanOverwriteAll(true);
+        engine.readDxfFile(dxfFile.getPath());
+        for(Layer layer : engine.getLayers()){
+            layer.setFileName("TOP");
+            layer.setThickness(0.005);
+        }
+        engine.prepareLayers();
+        engine.startWriting(new ProgressListener() {
+            @Override
+            public void addProgressEvent(String eventName, int eventProgress){
+            }
+
+            @Override
+            public void updateProgress(int entitiesWritten, int entityTotal,
+                    long bytesWritten){
+            }
+
+            @Override
+            public void setDoneWriting(boolean val){
+            }
+        });
+
+        return Files.readAllLines(new File(directory, "TOP.gbr").toPath(),
+                Charset.forName("UTF-8"));
+    }
+
+    private static String hatch(String loops, int loopCount){
+        return "0\nHATCH\n8\nTOP\n2\nSOLID\n70\n1\n71\n0\n91\n" + loopCount
+                + "\n" + loops + "75\n0\n76\n1\n";
+    }
+
+    private static String rectangle(double x1, double y1, double x2,
+            double y2){
+        return "92\n2\n72\n0\n73\n1\n93\n4\n10\n" + x1 + "\n20\n" + y1
+                + "\n10\n" + x2 + "\n20\n" + y1 + "\n10\n" + x2 + "\n20\n"
+                + y2 + "\n10\n" + x1 + "\n20\n" + y2 + "\n";
+    }
+
+    private static String circle(double x, double y, double radius){
+        return "92\n1\n93\n1\n72\n2\n10\n" + x + "\n20\n" + y + "\n40\n"
+                + radius + "\n50\n0\n51\n360\n73\n1\n";
+    }
+}